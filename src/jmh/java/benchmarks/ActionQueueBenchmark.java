@@ -0,0 +1,58 @@
+package benchmarks;
+
+import game.action.Action;
+import game.action.ActionCursor;
+import game.action.ActionQueue;
+import game.qwop.CommandQWOP;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-timestep cost of getting the next command out of an {@link ActionQueue}, which every simulated timestep of the
+ * tree search used to go through, and out of the {@link ActionCursor} which the workers and rollouts use now.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActionQueueBenchmark {
+
+    private final ActionQueue<CommandQWOP> actionQueue = new ActionQueue<>();
+
+    private final ActionCursor<CommandQWOP> actionCursor = new ActionCursor<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Roughly the shape of a real run: 60 actions of typical durations cycling through the usual commands.
+        CommandQWOP[] commands = new CommandQWOP[]{CommandQWOP.NONE, CommandQWOP.WO, CommandQWOP.NONE, CommandQWOP.QP};
+        List<Action<CommandQWOP>> actions = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            actions.add(new Action<>(5 + (i * 7) % 25, commands[i % commands.length]));
+        }
+        actionQueue.addSequence(actions);
+        actionCursor.addSequence(actions);
+    }
+
+    @Benchmark
+    public CommandQWOP pollCommand() {
+        if (actionQueue.isEmpty()) {
+            actionQueue.resetQueue();
+        }
+        return actionQueue.pollCommand();
+    }
+
+    @Benchmark
+    public CommandQWOP pollCommandCursor() {
+        if (actionCursor.isEmpty()) {
+            actionCursor.resetQueue();
+        }
+        return actionCursor.pollCommand();
+    }
+}
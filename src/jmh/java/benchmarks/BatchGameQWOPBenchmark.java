@@ -0,0 +1,85 @@
+package benchmarks;
+
+import game.qwop.BatchGameQWOP;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stepping many runners in lockstep with {@link BatchGameQWOP}, compared with stepping the same number of separate
+ * games with direct ground contacts one after another. Both give exactly the same runs. Scores are per lane timestep,
+ * so they compare directly with {@link GameQWOPBenchmark#step()}.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchGameQWOPBenchmark {
+
+    private static final int LANES = 32;
+
+    /**
+     * Timesteps each key combination is held for.
+     */
+    private static final int HOLD_TIMESTEPS = 10;
+
+    private BatchGameQWOP batch;
+    private GameQWOP[] separateGames;
+
+    private final CommandQWOP[] commands = new CommandQWOP[LANES];
+
+    private int callCount;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        batch = new BatchGameQWOP(LANES);
+        separateGames = new GameQWOP[LANES];
+        for (int i = 0; i < LANES; i++) {
+            separateGames[i] = new GameQWOP(true);
+        }
+    }
+
+    /**
+     * Alternate between holding WO and QP, half a cycle apart in every other lane.
+     */
+    private void nextCommands() {
+        callCount++;
+        for (int lane = 0; lane < LANES; lane++) {
+            commands[lane] = (callCount + lane) % 4 < 2 ? CommandQWOP.WO : CommandQWOP.QP;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LANES * HOLD_TIMESTEPS)
+    public BatchGameQWOP stepBatch() {
+        nextCommands();
+        for (int lane = 0; lane < LANES; lane++) {
+            if (batch.isFailed(lane)) {
+                batch.resetGame(lane);
+            }
+        }
+        batch.step(commands, HOLD_TIMESTEPS);
+        return batch;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LANES * HOLD_TIMESTEPS)
+    public GameQWOP[] stepSeparateGames() {
+        nextCommands();
+        for (int lane = 0; lane < LANES; lane++) {
+            if (separateGames[lane].isFailed()) {
+                separateGames[lane].resetGame();
+            }
+            for (int i = 0; i < HOLD_TIMESTEPS; i++) {
+                separateGames[lane].step(commands[lane]);
+            }
+        }
+        return separateGames;
+    }
+}
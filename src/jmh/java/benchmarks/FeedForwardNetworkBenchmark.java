@@ -0,0 +1,73 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import tflowtools.FeedForwardNetwork;
+import tflowtools.TrainableNetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of the small test value network through the TensorFlow session versus the pure-Java
+ * {@link FeedForwardNetwork} snapshot of it. Run from the project root.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeedForwardNetworkBenchmark {
+
+    @Param({"1", "9", "64", "1000"})
+    public int batchSize;
+
+    private TrainableNetwork network;
+
+    private FeedForwardNetwork javaNetwork;
+
+    private float[][] inputs;
+
+    private float[] flatInputs;
+
+    private float[] flatOutputs;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        network = new TrainableNetwork(new File("src/test/resources/test_models/small_net.pb"), false);
+        network.loadCheckpoint("src/test/resources/test_models/good_save");
+        javaNetwork = FeedForwardNetwork.fromTrainableNetwork(network);
+
+        int inputSize = javaNetwork.getInputSize();
+        Random random = new Random(0);
+        inputs = new float[batchSize][inputSize];
+        flatInputs = new float[batchSize * inputSize];
+        for (int i = 0; i < batchSize; i++) {
+            for (int j = 0; j < inputSize; j++) {
+                inputs[i][j] = (float) random.nextGaussian();
+                flatInputs[i * inputSize + j] = inputs[i][j];
+            }
+        }
+        flatOutputs = new float[batchSize * javaNetwork.getOutputSize()];
+    }
+
+    @Benchmark
+    public float[][] tensorFlow() {
+        return network.evaluateInput(inputs);
+    }
+
+    @Benchmark
+    public float[] java() {
+        javaNetwork.evaluate(flatInputs, flatOutputs, batchSize);
+        return flatOutputs;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        network.close();
+    }
+}
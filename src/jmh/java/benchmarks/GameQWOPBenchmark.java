@@ -0,0 +1,107 @@
+package benchmarks;
+
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import game.qwop.StateQWOPView;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-game simulation costs: stepping the physics, getting the state out, setting it, and the full serialization
+ * round trip used by {@link game.IGameSerializable}.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameQWOPBenchmark {
+
+    /**
+     * Whether the game pairs body parts with the track directly instead of through the general broad-phase.
+     */
+    @Param({"false", "true"})
+    public boolean directGroundContacts;
+
+    private GameQWOP game;
+
+    /**
+     * A state partway through a run, for setState.
+     */
+    private StateQWOP midRunState;
+
+    /**
+     * The game partway through a run, for restoreSerializedState.
+     */
+    private byte[] midRunGame;
+
+    private final float[] stateArray = new float[StateQWOP.STATE_SIZE];
+
+    private final StateQWOPView view = new StateQWOPView();
+
+    private int stepCount;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        game = new GameQWOP(directGroundContacts);
+        for (int i = 0; i < 40; i++) {
+            stepAlternatingKeys();
+        }
+        midRunState = game.getCurrentState();
+        midRunGame = game.getSerializedState();
+    }
+
+    /**
+     * Alternate between holding WO and QP, which keeps the runner up for a while. Starts over when it falls anyway,
+     * so the occasional reset is included in the step cost.
+     */
+    private void stepAlternatingKeys() {
+        if (game.isFailed()) {
+            game.resetGame();
+        }
+        boolean firstHalf = stepCount++ % 40 < 20;
+        game.step(!firstHalf, firstHalf, firstHalf, !firstHalf);
+    }
+
+    @Benchmark
+    public GameQWOP step() {
+        stepAlternatingKeys();
+        return game;
+    }
+
+    @Benchmark
+    public StateQWOP getCurrentState() {
+        return game.getCurrentState();
+    }
+
+    @Benchmark
+    public float[] getCurrentStateIntoArray() {
+        game.getCurrentState(stateArray, 0);
+        return stateArray;
+    }
+
+    @Benchmark
+    public StateQWOPView captureView() {
+        return view.capture(game);
+    }
+
+    @Benchmark
+    public GameQWOP setState() {
+        game.setState(midRunState);
+        return game;
+    }
+
+    @Benchmark
+    public byte[] getSerializedState() {
+        return game.getSerializedState();
+    }
+
+    @Benchmark
+    public GameQWOP restoreSerializedState() {
+        return game.restoreSerializedState(midRunGame);
+    }
+}
@@ -0,0 +1,29 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler always attached, so allocation rate (gc.alloc.rate.norm, bytes per
+ * operation) is reported alongside throughput. Any normal JMH command line arguments can be given, e.g. a regex of
+ * which benchmarks to include, or -p treeDepth=4 to limit parameters.
+ *
+ * Usually run through Maven: mvn -P benchmark compile exec:exec -Dbenchmark.args="..."
+ *
+ * @author matt
+ */
+public class MAIN_Benchmark {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,129 @@
+package benchmarks;
+
+import game.action.Action;
+import game.action.ActionGenerator_FixedActions;
+import game.action.ActionList;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import tree.node.NodeGameExplorable;
+import tree.node.NodeGameExplorableBase;
+import tree.node.evaluator.EvaluationFunction_Constant;
+import tree.sampler.Sampler_DeadlockDelay;
+import tree.sampler.Sampler_UCB;
+import tree.sampler.rollout.RolloutPolicy_JustEvaluate;
+import value.updaters.ValueUpdater_Average;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of {@link Sampler_UCB} with the number of workers sharing one tree, with the usual subtree locking and with
+ * lock-free virtual loss. Each worker repeats what a TreeWorker does around the sampler (tree policy, add one node,
+ * rollout, release), but nodes are added without simulating the game. rolloutWork burns CPU in place of the
+ * simulation, so contention can be seen both at its worst and closer to a real search.
+ *
+ * Throughput is in completed iterations per second over all workers. Contention totals for each trial are printed
+ * after it finishes.
+ *
+ * @author matt
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParallelTreePolicyBenchmark {
+
+    private static final int ITERATIONS_PER_INVOCATION = 3200;
+
+    private static final int BRANCHING = 4;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int workers;
+
+    @Param({"false", "true"})
+    public boolean lockFree;
+
+    /**
+     * {@link Blackhole#consumeCPU(long)} tokens spent in each rollout.
+     */
+    @Param({"0", "20000"})
+    public long rolloutWork;
+
+    private ExecutorService executor;
+
+    private final List<Callable<Void>> workerTasks = new ArrayList<>();
+
+    private ActionList<CommandQWOP> actions;
+
+    private StateQWOP state;
+
+    private NodeGameExplorable<CommandQWOP, StateQWOP> root;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        actions = ActionList.getEmptyList();
+        for (int i = 0; i < BRANCHING; i++) {
+            actions.add(new Action<>(i + 1, i % 2 == 0 ? CommandQWOP.WO : CommandQWOP.QP));
+        }
+        state = GameQWOP.getInitialState();
+
+        Sampler_UCB<CommandQWOP, StateQWOP> sampler = new Sampler_UCB<>(new EvaluationFunction_Constant<>(0f),
+                new RolloutPolicy_JustEvaluate<>(new EvaluationFunction_Constant<>(1f)), new ValueUpdater_Average<>(),
+                5f, 0f, lockFree, 1f);
+
+        executor = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            Sampler_UCB<CommandQWOP, StateQWOP> workerSampler = sampler.getCopy();
+            int iterations = ITERATIONS_PER_INVOCATION / workers;
+            workerTasks.add(() -> {
+                for (int j = 0; j < iterations; j++) {
+                    NodeGameExplorableBase<?, CommandQWOP, StateQWOP> expansionNode = workerSampler.treePolicy(root);
+                    NodeGameExplorableBase<?, CommandQWOP, StateQWOP> newNode =
+                            expansionNode.addDoublyLinkedChild(workerSampler.expansionPolicy(expansionNode), state);
+                    Blackhole.consumeCPU(rolloutWork);
+                    workerSampler.rolloutPolicy(newNode, null);
+                    workerSampler.releaseExpansionRights(expansionNode);
+                }
+                return null;
+            });
+        }
+        sampler.close();
+        Sampler_UCB.resetContentionTotals();
+        Sampler_DeadlockDelay.resetDeadlockDelayTotals();
+    }
+
+    /**
+     * Each iteration grows a new tree, so later iterations are not slowed by an ever deeper one.
+     */
+    @Setup(Level.Iteration)
+    public void makeTree() {
+        root = new NodeGameExplorable<>(state, new ActionGenerator_FixedActions<>(actions));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS_PER_INVOCATION)
+    public void searchIterations() throws Exception {
+        for (Future<Void> future : executor.invokeAll(workerTasks)) {
+            future.get();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+        long calls = Sampler_UCB.getTotalTreePolicyCalls();
+        System.out.printf("%nTree policy calls: %d, collisions per call: %.3f, deadlock delays: %d, total delay: " +
+                        "%d ms%n", calls, Sampler_UCB.getTotalTreePolicyCollisions() / (double) Math.max(calls, 1),
+                Sampler_DeadlockDelay.getTotalDeadlockDelays(), Sampler_DeadlockDelay.getTotalDeadlockDelayMillis());
+    }
+}
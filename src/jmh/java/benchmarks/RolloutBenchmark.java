@@ -0,0 +1,76 @@
+package benchmarks;
+
+import controllers.Controller_Random;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.openjdk.jmh.annotations.*;
+import tree.node.NodeGameBase;
+import tree.node.NodeGameExplorable;
+import tree.node.evaluator.EvaluationFunction_Distance;
+import tree.node.evaluator.IEvaluationFunction;
+import tree.sampler.rollout.RolloutPolicyBase;
+import tree.sampler.rollout.RolloutPolicy_DecayingHorizon;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full {@link RolloutPolicy_DecayingHorizon} rollout from the initial state, which scores every simulated
+ * timestep. With stateViews, each timestep is scored from reused {@link game.qwop.StateQWOPView views}. Without, the
+ * same evaluation function is only reachable through nodes, so a state and node are made every timestep. Run with the
+ * GC profiler (see {@link MAIN_Benchmark}) to compare gc.alloc.rate.norm.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RolloutBenchmark {
+
+    @Param({"true", "false"})
+    public boolean stateViews;
+
+    private GameQWOP game;
+
+    private RolloutPolicy_DecayingHorizon<CommandQWOP, StateQWOP> rollout;
+
+    private NodeGameExplorable<CommandQWOP, StateQWOP> root;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        IEvaluationFunction<CommandQWOP, StateQWOP> distance = new EvaluationFunction_Distance<>();
+        IEvaluationFunction<CommandQWOP, StateQWOP> evaluationFunction = stateViews ? distance :
+                new IEvaluationFunction<CommandQWOP, StateQWOP>() {
+                    @Override
+                    public float getValue(NodeGameBase<?, CommandQWOP, StateQWOP> nodeToEvaluate) {
+                        return distance.getValue(nodeToEvaluate);
+                    }
+
+                    @Override
+                    public String getValueString(NodeGameBase<?, CommandQWOP, StateQWOP> nodeToEvaluate) {
+                        return distance.getValueString(nodeToEvaluate);
+                    }
+
+                    @Override
+                    public IEvaluationFunction<CommandQWOP, StateQWOP> getCopy() {
+                        return this;
+                    }
+
+                    @Override
+                    public void close() {}
+                };
+        rollout = new RolloutPolicy_DecayingHorizon<>(evaluationFunction,
+                RolloutPolicyBase.getQWOPRolloutActionGenerator(), new Controller_Random<>(), 200);
+        game = new GameQWOP();
+        root = new NodeGameExplorable<>(GameQWOP.getInitialState());
+    }
+
+    @Benchmark
+    public float rollout() {
+        game.resetGame();
+        return rollout.rollout(root, game);
+    }
+}
@@ -0,0 +1,97 @@
+package benchmarks;
+
+import game.action.Action;
+import game.action.ActionGenerator_FixedActions;
+import game.action.ActionList;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.openjdk.jmh.annotations.*;
+import tree.node.NodeGameExplorable;
+import tree.node.NodeGameExplorableBase;
+import tree.node.evaluator.EvaluationFunction_Constant;
+import tree.sampler.Sampler_UCB;
+import tree.sampler.rollout.RolloutPolicy_JustEvaluate;
+import value.updaters.ValueUpdater_Average;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link Sampler_UCB#treePolicy(NodeGameExplorableBase)} walking down synthetic trees. Every interior node is
+ * fully expanded with {@link #BRANCHING} children, and the leaves still have untried actions, so each call descends
+ * the whole depth. Depths 4, 5, and 6 give roughly 10^4, 10^5, and 10^6 nodes.
+ *
+ * No games are simulated. All nodes share one state.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SamplerUCBBenchmark {
+
+    private static final int BRANCHING = 10;
+
+    @Param({"4", "5", "6"})
+    public int treeDepth;
+
+    private NodeGameExplorable<CommandQWOP, StateQWOP> root;
+
+    private Sampler_UCB<CommandQWOP, StateQWOP> sampler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ActionList<CommandQWOP> actions = ActionList.getEmptyList();
+        for (int i = 0; i < BRANCHING; i++) {
+            actions.add(new Action<>(i + 1, i % 2 == 0 ? CommandQWOP.WO : CommandQWOP.QP));
+        }
+        ActionGenerator_FixedActions<CommandQWOP> actionGenerator = new ActionGenerator_FixedActions<>(actions);
+        StateQWOP state = GameQWOP.getInitialState();
+        root = new NodeGameExplorable<>(state, actionGenerator);
+
+        List<NodeGameExplorable<CommandQWOP, StateQWOP>> frontier = new ArrayList<>();
+        frontier.add(root);
+        for (int depth = 0; depth < treeDepth; depth++) {
+            List<NodeGameExplorable<CommandQWOP, StateQWOP>> nextFrontier = new ArrayList<>(frontier.size() * BRANCHING);
+            for (NodeGameExplorable<CommandQWOP, StateQWOP> node : frontier) {
+                for (Action<CommandQWOP> action : actions) {
+                    nextFrontier.add(node.addDoublyLinkedChild(action, state));
+                }
+            }
+            frontier = nextFrontier;
+        }
+
+        // Give every node some visits and a value, as if rollouts had been done from each leaf.
+        ValueUpdater_Average<CommandQWOP, StateQWOP> valueUpdater = new ValueUpdater_Average<>();
+        Random random = new Random(0);
+        for (NodeGameExplorable<CommandQWOP, StateQWOP> leaf : frontier) {
+            float value = random.nextFloat() * 100f;
+            leaf.recurseUpTreeInclusive(n -> n.updateValue(value, valueUpdater));
+        }
+
+        sampler = new Sampler_UCB<>(new EvaluationFunction_Constant<>(0f),
+                new RolloutPolicy_JustEvaluate<>(new EvaluationFunction_Constant<>(0f)), valueUpdater, 5f, 0f);
+    }
+
+    /**
+     * Includes releasing the expansion rights that the tree policy reserves on the returned leaf, so the next call
+     * sees the same tree.
+     */
+    @Benchmark
+    public NodeGameExplorableBase<?, CommandQWOP, StateQWOP> treePolicy() {
+        NodeGameExplorableBase<?, CommandQWOP, StateQWOP> expansionNode = sampler.treePolicy(root);
+        sampler.releaseExpansionRights(expansionNode);
+        return expansionNode;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sampler.close();
+    }
+}
@@ -0,0 +1,127 @@
+package benchmarks;
+
+import data.TFRecordDataParsers;
+import data.TFRecordWriter;
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.openjdk.jmh.annotations.*;
+import org.tensorflow.example.SequenceExample;
+import savers.DataSaver_DenseTFRecord;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TFRecord paths used for saving and loading dense run data. A file of real runs is made by
+ * {@link DataSaver_DenseTFRecord} during setup, and then the low-level record write, whole-file load, and state
+ * parsing are timed separately.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TFRecordBenchmark {
+
+    private static final int GAMES_PER_FILE = 10;
+
+    private File tempDirectory;
+
+    /**
+     * File with {@link #GAMES_PER_FILE} runs in it.
+     */
+    private File savedFile;
+
+    /**
+     * One serialized run, as written to file.
+     */
+    private byte[] serializedRun;
+
+    private SequenceExample loadedRun;
+
+    /**
+     * Target of the write benchmark. Rewound before every record so the file does not keep growing.
+     */
+    private FileOutputStream writeStream;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDirectory = Files.createTempDirectory("tfrecord_benchmark").toFile();
+
+        DataSaver_DenseTFRecord saver = new DataSaver_DenseTFRecord();
+        saver.setSavePath(tempDirectory.getPath());
+        saver.filenameOverride = "benchmark";
+        GameQWOP game = new GameQWOP();
+        for (int i = 0; i < GAMES_PER_FILE; i++) {
+            game.resetGame();
+            saver.reportGameInitialization(game.getCurrentState());
+            // Alternate held keys with some variation between runs, until falling or 1000 timesteps.
+            for (int ts = 0; ts < 1000 && !game.isFailed(); ts++) {
+                boolean firstHalf = ts % (30 + i) < 15;
+                Action<CommandQWOP> action = new Action<>(1, firstHalf ? CommandQWOP.WO : CommandQWOP.QP);
+                game.step(action.peek());
+                saver.reportTimestep(action, game);
+            }
+            saver.reportGameEnding(null);
+        }
+        saver.toFile();
+
+        File[] files = Objects.requireNonNull(tempDirectory.listFiles());
+        if (files.length != 1) {
+            throw new IllegalStateException("Expected exactly one TFRecord file in " + tempDirectory);
+        }
+        savedFile = files[0];
+        savedFile.deleteOnExit();
+
+        loadedRun = TFRecordDataParsers.loadSequencesFromTFRecord(savedFile).get(0);
+        serializedRun = loadedRun.toByteArray();
+
+        File writeFile = new File(tempDirectory, "write_target.TFRecord");
+        writeFile.deleteOnExit();
+        writeStream = new FileOutputStream(writeFile);
+    }
+
+    @Benchmark
+    public FileOutputStream writeRecord() throws IOException {
+        writeStream.getChannel().position(0);
+        TFRecordWriter.writeToStream(serializedRun, writeStream);
+        return writeStream;
+    }
+
+    @Benchmark
+    public List<SequenceExample> loadFile() throws IOException {
+        return TFRecordDataParsers.loadSequencesFromTFRecord(savedFile);
+    }
+
+    @Benchmark
+    public StateQWOP[] parseStates() {
+        return TFRecordDataParsers.getStatesFromLoadedSequence(loadedRun);
+    }
+
+    @Benchmark
+    public float[][] parseStateArrays() {
+        return TFRecordDataParsers.getStateArraysFromLoadedSequence(loadedRun);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writeStream.close();
+        File[] files = tempDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(tempDirectory.toPath());
+    }
+}
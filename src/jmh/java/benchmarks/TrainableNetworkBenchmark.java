@@ -0,0 +1,76 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import tflowtools.PreparedRunner;
+import tflowtools.TrainableNetwork;
+
+import java.io.FileNotFoundException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of evaluating a value-function-sized network through TensorFlow, for a single state and for batches, both
+ * from arrays and through a {@link PreparedRunner}. Like the TrainableNetwork unit tests, this needs python TensorFlow
+ * installed to build the graph.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainableNetworkBenchmark {
+
+    @Param({"1", "9", "64"})
+    public int batchSize;
+
+    private TrainableNetwork network;
+
+    private float[][] inputs;
+
+    private PreparedRunner preparedRunner;
+
+    @Setup(Level.Trial)
+    public void setup() throws FileNotFoundException {
+        List<Integer> layerSizes = new ArrayList<>();
+        layerSizes.add(72);
+        layerSizes.add(128);
+        layerSizes.add(64);
+        layerSizes.add(1);
+        network = TrainableNetwork.makeNewNetwork("benchmark_graph", layerSizes, false);
+        network.getGraphDefinitionFile().deleteOnExit();
+
+        Random random = new Random(0);
+        inputs = new float[batchSize][72];
+        for (float[] input : inputs) {
+            for (int i = 0; i < input.length; i++) {
+                input[i] = random.nextFloat();
+            }
+        }
+        preparedRunner = network.prepareRunner(batchSize);
+    }
+
+    @Benchmark
+    public float[][] evaluateInput() {
+        return network.evaluateInput(inputs);
+    }
+
+    @Benchmark
+    public FloatBuffer evaluatePrepared() {
+        FloatBuffer inputBuffer = preparedRunner.getInputBuffer();
+        for (float[] input : inputs) {
+            inputBuffer.put(input);
+        }
+        return preparedRunner.run(batchSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        network.close();
+    }
+}
@@ -0,0 +1,108 @@
+package benchmarks;
+
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.openjdk.jmh.annotations.*;
+import tree.node.NodeGame;
+import tree.node.TreeStore;
+import value.updaters.ValueUpdater_Average;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a large tree out of ordinary nodes versus in a {@link TreeStore}. Run with -prof gc to see the allocation
+ * difference. The retained heap per node is reported after each trial.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TreeStoreBenchmark {
+
+    private static final int NODES = 200000;
+
+    private static final int BRANCHING = 4;
+
+    private final List<Action<CommandQWOP>> actions = new ArrayList<>(BRANCHING);
+
+    private final StateQWOP[] states = new StateQWOP[NODES];
+
+    private final ValueUpdater_Average<CommandQWOP, StateQWOP> updater = new ValueUpdater_Average<>();
+
+    private long stateBytesPerNode;
+
+    /**
+     * Trees measured in {@link #tearDown()}. Kept in fields so they are still reachable when the heap is measured.
+     */
+    private NodeGame<CommandQWOP, StateQWOP> measuredRoot;
+    private TreeStore<CommandQWOP, StateQWOP> measuredStore;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (int i = 0; i < BRANCHING; i++) {
+            actions.add(new Action<>(i + 1, CommandQWOP.allCommands.get(i)));
+        }
+        // Every node gets a state of its own, as in a real search. They become garbage as soon as a store copies them.
+        StateQWOP initialState = GameQWOP.getInitialState();
+        long before = usedHeap();
+        for (int i = 0; i < NODES; i++) {
+            states[i] = initialState.xOffsetSubtract(i);
+        }
+        stateBytesPerNode = (usedHeap() - before) / NODES;
+    }
+
+    @Benchmark
+    public NodeGame<CommandQWOP, StateQWOP> objectTree() {
+        List<NodeGame<CommandQWOP, StateQWOP>> nodes = new ArrayList<>(NODES);
+        nodes.add(new NodeGame<>(states[0]));
+        for (int i = 1; i < NODES; i++) {
+            NodeGame<CommandQWOP, StateQWOP> node = nodes.get((i - 1) / BRANCHING)
+                    .addDoublyLinkedChild(actions.get((i - 1) % BRANCHING), states[i]);
+            node.updateValue(i, updater);
+            nodes.add(node);
+        }
+        return nodes.get(0);
+    }
+
+    @Benchmark
+    public TreeStore<CommandQWOP, StateQWOP> treeStore() {
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        store.addRoot(states[0]);
+        for (int i = 1; i < NODES; i++) {
+            int id = store.addChild((i - 1) / BRANCHING, actions.get((i - 1) % BRANCHING), states[i]);
+            store.addValueSample(id, i);
+        }
+        return store;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long before = usedHeap();
+        measuredRoot = objectTree();
+        long objectBytes = usedHeap() - before;
+        before = usedHeap();
+        measuredStore = treeStore();
+        long storeBytes = usedHeap() - before;
+        // Ordinary nodes also keep their states, which were made beforehand.
+        System.out.printf("%nRetained bytes per node. Ordinary nodes: %d, store: %d%n",
+                objectBytes / NODES + stateBytesPerNode, storeBytes / NODES);
+        measuredRoot = null;
+        measuredStore = null;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
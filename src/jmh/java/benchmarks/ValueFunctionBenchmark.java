@@ -0,0 +1,60 @@
+package benchmarks;
+
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.openjdk.jmh.annotations.*;
+import tree.node.NodeGame;
+import value.ValueFunction_TensorFlow_StateOnly;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a single control decision from {@link ValueFunction_TensorFlow_StateOnly}, with each predicted state
+ * evaluated individually or all of them in one batch. Uses the small test network, so run from the project root.
+ *
+ * @author matt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValueFunctionBenchmark {
+
+    @Param({"false", "true"})
+    public boolean batchEvaluation;
+
+    private ValueFunction_TensorFlow_StateOnly<StateQWOP> valueFunction;
+
+    private NodeGame<CommandQWOP, StateQWOP> node;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        GameQWOP game = new GameQWOP();
+        valueFunction = new ValueFunction_TensorFlow_StateOnly<>(
+                new File("src/test/resources/test_models/small_net.pb"), game,
+                new StateQWOP.Normalizer(StateQWOP.Normalizer.NormalizationMethod.STDEV),
+                "src/test/resources/test_models/good_save", 1f, false);
+        valueFunction.batchEvaluation = batchEvaluation;
+
+        for (int i = 0; i < 20; i++) {
+            game.step(false, true, true, false);
+        }
+        node = new NodeGame<>(game.getCurrentState());
+    }
+
+    @Benchmark
+    public Action<CommandQWOP> getMaximizingAction() {
+        return valueFunction.getMaximizingAction(node);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        valueFunction.close();
+    }
+}
@@ -0,0 +1,169 @@
+package data;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C (Castagnoli) checksums, as used by TFRecord files, computed directly on {@link ByteBuffer ByteBuffers} so
+ * memory-mapped and direct data never has to be copied into arrays first.
+ *
+ * On Java 9 and later, this uses java.util.zip.CRC32C, which the JVM speeds up with the processor's CRC instructions.
+ * On Java 8, it falls back to a table-based version which works on 8 bytes at a time.
+ *
+ * @author matt
+ */
+public final class Crc32C {
+
+    private static final int MASK_DELTA = 0xa282ead8;
+
+    /**
+     * Castagnoli polynomial, bit-reversed.
+     */
+    private static final int POLYNOMIAL = 0x82f63b78;
+
+    /**
+     * Lookup tables for the fallback version. Table k gives the effect of a byte followed by k more bytes.
+     */
+    private static final int[][] TABLES = new int[8][256];
+
+    /**
+     * Update method of the built-in checksum, or null if it is not available.
+     */
+    private static final MethodHandle BUILT_IN_UPDATE;
+
+    /**
+     * One built-in checksum per thread. Null if it is not available.
+     */
+    private static final ThreadLocal<Checksum> BUILT_IN;
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLES[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            for (int k = 1; k < 8; k++) {
+                int previous = TABLES[k - 1][n];
+                TABLES[k][n] = (previous >>> 8) ^ TABLES[0][previous & 0xff];
+            }
+        }
+
+        MethodHandle update = null;
+        ThreadLocal<Checksum> builtIn = null;
+        try {
+            Class<?> builtInClass = Class.forName("java.util.zip.CRC32C");
+            MethodHandle constructor = MethodHandles.publicLookup().findConstructor(builtInClass,
+                    MethodType.methodType(void.class));
+            update = MethodHandles.publicLookup()
+                    .findVirtual(builtInClass, "update", MethodType.methodType(void.class, ByteBuffer.class))
+                    .asType(MethodType.methodType(void.class, Checksum.class, ByteBuffer.class));
+            builtIn = ThreadLocal.withInitial(() -> {
+                try {
+                    return (Checksum) constructor.invoke();
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (ReflectiveOperationException e) {
+            // Java 8. Use the tables.
+        }
+        BUILT_IN_UPDATE = update;
+        BUILT_IN = builtIn;
+    }
+
+    private Crc32C() {}
+
+    /**
+     * Whether the JVM's own CRC32C is being used instead of the table-based fallback.
+     */
+    public static boolean isBuiltIn() {
+        return BUILT_IN != null;
+    }
+
+    /**
+     * CRC32C of the bytes between a buffer's position and limit. The buffer's position is not changed.
+     *
+     * @param buffer Bytes to check.
+     * @return Unmasked checksum.
+     */
+    public static int compute(ByteBuffer buffer) {
+        if (BUILT_IN != null) {
+            Checksum checksum = BUILT_IN.get();
+            checksum.reset();
+            int position = buffer.position();
+            try {
+                BUILT_IN_UPDATE.invokeExact(checksum, buffer);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            } finally {
+                buffer.position(position);
+            }
+            return (int) checksum.getValue();
+        }
+        return computeWithTables(buffer);
+    }
+
+    /**
+     * CRC32C of part of an array.
+     */
+    public static int compute(byte[] data, int offset, int length) {
+        return compute(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Masked CRC32C of the bytes between a buffer's position and limit, as stored in TFRecord files.
+     */
+    public static int maskedCrc32c(ByteBuffer buffer) {
+        return mask(compute(buffer));
+    }
+
+    public static int maskedCrc32c(byte[] data) {
+        return mask(compute(data, 0, data.length));
+    }
+
+    /**
+     * Return a masked representation of crc.
+     *
+     * Motivation: it is problematic to compute the CRC of a string that contains embedded CRCs. Therefore we
+     * recommend that CRCs stored somewhere (e.g., in files) should be masked before being stored.
+     */
+    public static int mask(int crc) {
+        // Rotate right by 15 bits and add a constant.
+        return ((crc >>> 15) | (crc << 17)) + MASK_DELTA;
+    }
+
+    /**
+     * Return the crc whose masked representation is masked_crc.
+     */
+    public static int unmask(int maskedCrc) {
+        int rot = maskedCrc - MASK_DELTA;
+        return ((rot >>> 17) | (rot << 15));
+    }
+
+    static int computeWithTables(ByteBuffer buffer) {
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3], t4 = TABLES[4], t5 = TABLES[5],
+                t6 = TABLES[6], t7 = TABLES[7];
+        ByteBuffer littleEndian = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int crc = ~0;
+        int i = littleEndian.position();
+        int limit = littleEndian.limit();
+        for (; i + 8 <= limit; i += 8) {
+            long word = littleEndian.getLong(i);
+            int low = (int) word ^ crc;
+            int high = (int) (word >>> 32);
+            crc = t7[low & 0xff] ^ t6[(low >>> 8) & 0xff] ^ t5[(low >>> 16) & 0xff] ^ t4[low >>> 24]
+                    ^ t3[high & 0xff] ^ t2[(high >>> 8) & 0xff] ^ t1[(high >>> 16) & 0xff] ^ t0[high >>> 24];
+        }
+        for (; i < limit; i++) {
+            crc = (crc >>> 8) ^ t0[(crc ^ littleEndian.get(i)) & 0xff];
+        }
+        return ~crc;
+    }
+}
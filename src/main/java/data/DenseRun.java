@@ -0,0 +1,206 @@
+package data;
+
+import com.google.common.base.Preconditions;
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.StateQWOP;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * States and commands at every timestep of one QWOP run, held in primitive arrays in the same columnar layout that
+ * {@link DenseRunWriter} saves and {@link DenseRunReader} loads. Replaces {@link SavableDenseData} for dense run data,
+ * which holds object graphs of states and actions instead.
+ * <p>
+ * States are stored column by column: all the timesteps of the first state value, then all the timesteps of the next,
+ * in {@link StateQWOP#flattenState(float)} order with no x offset. As in {@link SavableDenseData}, the command at a
+ * timestep is the one held during that state, and there is usually one more state than command. Commands are also
+ * kept as the sequence of actions they came from.
+ *
+ * @author matt
+ */
+public class DenseRun {
+
+    /**
+     * Bits of each key in a key mask.
+     */
+    static final int Q_BIT = 1, W_BIT = 2, O_BIT = 4, P_BIT = 8;
+
+    /**
+     * Number of states in the run.
+     */
+    public final int stateCount;
+
+    /**
+     * State values, one column of {@link #stateCount} values for each of the {@link StateQWOP#STATE_SIZE} values.
+     */
+    final float[] stateColumns;
+
+    /**
+     * Whether the last state is a fallen runner.
+     */
+    public final boolean failed;
+
+    /**
+     * Key mask of the command held at each timestep.
+     */
+    final byte[] commandKeys;
+
+    /**
+     * Duration and key mask of each action, in order.
+     */
+    final int[] actionDurations;
+    final byte[] actionKeys;
+
+    DenseRun(int stateCount, float[] stateColumns, boolean failed, byte[] commandKeys, int[] actionDurations,
+             byte[] actionKeys) {
+        Preconditions.checkArgument(stateColumns.length == stateCount * StateQWOP.STATE_SIZE, "State columns do not " +
+                "match the number of states.", stateCount, stateColumns.length);
+        Preconditions.checkArgument(actionDurations.length == actionKeys.length, "Each action needs a duration and " +
+                "keys.");
+        this.stateCount = stateCount;
+        this.stateColumns = stateColumns;
+        this.failed = failed;
+        this.commandKeys = commandKeys;
+        this.actionDurations = actionDurations;
+        this.actionKeys = actionKeys;
+    }
+
+    /**
+     * Pack up the states and commands of a run, as collected by a dense saver.
+     *
+     * @param states State at every timestep, from the initial state to the end.
+     * @param timestepActions Action being held at every timestep, as reported by
+     *                        {@link savers.IDataSaver#reportTimestep(Action, game.IGameInternal)}. An action repeats
+     *                        for each timestep it is held.
+     * @return The run in primitive form.
+     */
+    public static DenseRun fromTimesteps(@NotNull List<StateQWOP> states,
+                                         @NotNull List<Action<CommandQWOP>> timestepActions) {
+        int stateCount = states.size();
+        float[] stateColumns = new float[stateCount * StateQWOP.STATE_SIZE];
+        for (int i = 0; i < stateCount; i++) {
+            float[] flat = states.get(i).flattenState(0f);
+            for (int j = 0; j < StateQWOP.STATE_SIZE; j++) {
+                stateColumns[j * stateCount + i] = flat[j];
+            }
+        }
+        boolean failed = stateCount > 0 && states.get(stateCount - 1).isFailed();
+
+        byte[] commandKeys = new byte[timestepActions.size()];
+        List<Action<CommandQWOP>> actions = new ArrayList<>();
+        int heldFor = 0;
+        for (int i = 0; i < timestepActions.size(); i++) {
+            Action<CommandQWOP> action = timestepActions.get(i);
+            commandKeys[i] = toKeyMask(action.peek());
+            // A new action starts when a different one is reported, or the same one has already been held for its
+            // whole duration.
+            if (actions.isEmpty() || actions.get(actions.size() - 1) != action
+                    || heldFor >= action.getTimestepsTotal()) {
+                actions.add(action);
+                heldFor = 0;
+            }
+            heldFor++;
+        }
+        int[] actionDurations = new int[actions.size()];
+        byte[] actionKeys = new byte[actions.size()];
+        for (int i = 0; i < actions.size(); i++) {
+            actionDurations[i] = actions.get(i).getTimestepsTotal();
+            actionKeys[i] = toKeyMask(actions.get(i).peek());
+        }
+        return new DenseRun(stateCount, stateColumns, failed, commandKeys, actionDurations, actionKeys);
+    }
+
+    /**
+     * Get the number of timesteps with a command. Usually one fewer than the number of states.
+     */
+    public int getCommandCount() {
+        return commandKeys.length;
+    }
+
+    public int getActionCount() {
+        return actionDurations.length;
+    }
+
+    /**
+     * Get one state value over the whole run.
+     *
+     * @param stateIndex Which of the {@link StateQWOP#STATE_SIZE} state values to get.
+     * @return A new array with the value at every timestep.
+     */
+    public float[] getStateColumn(int stateIndex) {
+        Preconditions.checkElementIndex(stateIndex, StateQWOP.STATE_SIZE);
+        float[] column = new float[stateCount];
+        System.arraycopy(stateColumns, stateIndex * stateCount, column, 0, stateCount);
+        return column;
+    }
+
+    /**
+     * Copy all the state values at one timestep into an array, without making a {@link StateQWOP}.
+     *
+     * @param timestep Timestep of the state.
+     * @param row Array of at least {@link StateQWOP#STATE_SIZE} to put the values in.
+     */
+    public void getStateRow(int timestep, @NotNull float[] row) {
+        Preconditions.checkElementIndex(timestep, stateCount);
+        for (int j = 0; j < StateQWOP.STATE_SIZE; j++) {
+            row[j] = stateColumns[j * stateCount + timestep];
+        }
+    }
+
+    /**
+     * Get the state at one timestep.
+     *
+     * @param timestep Timestep of the state.
+     * @return A new state. Only the last one in a failed run is marked failed.
+     */
+    public StateQWOP getState(int timestep) {
+        float[] row = new float[StateQWOP.STATE_SIZE];
+        getStateRow(timestep, row);
+        return new StateQWOP(row, failed && timestep == stateCount - 1);
+    }
+
+    public StateQWOP[] getStates() {
+        StateQWOP[] states = new StateQWOP[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            states[i] = getState(i);
+        }
+        return states;
+    }
+
+    /**
+     * Get the command held during one timestep.
+     *
+     * @param timestep Timestep of the command.
+     * @return The command being held.
+     */
+    public CommandQWOP getCommand(int timestep) {
+        Preconditions.checkElementIndex(timestep, commandKeys.length);
+        return fromKeyMask(commandKeys[timestep]);
+    }
+
+    /**
+     * Get the actions of the run, in order.
+     *
+     * @return New actions, one for each in the original run.
+     */
+    public List<Action<CommandQWOP>> getActions() {
+        List<Action<CommandQWOP>> actions = new ArrayList<>(actionDurations.length);
+        for (int i = 0; i < actionDurations.length; i++) {
+            actions.add(new Action<>(actionDurations[i], fromKeyMask(actionKeys[i])));
+        }
+        return actions;
+    }
+
+    static byte toKeyMask(CommandQWOP command) {
+        boolean[] keys = command.get();
+        return (byte) ((keys[0] ? Q_BIT : 0) | (keys[1] ? W_BIT : 0) | (keys[2] ? O_BIT : 0) | (keys[3] ? P_BIT : 0));
+    }
+
+    static CommandQWOP fromKeyMask(int keyMask) {
+        return CommandQWOP.booleansToCommand((keyMask & Q_BIT) != 0, (keyMask & W_BIT) != 0, (keyMask & O_BIT) != 0,
+                (keyMask & P_BIT) != 0);
+    }
+}
@@ -0,0 +1,307 @@
+package data;
+
+import com.google.common.base.Preconditions;
+import game.qwop.StateQWOP;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads files of {@link DenseRun runs} written by {@link DenseRunWriter}. The file is memory-mapped, and the index at
+ * its end is read when opened, so any run can be loaded without going through the ones before it. If an append did
+ * not finish, the file ends in partly written runs, and the last complete index before them is used instead. Uncompressed state
+ * columns are copied straight from the mapping into the run's float array. Files larger than 1GB are mapped a window
+ * at a time.
+ * <p>
+ * Not thread-safe. Use one reader per thread.
+ *
+ * @author matt
+ */
+public class DenseRunReader implements AutoCloseable {
+
+    /**
+     * Largest amount of the file mapped at once.
+     */
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    /**
+     * How much of the file is read at once when looking back for an index.
+     */
+    private static final int SCAN_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+
+    private final long fileSize;
+
+    /**
+     * File position of each run, from the index.
+     */
+    private final long[] runPositions;
+
+    /**
+     * End of the trailer after the index. Anything after it is left from an append which did not finish.
+     */
+    private final long end;
+
+    /**
+     * Currently mapped part of the file, and where in the file it starts.
+     */
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private final Inflater inflater = new Inflater();
+
+    private byte[] compressed = new byte[0];
+    private byte[] inflated = new byte[0];
+
+    /**
+     * Open a file of runs.
+     *
+     * @param file File written by a {@link DenseRunWriter}.
+     * @throws IOException If the file could not be opened, is not a dense run file, or is missing its index.
+     */
+    public DenseRunReader(@NotNull File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            fileSize = channel.size();
+            if (fileSize < DenseRunWriter.FILE_HEADER_BYTES + DenseRunWriter.TRAILER_BYTES) {
+                throw new IOException("File is too small to be a dense run file: " + file);
+            }
+            mapFrom(0);
+            if (window.getInt(0) != DenseRunWriter.FILE_MAGIC) {
+                throw new IOException("File is not a dense run file: " + file);
+            }
+            if (window.getInt(4) != DenseRunWriter.VERSION) {
+                throw new IOException("Unsupported dense run file version: " + window.getInt(4));
+            }
+
+            long trailer = findTrailer();
+            if (trailer < 0) {
+                throw new IOException("Dense run file has no index. It may not have been closed: " + file);
+            }
+            end = trailer + DenseRunWriter.TRAILER_BYTES;
+            ensureMapped(trailer, DenseRunWriter.TRAILER_BYTES);
+            int offset = (int) (trailer - windowStart);
+            long indexPosition = window.getLong(offset);
+            int runCount = window.getInt(offset + 8);
+
+            runPositions = new long[runCount];
+            ensureMapped(indexPosition, (long) runCount * Long.BYTES);
+            offset = (int) (indexPosition - windowStart);
+            for (int i = 0; i < runCount; i++) {
+                runPositions[i] = window.getLong(offset + i * Long.BYTES);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getRunCount() {
+        return runPositions.length;
+    }
+
+    /**
+     * Load one run.
+     *
+     * @param runIndex Index of the run, in the order they were written.
+     * @return The run's states and commands in primitive arrays.
+     * @throws IOException If the run could not be read or decompressed.
+     */
+    public DenseRun getRun(int runIndex) throws IOException {
+        Preconditions.checkElementIndex(runIndex, runPositions.length, "Run index");
+        long start = runPositions[runIndex];
+        ensureMapped(start, DenseRunWriter.RUN_HEADER_BYTES);
+        int offset = (int) (start - windowStart);
+        int stateCount = window.getInt(offset);
+        int commandCount = window.getInt(offset + 4);
+        int actionCount = window.getInt(offset + 8);
+        int flags = window.getInt(offset + 12);
+        int stateDataBytes = window.getInt(offset + 16);
+        if (stateCount < 0 || commandCount < 0 || actionCount < 0 || stateDataBytes < 0) {
+            throw new IOException("Corrupted header for run " + runIndex + ".");
+        }
+
+        long runBytes = DenseRunWriter.RUN_HEADER_BYTES + (long) stateDataBytes
+                + DenseRunWriter.packedKeyBytes(commandCount) + (long) actionCount * (Integer.BYTES + 1);
+        ensureMapped(start, runBytes);
+        ByteBuffer run = window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        run.position((int) (start - windowStart) + DenseRunWriter.RUN_HEADER_BYTES);
+
+        float[] stateColumns = new float[stateCount * StateQWOP.STATE_SIZE];
+        ByteBuffer stateData = run.slice().order(ByteOrder.LITTLE_ENDIAN);
+        stateData.limit(stateDataBytes);
+        if ((flags & DenseRunWriter.FLAG_COMPRESSED) != 0) {
+            inflateStates(stateData, stateCount, stateColumns, runIndex);
+        } else {
+            if (stateDataBytes != stateColumns.length * Float.BYTES) {
+                throw new IOException("State data of run " + runIndex + " is the wrong size.");
+            }
+            stateData.asFloatBuffer().get(stateColumns);
+        }
+        run.position(run.position() + stateDataBytes);
+
+        byte[] commandKeys = new byte[commandCount];
+        for (int i = 0; i < commandCount; i++) {
+            commandKeys[i] = (byte) ((run.get(run.position() + i / 2) >> (4 * (i % 2))) & 0xF);
+        }
+        run.position(run.position() + DenseRunWriter.packedKeyBytes(commandCount));
+
+        int[] actionDurations = new int[actionCount];
+        run.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(actionDurations);
+        run.position(run.position() + actionCount * Integer.BYTES);
+        byte[] actionKeys = new byte[actionCount];
+        run.get(actionKeys);
+
+        return new DenseRun(stateCount, stateColumns, (flags & DenseRunWriter.FLAG_FAILED) != 0, commandKeys,
+                actionDurations, actionKeys);
+    }
+
+    /**
+     * Load every run in the file, in order.
+     *
+     * @return All the runs.
+     * @throws IOException If any run could not be read.
+     */
+    public List<DenseRun> getAllRuns() throws IOException {
+        List<DenseRun> runs = new ArrayList<>(runPositions.length);
+        for (int i = 0; i < runPositions.length; i++) {
+            runs.add(getRun(i));
+        }
+        return runs;
+    }
+
+    /**
+     * Get the file position of a run. Used when appending.
+     */
+    long getRunPosition(int runIndex) {
+        return runPositions[runIndex];
+    }
+
+    /**
+     * Get the file position just after the index's trailer. Appended runs go here.
+     */
+    long getEnd() {
+        return end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        inflater.end();
+        channel.close();
+    }
+
+    /**
+     * Inflate delta-encoded state columns, put the byte planes back together, and undo the deltas.
+     */
+    private void inflateStates(ByteBuffer stateData, int stateCount, float[] stateColumns, int runIndex)
+            throws IOException {
+        int compressedLength = stateData.remaining();
+        if (compressed.length < compressedLength) {
+            compressed = new byte[compressedLength];
+        }
+        stateData.get(compressed, 0, compressedLength);
+
+        int rawLength = stateColumns.length * Integer.BYTES;
+        if (inflated.length < rawLength) {
+            inflated = new byte[rawLength];
+        }
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            int inflatedLength = 0;
+            while (inflatedLength < rawLength && !inflater.finished()) {
+                int count = inflater.inflate(inflated, inflatedLength, rawLength - inflatedLength);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflatedLength += count;
+            }
+            if (inflatedLength != rawLength) {
+                throw new IOException("State data of run " + runIndex + " is the wrong size.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("State data of run " + runIndex + " could not be decompressed.", e);
+        }
+
+        int valueCount = stateColumns.length;
+        for (int column = 0; column < StateQWOP.STATE_SIZE; column++) {
+            int bits = 0;
+            for (int i = column * stateCount; i < (column + 1) * stateCount; i++) {
+                int delta = 0;
+                for (int b = 0; b < Integer.BYTES; b++) {
+                    delta |= (inflated[b * valueCount + i] & 0xFF) << (8 * b);
+                }
+                bits += delta;
+                stateColumns[i] = Float.intBitsToFloat(bits);
+            }
+        }
+    }
+
+    /**
+     * Find the last complete index trailer. Normally it ends the file. After an append which did not finish, it is
+     * the one from before that append, somewhere behind the partly written runs, so look back through the file for
+     * the last place where a trailer matches the index before it.
+     *
+     * @return File position of the trailer, or -1 if there is no complete index.
+     */
+    private long findTrailer() throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        long last = fileSize - DenseRunWriter.TRAILER_BYTES; // Latest a trailer could start.
+        while (last >= DenseRunWriter.FILE_HEADER_BYTES) {
+            long chunkStart = Math.max(DenseRunWriter.FILE_HEADER_BYTES,
+                    last + DenseRunWriter.TRAILER_BYTES - SCAN_BYTES);
+            chunk.clear();
+            chunk.limit((int) (last + DenseRunWriter.TRAILER_BYTES - chunkStart));
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, chunkStart + chunk.position()) < 0) {
+                    throw new IOException("File ended while looking for the index.");
+                }
+            }
+            for (long trailer = last; trailer >= chunkStart; trailer--) {
+                int offset = (int) (trailer - chunkStart);
+                long indexPosition = chunk.getLong(offset);
+                int runCount = chunk.getInt(offset + 8);
+                if (chunk.getInt(offset + 12) == DenseRunWriter.FOOTER_MAGIC && runCount >= 0
+                        && indexPosition >= DenseRunWriter.FILE_HEADER_BYTES
+                        && indexPosition + (long) runCount * Long.BYTES == trailer) {
+                    return trailer;
+                }
+            }
+            last = chunkStart - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Make sure the given bytes of the file are in the mapped window, moving the window if not.
+     */
+    private void ensureMapped(long start, long length) throws IOException {
+        if (start < 0 || start + length > fileSize) {
+            throw new IOException("Tried to read past the end of the file at byte " + start + ".");
+        }
+        if (length > WINDOW_BYTES) {
+            throw new IOException("Section of " + length + " bytes is too large to map.");
+        }
+        if (start < windowStart || start + length > windowStart + window.capacity()) {
+            mapFrom(start);
+        }
+    }
+
+    private void mapFrom(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, fileSize - start));
+        window.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,267 @@
+package data;
+
+import game.qwop.StateQWOP;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes {@link DenseRun runs} to a compact, columnar binary file, which {@link DenseRunReader} can memory-map and
+ * load straight into primitive arrays. Replaces saving {@link SavableDenseData} through Java serialization.
+ * <p>
+ * Everything is little-endian. The file starts with {@link #FILE_MAGIC} and {@link #VERSION}. Each run is then:
+ * <ul>
+ *     <li>A header of ints: number of states, number of commands, number of actions, flags, and the number of bytes
+ *     of state data.</li>
+ *     <li>State data: float32 columns, one per state value, each with a value for every state. If compressed, each
+ *     column's float bits are stored as differences from the previous timestep's, split into four planes of the
+ *     lowest bytes of every difference up to the highest, and the whole block is deflated. Neighbouring timesteps
+ *     are close together, so the differences are mostly small numbers, and their upper byte planes deflate well.
+ *     The lowest bits of simulated values are close to random, so expect about a quarter off, not more.</li>
+ *     <li>Commands: a 4-bit Q, W, O, P key mask for each timestep, two to a byte, first in the low bits.</li>
+ *     <li>Actions: an int duration for each action, then a byte key mask for each.</li>
+ * </ul>
+ * After the last run comes an index of the file position of every run, so runs can be read in any order. The file
+ * ends with the position of the index, the number of runs, and {@link #FOOTER_MAGIC}.
+ * <p>
+ * Appending to an existing file picks up its index and writes new runs after its end, leaving the old index in place.
+ * The new index goes after the new runs when the writer is closed. Until then, the old index is still the last
+ * complete one in the file, and {@link DenseRunReader} falls back to it, so an append which never finishes loses only
+ * its own runs. Each append leaves the old index behind, eight bytes per run. A new file which was never closed has
+ * no index and cannot be read or appended to.
+ *
+ * @author matt
+ */
+public class DenseRunWriter implements AutoCloseable {
+
+    static final int FILE_MAGIC = 0x444e5251; // "QRND"
+    static final int FOOTER_MAGIC = 0x58444e49; // "INDX"
+    static final int VERSION = 1;
+
+    static final int FILE_HEADER_BYTES = 8;
+    static final int RUN_HEADER_BYTES = 20;
+    static final int TRAILER_BYTES = 16;
+
+    /**
+     * Run flags.
+     */
+    static final int FLAG_FAILED = 1, FLAG_COMPRESSED = 2;
+
+    private final FileChannel channel;
+
+    /**
+     * Whether to delta-encode and deflate state data.
+     */
+    private final boolean compress;
+
+    /**
+     * File position of each run written so far, including ones already in an appended file.
+     */
+    private final List<Long> runPositions = new ArrayList<>();
+
+    /**
+     * Where the next run goes.
+     */
+    private long position;
+
+    private final ByteBuffer header = ByteBuffer.allocate(RUN_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Reusable state and compression buffers, grown as needed.
+     */
+    private ByteBuffer stateBytes = ByteBuffer.allocate(0);
+    private byte[] compressed = new byte[0];
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+    private DenseRunWriter(FileChannel channel, boolean compress) {
+        this.channel = channel;
+        this.compress = compress;
+    }
+
+    /**
+     * Open a file to write runs to.
+     *
+     * @param file File to write to. Parent directories are made if needed.
+     * @param append Whether to add to the runs already in the file. A new file is made if it does not exist.
+     * @param compress Whether to delta-encode and deflate the states. Roughly a quarter smaller, but slower to
+     *                 write and load.
+     * @return A writer which must be closed for the file to be readable.
+     * @throws IOException If the file could not be opened, or is not a complete dense run file when appending.
+     */
+    public static DenseRunWriter open(@NotNull File file, boolean append, boolean compress) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not make directory: " + parent);
+        }
+        boolean appending = append && file.isFile() && file.length() > 0;
+        FileChannel channel = appending
+                ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        DenseRunWriter writer = new DenseRunWriter(channel, compress);
+        try {
+            if (appending) {
+                long end;
+                try (DenseRunReader reader = new DenseRunReader(file)) {
+                    for (int i = 0; i < reader.getRunCount(); i++) {
+                        writer.runPositions.add(reader.getRunPosition(i));
+                    }
+                    end = reader.getEnd();
+                }
+                channel.truncate(end); // Drop anything left by an append which did not finish.
+                writer.position = end;
+            } else {
+                ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                fileHeader.putInt(FILE_MAGIC).putInt(VERSION).flip();
+                writer.writeFully(fileHeader);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return writer;
+    }
+
+    /**
+     * Write one run.
+     *
+     * @param run Run to add after those already written.
+     * @throws IOException If writing fails.
+     */
+    public void write(@NotNull DenseRun run) throws IOException {
+        runPositions.add(position);
+
+        int rawStateBytes = run.stateColumns.length * Float.BYTES;
+        if (stateBytes.capacity() < rawStateBytes) {
+            stateBytes = ByteBuffer.allocate(rawStateBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        stateBytes.clear();
+        if (compress) {
+            byte[] planes = stateBytes.array();
+            int valueCount = run.stateColumns.length;
+            for (int column = 0; column < StateQWOP.STATE_SIZE; column++) {
+                int previous = 0;
+                for (int i = column * run.stateCount; i < (column + 1) * run.stateCount; i++) {
+                    int bits = Float.floatToRawIntBits(run.stateColumns[i]);
+                    int delta = bits - previous;
+                    previous = bits;
+                    for (int b = 0; b < Integer.BYTES; b++) {
+                        planes[b * valueCount + i] = (byte) (delta >>> (8 * b));
+                    }
+                }
+            }
+            stateBytes.position(rawStateBytes);
+        } else {
+            stateBytes.asFloatBuffer().put(run.stateColumns);
+            stateBytes.position(rawStateBytes);
+        }
+        stateBytes.flip();
+
+        ByteBuffer stateData = stateBytes;
+        if (compress) {
+            if (compressed.length < rawStateBytes + 64) {
+                compressed = new byte[rawStateBytes + 64 + rawStateBytes / 100];
+            }
+            deflater.reset();
+            deflater.setInput(stateBytes.array(), 0, rawStateBytes);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    byte[] larger = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, larger, 0, compressedLength);
+                    compressed = larger;
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            stateData = ByteBuffer.wrap(compressed, 0, compressedLength);
+        }
+
+        header.clear();
+        header.putInt(run.stateCount)
+                .putInt(run.getCommandCount())
+                .putInt(run.getActionCount())
+                .putInt((run.failed ? FLAG_FAILED : 0) | (compress ? FLAG_COMPRESSED : 0))
+                .putInt(stateData.remaining())
+                .flip();
+
+        ByteBuffer commands = ByteBuffer.allocate(packedKeyBytes(run.getCommandCount()));
+        for (int i = 0; i < run.commandKeys.length; i++) {
+            int packed = commands.get(i / 2) | (run.commandKeys[i] << (4 * (i % 2)));
+            commands.put(i / 2, (byte) packed);
+        }
+
+        ByteBuffer actions = ByteBuffer.allocate(run.getActionCount() * (Integer.BYTES + 1))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        actions.asIntBuffer().put(run.actionDurations);
+        actions.position(run.getActionCount() * Integer.BYTES);
+        actions.put(run.actionKeys).flip();
+
+        writeFully(header, stateData, commands, actions);
+    }
+
+    /**
+     * Write each run in order.
+     *
+     * @param runs Runs to add after those already written.
+     * @throws IOException If writing fails.
+     */
+    public void writeAll(@NotNull Iterable<DenseRun> runs) throws IOException {
+        for (DenseRun run : runs) {
+            write(run);
+        }
+    }
+
+    /**
+     * Get the number of runs in the file, including any it already had when appending.
+     */
+    public int getRunCount() {
+        return runPositions.size();
+    }
+
+    /**
+     * Write the index and close the file. The runs are forced to disk first, so the new index never points at runs
+     * which are not there.
+     *
+     * @throws IOException If writing the index fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.force(false);
+            long indexPosition = position;
+            ByteBuffer index = ByteBuffer.allocate(runPositions.size() * Long.BYTES + TRAILER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (long runPosition : runPositions) {
+                index.putLong(runPosition);
+            }
+            index.putLong(indexPosition).putInt(runPositions.size()).putInt(FOOTER_MAGIC).flip();
+            writeFully(index);
+            channel.force(false);
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    static int packedKeyBytes(int commandCount) {
+        return (commandCount + 1) / 2;
+    }
+
+    private void writeFully(ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+}
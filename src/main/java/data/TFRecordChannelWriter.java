@@ -0,0 +1,168 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes TFRecord files through a channel. The length header and checksum around each record go in direct buffers
+ * which are reused from record to record, and each record goes out in a single gathering write along with them, so
+ * the record bytes are never copied.
+ *
+ * TFRecord format:
+ * uint64 length
+ * uint32 masked_crc32_of_length
+ * byte   data[length]
+ * uint32 masked_crc32_of_data
+ *
+ * Like {@link TFRecordWriter}, this only handles the framing. Records must already be serialized, e.g.
+ * ex.build().toByteArray().
+ *
+ * @author matt
+ */
+public class TFRecordChannelWriter implements AutoCloseable {
+
+    public static final int HEADER_BYTES = 12;
+    public static final int FOOTER_BYTES = 4;
+
+    private final GatheringByteChannel channel;
+
+    /**
+     * Headers and footers for a batch of records, back to back. Grows to fit the largest batch.
+     */
+    private ByteBuffer framing;
+
+    /**
+     * Reused array of buffers for gathering writes.
+     */
+    private ByteBuffer[] gather = new ByteBuffer[3];
+
+    /**
+     * Total bytes written, including framing.
+     */
+    private long bytesWritten;
+
+    /**
+     * Write to a channel, e.g. from {@link java.io.FileOutputStream#getChannel()}.
+     *
+     * @param channel Channel to write to. Closed when this writer is.
+     */
+    public TFRecordChannelWriter(GatheringByteChannel channel) {
+        this.channel = channel;
+        framing = ByteBuffer.allocateDirect(HEADER_BYTES + FOOTER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Open a file to write records to.
+     *
+     * @param file File to write.
+     * @param append If true, add on to the end of an existing file. Otherwise the file is replaced.
+     * @return A new writer.
+     * @throws IOException If the file could not be opened.
+     */
+    public static TFRecordChannelWriter open(File file, boolean append) throws IOException {
+        FileChannel fileChannel = append ?
+                FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND) :
+                FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+        return new TFRecordChannelWriter(fileChannel);
+    }
+
+    /**
+     * Write a single record.
+     *
+     * @param record Serialized record.
+     * @throws IOException If writing to the channel fails.
+     */
+    public void write(byte[] record) throws IOException {
+        write(ByteBuffer.wrap(record));
+    }
+
+    /**
+     * Write a single record, made of the bytes between the buffer's position and limit. The buffer's position is
+     * moved to its limit.
+     *
+     * @param record Serialized record.
+     * @throws IOException If writing to the channel fails.
+     */
+    public void write(ByteBuffer record) throws IOException {
+        ensureGatherCapacity(1);
+        gather[1] = record;
+        frame(record, 0);
+        writeGathered(3);
+    }
+
+    /**
+     * Write several records with as few system calls as possible.
+     *
+     * @param records Serialized records, in order.
+     * @throws IOException If writing to the channel fails.
+     */
+    public void writeAll(List<byte[]> records) throws IOException {
+        ensureGatherCapacity(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            ByteBuffer record = ByteBuffer.wrap(records.get(i));
+            gather[3 * i + 1] = record;
+            frame(record, i);
+        }
+        writeGathered(3 * records.size());
+    }
+
+    /**
+     * Total number of bytes written so far, including the length headers and checksums.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Fill in the header and footer of the index-th record in the batch.
+     */
+    private void frame(ByteBuffer record, int index) {
+        int start = index * (HEADER_BYTES + FOOTER_BYTES);
+        framing.clear();
+        framing.putLong(start, record.remaining());
+        framing.position(start).limit(start + 8);
+        int lengthCrc = Crc32C.maskedCrc32c(framing);
+        framing.clear();
+        framing.putInt(start + 8, lengthCrc);
+        framing.putInt(start + HEADER_BYTES, Crc32C.maskedCrc32c(record));
+
+        framing.position(start).limit(start + HEADER_BYTES);
+        gather[3 * index] = framing.slice();
+        framing.clear();
+        framing.position(start + HEADER_BYTES).limit(start + HEADER_BYTES + FOOTER_BYTES);
+        gather[3 * index + 2] = framing.slice();
+        framing.clear();
+    }
+
+    private void ensureGatherCapacity(int recordCount) {
+        if (gather.length < 3 * recordCount) {
+            gather = new ByteBuffer[3 * recordCount];
+            framing = ByteBuffer.allocateDirect(recordCount * (HEADER_BYTES + FOOTER_BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private void writeGathered(int bufferCount) throws IOException {
+        int offset = 0;
+        while (offset < bufferCount) {
+            bytesWritten += channel.write(gather, offset, bufferCount - offset);
+            while (offset < bufferCount && !gather[offset].hasRemaining()) {
+                gather[offset] = null;
+                offset++;
+            }
+        }
+    }
+}
@@ -6,19 +6,21 @@ import game.qwop.CommandQWOP;
 import game.qwop.StateQWOP;
 import game.state.StateVariable6D;
 import org.tensorflow.example.FeatureList;
+import org.tensorflow.example.FloatList;
 import org.tensorflow.example.SequenceExample;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Utility methods for parsing data loaded from TFRecords filled with QWOP run data. TFRecord data can by loaded into
- * a byte array by {@link TFRecordReader}. That step is generic to all types of TFRecord information. For our case,
- * all TFRecord data is a {@link SequenceExample} of a specific form. This class has methods for loading the byte
- * arrays into {@link SequenceExample}, and methods for parsing the {@link SequenceExample} into {@link StateQWOP},
- * {@link game.action.Action}, etc.
+ * a byte array by {@link TFRecordReader}, or viewed in place by {@link TFRecordMappedReader}. That step is generic
+ * to all types of TFRecord information. For our case, all TFRecord data is a {@link SequenceExample} of a specific
+ * form. This class has methods for loading the byte arrays into {@link SequenceExample}, and methods for parsing the
+ * {@link SequenceExample} into {@link StateQWOP}, {@link game.action.Action}, etc.
  *
  * @author matt
  */
@@ -33,10 +35,10 @@ public class TFRecordDataParsers {
      */
     public static List<SequenceExample> loadSequencesFromTFRecord(File tfrecordFile) throws IOException {
         List<SequenceExample> dataSeries = new ArrayList<>();
-        try (FileInputStream fIn = new FileInputStream(tfrecordFile); DataInputStream dIn = new DataInputStream(fIn)) {
-            TFRecordReader tfReader = new TFRecordReader(dIn, true);
-            while (fIn.available() > 0) {
-                dataSeries.add(SequenceExample.parser().parseFrom(tfReader.read()));
+        try (TFRecordMappedReader tfReader = new TFRecordMappedReader(tfrecordFile, true)) {
+            ByteBuffer record;
+            while ((record = tfReader.next()) != null) {
+                dataSeries.add(SequenceExample.parser().parseFrom(record));
             }
         }
         return dataSeries;
@@ -73,6 +75,68 @@ public class TFRecordDataParsers {
         return stateVars;
     }
 
+    /**
+     * Takes a {@link SequenceExample} loaded from a TFRecord file and decodes the states stored in it straight into
+     * primitive rows, without making any {@link StateQWOP}. Each row is in the same order as
+     * {@link StateQWOP#StateQWOP(float[], boolean)} takes, with no x offset applied.
+     *
+     * @param sequenceFromTFRecord One sequence loaded from a TFRecord that we wish to parse into a series of states.
+     * @return One row of {@link StateQWOP#STATE_SIZE} values for each timestep in the run, from beginning to end.
+     */
+    public static float[][] getStateArraysFromLoadedSequence(SequenceExample sequenceFromTFRecord) {
+        FeatureList[] bodyParts = getBodyPartFeatures(sequenceFromTFRecord);
+        float[][] rows = new float[bodyParts[0].getFeatureCount()][StateQWOP.STATE_SIZE];
+        for (int part = 0; part < bodyParts.length; part++) {
+            for (int i = 0; i < rows.length; i++) {
+                FloatList values = bodyParts[part].getFeature(i).getFloatList();
+                for (int j = 0; j < 6; j++) {
+                    rows[i][6 * part + j] = values.getValue(j);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Takes a {@link SequenceExample} loaded from a TFRecord file and decodes the states stored in it into columns,
+     * one per state value, in the same order as {@link #getStateArraysFromLoadedSequence(SequenceExample)} rows.
+     * This is the layout the TFRecord already has, so it is the cheapest way to pull out a few state values over a
+     * whole run.
+     *
+     * @param sequenceFromTFRecord One sequence loaded from a TFRecord that we wish to parse into a series of states.
+     * @return {@link StateQWOP#STATE_SIZE} columns, each with one value for each timestep in the run.
+     */
+    public static float[][] getStateColumnsFromLoadedSequence(SequenceExample sequenceFromTFRecord) {
+        FeatureList[] bodyParts = getBodyPartFeatures(sequenceFromTFRecord);
+        float[][] columns = new float[StateQWOP.STATE_SIZE][bodyParts[0].getFeatureCount()];
+        for (int part = 0; part < bodyParts.length; part++) {
+            for (int i = 0; i < columns[0].length; i++) {
+                FloatList values = bodyParts[part].getFeature(i).getFloatList();
+                for (int j = 0; j < 6; j++) {
+                    columns[6 * part + j][i] = values.getValue(j);
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Look up each body part's feature list once, in {@link StateQWOP.ObjectName} order, which matches the order of
+     * the flat state arrays.
+     */
+    private static FeatureList[] getBodyPartFeatures(SequenceExample sequenceFromTFRecord) {
+        Map<String, FeatureList> featureListMap = sequenceFromTFRecord.getFeatureLists().getFeatureListMap();
+        StateQWOP.ObjectName[] names = StateQWOP.ObjectName.values();
+        FeatureList[] bodyParts = new FeatureList[names.length];
+        for (int i = 0; i < names.length; i++) {
+            bodyParts[i] = featureListMap.get(names[i].toString());
+            if (bodyParts[i] == null) {
+                throw new IllegalArgumentException("Sequence is missing states for body part: " + names[i]);
+            }
+        }
+        return bodyParts;
+    }
+
     /**
      * Takes a {@link SequenceExample} loaded from a TFRecord file and parses the sequence of {@link Action game.command}
      * stored in it.
@@ -0,0 +1,282 @@
+package data;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.tensorflow.example.SequenceExample;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily streams runs out of any number of TFRecord files of dense QWOP run data, as saved by
+ * {@link savers.DataSaver_DenseTFRecord}. Unlike {@link TFRecordDataParsers#loadSequencesFromTFRecord(File)}, nothing
+ * is held beyond the runs currently being worked on, so datasets much larger than the heap can be gone through. Files
+ * are memory-mapped with {@link TFRecordMappedReader} and only opened once the stream reaches them.
+ * <p>
+ * Streams may be parallel, in which case the files are split between threads. A single file is always read by one
+ * thread, so a dataset of one big file gets no benefit. States can come out as {@link SequenceExample} runs, as
+ * primitive rows of {@link game.qwop.StateQWOP#STATE_SIZE} values per timestep, or as columns per state value. Use
+ * {@link #shuffle(Stream, int, Random)} to mix up the order without loading everything. Shuffling reads its source
+ * sequentially, even a parallel one.
+ * <p>
+ * Streams keep the file they are partway through open until they finish it. Close streams which may not be run to the
+ * end, e.g. ones cut short with limit or findFirst, such as in a try-with-resources block.
+ *
+ * @author matt
+ */
+public class TFRecordDataset {
+
+    /**
+     * Files to read, in order.
+     */
+    private final List<File> files;
+
+    /**
+     * Whether to verify the checksums of each record.
+     */
+    private final boolean crcCheck;
+
+    /**
+     * Make a dataset from the given TFRecord files. Nothing is read until a stream is used.
+     *
+     * @param files TFRecord files to read runs from, in order.
+     * @param crcCheck Whether to verify record checksums. Slightly slower, but catches corrupted files.
+     */
+    public TFRecordDataset(@NotNull Collection<File> files, boolean crcCheck) {
+        for (File file : files) {
+            Preconditions.checkArgument(file.isFile(), "TFRecord file does not exist.", file);
+        }
+        this.files = Collections.unmodifiableList(new ArrayList<>(files));
+        this.crcCheck = crcCheck;
+    }
+
+    /**
+     * Make a dataset from all the TFRecord files in a directory, in name order.
+     *
+     * @param directory Directory holding the files. Only files with "tfrecord" in their name, in any case, are used.
+     * @param crcCheck Whether to verify record checksums.
+     * @return A dataset of the directory's TFRecord files.
+     * @throws IOException If the directory could not be listed.
+     */
+    public static TFRecordDataset fromDirectory(@NotNull File directory, boolean crcCheck) throws IOException {
+        File[] found = directory.listFiles(f -> f.isFile() && f.getName().toLowerCase().contains("tfrecord"));
+        if (found == null) {
+            throw new IOException("Could not list the files in: " + directory);
+        }
+        Arrays.sort(found);
+        return new TFRecordDataset(Arrays.asList(found), crcCheck);
+    }
+
+    public List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * Stream every run in the dataset, file by file.
+     *
+     * @param parallel Whether to read different files on different threads.
+     * @return A lazy stream of runs. Read errors are thrown as {@link UncheckedIOException}.
+     */
+    public Stream<SequenceExample> sequences(boolean parallel) {
+        Set<TFRecordMappedReader> openReaders = ConcurrentHashMap.newKeySet();
+        return StreamSupport.stream(new SequenceSpliterator(0, files.size(), openReaders), parallel)
+                .onClose(() -> {
+                    for (TFRecordMappedReader reader : openReaders) {
+                        closeReader(reader, openReaders);
+                    }
+                });
+    }
+
+    /**
+     * Stream the states of every run, decoded straight into primitive rows.
+     *
+     * @param parallel Whether to read and decode different files on different threads.
+     * @return A lazy stream with one array per run, holding one row of state values per timestep.
+     * @see TFRecordDataParsers#getStateArraysFromLoadedSequence(SequenceExample)
+     */
+    public Stream<float[][]> runStates(boolean parallel) {
+        return sequences(parallel).map(TFRecordDataParsers::getStateArraysFromLoadedSequence);
+    }
+
+    /**
+     * Stream the states of every run, decoded into one column per state value.
+     *
+     * @param parallel Whether to read and decode different files on different threads.
+     * @return A lazy stream with one array of columns per run.
+     * @see TFRecordDataParsers#getStateColumnsFromLoadedSequence(SequenceExample)
+     */
+    public Stream<float[][]> runStateColumns(boolean parallel) {
+        return sequences(parallel).map(TFRecordDataParsers::getStateColumnsFromLoadedSequence);
+    }
+
+    /**
+     * Stream the states of every timestep of every run, one after another.
+     *
+     * @param parallel Whether to read and decode different files on different threads.
+     * @return A lazy stream of state rows, each {@link game.qwop.StateQWOP#STATE_SIZE} long.
+     */
+    public Stream<float[]> states(boolean parallel) {
+        return runStates(parallel).flatMap(Arrays::stream);
+    }
+
+    /**
+     * Shuffle a stream through a buffer of bounded size. The buffer is filled from the source, then each element
+     * handed out is picked at random from the buffer and replaced by the next one from the source. Elements can only
+     * move earlier by about the buffer size, so the bigger the buffer, the better the mix. Use a buffer larger than
+     * the number of elements for a full shuffle.
+     * <p>
+     * The returned stream is sequential, pulls from the source only as needed, and closes the source when closed.
+     * The source is pulled through its iterator, one element at a time on the consuming thread, so a parallel source
+     * is read sequentially and gets no benefit from being parallel.
+     *
+     * @param source Elements to shuffle.
+     * @param bufferSize Largest number of elements held at once.
+     * @param random Source of randomness.
+     * @param <T> Type of element.
+     * @return A lazy stream of the same elements in a shuffled order.
+     */
+    public static <T> Stream<T> shuffle(@NotNull Stream<T> source, int bufferSize, @NotNull Random random) {
+        Preconditions.checkArgument(bufferSize > 0, "Shuffle buffer size must be positive.", bufferSize);
+        Iterator<T> shuffled = new ShuffleIterator<>(source.iterator(), bufferSize, random);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(shuffled, Spliterator.NONNULL), false)
+                .onClose(source::close);
+    }
+
+    private static void closeReader(TFRecordMappedReader reader, Set<TFRecordMappedReader> openReaders) {
+        if (openReaders.remove(reader)) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Goes through a range of the files, opening each one only when reached. Splits by handing off the first half of
+     * the files it has not finished yet.
+     */
+    private class SequenceSpliterator implements Spliterator<SequenceExample> {
+
+        /**
+         * Index of the next file to open, and one past the last file to read.
+         */
+        private int nextFile;
+        private final int endFile;
+
+        private final Set<TFRecordMappedReader> openReaders;
+
+        private TFRecordMappedReader reader;
+
+        SequenceSpliterator(int firstFile, int endFile, Set<TFRecordMappedReader> openReaders) {
+            this.nextFile = firstFile;
+            this.endFile = endFile;
+            this.openReaders = openReaders;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super SequenceExample> action) {
+            try {
+                while (true) {
+                    if (reader == null) {
+                        if (nextFile >= endFile) {
+                            return false;
+                        }
+                        reader = new TFRecordMappedReader(files.get(nextFile++), crcCheck);
+                        openReaders.add(reader);
+                    }
+                    ByteBuffer record = reader.next();
+                    if (record != null) {
+                        action.accept(SequenceExample.parser().parseFrom(record));
+                        return true;
+                    }
+                    closeReader(reader, openReaders);
+                    reader = null;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Spliterator<SequenceExample> trySplit() {
+            // The file in progress, if any, goes with the first half to keep the order.
+            int remaining = endFile - nextFile;
+            if (remaining < (reader == null ? 2 : 1)) {
+                return null;
+            }
+            int mid = nextFile + remaining / 2;
+            SequenceSpliterator prefix = new SequenceSpliterator(nextFile, mid, openReaders);
+            prefix.reader = reader;
+            reader = null;
+            nextFile = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE; // Runs per file are unknown until read.
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * Hands out elements drawn at random from a bounded buffer, which is topped up from the source.
+     */
+    private static class ShuffleIterator<T> implements Iterator<T> {
+
+        private final Iterator<T> source;
+        private final Object[] buffer;
+        private final Random random;
+        private int size;
+
+        ShuffleIterator(Iterator<T> source, int bufferSize, Random random) {
+            this.source = source;
+            this.random = random;
+            buffer = new Object[bufferSize];
+        }
+
+        @Override
+        public boolean hasNext() {
+            return size > 0 || source.hasNext();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            while (size < buffer.length && source.hasNext()) {
+                buffer[size++] = Objects.requireNonNull(source.next());
+            }
+            if (size == 0) {
+                throw new NoSuchElementException();
+            }
+            int pick = random.nextInt(size);
+            T element = (T) buffer[pick];
+            buffer[pick] = buffer[--size];
+            buffer[size] = null;
+            return element;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads TFRecord files by memory-mapping them. Records come back as read-only views of the mapped file, so nothing
+ * is copied until the caller parses them, e.g. with SequenceExample.parseFrom(ByteBuffer). Files larger than 2GB
+ * are mapped a window at a time.
+ *
+ * A view is only good until the window moves on, so anything which needs a record for longer should parse or copy it
+ * before asking for the next one.
+ *
+ * @author matt
+ */
+public class TFRecordMappedReader implements AutoCloseable {
+
+    /**
+     * Largest amount of the file mapped at once.
+     */
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+
+    private final long fileSize;
+
+    private final boolean crcCheck;
+
+    /**
+     * Currently mapped part of the file, and where in the file it starts.
+     */
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    /**
+     * File position of the next record.
+     */
+    private long position;
+
+    /**
+     * Open a file to read records from.
+     *
+     * @param file TFRecord file.
+     * @param crcCheck Whether to verify the checksums of the length headers and the records.
+     * @throws IOException If the file could not be opened or mapped.
+     */
+    public TFRecordMappedReader(File file, boolean crcCheck) throws IOException {
+        this.crcCheck = crcCheck;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+        mapFrom(0);
+    }
+
+    /**
+     * Check whether there are more records to read.
+     *
+     * @return True if the file has bytes after the last record read.
+     */
+    public boolean hasNext() {
+        return position < fileSize;
+    }
+
+    /**
+     * Get the next record.
+     *
+     * @return Read-only view of the record's bytes, or null if the end of the file has been reached.
+     * @throws IOException If the file ends partway through the record, or a checksum does not match.
+     */
+    public ByteBuffer next() throws IOException {
+        if (!hasNext())
+            return null;
+        if (fileSize - position < TFRecordChannelWriter.HEADER_BYTES) {
+            throw new IOException("File ends partway through a record header at byte " + position + ".");
+        }
+        ensureMapped(position, TFRecordChannelWriter.HEADER_BYTES);
+        int offset = (int) (position - windowStart);
+        long length = window.getLong(offset);
+
+        if (crcCheck) {
+            ByteBuffer lengthBytes = window.duplicate();
+            lengthBytes.position(offset).limit(offset + 8);
+            int lengthCrc = window.getInt(offset + 8);
+            if (lengthCrc != Crc32C.maskedCrc32c(lengthBytes)) {
+                throw new IOException("Length header crc32 checking failed: " + lengthCrc + " != " +
+                        Crc32C.maskedCrc32c(lengthBytes) + ", length = " + length);
+            }
+        }
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Record size exceeds max value of int32: " + length);
+        }
+        long recordBytes = TFRecordChannelWriter.HEADER_BYTES + length + TFRecordChannelWriter.FOOTER_BYTES;
+        if (fileSize - position < recordBytes) {
+            throw new IOException("File ends partway through a record at byte " + position + ".");
+        }
+        if (recordBytes > WINDOW_BYTES) {
+            throw new IOException("Record of " + length + " bytes is too large to map.");
+        }
+
+        ensureMapped(position, recordBytes);
+        offset = (int) (position - windowStart);
+        ByteBuffer record = window.duplicate();
+        record.position(offset + TFRecordChannelWriter.HEADER_BYTES)
+                .limit(offset + TFRecordChannelWriter.HEADER_BYTES + (int) length);
+        record = record.slice().asReadOnlyBuffer();
+
+        if (crcCheck) {
+            int dataCrc = window.getInt(offset + TFRecordChannelWriter.HEADER_BYTES + (int) length);
+            if (dataCrc != Crc32C.maskedCrc32c(record)) {
+                throw new IOException("Data crc32 checking failed: " + dataCrc + " != " +
+                        Crc32C.maskedCrc32c(record));
+            }
+        }
+        position += recordBytes;
+        return record;
+    }
+
+    /**
+     * Get the position in the file of the next record.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Make sure the given bytes of the file are in the mapped window, moving the window if not.
+     */
+    private void ensureMapped(long start, long length) throws IOException {
+        if (start < windowStart || start + length > windowStart + window.capacity()) {
+            mapFrom(start);
+        }
+    }
+
+    private void mapFrom(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, fileSize - start));
+        window.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
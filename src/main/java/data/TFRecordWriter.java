@@ -1,12 +1,9 @@
 package data;
 
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
-import com.google.common.io.LittleEndianDataOutputStream;
-
-import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /* Simple writer to TFRecord format. This is patched together from fragments of code I've found around.
  * The biggest note: you still need to do everything in Protobuf form. This only does the writing to
@@ -15,61 +12,21 @@ import java.io.IOException;
  */
 public class TFRecordWriter {
 
+    /**
+     * Write one record to a stream. For writing many records to one file, {@link TFRecordChannelWriter} avoids
+     * setting up the framing buffers every time.
+     */
     public static void writeToStream(byte[] serializedExample, FileOutputStream fos) throws IOException {
-        byte[] length = LittleEndianEncoding.encodeLong(serializedExample.length);
-        byte[] crcLength = LittleEndianEncoding.encodeInt(CRC32.mask(CRC32.hash(length)));
-        byte[] crcEx = LittleEndianEncoding.encodeInt(CRC32.mask(CRC32.hash(serializedExample)));
-
-        fos.write(length);
-        fos.write(crcLength);
+        ByteBuffer length = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        length.putLong(0, serializedExample.length);
+        ByteBuffer crcLength = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        crcLength.putInt(0, Crc32C.maskedCrc32c(length));
+        ByteBuffer crcEx = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        crcEx.putInt(0, Crc32C.maskedCrc32c(serializedExample));
+
+        fos.write(length.array());
+        fos.write(crcLength.array());
         fos.write(serializedExample);
-        fos.write(crcEx);
-    }
-
-    // Code shamelessly ripped and converted from scala from : https://stackoverflow
-	// .com/questions/34711264/pure-java-scala-code-for-writing-tensorflow-tfrecords-data-file
-    // Thank you kind stranger.
-    @SuppressWarnings("UnstableApiUsage")
-    protected static class CRC32 {
-        private static final int MASK_DELTA = 0xa282ead8;
-
-        private static int hash(byte[] input) {
-            HashFunction hf = Hashing.crc32c();
-            return hf.hashBytes(input).asInt();
-        }
-
-        private static int mask(int crc) {
-            // Rotate right by 15 bits and add a constant.
-            return ((crc >>> 15) | (crc << 17)) + MASK_DELTA;
-        }
-
-        private static int unmask(int maskedCrc) {
-            int rot = maskedCrc - MASK_DELTA;
-            return ((rot >>> 17) | (rot << 15));
-        }
-    }
-
-    private static class LittleEndianEncoding {
-        private static byte[] encodeLong(long input) {
-            try (ByteArrayOutputStream bStream = new ByteArrayOutputStream();
-                 LittleEndianDataOutputStream leStream = new LittleEndianDataOutputStream(bStream)) {
-                leStream.writeLong(input);
-                return bStream.toByteArray();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }
-
-        private static byte[] encodeInt(int input) {
-            try (ByteArrayOutputStream bStream = new ByteArrayOutputStream();
-                 LittleEndianDataOutputStream leStream = new LittleEndianDataOutputStream(bStream)) {
-                leStream.writeInt(input);
-                return bStream.toByteArray();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }
+        fos.write(crcEx.array());
     }
 }
@@ -30,6 +30,17 @@ public interface IGameSerializable<C extends Command<?>, S extends IState> exten
 
     IGameSerializable<C, S> restoreSerializedState(byte[] fullState);
 
+    /**
+     * Get a game with the same full state as another, like restoring that game's serialized state. Games which know
+     * how to copy the state directly do so into this game without serializing anything, which is much faster.
+     *
+     * @param source Game to copy the full state of. Not changed.
+     * @return A game with the source's full state. This game if the state was copied into it, otherwise a new one.
+     */
+    default IGameSerializable<C, S> copyStateFrom(IGameSerializable<C, S> source) {
+        return restoreSerializedState(source.getSerializedState());
+    }
+
     @JsonIgnore
     IGameSerializable<C, S> getCopy();
 
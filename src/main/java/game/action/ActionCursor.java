@@ -0,0 +1,359 @@
+package game.action;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-owner version of {@link ActionQueue} for simulation loops. Queued actions are packed into an array of
+ * durations and an array of indices into a small table of the distinct commands seen, and polling just moves a cursor
+ * along them. Nothing is synchronized, no {@link Action} is copied, and polling does not allocate. Use it from one
+ * thread only, e.g. within a worker or a rollout policy. {@link ActionQueue} is still the one to use when other
+ * threads, like the UI, need to look at the queue.
+ * <p>
+ * The difference from {@link ActionQueue} is that the actions returned by {@link #peekThisAddedAction()} and
+ * {@link #peekNextAddedAction()} are the same objects which were added, with no progress counted on them. Use
+ * {@link #getTimestepsRemainingInAction()} for the progress through the current action.
+ *
+ * @param <C> Command type of the actions.
+ *
+ * @author matt
+ * @see ActionQueue
+ */
+public class ActionCursor<C extends Command<?>> {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    /**
+     * Timesteps of each queued action.
+     */
+    private int[] durations = new int[INITIAL_CAPACITY];
+
+    /**
+     * Index into {@link #commandTable} of each queued action's command.
+     */
+    private int[] commandIndices = new int[INITIAL_CAPACITY];
+
+    /**
+     * Queued actions as they were added. Only for handing back out, never polled.
+     */
+    private Action<?>[] actions = new Action<?>[INITIAL_CAPACITY];
+
+    /**
+     * Distinct commands which have been queued since the last clear. Games usually only have a handful. Equal commands
+     * share an entry, so polling may return an equal command instead of the same object.
+     */
+    private Command<?>[] commandTable = new Command<?>[8];
+
+    private int commandCount;
+
+    /**
+     * Number of actions queued since the last clear, including ones already done.
+     */
+    private int actionCount;
+
+    /**
+     * Index of the action currently in progress. -1 when nothing has been queued.
+     */
+    private int currentIdx = -1;
+
+    /**
+     * Timesteps left in the current action.
+     */
+    private int timestepsRemaining;
+
+    /**
+     * Number of commands polled since the last clear or reset.
+     */
+    private int commandsPolled;
+
+    public ActionCursor() {}
+
+    /**
+     * Add an action to the end of the queue. Zero-duration actions are ignored. The action is not copied or changed.
+     *
+     * @param action Action to add.
+     */
+    public void addAction(@NotNull Action<C> action) {
+        int duration = action.getTimestepsTotal();
+        if (duration == 0) return; // Zero-duration actions are tolerated, but not added to the queue.
+
+        ensureCapacity(actionCount + 1);
+        durations[actionCount] = duration;
+        commandIndices[actionCount] = getCommandIndex(action.getCommand());
+        actions[actionCount] = action;
+        actionCount++;
+
+        // If it's the first action, load it up.
+        if (currentIdx < 0) {
+            currentIdx = 0;
+            timestepsRemaining = duration;
+        }
+    }
+
+    /**
+     * Add a sequence of actions.
+     *
+     * @param actions List of actions to add to the end of the queue.
+     */
+    public void addSequence(@NotNull List<Action<C>> actions) {
+        if (actions.size() == 0)
+            throw new IllegalArgumentException("Tried to add an empty array of game.command to a queue.");
+
+        for (Action<C> action : actions) {
+            addAction(action);
+        }
+    }
+
+    @SafeVarargs
+    public final void addSequence(Action<C>... actionsInOrder) {
+        if (actionsInOrder.length == 0)
+            throw new IllegalArgumentException("Tried to add an empty array of game.command to a queue.");
+
+        for (Action<C> action : actionsInOrder) {
+            addAction(action);
+        }
+    }
+
+    /**
+     * Add the actions of a path, starting partway along it.
+     *
+     * @param path Actions to add to the end of the queue, e.g. from the root of a tree to a node.
+     * @param fromIndex Index of the first action in the path to add. Earlier ones are skipped.
+     */
+    @SuppressWarnings("unchecked")
+    public void addPath(@NotNull ActionPath<C> path, int fromIndex) {
+        if (fromIndex < 0 || fromIndex >= path.size())
+            throw new IllegalArgumentException("Tried to add an empty part of a path to a queue. Path length: " +
+                    path.size() + ", start index: " + fromIndex);
+
+        // Copy the stretch into the end of the action array in one walk along the path, then queue each in order. Adding
+        // writes at or before the slot being read, and never needs to grow the arrays.
+        int start = actionCount;
+        int end = actionCount + path.size() - fromIndex;
+        ensureCapacity(end);
+        path.copyActions(fromIndex, actions, start);
+        for (int i = start; i < end; i++) {
+            addAction((Action<C>) actions[i]);
+        }
+        Arrays.fill(actions, actionCount, end, null); // Left over if any zero-duration actions were skipped.
+    }
+
+    /**
+     * Get the next command, advancing to the next action when the current one is done.
+     *
+     * @return Command for the next timestep.
+     */
+    @SuppressWarnings("unchecked")
+    public C pollCommand() {
+        if (timestepsRemaining == 0) {
+            if (currentIdx + 1 >= actionCount) {
+                throw new IndexOutOfBoundsException("Tried to get a command off the queue when nothing is queued up.");
+            }
+            currentIdx++;
+            timestepsRemaining = durations[currentIdx];
+        }
+        timestepsRemaining--;
+        commandsPolled++;
+        return (C) commandTable[commandIndices[currentIdx]];
+    }
+
+    /**
+     * See the next command without polling it.
+     *
+     * @return Command which the next {@link #pollCommand()} will return, or null if nothing is left.
+     */
+    @SuppressWarnings("unchecked")
+    public C peekCommand() {
+        if (currentIdx < 0) throw new IndexOutOfBoundsException("No current command in the queue for us to peek at.");
+
+        if (timestepsRemaining == 0) {
+            return currentIdx + 1 < actionCount ? (C) commandTable[commandIndices[currentIdx + 1]] : null;
+        } else {
+            return (C) commandTable[commandIndices[currentIdx]];
+        }
+    }
+
+    /**
+     * See the action currently being executed. This is the action as it was added, and does not count progress.
+     *
+     * @return Current action, or null if nothing has been queued.
+     */
+    @SuppressWarnings("unchecked")
+    public Action<C> peekThisAddedAction() {
+        return currentIdx < 0 ? null : (Action<C>) actions[currentIdx];
+    }
+
+    /**
+     * See the action after the current one.
+     *
+     * @return Next action, or null if the current one is the last.
+     */
+    @SuppressWarnings("unchecked")
+    public Action<C> peekNextAddedAction() {
+        if (isEmpty()) throw new IndexOutOfBoundsException("No game.command have been added to this queue. " +
+                "Cannot peek.");
+        return currentIdx + 1 < actionCount ? (Action<C>) actions[currentIdx + 1] : null;
+    }
+
+    /**
+     * Get the number of timesteps left in the action currently being executed.
+     *
+     * @return Timesteps left in the current action. 0 when it has just finished.
+     */
+    public int getTimestepsRemainingInAction() {
+        return timestepsRemaining;
+    }
+
+    /**
+     * Check if the queue has anything in it.
+     *
+     * @return Whether this queue has more commands left to poll.
+     */
+    public boolean isEmpty() {
+        return timestepsRemaining == 0 && currentIdx + 1 >= actionCount;
+    }
+
+    /**
+     * Remove everything from the queue.
+     */
+    public void clearAll() {
+        Arrays.fill(actions, 0, actionCount, null);
+        Arrays.fill(commandTable, 0, commandCount, null);
+        actionCount = 0;
+        commandCount = 0;
+        currentIdx = -1;
+        timestepsRemaining = 0;
+        commandsPolled = 0;
+    }
+
+    /**
+     * Go back to the start of the queue, ready to execute the same actions again.
+     */
+    public void resetQueue() {
+        currentIdx = actionCount > 0 ? 0 : -1;
+        timestepsRemaining = actionCount > 0 ? durations[0] : 0;
+        commandsPolled = 0;
+    }
+
+    /**
+     * Index of the current action. 0 is the first {@link Action}.
+     *
+     * @return Index of the current action.
+     */
+    public int getCurrentActionIdx() {
+        if (isEmpty())
+            throw new IndexOutOfBoundsException("Cannot ask for the current command index for an empty command queue.");
+        return currentIdx;
+    }
+
+    /**
+     * Get all the actions in this queue, including ones which have already been executed.
+     *
+     * @return New list of the queued actions.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Action<C>> getActionsInCurrentRun() {
+        List<Action<C>> actionList = new ArrayList<>(actionCount);
+        for (int i = 0; i < actionCount; i++) {
+            actionList.add((Action<C>) actions[i]);
+        }
+        return actionList;
+    }
+
+    /**
+     * Get the number of commands polled since the queue was last cleared or reset.
+     *
+     * @return Timesteps executed from this queue.
+     */
+    public int getCommandsPolled() {
+        return commandsPolled;
+    }
+
+    /**
+     * Gives the total duration of this queue in timesteps. This does not depend on the number of timesteps
+     * already executed.
+     *
+     * @return Total duration of this queue in timesteps.
+     */
+    public int getTotalQueueLengthTimesteps() {
+        int totalTS = 0;
+        for (int i = 0; i < actionCount; i++) {
+            totalTS += durations[i];
+        }
+        return totalTS;
+    }
+
+    /**
+     * Split the queue (without altering the original) into two queues, one before, and one after the specified
+     * timestep. First queue will have the input argument's number of timesteps. Same as
+     * {@link ActionQueue#splitQueueAtTimestep(int)}.
+     *
+     * @param timestep Number of timesteps to put in the first subqueue.
+     * @return A 2-element list of the queues created by splitting this one.
+     */
+    @SuppressWarnings("unchecked")
+    public List<ActionCursor<C>> splitQueueAtTimestep(int timestep) {
+        if (timestep > getTotalQueueLengthTimesteps() - 1) {
+            throw new IllegalArgumentException("Queue is too short to be split in chunks at the specified timestep.");
+        }
+
+        // Find the action which the last timestep of the first part lands in.
+        int dividedIdx = 0;
+        int timestepsBefore = 0;
+        while (timestepsBefore + durations[dividedIdx] < timestep) {
+            timestepsBefore += durations[dividedIdx];
+            dividedIdx++;
+        }
+        int timestepsInFirst = timestep - timestepsBefore;
+
+        ActionCursor<C> queue1 = new ActionCursor<>();
+        ActionCursor<C> queue2 = new ActionCursor<>();
+        for (int i = 0; i < dividedIdx; i++) {
+            queue1.addAction((Action<C>) actions[i]);
+        }
+        Action<C> dividedAction = (Action<C>) actions[dividedIdx];
+        if (timestepsInFirst == durations[dividedIdx]) { // Splitting naturally at the transition between actions.
+            queue1.addAction(dividedAction);
+        } else { // Split the middle action into two pieces, one for each queue.
+            queue1.addAction(new Action<>(timestepsInFirst, dividedAction.getCommand()));
+            queue2.addAction(new Action<>(durations[dividedIdx] - timestepsInFirst, dividedAction.getCommand()));
+        }
+        for (int i = dividedIdx + 1; i < actionCount; i++) {
+            queue2.addAction((Action<C>) actions[i]);
+        }
+
+        List<ActionCursor<C>> dividedQueues = new ArrayList<>();
+        dividedQueues.add(queue1);
+        dividedQueues.add(queue2);
+        return dividedQueues;
+    }
+
+    /**
+     * Grow the queue arrays, if needed, so they can hold at least this many actions.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > durations.length) {
+            int newCapacity = Math.max(capacity, 2 * durations.length);
+            durations = Arrays.copyOf(durations, newCapacity);
+            commandIndices = Arrays.copyOf(commandIndices, newCapacity);
+            actions = Arrays.copyOf(actions, newCapacity);
+        }
+    }
+
+    private int getCommandIndex(Command<?> command) {
+        for (int i = 0; i < commandCount; i++) {
+            if (commandTable[i] == command) return i;
+        }
+        for (int i = 0; i < commandCount; i++) {
+            if (commandTable[i].equals(command)) return i;
+        }
+        if (commandCount == commandTable.length) {
+            commandTable = Arrays.copyOf(commandTable, 2 * commandCount);
+        }
+        commandTable[commandCount] = command;
+        return commandCount++;
+    }
+}
@@ -0,0 +1,168 @@
+package game.action;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable sequence of {@link Action actions} from the root of a tree to some node. Paths are built by appending one
+ * action to the parent's path. Each path only holds its own last action and a link to the path it was appended to,
+ * so siblings share their whole prefix and a tree pays one small object per node, however bushy or deep it is.
+ *
+ * The length and total timesteps are kept on each path, so both are O(1). Reading the actions means walking back
+ * along the links, so prefer {@link ActionQueue#addPath(ActionPath, int)} and
+ * {@link ActionCursor#addPath(ActionPath, int)}, which copy a whole stretch in one walk, over reading by index. Paths
+ * never change after they are made, so they can be shared between threads.
+ *
+ * @param <C> Command type of the actions.
+ *
+ * @author matt
+ */
+public final class ActionPath<C extends Command<?>> {
+
+    /**
+     * Path which this one was made by appending to. Null only for the empty path.
+     */
+    private final ActionPath<C> prefix;
+
+    /**
+     * Last action of this path. Null only for the empty path.
+     */
+    private final Action<C> action;
+
+    /**
+     * Number of actions in this path.
+     */
+    private final int length;
+
+    /**
+     * Sum of the durations of all the actions in this path.
+     */
+    private final int totalTimesteps;
+
+    @SuppressWarnings("rawtypes")
+    private static final ActionPath EMPTY = new ActionPath<>(null, null, 0, 0);
+
+    private ActionPath(ActionPath<C> prefix, Action<C> action, int length, int totalTimesteps) {
+        this.prefix = prefix;
+        this.action = action;
+        this.length = length;
+        this.totalTimesteps = totalTimesteps;
+    }
+
+    /**
+     * Get the path with no actions in it, e.g. for a root node.
+     *
+     * @param <C> Command type of the actions.
+     * @return An empty path.
+     */
+    @SuppressWarnings("unchecked")
+    public static <C extends Command<?>> ActionPath<C> empty() {
+        return (ActionPath<C>) EMPTY;
+    }
+
+    /**
+     * Make a new path which is this one with an action added to the end. This path is not changed, and nothing is
+     * copied.
+     *
+     * @param action Action to add. The same object is returned by {@link #getAction(int)}, so it should not be polled.
+     * @return A new path, one action longer than this one.
+     */
+    public ActionPath<C> append(@NotNull Action<C> action) {
+        Preconditions.checkNotNull(action);
+        return new ActionPath<>(this, action, length + 1, totalTimesteps + action.getTimestepsTotal());
+    }
+
+    /**
+     * Get the number of actions in this path.
+     *
+     * @return Number of actions. Equal to the tree depth of the node with this path.
+     */
+    public int size() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Get the sum of the durations of all the actions in this path.
+     *
+     * @return Number of timesteps it takes to execute the whole path.
+     */
+    public int getTotalTimesteps() {
+        return totalTimesteps;
+    }
+
+    /**
+     * Get the duration of one action in the path. Walks back from the end, so this is O(size - index).
+     *
+     * @param index Index of the action. 0 is the first one from the root.
+     * @return Number of timesteps the action lasts.
+     */
+    public int getDuration(int index) {
+        return getAction(index).getTimestepsTotal();
+    }
+
+    /**
+     * Get the command of one action in the path. Walks back from the end, so this is O(size - index).
+     *
+     * @param index Index of the action. 0 is the first one from the root.
+     * @return Command held for the whole action.
+     */
+    public C getCommand(int index) {
+        return getAction(index).getCommand();
+    }
+
+    /**
+     * Get one action in the path. This is the object which was appended, not a copy. Walks back from the end, so this
+     * is O(size - index).
+     *
+     * @param index Index of the action. 0 is the first one from the root.
+     * @return Action at that index.
+     */
+    public Action<C> getAction(int index) {
+        Preconditions.checkElementIndex(index, length);
+        ActionPath<C> path = this;
+        while (path.length > index + 1) {
+            path = path.prefix;
+        }
+        return path.action;
+    }
+
+    /**
+     * Put the actions of this path into a list, from the root onwards. The list is cleared first.
+     *
+     * @param actionList List to fill. Its contents are replaced.
+     * @return The same list, for convenience.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Action<C>> toList(@NotNull List<Action<C>> actionList) {
+        Action<?>[] actions = new Action<?>[length];
+        copyActions(0, actions, 0);
+        actionList.clear();
+        actionList.addAll(Arrays.asList((Action<C>[]) actions));
+        return actionList;
+    }
+
+    /**
+     * Copy the actions from some index to the end of this path into an array, in order from the root onwards, in a
+     * single walk back along the path.
+     *
+     * @param fromIndex Index of the first action in the path to copy.
+     * @param destination Array to copy into. Must have room for {@code size() - fromIndex} actions from
+     *                    destinationIndex on.
+     * @param destinationIndex Where in the array to put the action at fromIndex.
+     */
+    void copyActions(int fromIndex, Action<?>[] destination, int destinationIndex) {
+        Preconditions.checkPositionIndex(fromIndex, length);
+        ActionPath<C> path = this;
+        for (int i = destinationIndex + length - fromIndex - 1; i >= destinationIndex; i--) {
+            destination[i] = path.action;
+            path = path.prefix;
+        }
+    }
+}
@@ -137,6 +137,25 @@ public class ActionQueue<C extends Command<?>> {
         }
     }
 
+    /**
+     * Add the actions of a path, starting partway along it. All added game.command are copied.
+     *
+     * @param path Actions to add to the end of the queue, e.g. from the root of a tree to a node.
+     * @param fromIndex Index of the first action in the path to add. Earlier ones are skipped.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void addPath(@NotNull ActionPath<C> path, int fromIndex) {
+        if (fromIndex < 0 || fromIndex >= path.size())
+            throw new IllegalArgumentException("Tried to add an empty part of a path to a queue. Path length: " +
+                    path.size() + ", start index: " + fromIndex);
+
+        Action<?>[] pathActions = new Action<?>[path.size() - fromIndex];
+        path.copyActions(fromIndex, pathActions, 0);
+        for (Action<?> action : pathActions) {
+            addAction((Action<C>) action); // Copy happens in addAction.
+        }
+    }
+
     /**
      * Request the next QWOP keypress commands from the added sequence. Automatically advances between game.command.
      *
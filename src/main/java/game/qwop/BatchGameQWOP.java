@@ -0,0 +1,2046 @@
+package game.qwop;
+
+import com.google.common.base.Preconditions;
+import game.IGameInternal;
+import game.qwop.IStateQWOP.ObjectName;
+import game.state.StateVariable6D;
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.ContactID;
+import org.jbox2d.collision.Manifold;
+import org.jbox2d.collision.ManifoldPoint;
+import org.jbox2d.collision.TOI;
+import org.jbox2d.collision.shapes.CollidePoly;
+import org.jbox2d.collision.shapes.PolygonShape;
+import org.jbox2d.common.MathUtils;
+import org.jbox2d.common.Settings;
+import org.jbox2d.common.Sweep;
+import org.jbox2d.common.Vec2;
+import org.jbox2d.common.XForm;
+import org.jbox2d.dynamics.Body;
+import org.jbox2d.dynamics.contacts.Contact;
+import org.jbox2d.dynamics.contacts.ContactEdge;
+import org.jbox2d.dynamics.joints.Joint;
+import org.jbox2d.dynamics.joints.JointEdge;
+import org.jbox2d.dynamics.joints.LimitState;
+import org.jbox2d.dynamics.joints.RevoluteJoint;
+
+import java.awt.*;
+import java.util.Arrays;
+
+import static game.qwop.QWOPConstants.*;
+
+/**
+ * Many QWOP runners stepped together in lockstep, e.g. for many rollouts or predictions done at once. Rather than
+ * keeping a world per runner, the state of every runner is kept in struct-of-arrays form: each quantity of each body
+ * part, joint or ground contact is one array with a slot per lane, so a value is at {@code [part * laneCount + lane]}.
+ * Each phase of a timestep then runs over all lanes before the next phase starts, using the fixed layout of the QWOP
+ * runner: twelve body parts, eleven revolute joints and the track, with at most one contact per body part.
+ *
+ * The solver does the same arithmetic in the same order as {@link GameQWOP} with
+ * {@link GameQWOP#directGroundContacts}, i.e. JBox2D's island, contact and joint solvers, warm starting, sleeping and
+ * time of impact handling, so each lane gives exactly the same results as a separate game. The narrow-phase and
+ * time of impact are JBox2D's own, called with each lane's transforms. The one difference is a runner leaving the
+ * world bounds. JBox2D would freeze that body part and carry on with the rest, while here the lane is marked as failed
+ * and is not stepped again until it is reset or given a new state.
+ *
+ * {@link #getLane(int)} gives a single lane as a normal {@link IGameInternal}, e.g. for drawing it or loading a state
+ * into it. Nothing here is safe for use by more than one thread at once.
+ *
+ * @author matt
+ */
+public class BatchGameQWOP {
+
+    /**
+     * Number of runners in the batch.
+     */
+    public final int laneCount;
+
+    /*
+     * Body parts, in the order of their state variables.
+     */
+    private static final int TORSO = 0, HEAD = 1, R_THIGH = 2, L_THIGH = 3, R_CALF = 4, L_CALF = 5, R_FOOT = 6,
+            L_FOOT = 7, R_UARM = 8, L_UARM = 9, R_LARM = 10, L_LARM = 11;
+    private static final int BODY_COUNT = 12;
+
+    /*
+     * Joints, each between its two body parts below.
+     */
+    private static final int NECK = 0, R_ELBOW = 1, L_ELBOW = 2, R_KNEE = 3, L_KNEE = 4, R_ANKLE = 5, L_ANKLE = 6,
+            R_HIP = 7, L_HIP = 8, R_SHOULDER = 9, L_SHOULDER = 10;
+    private static final int JOINT_COUNT = 11;
+    private static final int[] JOINT_BODY1 = {HEAD, R_LARM, L_LARM, R_CALF, L_CALF, R_FOOT, L_FOOT, R_THIGH,
+            L_THIGH, R_UARM, L_UARM};
+    private static final int[] JOINT_BODY2 = {TORSO, R_UARM, L_UARM, R_THIGH, L_THIGH, R_CALF, L_CALF, TORSO, TORSO,
+            TORSO, TORSO};
+
+    /**
+     * Body parts in the order {@link GameQWOP#setState(StateQWOP)} places them.
+     */
+    private static final int[] SET_STATE_ORDER = {R_FOOT, L_FOOT, R_THIGH, L_THIGH, R_CALF, L_CALF, R_UARM, L_UARM,
+            R_LARM, L_LARM, HEAD, TORSO};
+
+    /*
+     * Limit states of the joints. Unset is a joint which has not been solved yet.
+     */
+    private static final byte LIMIT_UNSET = 0, LIMIT_INACTIVE = 1, LIMIT_LOWER = 2, LIMIT_UPPER = 3, LIMIT_EQUAL = 4;
+
+    /**
+     * Most points a contact between two polygons can have.
+     */
+    private static final int MAX_POINTS = 2;
+
+    /**
+     * Baumgarte factor for the position correction of time of impact contacts, as in JBox2D's island.
+     */
+    private static final float TOI_BAUMGARTE = 0.75f;
+
+    private final int iterations = physIterations;
+
+    /**
+     * Never stepped. It supplies the shapes, masses and joint anchors, and is the state every lane is reset to.
+     */
+    private final GameQWOP template = new GameQWOP(true);
+    private final Body[] templateBodies;
+    private final Body templateTrack;
+    private final RevoluteJoint[] templateJoints = new RevoluteJoint[JOINT_COUNT];
+
+    /**
+     * Body parts with a contact in a fresh game, in the order of the world's contact list.
+     */
+    private final int[] initialContactOrder;
+
+    /*
+     * Body part constants.
+     */
+    private final PolygonShape[] shapes = new PolygonShape[BODY_COUNT];
+    private final float[] mass = new float[BODY_COUNT];
+    private final float[] invMass = new float[BODY_COUNT];
+    private final float[] invI = new float[BODY_COUNT];
+    private final float[] centerX = new float[BODY_COUNT];
+    private final float[] centerY = new float[BODY_COUNT];
+    private final boolean[] allowSleep = new boolean[BODY_COUNT];
+    /** Change in velocity from gravity each timestep. */
+    private final float[] gravityStepX = new float[BODY_COUNT];
+    private final float[] gravityStepY = new float[BODY_COUNT];
+    /** Mixed friction and restitution of each part's contact with the track. */
+    private final float[] contactFriction = new float[BODY_COUNT];
+    private final float[] contactRestitution = new float[BODY_COUNT];
+    /** Body parts in the order of the world's body list, which is also the order the contacts are committed in. */
+    private final int[] bodyListOrder = new int[BODY_COUNT];
+
+    /*
+     * Track constants. The track is static and never turns, so only its center is kept for each lane. Its center can
+     * still move by rounding when time of impact events advance it.
+     */
+    private final PolygonShape trackShape;
+    private final float trackCenterX, trackCenterY;
+    private final float trackCos, trackSin;
+    private final AABB trackBounds = new AABB();
+    private final AABB worldBounds;
+
+    /*
+     * Joint constants.
+     */
+    private final float[] anchor1X = new float[JOINT_COUNT];
+    private final float[] anchor1Y = new float[JOINT_COUNT];
+    /** Anchors relative to each body's center, in body coordinates. */
+    private final float[] localArm1X = new float[JOINT_COUNT];
+    private final float[] localArm1Y = new float[JOINT_COUNT];
+    private final float[] localArm2X = new float[JOINT_COUNT];
+    private final float[] localArm2Y = new float[JOINT_COUNT];
+    private final float[] referenceAngle = new float[JOINT_COUNT];
+    private final boolean[] enableMotor = new boolean[JOINT_COUNT];
+    private final boolean[] enableLimit = new boolean[JOINT_COUNT];
+    /** Order the island solver visits the joints in, by the body part it starts searching from. */
+    private final int[][] jointOrderBySeed = new int[BODY_COUNT][];
+
+    /*
+     * Body part state, at [part * laneCount + lane].
+     */
+    private final float[] cx, cy, a;
+    private final float[] c0x, c0y, a0, t0;
+    private final float[] px, py, cos, sin;
+    private final float[] vx, vy, w;
+    private final float[] sleepTime;
+    private final boolean[] sleeping;
+    private final float[] lowerX, lowerY, upperX, upperY;
+
+    /*
+     * Contacts between each body part and the track, at [part * laneCount + lane].
+     */
+    private final boolean[] hasContact;
+    private final int[] pointCount;
+    private final float[] normalX, normalY;
+    private final float[] toi;
+    private final boolean[] toiValid;
+
+    /*
+     * Contact points, at [(part * MAX_POINTS + point) * laneCount + lane].
+     */
+    private final float[] localPoint1X, localPoint1Y, localPoint2X, localPoint2Y;
+    private final float[] separation;
+    private final float[] normalImpulse, tangentImpulse;
+    private final int[] pointId;
+
+    /*
+     * Contact constraints while solving, laid out like the contact points.
+     */
+    private final float[] arm1X, arm1Y, arm2X, arm2Y;
+    private final float[] normalMass, equalizedMass, tangentMass;
+    private final float[] velocityBias;
+    private final float[] solverNormalImpulse, solverTangentImpulse, positionImpulse;
+
+    /*
+     * Joint state, at [joint * laneCount + lane].
+     */
+    private final float[] pivotForceX, pivotForceY;
+    private final float[] motorForce, limitForce, limitPositionImpulse;
+    private final byte[] limitState;
+    private final float[] motorSpeed, maxMotorTorque;
+    private final float[] lowerAngle, upperAngle;
+    private final float[] pivotMass11, pivotMass12, pivotMass21, pivotMass22;
+    private final float[] jointArm1X, jointArm1Y, jointArm2X, jointArm2Y;
+
+    /*
+     * Track state, by lane.
+     */
+    private final float[] trackCx, trackCy, trackC0x, trackC0y, trackT0;
+    private final float[] trackPx, trackPy;
+    private final boolean[] trackSleeping;
+
+    /*
+     * Lane state.
+     */
+    /** Body parts with a contact, in the order of the world's contact list, at [lane * BODY_COUNT + index]. */
+    private final int[] contactOrder;
+    private final int[] contactCount;
+    private final boolean[] isFailed;
+    private final long[] timesteps;
+    private final boolean[] rFootDown, lFootDown;
+    private final float[] invDt0;
+    private final boolean[] outOfWorld;
+
+    /*
+     * Per-step bookkeeping.
+     */
+    private final CommandQWOP[] laneCommands;
+    private final boolean[] stepping;
+    private final float[] dtRatio;
+    private final int[] solveLanes;
+    private int solveCount;
+    /** Solving lanes, grouped by the body part their island search starts from, at [seed * laneCount + index]. */
+    private final int[] seedLanes;
+    private final int[] seedCount = new int[BODY_COUNT];
+    private final boolean[] correcting;
+    private final float[] minSeparation;
+    private final boolean[] jointsOkay;
+
+    /*
+     * Temps for JBox2D's narrow-phase and time of impact.
+     */
+    private final XForm bodyXForm = new XForm();
+    private final XForm trackXForm = new XForm();
+    private final XForm sweptXForm = new XForm();
+    private final AABB sweptBounds = new AABB();
+    private final Manifold manifold = new Manifold();
+    private final CollidePoly collidePoly = new CollidePoly();
+    private final TOI timeOfImpact = new TOI();
+    private final Sweep bodySweep = new Sweep();
+    private final Sweep trackSweep = new Sweep();
+    private final int[] oldPointId = new int[MAX_POINTS];
+    private final float[] oldNormalImpulse = new float[MAX_POINTS];
+    private final float[] oldTangentImpulse = new float[MAX_POINTS];
+    private final boolean[] persisted = new boolean[MAX_POINTS];
+
+    private final Lane[] lanes;
+
+    /**
+     * Make a batch of runners, all at the starting state.
+     *
+     * @param laneCount Number of runners. Must be at least 1.
+     */
+    public BatchGameQWOP(int laneCount) {
+        Preconditions.checkArgument(laneCount >= 1, "Batch must have at least one lane.", laneCount);
+        this.laneCount = laneCount;
+
+        templateBodies = template.getStateOrderBodies();
+        for (Body body : templateBodies) {
+            if (body == null) {
+                throw new IllegalStateException("Batches need the full runner, but the template game has no feet.");
+            }
+        }
+        Body track = null;
+        int bodyIndex = 0;
+        for (Body body = template.getWorld().getBodyList(); body != null; body = body.getNext()) {
+            if (body.isStatic()) {
+                // The world's own ground body has no shapes.
+                if (body.getShapeList() != null) {
+                    track = body;
+                }
+            } else {
+                bodyListOrder[bodyIndex++] = indexOf(body);
+            }
+        }
+        templateTrack = Preconditions.checkNotNull(track);
+
+        // Body parts.
+        Vec2 gravity = template.getWorld().getGravity();
+        trackShape = (PolygonShape) templateTrack.getShapeList();
+        for (int b = 0; b < BODY_COUNT; b++) {
+            Body body = templateBodies[b];
+            Preconditions.checkState(body.m_linearDamping == 0f && body.m_angularDamping == 0f,
+                    "Batches do not damp velocities.");
+            shapes[b] = (PolygonShape) body.getShapeList();
+            mass[b] = body.m_mass;
+            invMass[b] = body.m_invMass;
+            invI[b] = body.m_invI;
+            centerX[b] = body.getMemberLocalCenter().x;
+            centerY[b] = body.getMemberLocalCenter().y;
+            allowSleep[b] = (body.m_flags & Body.e_allowSleepFlag) != 0;
+            // No forces are ever applied.
+            gravityStepX[b] = timestep * (gravity.x + body.m_invMass * 0f);
+            gravityStepY[b] = timestep * (gravity.y + body.m_invMass * 0f);
+            contactFriction[b] = MathUtils.sqrt(shapes[b].m_friction * trackShape.m_friction);
+            contactRestitution[b] = MathUtils.max(shapes[b].m_restitution, trackShape.m_restitution);
+        }
+
+        // Track.
+        trackCenterX = templateTrack.getMemberLocalCenter().x;
+        trackCenterY = templateTrack.getMemberLocalCenter().y;
+        trackCos = templateTrack.getMemberXForm().R.col1.x;
+        trackSin = templateTrack.getMemberXForm().R.col1.y;
+        trackShape.computeAABB(trackBounds, templateTrack.getMemberXForm());
+        worldBounds = new AABB(new Vec2(aabbMinX, aabbMinY), new Vec2(aabbMaxX, aabbMaxY));
+
+        // Joints.
+        for (Joint joint = template.getWorld().getJointList(); joint != null; joint = joint.getNext()) {
+            int body1 = indexOf(joint.m_body1);
+            int body2 = indexOf(joint.m_body2);
+            for (int j = 0; j < JOINT_COUNT; j++) {
+                if (JOINT_BODY1[j] == body1 && JOINT_BODY2[j] == body2) {
+                    templateJoints[j] = (RevoluteJoint) joint;
+                }
+            }
+        }
+        for (int j = 0; j < JOINT_COUNT; j++) {
+            RevoluteJoint joint = Preconditions.checkNotNull(templateJoints[j]);
+            int b1 = JOINT_BODY1[j];
+            int b2 = JOINT_BODY2[j];
+            anchor1X[j] = joint.m_localAnchor1.x;
+            anchor1Y[j] = joint.m_localAnchor1.y;
+            localArm1X[j] = -(centerX[b1] - joint.m_localAnchor1.x);
+            localArm1Y[j] = -(centerY[b1] - joint.m_localAnchor1.y);
+            localArm2X[j] = -(centerX[b2] - joint.m_localAnchor2.x);
+            localArm2Y[j] = -(centerY[b2] - joint.m_localAnchor2.y);
+            referenceAngle[j] = joint.m_referenceAngle;
+            enableMotor[j] = joint.m_enableMotor;
+            enableLimit[j] = joint.m_enableLimit;
+        }
+        for (int seed = 0; seed < BODY_COUNT; seed++) {
+            jointOrderBySeed[seed] = findJointOrder(seed);
+        }
+
+        // The contact list, found from any of its contacts.
+        initialContactOrder = findInitialContactOrder();
+
+        int bodySlots = BODY_COUNT * laneCount;
+        cx = new float[bodySlots];
+        cy = new float[bodySlots];
+        a = new float[bodySlots];
+        c0x = new float[bodySlots];
+        c0y = new float[bodySlots];
+        a0 = new float[bodySlots];
+        t0 = new float[bodySlots];
+        px = new float[bodySlots];
+        py = new float[bodySlots];
+        cos = new float[bodySlots];
+        sin = new float[bodySlots];
+        vx = new float[bodySlots];
+        vy = new float[bodySlots];
+        w = new float[bodySlots];
+        sleepTime = new float[bodySlots];
+        sleeping = new boolean[bodySlots];
+        lowerX = new float[bodySlots];
+        lowerY = new float[bodySlots];
+        upperX = new float[bodySlots];
+        upperY = new float[bodySlots];
+
+        hasContact = new boolean[bodySlots];
+        pointCount = new int[bodySlots];
+        normalX = new float[bodySlots];
+        normalY = new float[bodySlots];
+        toi = new float[bodySlots];
+        toiValid = new boolean[bodySlots];
+
+        int pointSlots = MAX_POINTS * bodySlots;
+        localPoint1X = new float[pointSlots];
+        localPoint1Y = new float[pointSlots];
+        localPoint2X = new float[pointSlots];
+        localPoint2Y = new float[pointSlots];
+        separation = new float[pointSlots];
+        normalImpulse = new float[pointSlots];
+        tangentImpulse = new float[pointSlots];
+        pointId = new int[pointSlots];
+        arm1X = new float[pointSlots];
+        arm1Y = new float[pointSlots];
+        arm2X = new float[pointSlots];
+        arm2Y = new float[pointSlots];
+        normalMass = new float[pointSlots];
+        equalizedMass = new float[pointSlots];
+        tangentMass = new float[pointSlots];
+        velocityBias = new float[pointSlots];
+        solverNormalImpulse = new float[pointSlots];
+        solverTangentImpulse = new float[pointSlots];
+        positionImpulse = new float[pointSlots];
+
+        int jointSlots = JOINT_COUNT * laneCount;
+        pivotForceX = new float[jointSlots];
+        pivotForceY = new float[jointSlots];
+        motorForce = new float[jointSlots];
+        limitForce = new float[jointSlots];
+        limitPositionImpulse = new float[jointSlots];
+        limitState = new byte[jointSlots];
+        motorSpeed = new float[jointSlots];
+        maxMotorTorque = new float[jointSlots];
+        lowerAngle = new float[jointSlots];
+        upperAngle = new float[jointSlots];
+        pivotMass11 = new float[jointSlots];
+        pivotMass12 = new float[jointSlots];
+        pivotMass21 = new float[jointSlots];
+        pivotMass22 = new float[jointSlots];
+        jointArm1X = new float[jointSlots];
+        jointArm1Y = new float[jointSlots];
+        jointArm2X = new float[jointSlots];
+        jointArm2Y = new float[jointSlots];
+
+        trackCx = new float[laneCount];
+        trackCy = new float[laneCount];
+        trackC0x = new float[laneCount];
+        trackC0y = new float[laneCount];
+        trackT0 = new float[laneCount];
+        trackPx = new float[laneCount];
+        trackPy = new float[laneCount];
+        trackSleeping = new boolean[laneCount];
+
+        contactOrder = new int[bodySlots];
+        contactCount = new int[laneCount];
+        isFailed = new boolean[laneCount];
+        timesteps = new long[laneCount];
+        rFootDown = new boolean[laneCount];
+        lFootDown = new boolean[laneCount];
+        invDt0 = new float[laneCount];
+        outOfWorld = new boolean[laneCount];
+
+        laneCommands = new CommandQWOP[laneCount];
+        stepping = new boolean[laneCount];
+        dtRatio = new float[laneCount];
+        solveLanes = new int[laneCount];
+        seedLanes = new int[bodySlots];
+        correcting = new boolean[laneCount];
+        minSeparation = new float[laneCount];
+        jointsOkay = new boolean[laneCount];
+
+        lanes = new Lane[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            lanes[lane] = new Lane(lane);
+        }
+        resetGames();
+    }
+
+    private int indexOf(Body body) {
+        for (int b = 0; b < BODY_COUNT; b++) {
+            if (templateBodies[b] == body) {
+                return b;
+            }
+        }
+        throw new IllegalStateException("Body is not part of the runner.");
+    }
+
+    /**
+     * Search the joint graph from one body part like the world does when it builds an island, to get the order the
+     * joints are solved in.
+     */
+    private int[] findJointOrder(int seed) {
+        int[] order = new int[JOINT_COUNT];
+        int orderCount = 0;
+        boolean[] jointAdded = new boolean[JOINT_COUNT];
+        boolean[] bodyAdded = new boolean[BODY_COUNT];
+        Body[] stack = new Body[BODY_COUNT];
+        int stackCount = 0;
+        stack[stackCount++] = templateBodies[seed];
+        bodyAdded[seed] = true;
+        while (stackCount > 0) {
+            Body body = stack[--stackCount];
+            for (JointEdge edge = body.m_jointList; edge != null; edge = edge.next) {
+                int j = Arrays.asList(templateJoints).indexOf(edge.joint);
+                if (jointAdded[j]) {
+                    continue;
+                }
+                order[orderCount++] = j;
+                jointAdded[j] = true;
+                int other = indexOf(edge.other);
+                if (bodyAdded[other]) {
+                    continue;
+                }
+                stack[stackCount++] = edge.other;
+                bodyAdded[other] = true;
+            }
+        }
+        Preconditions.checkState(orderCount == JOINT_COUNT, "Runner joints are not all connected.");
+        return order;
+    }
+
+    private int[] findInitialContactOrder() {
+        Contact first = null;
+        for (Body body : templateBodies) {
+            ContactEdge edge = body.m_contactList;
+            if (edge != null) {
+                first = edge.contact;
+                break;
+            }
+        }
+        while (first != null && first.m_prev != null) {
+            first = first.m_prev;
+        }
+        int count = 0;
+        for (Contact contact = first; contact != null; contact = contact.getNext()) {
+            count++;
+        }
+        int[] order = new int[count];
+        count = 0;
+        for (Contact contact = first; contact != null; contact = contact.getNext()) {
+            Preconditions.checkState(contact.getShape2().getBody() == templateTrack,
+                    "Runner contacts must be between a body part and the track.");
+            order[count++] = indexOf(contact.getShape1().getBody());
+        }
+        return order;
+    }
+
+    /**
+     * Get one runner of the batch as a game. Stepping it or changing its state only affects that lane.
+     *
+     * @param lane Index of the lane, from 0 to {@link #laneCount} - 1.
+     * @return A view of that lane.
+     */
+    public Lane getLane(int lane) {
+        return lanes[lane];
+    }
+
+    /**
+     * Reset every runner to its starting state.
+     */
+    public void resetGames() {
+        for (int lane = 0; lane < laneCount; lane++) {
+            resetGame(lane);
+        }
+    }
+
+    /**
+     * Reset one runner to its starting state, like {@link GameQWOP#resetGame()}.
+     *
+     * @param lane Index of the lane to reset.
+     */
+    public void resetGame(int lane) {
+        final int n = laneCount;
+        for (int b = 0; b < BODY_COUNT; b++) {
+            final Body body = templateBodies[b];
+            final Sweep sweep = body.m_sweep;
+            final XForm xf = body.getMemberXForm();
+            final int k = b * n + lane;
+            cx[k] = sweep.c.x;
+            cy[k] = sweep.c.y;
+            a[k] = sweep.a;
+            c0x[k] = sweep.c0.x;
+            c0y[k] = sweep.c0.y;
+            a0[k] = sweep.a0;
+            t0[k] = sweep.t0;
+            px[k] = xf.position.x;
+            py[k] = xf.position.y;
+            cos[k] = xf.R.col1.x;
+            sin[k] = xf.R.col1.y;
+            vx[k] = body.getLinearVelocity().x;
+            vy[k] = body.getLinearVelocity().y;
+            w[k] = body.getAngularVelocity();
+            sleepTime[k] = body.m_sleepTime;
+            sleeping[k] = body.isSleeping();
+            shapes[b].computeAABB(sweptBounds, xf);
+            storeBounds(k, sweptBounds);
+            hasContact[k] = false;
+            pointCount[k] = 0;
+            toiValid[k] = false;
+        }
+        for (int i = 0; i < initialContactOrder.length; i++) {
+            int b = initialContactOrder[i];
+            contactOrder[lane * BODY_COUNT + i] = b;
+            hasContact[b * n + lane] = true;
+        }
+        contactCount[lane] = initialContactOrder.length;
+
+        for (int j = 0; j < JOINT_COUNT; j++) {
+            final RevoluteJoint joint = templateJoints[j];
+            final int k = j * n + lane;
+            pivotForceX[k] = joint.m_pivotForce.x;
+            pivotForceY[k] = joint.m_pivotForce.y;
+            motorForce[k] = joint.m_motorForce;
+            limitForce[k] = joint.m_limitForce;
+            limitPositionImpulse[k] = joint.m_limitPositionImpulse;
+            limitState[k] = toLimitState(joint.m_limitState);
+            motorSpeed[k] = joint.m_motorSpeed;
+            maxMotorTorque[k] = joint.m_maxMotorTorque;
+            lowerAngle[k] = joint.m_lowerAngle;
+            upperAngle[k] = joint.m_upperAngle;
+        }
+
+        final Sweep trackSweep = templateTrack.m_sweep;
+        trackCx[lane] = trackSweep.c.x;
+        trackCy[lane] = trackSweep.c.y;
+        trackC0x[lane] = trackSweep.c0.x;
+        trackC0y[lane] = trackSweep.c0.y;
+        trackT0[lane] = trackSweep.t0;
+        trackPx[lane] = templateTrack.getMemberXForm().position.x;
+        trackPy[lane] = templateTrack.getMemberXForm().position.y;
+        trackSleeping[lane] = templateTrack.isSleeping();
+
+        isFailed[lane] = false;
+        timesteps[lane] = 0;
+        rFootDown[lane] = false;
+        lFootDown[lane] = false;
+        invDt0[lane] = 0f; // Like a new world.
+        outOfWorld[lane] = false;
+    }
+
+    private static byte toLimitState(LimitState state) {
+        if (state == null) {
+            return LIMIT_UNSET;
+        }
+        switch (state) {
+            case INACTIVE_LIMIT:
+                return LIMIT_INACTIVE;
+            case AT_LOWER_LIMIT:
+                return LIMIT_LOWER;
+            case AT_UPPER_LIMIT:
+                return LIMIT_UPPER;
+            default:
+                return LIMIT_EQUAL;
+        }
+    }
+
+    /**
+     * Step every lane with the same keys.
+     *
+     * @param command Keys to hold in all lanes.
+     * @param timesteps Number of timesteps to hold them for.
+     */
+    public void step(CommandQWOP command, int timesteps) {
+        Preconditions.checkNotNull(command);
+        Preconditions.checkArgument(timesteps >= 0, "Cannot step a negative number of timesteps.", timesteps);
+        Arrays.fill(laneCommands, command);
+        stepLanes(timesteps);
+    }
+
+    /**
+     * Step each lane with its own keys.
+     *
+     * @param commands Keys to hold in each lane, one per lane. Lanes with a null command are not stepped.
+     * @param timesteps Number of timesteps to hold them for.
+     */
+    public void step(CommandQWOP[] commands, int timesteps) {
+        Preconditions.checkArgument(commands.length == laneCount, "Need one command per lane.", commands.length);
+        Preconditions.checkArgument(timesteps >= 0, "Cannot step a negative number of timesteps.", timesteps);
+        System.arraycopy(commands, 0, laneCommands, 0, laneCount);
+        stepLanes(timesteps);
+    }
+
+    private void stepLanes(int timestepCount) {
+        for (int lane = 0; lane < laneCount; lane++) {
+            stepping[lane] = laneCommands[lane] != null && !outOfWorld[lane];
+        }
+        for (int i = 0; i < timestepCount; i++) {
+            stepOnce();
+        }
+        Arrays.fill(laneCommands, null);
+    }
+
+    /**
+     * One timestep of every stepping lane, in the same order as {@link GameQWOP#step(boolean, boolean, boolean,
+     * boolean)} and {@link org.jbox2d.dynamics.World#step(float, int)}.
+     */
+    private void stepOnce() {
+        final float dt = timestep;
+        final float invDt = 1.0f / dt;
+        for (int lane = 0; lane < laneCount; lane++) {
+            if (stepping[lane]) {
+                boolean[] keys = laneCommands[lane].get();
+                applyKeys(lane, keys[0], keys[1], keys[2], keys[3]);
+            }
+        }
+        for (int lane = 0; lane < laneCount; lane++) {
+            if (stepping[lane]) {
+                collide(lane);
+            }
+        }
+        solve(dt, invDt);
+        for (int lane = 0; lane < laneCount; lane++) {
+            if (stepping[lane] && synchronizeShapes(lane)) {
+                commit(lane);
+            }
+        }
+        for (int lane = 0; lane < laneCount; lane++) {
+            if (stepping[lane] && !outOfWorld[lane]) {
+                solveTOI(lane, dt);
+            }
+        }
+        final int n = laneCount;
+        for (int lane = 0; lane < laneCount; lane++) {
+            if (!stepping[lane]) {
+                continue;
+            }
+            invDt0[lane] = invDt;
+            final float angle = a[TORSO * n + lane];
+            if (angle > torsoAngUpper || angle < torsoAngLower) {
+                isFailed[lane] = true;
+            }
+            timesteps[lane]++;
+            if (outOfWorld[lane]) {
+                stepping[lane] = false;
+            }
+        }
+    }
+
+    private float jointAngle(int j, int lane) {
+        final int n = laneCount;
+        return a[JOINT_BODY2[j] * n + lane] - a[JOINT_BODY1[j] * n + lane] - referenceAngle[j];
+    }
+
+    private float anchor1XCoord(int j, int lane) {
+        final int k = JOINT_BODY1[j] * laneCount + lane;
+        return px[k] + cos[k] * anchor1X[j] + -sin[k] * anchor1Y[j];
+    }
+
+    /**
+     * Set the joint motors and limits for the keys, as {@link GameQWOP#step(boolean, boolean, boolean, boolean)} does.
+     */
+    private void applyKeys(int lane, boolean q, boolean w, boolean o, boolean p) {
+        final int n = laneCount;
+        float neckTorque = -neckStiff * jointAngle(NECK, lane);
+        neckTorque = neckTorque + 0 * 400f * (jointAngle(NECK, lane) + 0.2f);
+        float rElbowTorque = -rElbowStiff * jointAngle(R_ELBOW, lane);
+        float lElbowTorque = -lElbowStiff * jointAngle(L_ELBOW, lane);
+
+        motorSpeed[NECK * n + lane] = (1000000f * Math.signum(neckTorque));
+        motorSpeed[R_ELBOW * n + lane] = (1000000f * Math.signum(rElbowTorque));
+        motorSpeed[L_ELBOW * n + lane] = (1000000f * Math.signum(lElbowTorque));
+
+        maxMotorTorque[NECK * n + lane] = (Math.abs(neckTorque));
+        maxMotorTorque[R_ELBOW * n + lane] = (Math.abs(rElbowTorque));
+        maxMotorTorque[L_ELBOW * n + lane] = (Math.abs(lElbowTorque));
+
+        if (q) {
+            motorSpeed[L_HIP * n + lane] = lHipSpeed2;
+            motorSpeed[R_HIP * n + lane] = rHipSpeed2;
+            motorSpeed[L_SHOULDER * n + lane] = lShoulderSpeed2;
+            motorSpeed[R_SHOULDER * n + lane] = rShoulderSpeed2;
+        } else if (w) {
+            motorSpeed[L_HIP * n + lane] = lHipSpeed1;
+            motorSpeed[R_HIP * n + lane] = rHipSpeed1;
+            motorSpeed[L_SHOULDER * n + lane] = lShoulderSpeed1;
+            motorSpeed[R_SHOULDER * n + lane] = rShoulderSpeed1;
+        } else {
+            motorSpeed[L_HIP * n + lane] = 0f;
+            motorSpeed[R_HIP * n + lane] = 0f;
+            motorSpeed[L_SHOULDER * n + lane] = 0f;
+            motorSpeed[R_SHOULDER * n + lane] = 0f;
+        }
+
+        if (q || w) {
+            float rAnkleCur = anchor1XCoord(R_ANKLE, lane);
+            float lAnkleCur = anchor1XCoord(L_ANKLE, lane);
+            float rHipCur = anchor1XCoord(R_HIP, lane);
+            motorSpeed[R_ANKLE * n + lane] = rAnkleCur < rHipCur ? rAnkleSpeed2 : rAnkleSpeed1;
+            motorSpeed[L_ANKLE * n + lane] = lAnkleCur < rHipCur ? lAnkleSpeed2 : lAnkleSpeed1;
+        }
+
+        if (o) {
+            motorSpeed[R_KNEE * n + lane] = rKneeSpeed2;
+            motorSpeed[L_KNEE * n + lane] = lKneeSpeed2;
+            lowerAngle[R_HIP * n + lane] = oRHipLimLo;
+            upperAngle[R_HIP * n + lane] = oRHipLimHi;
+            lowerAngle[L_HIP * n + lane] = oLHipLimLo;
+            upperAngle[L_HIP * n + lane] = oLHipLimHi;
+        } else if (p) {
+            motorSpeed[R_KNEE * n + lane] = rKneeSpeed1;
+            motorSpeed[L_KNEE * n + lane] = lKneeSpeed1;
+            lowerAngle[R_HIP * n + lane] = pRHipLimLo;
+            upperAngle[R_HIP * n + lane] = pRHipLimHi;
+            lowerAngle[L_HIP * n + lane] = pLHipLimLo;
+            upperAngle[L_HIP * n + lane] = pLHipLimHi;
+        } else {
+            motorSpeed[R_KNEE * n + lane] = 0f;
+            motorSpeed[L_KNEE * n + lane] = 0f;
+        }
+    }
+
+    /*
+     * Contacts.
+     */
+
+    /**
+     * Update the contacts of one lane whose bodies are not both asleep, in the order of its contact list.
+     */
+    private void collide(int lane) {
+        final int n = laneCount;
+        for (int i = 0; i < contactCount[lane]; i++) {
+            final int b = contactOrder[lane * BODY_COUNT + i];
+            if (sleeping[b * n + lane] && trackSleeping[lane]) {
+                continue;
+            }
+            updateContact(b, lane);
+        }
+    }
+
+    /**
+     * Find the new contact points between a body part and the track, keep the impulses of points which persist, and
+     * report added and removed points, like {@link Contact#update(org.jbox2d.dynamics.ContactListener)}.
+     */
+    private void updateContact(int b, int lane) {
+        final int n = laneCount;
+        final int k = b * n + lane;
+        final int oldCount = pointCount[k];
+        for (int i = 0; i < oldCount; i++) {
+            final int pk = (b * MAX_POINTS + i) * n + lane;
+            oldPointId[i] = pointId[pk];
+            oldNormalImpulse[i] = normalImpulse[pk];
+            oldTangentImpulse[i] = tangentImpulse[pk];
+            persisted[i] = false;
+        }
+
+        setXForm(bodyXForm, px[k], py[k], cos[k], sin[k]);
+        setXForm(trackXForm, trackPx[lane], trackPy[lane], trackCos, trackSin);
+        collidePoly.collidePolygons(manifold, shapes[b], bodyXForm, trackShape, trackXForm);
+
+        final int newCount = manifold.pointCount;
+        if (newCount > 0) {
+            normalX[k] = manifold.normal.x;
+            normalY[k] = manifold.normal.y;
+        }
+        for (int i = 0; i < newCount; i++) {
+            final ManifoldPoint mp = manifold.points[i];
+            final int pk = (b * MAX_POINTS + i) * n + lane;
+            final int id = packId(mp.id);
+            localPoint1X[pk] = mp.localPoint1.x;
+            localPoint1Y[pk] = mp.localPoint1.y;
+            localPoint2X[pk] = mp.localPoint2.x;
+            localPoint2Y[pk] = mp.localPoint2.y;
+            separation[pk] = mp.separation;
+            pointId[pk] = id;
+            normalImpulse[pk] = 0.0f;
+            tangentImpulse[pk] = 0.0f;
+            boolean found = false;
+            for (int j = 0; j < oldCount; j++) {
+                if (!persisted[j] && oldPointId[j] == id) {
+                    persisted[j] = true;
+                    normalImpulse[pk] = oldNormalImpulse[j];
+                    tangentImpulse[pk] = oldTangentImpulse[j];
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                pointAdded(b, lane);
+            }
+        }
+        pointCount[k] = newCount;
+        for (int i = 0; i < oldCount; i++) {
+            if (!persisted[i]) {
+                pointRemoved(b, lane);
+            }
+        }
+
+        if (newCount == 0 && oldCount > 0) {
+            wakeUp(b, lane);
+            trackSleeping[lane] = false;
+        }
+    }
+
+    private static int packId(ContactID id) {
+        final ContactID.Features features = id.features;
+        return features.referenceEdge | features.incidentEdge << 8 | features.incidentVertex << 16
+                | features.flip << 24;
+    }
+
+    private static void setXForm(XForm xf, float x, float y, float c, float s) {
+        xf.position.x = x;
+        xf.position.y = y;
+        xf.R.col1.x = c;
+        xf.R.col2.x = -s;
+        xf.R.col1.y = s;
+        xf.R.col2.y = c;
+    }
+
+    /**
+     * A body part touched the track at a new point. Same rules as the game's contact listener.
+     */
+    private void pointAdded(int b, int lane) {
+        if (b == HEAD || b == L_LARM || b == R_LARM || b == TORSO) {
+            isFailed[lane] = true;
+        } else if (GameQWOP.failOnThighContact && (b == L_THIGH || b == R_THIGH)) {
+            isFailed[lane] = true;
+        } else if (b == R_FOOT) {
+            rFootDown[lane] = true;
+        } else if (b == L_FOOT) {
+            lFootDown[lane] = true;
+        }
+    }
+
+    private void pointRemoved(int b, int lane) {
+        if (b == R_FOOT) {
+            rFootDown[lane] = false;
+        } else if (b == L_FOOT) {
+            lFootDown[lane] = false;
+        }
+    }
+
+    private void wakeUp(int b, int lane) {
+        final int k = b * laneCount + lane;
+        sleeping[k] = false;
+        sleepTime[k] = 0.0f;
+    }
+
+    /**
+     * Make contacts between the track and the body parts whose bounds now overlap it, and destroy the ones which no
+     * longer do, like {@link org.jbox2d.dynamics.GroundContactGenerator}.
+     */
+    private void commit(int lane) {
+        final int n = laneCount;
+        for (int i = 0; i < BODY_COUNT; i++) {
+            final int b = bodyListOrder[i];
+            final int k = b * n + lane;
+            final boolean overlap = lowerX[k] <= trackBounds.upperBound.x && trackBounds.lowerBound.x <= upperX[k]
+                    && lowerY[k] <= trackBounds.upperBound.y && trackBounds.lowerBound.y <= upperY[k];
+            if (overlap) {
+                if (!hasContact[k]) {
+                    addContact(b, lane);
+                }
+            } else if (hasContact[k]) {
+                destroyContact(b, lane);
+            }
+        }
+    }
+
+    private void addContact(int b, int lane) {
+        final int k = b * laneCount + lane;
+        hasContact[k] = true;
+        pointCount[k] = 0;
+        toiValid[k] = false;
+        // New contacts go at the front of the list.
+        final int start = lane * BODY_COUNT;
+        System.arraycopy(contactOrder, start, contactOrder, start + 1, contactCount[lane]);
+        contactOrder[start] = b;
+        contactCount[lane]++;
+    }
+
+    private void destroyContact(int b, int lane) {
+        final int k = b * laneCount + lane;
+        final int count = pointCount[k];
+        if (count > 0) {
+            for (int i = 0; i < count; i++) {
+                pointRemoved(b, lane);
+            }
+            wakeUp(b, lane);
+            trackSleeping[lane] = false;
+        }
+        hasContact[k] = false;
+        pointCount[k] = 0;
+        toiValid[k] = false;
+        final int start = lane * BODY_COUNT;
+        int index = 0;
+        while (contactOrder[start + index] != b) {
+            index++;
+        }
+        System.arraycopy(contactOrder, start + index + 1, contactOrder, start + index,
+                contactCount[lane] - index - 1);
+        contactCount[lane]--;
+    }
+
+    /*
+     * Island solver.
+     */
+
+    /**
+     * Solve every stepping lane which has a body part awake. All of a runner's body parts are joined, so each such lane
+     * is one island, like {@link org.jbox2d.dynamics.World#solve(org.jbox2d.dynamics.TimeStep)} would make. The
+     * phases of the island solver are each run across all of these lanes in turn.
+     */
+    private void solve(final float dt, final float invDt) {
+        final int n = laneCount;
+        solveCount = 0;
+        Arrays.fill(seedCount, 0);
+        for (int lane = 0; lane < n; lane++) {
+            if (!stepping[lane]) {
+                continue;
+            }
+            int seed = -1;
+            for (int i = 0; i < BODY_COUNT; i++) {
+                if (!sleeping[bodyListOrder[i] * n + lane]) {
+                    seed = bodyListOrder[i];
+                    break;
+                }
+            }
+            if (seed < 0) {
+                continue;
+            }
+            solveLanes[solveCount++] = lane;
+            seedLanes[seed * n + seedCount[seed]++] = lane;
+            dtRatio[lane] = invDt0[lane] * dt;
+            for (int b = 0; b < BODY_COUNT; b++) {
+                final int k = b * n + lane;
+                sleeping[k] = false;
+                if (pointCount[k] > 0) {
+                    trackSleeping[lane] = false; // The track joins the island through a touching contact.
+                }
+            }
+        }
+        if (solveCount == 0) {
+            return;
+        }
+
+        // Integrate velocities.
+        for (int b = 0; b < BODY_COUNT; b++) {
+            final float dvx = gravityStepX[b];
+            final float dvy = gravityStepY[b];
+            for (int i = 0; i < solveCount; i++) {
+                final int k = b * n + solveLanes[i];
+                vx[k] += dvx;
+                vy[k] += dvy;
+                // There is no torque, but adding it still turns -0 into 0.
+                w[k] += 0.0f;
+                // No damping.
+                if (vx[k] * vx[k] + vy[k] * vy[k] > Settings.maxLinearVelocitySquared) {
+                    final float length = MathUtils.sqrt(vx[k] * vx[k] + vy[k] * vy[k]);
+                    if (length >= Settings.EPSILON) {
+                        final float invLength = 1.0f / length;
+                        vx[k] *= invLength;
+                        vy[k] *= invLength;
+                    }
+                    vx[k] *= Settings.maxLinearVelocity;
+                    vy[k] *= Settings.maxLinearVelocity;
+                }
+                if (w[k] * w[k] > Settings.maxAngularVelocitySquared) {
+                    w[k] = w[k] < 0.0f ? -Settings.maxAngularVelocity : Settings.maxAngularVelocity;
+                }
+            }
+        }
+
+        // Initialize velocity constraints, warm starting from the last step's impulses.
+        for (int b = 0; b < BODY_COUNT; b++) {
+            for (int i = 0; i < solveCount; i++) {
+                final int lane = solveLanes[i];
+                if (pointCount[b * n + lane] > 0) {
+                    initContact(b, lane);
+                    warmStartContact(b, lane, dtRatio[lane]);
+                }
+            }
+        }
+        for (int seed = 0; seed < BODY_COUNT; seed++) {
+            final int[] order = jointOrderBySeed[seed];
+            for (int jointIndex = 0; jointIndex < JOINT_COUNT; jointIndex++) {
+                final int j = order[jointIndex];
+                for (int i = 0; i < seedCount[seed]; i++) {
+                    initJoint(j, seedLanes[seed * n + i], dt);
+                }
+            }
+        }
+
+        // Solve velocity constraints.
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (int b = 0; b < BODY_COUNT; b++) {
+                for (int i = 0; i < solveCount; i++) {
+                    final int lane = solveLanes[i];
+                    if (pointCount[b * n + lane] > 0) {
+                        solveContactVelocity(b, lane);
+                    }
+                }
+            }
+            for (int seed = 0; seed < BODY_COUNT; seed++) {
+                final int[] order = jointOrderBySeed[seed];
+                for (int jointIndex = 0; jointIndex < JOINT_COUNT; jointIndex++) {
+                    final int j = order[jointIndex];
+                    for (int i = 0; i < seedCount[seed]; i++) {
+                        solveJointVelocity(j, seedLanes[seed * n + i], dt, invDt);
+                    }
+                }
+            }
+        }
+
+        // Store impulses for warm starting.
+        for (int b = 0; b < BODY_COUNT; b++) {
+            for (int i = 0; i < solveCount; i++) {
+                final int lane = solveLanes[i];
+                final int k = b * n + lane;
+                for (int p = 0; p < pointCount[k]; p++) {
+                    final int pk = (b * MAX_POINTS + p) * n + lane;
+                    normalImpulse[pk] = solverNormalImpulse[pk];
+                    tangentImpulse[pk] = solverTangentImpulse[pk];
+                }
+            }
+        }
+
+        // Integrate positions.
+        for (int b = 0; b < BODY_COUNT; b++) {
+            for (int i = 0; i < solveCount; i++) {
+                final int k = b * n + solveLanes[i];
+                c0x[k] = cx[k];
+                c0y[k] = cy[k];
+                a0[k] = a[k];
+                cx[k] += dt * vx[k];
+                cy[k] += dt * vy[k];
+                a[k] += dt * w[k];
+                synchronizeTransform(b, k);
+            }
+        }
+
+        // Solve position constraints. Each lane stops once its own contacts and joints are within tolerance.
+        int correctingCount = solveCount;
+        for (int i = 0; i < solveCount; i++) {
+            correcting[solveLanes[i]] = true;
+        }
+        for (int iteration = 0; iteration < iterations && correctingCount > 0; iteration++) {
+            for (int i = 0; i < solveCount; i++) {
+                final int lane = solveLanes[i];
+                minSeparation[lane] = 0.0f;
+                jointsOkay[lane] = true;
+            }
+            for (int b = 0; b < BODY_COUNT; b++) {
+                for (int i = 0; i < solveCount; i++) {
+                    final int lane = solveLanes[i];
+                    if (correcting[lane] && pointCount[b * n + lane] > 0) {
+                        minSeparation[lane] = solveContactPosition(b, lane, Settings.contactBaumgarte,
+                                minSeparation[lane]);
+                    }
+                }
+            }
+            for (int seed = 0; seed < BODY_COUNT; seed++) {
+                final int[] order = jointOrderBySeed[seed];
+                for (int jointIndex = 0; jointIndex < JOINT_COUNT; jointIndex++) {
+                    final int j = order[jointIndex];
+                    for (int i = 0; i < seedCount[seed]; i++) {
+                        final int lane = seedLanes[seed * n + i];
+                        if (correcting[lane]) {
+                            final boolean jointOkay = solveJointPosition(j, lane);
+                            jointsOkay[lane] = jointsOkay[lane] && jointOkay;
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < solveCount; i++) {
+                final int lane = solveLanes[i];
+                if (correcting[lane] && minSeparation[lane] >= -1.5f * Settings.linearSlop && jointsOkay[lane]) {
+                    correcting[lane] = false;
+                    correctingCount--;
+                }
+            }
+        }
+        for (int i = 0; i < solveCount; i++) {
+            correcting[solveLanes[i]] = false;
+        }
+
+        // Put lanes to sleep once all their body parts have been still for long enough.
+        final float linTolSqr = Settings.linearSleepTolerance * Settings.linearSleepTolerance;
+        final float angTolSqr = Settings.angularSleepTolerance * Settings.angularSleepTolerance;
+        for (int i = 0; i < solveCount; i++) {
+            final int lane = solveLanes[i];
+            float minSleepTime = Float.MAX_VALUE;
+            for (int b = 0; b < BODY_COUNT; b++) {
+                final int k = b * n + lane;
+                if (!allowSleep[b] || w[k] * w[k] > angTolSqr || vx[k] * vx[k] + vy[k] * vy[k] > linTolSqr) {
+                    sleepTime[k] = 0.0f;
+                    minSleepTime = 0.0f;
+                } else {
+                    sleepTime[k] += dt;
+                    minSleepTime = MathUtils.min(minSleepTime, sleepTime[k]);
+                }
+            }
+            if (minSleepTime >= Settings.timeToSleep) {
+                boolean touching = false;
+                for (int b = 0; b < BODY_COUNT; b++) {
+                    final int k = b * n + lane;
+                    sleeping[k] = true;
+                    vx[k] = 0.0f;
+                    vy[k] = 0.0f;
+                    w[k] = 0.0f;
+                    touching |= pointCount[k] > 0;
+                }
+                if (touching) {
+                    trackSleeping[lane] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Update a body part's transform from its center and angle.
+     */
+    private void synchronizeTransform(int b, int k) {
+        final float c = MathUtils.cos(a[k]);
+        final float s = MathUtils.sin(a[k]);
+        cos[k] = c;
+        sin[k] = s;
+        px[k] = cx[k] - (c * centerX[b] + -s * centerY[b]);
+        py[k] = cy[k] - (s * centerX[b] + c * centerY[b]);
+    }
+
+    private void synchronizeTrack(int lane) {
+        trackPx[lane] = trackCx[lane] - (trackCos * trackCenterX + -trackSin * trackCenterY);
+        trackPy[lane] = trackCy[lane] - (trackSin * trackCenterX + trackCos * trackCenterY);
+    }
+
+    /**
+     * Set up the constraint for a touching contact, like {@link org.jbox2d.dynamics.contacts.ContactSolver#init}.
+     */
+    private void initContact(int b, int lane) {
+        final int n = laneCount;
+        final int k = b * n + lane;
+        final float invMass1 = invMass[b], invMass2 = 0.0f;
+        final float invI1 = invI[b], invI2 = 0.0f;
+        final float mass1 = mass[b], mass2 = 0.0f;
+        final float v1x = vx[k], v1y = vy[k], w1 = w[k];
+        final float v2x = 0.0f, v2y = 0.0f, w2 = 0.0f;
+        final float nx = normalX[k], ny = normalY[k];
+        for (int p = 0; p < pointCount[k]; p++) {
+            final int pk = (b * MAX_POINTS + p) * n + lane;
+            solverNormalImpulse[pk] = normalImpulse[pk];
+            solverTangentImpulse[pk] = tangentImpulse[pk];
+            positionImpulse[pk] = 0.0f;
+
+            final float v3x = localPoint1X[pk] - centerX[b];
+            final float v3y = localPoint1Y[pk] - centerY[b];
+            final float r1x = cos[k] * v3x + -sin[k] * v3y;
+            final float r1y = sin[k] * v3x + cos[k] * v3y;
+            final float v4x = localPoint2X[pk] - trackCenterX;
+            final float v4y = localPoint2Y[pk] - trackCenterY;
+            final float r2x = trackCos * v4x + -trackSin * v4y;
+            final float r2y = trackSin * v4x + trackCos * v4y;
+            arm1X[pk] = r1x;
+            arm1Y[pk] = r1y;
+            arm2X[pk] = r2x;
+            arm2Y[pk] = r2y;
+
+            float rn1 = r1x * ny - r1y * nx;
+            float rn2 = r2x * ny - r2y * nx;
+            rn1 *= rn1;
+            rn2 *= rn2;
+            final float kNormal = invMass1 + invMass2 + invI1 * rn1 + invI2 * rn2;
+            normalMass[pk] = 1.0f / kNormal;
+
+            float kEqualized = mass1 * invMass1 + mass2 * invMass2;
+            kEqualized += mass1 * invI1 * rn1 + mass2 * invI2 * rn2;
+            equalizedMass[pk] = 1.0f / kEqualized;
+
+            final float tangentx = ny;
+            final float tangenty = -nx;
+            float rt1 = r1x * tangenty - r1y * tangentx;
+            float rt2 = r2x * tangenty - r2y * tangentx;
+            rt1 *= rt1;
+            rt2 *= rt2;
+            final float kTangent = invMass1 + invMass2 + invI1 * rt1 + invI2 * rt2;
+            tangentMass[pk] = 1.0f / kTangent;
+
+            float bias = 0.0f;
+            if (separation[pk] > 0.0f) {
+                bias = -60.0f * separation[pk];
+            }
+            final float bufferx = -w2 * r2y - (-w1 * r1y) + v2x - v1x;
+            final float buffery = w2 * r2x - w1 * r1x + v2y - v1y;
+            final float vRel = nx * bufferx + ny * buffery;
+            if (vRel < -Settings.velocityThreshold) {
+                bias += -contactRestitution[b] * vRel;
+            }
+            velocityBias[pk] = bias;
+        }
+    }
+
+    private void warmStartContact(int b, int lane, float ratio) {
+        final int n = laneCount;
+        final int k = b * n + lane;
+        final float invMass1 = invMass[b];
+        final float invI1 = invI[b];
+        final float nx = normalX[k], ny = normalY[k];
+        final float tangentx = ny;
+        final float tangenty = -nx;
+        for (int p = 0; p < pointCount[k]; p++) {
+            final int pk = (b * MAX_POINTS + p) * n + lane;
+            solverNormalImpulse[pk] *= ratio;
+            solverTangentImpulse[pk] *= ratio;
+            final float impulseX = (solverNormalImpulse[pk] * nx + solverTangentImpulse[pk] * tangentx);
+            final float impulseY = (solverNormalImpulse[pk] * ny + solverTangentImpulse[pk] * tangenty);
+            w[k] -= invI1 * (arm1X[pk] * impulseY - arm1Y[pk] * impulseX);
+            vx[k] -= impulseX * invMass1;
+            vy[k] -= impulseY * invMass1;
+            // The track is static, so nothing is applied to it.
+        }
+    }
+
+    private void solveContactVelocity(int b, int lane) {
+        final int n = laneCount;
+        final int k = b * n + lane;
+        float w1 = w[k];
+        float v1x = vx[k];
+        float v1y = vy[k];
+        final float v2x = 0.0f, v2y = 0.0f, w2 = 0.0f;
+        final float invMass1 = invMass[b];
+        final float invI1 = invI[b];
+        final float nx = normalX[k], ny = normalY[k];
+        final float tangentx = ny;
+        final float tangenty = -nx;
+        final float friction = contactFriction[b];
+        final int count = pointCount[k];
+
+        // Solve normal constraints.
+        for (int p = 0; p < count; p++) {
+            final int pk = (b * MAX_POINTS + p) * n + lane;
+            final float dvx = v2x - w2 * arm2Y[pk] - v1x + w1 * arm1Y[pk];
+            final float dvy = v2y + w2 * arm2X[pk] - v1y - w1 * arm1X[pk];
+            final float vn = dvx * nx + dvy * ny;
+            float lambda = -normalMass[pk] * (vn - velocityBias[pk]);
+            final float newImpulse = MathUtils.max(solverNormalImpulse[pk] + lambda, 0.0f);
+            lambda = newImpulse - solverNormalImpulse[pk];
+            final float impulseX = lambda * nx;
+            final float impulseY = lambda * ny;
+            v1x -= invMass1 * impulseX;
+            v1y -= invMass1 * impulseY;
+            w1 -= invI1 * (arm1X[pk] * impulseY - arm1Y[pk] * impulseX);
+            solverNormalImpulse[pk] = newImpulse;
+        }
+
+        // Solve tangent constraints.
+        for (int p = 0; p < count; p++) {
+            final int pk = (b * MAX_POINTS + p) * n + lane;
+            final float dvx = v2x - w2 * arm2Y[pk] - v1x + w1 * arm1Y[pk];
+            final float dvy = v2y + w2 * arm2X[pk] - v1y - w1 * arm1X[pk];
+            final float vt = dvx * tangentx + dvy * tangenty;
+            float lambda = tangentMass[pk] * (-vt);
+            final float maxFriction = friction * solverNormalImpulse[pk];
+            final float newImpulse = MathUtils.max(-maxFriction, MathUtils.min(solverTangentImpulse[pk] + lambda,
+                    maxFriction));
+            lambda = newImpulse - solverTangentImpulse[pk];
+            final float impulseX = lambda * tangentx;
+            final float impulseY = lambda * tangenty;
+            v1x -= impulseX * invMass1;
+            v1y -= impulseY * invMass1;
+            w1 -= invI1 * (arm1X[pk] * impulseY - arm1Y[pk] * impulseX);
+            solverTangentImpulse[pk] = newImpulse;
+        }
+        vx[k] = v1x;
+        vy[k] = v1y;
+        w[k] = w1;
+    }
+
+    /**
+     * Push a body part out of the track.
+     *
+     * @return The smaller of the given separation and those found at this contact's points.
+     */
+    private float solveContactPosition(int b, int lane, float baumgarte, float minSeparation) {
+        final int n = laneCount;
+        final int k = b * n + lane;
+        final float invMass1 = mass[b] * invMass[b];
+        final float invI1 = mass[b] * invI[b];
+        final float nx = normalX[k], ny = normalY[k];
+        for (int p = 0; p < pointCount[k]; p++) {
+            final int pk = (b * MAX_POINTS + p) * n + lane;
+            float vx = localPoint1X[pk] - centerX[b];
+            float vy = localPoint1Y[pk] - centerY[b];
+            final float r1x = cos[k] * vx + -sin[k] * vy;
+            final float r1y = sin[k] * vx + cos[k] * vy;
+            vx = localPoint2X[pk] - trackCenterX;
+            vy = localPoint2Y[pk] - trackCenterY;
+            final float r2x = trackCos * vx + -trackSin * vy;
+            final float r2y = trackSin * vx + trackCos * vy;
+
+            final float dpx = trackCx[lane] + r2x - cx[k] - r1x;
+            final float dpy = trackCy[lane] + r2y - cy[k] - r1y;
+            final float pointSeparation = dpx * nx + dpy * ny + separation[pk];
+            minSeparation = MathUtils.min(minSeparation, pointSeparation);
+            final float C = baumgarte * MathUtils.clamp(pointSeparation + Settings.linearSlop,
+                    -Settings.maxLinearCorrection, 0.0f);
+            float dImpulse = -equalizedMass[pk] * C;
+            final float impulse0 = positionImpulse[pk];
+            positionImpulse[pk] = MathUtils.max(impulse0 + dImpulse, 0.0f);
+            dImpulse = positionImpulse[pk] - impulse0;
+
+            final float impulseX = dImpulse * nx;
+            final float impulseY = dImpulse * ny;
+            cx[k] -= invMass1 * impulseX;
+            cy[k] -= invMass1 * impulseY;
+            a[k] -= invI1 * (r1x * impulseY - r1y * impulseX);
+            synchronizeTransform(b, k);
+            // The track does not move.
+        }
+        return minSeparation;
+    }
+
+    /*
+     * Joints, like RevoluteJoint.
+     */
+
+    private void initJoint(int j, int lane, float dt) {
+        final int n = laneCount;
+        final int k = j * n + lane;
+        final int b1 = JOINT_BODY1[j], b2 = JOINT_BODY2[j];
+        final int k1 = b1 * n + lane, k2 = b2 * n + lane;
+
+        final float r1x = cos[k1] * localArm1X[j] + -sin[k1] * localArm1Y[j];
+        final float r1y = sin[k1] * localArm1X[j] + cos[k1] * localArm1Y[j];
+        final float r2x = cos[k2] * localArm2X[j] + -sin[k2] * localArm2Y[j];
+        final float r2y = sin[k2] * localArm2X[j] + cos[k2] * localArm2Y[j];
+        jointArm1X[k] = r1x;
+        jointArm1Y[k] = r1y;
+        jointArm2X[k] = r2x;
+        jointArm2Y[k] = r2y;
+
+        final float invMass1 = invMass[b1], invMass2 = invMass[b2];
+        final float invI1 = invI[b1], invI2 = invI[b2];
+
+        // K = K1 + K2 + K3, then inverted.
+        final float k11 = invMass1 + invMass2 + invI1 * r1y * r1y + invI2 * r2y * r2y;
+        final float k12 = 0.0f + -invI1 * r1x * r1y + -invI2 * r2x * r2y;
+        final float k21 = 0.0f + -invI1 * r1x * r1y + -invI2 * r2x * r2y;
+        final float k22 = invMass1 + invMass2 + invI1 * r1x * r1x + invI2 * r2x * r2x;
+        float det = k11 * k22 - k12 * k21;
+        det = 1.0f / det;
+        pivotMass11[k] = det * k22;
+        pivotMass12[k] = -det * k12;
+        pivotMass21[k] = -det * k21;
+        pivotMass22[k] = det * k11;
+
+        if (!enableMotor[j]) {
+            motorForce[k] = 0.0f;
+        }
+
+        if (enableLimit[j]) {
+            final float jointAngle = a[k2] - a[k1] - referenceAngle[j];
+            if (MathUtils.abs(upperAngle[k] - lowerAngle[k]) < 2.0f * Settings.angularSlop) {
+                limitState[k] = LIMIT_EQUAL;
+            } else if (jointAngle <= lowerAngle[k]) {
+                if (limitState[k] != LIMIT_LOWER) {
+                    limitForce[k] = 0.0f;
+                }
+                limitState[k] = LIMIT_LOWER;
+            } else if (jointAngle >= upperAngle[k]) {
+                if (limitState[k] != LIMIT_UPPER) {
+                    limitForce[k] = 0.0f;
+                }
+                limitState[k] = LIMIT_UPPER;
+            } else {
+                limitState[k] = LIMIT_INACTIVE;
+                limitForce[k] = 0.0f;
+            }
+        } else {
+            limitForce[k] = 0.0f;
+        }
+
+        // Warm start.
+        vx[k1] -= dt * invMass1 * pivotForceX[k];
+        vy[k1] -= dt * invMass1 * pivotForceY[k];
+        w[k1] -= dt * invI1 * ((r1x * pivotForceY[k] - r1y * pivotForceX[k]) + motorForce[k] + limitForce[k]);
+        vx[k2] += dt * invMass2 * pivotForceX[k];
+        vy[k2] += dt * invMass2 * pivotForceY[k];
+        w[k2] += dt * invI2 * ((r2x * pivotForceY[k] - r2y * pivotForceX[k]) + motorForce[k] + limitForce[k]);
+
+        limitPositionImpulse[k] = 0.0f;
+    }
+
+    private void solveJointVelocity(int j, int lane, float dt, float invDt) {
+        final int n = laneCount;
+        final int k = j * n + lane;
+        final int b1 = JOINT_BODY1[j], b2 = JOINT_BODY2[j];
+        final int k1 = b1 * n + lane, k2 = b2 * n + lane;
+        final float r1x = jointArm1X[k], r1y = jointArm1Y[k];
+        final float r2x = jointArm2X[k], r2y = jointArm2Y[k];
+
+        // Solve the point to point constraint.
+        final float temp1x = -w[k1] * r1y;
+        final float temp1y = w[k1] * r1x;
+        final float temp2x = -w[k2] * r2y - vx[k1] - temp1x + vx[k2];
+        final float temp2y = w[k2] * r2x - vy[k1] - temp1y + vy[k2];
+        float forceX = pivotMass11[k] * temp2x + pivotMass12[k] * temp2y;
+        float forceY = pivotMass21[k] * temp2x + pivotMass22[k] * temp2y;
+        forceX *= -invDt;
+        forceY *= -invDt;
+        pivotForceX[k] += forceX;
+        pivotForceY[k] += forceY;
+
+        final float impulseX = forceX * dt;
+        final float impulseY = forceY * dt;
+        vx[k1] -= invMass[b1] * impulseX;
+        vy[k1] -= invMass[b1] * impulseY;
+        w[k1] -= invI[b1] * (r1x * impulseY - r1y * impulseX);
+        vx[k2] += invMass[b2] * impulseX;
+        vy[k2] += invMass[b2] * impulseY;
+        w[k2] += invI[b2] * (r2x * impulseY - r2y * impulseX);
+
+        final float motorMass = 1.0f / (invI[b1] + invI[b2]);
+        if (enableMotor[j] && limitState[k] != LIMIT_EQUAL) {
+            final float motorCdot = w[k2] - w[k1] - motorSpeed[k];
+            float force = -invDt * motorMass * motorCdot;
+            final float oldMotorForce = motorForce[k];
+            motorForce[k] = MathUtils.clamp(motorForce[k] + force, -maxMotorTorque[k], maxMotorTorque[k]);
+            force = motorForce[k] - oldMotorForce;
+
+            final float impulse = dt * force;
+            w[k1] -= invI[b1] * impulse;
+            w[k2] += invI[b2] * impulse;
+        }
+
+        if (enableLimit[j] && limitState[k] != LIMIT_INACTIVE) {
+            final float limitCdot = w[k2] - w[k1];
+            float force = -invDt * motorMass * limitCdot;
+            if (limitState[k] == LIMIT_EQUAL) {
+                limitForce[k] += force;
+            } else if (limitState[k] == LIMIT_LOWER) {
+                final float oldLimitForce = limitForce[k];
+                limitForce[k] = MathUtils.max(limitForce[k] + force, 0.0f);
+                force = limitForce[k] - oldLimitForce;
+            } else if (limitState[k] == LIMIT_UPPER) {
+                final float oldLimitForce = limitForce[k];
+                limitForce[k] = MathUtils.min(limitForce[k] + force, 0.0f);
+                force = limitForce[k] - oldLimitForce;
+            }
+
+            final float impulse = dt * force;
+            w[k1] -= invI[b1] * impulse;
+            w[k2] += invI[b2] * impulse;
+        }
+    }
+
+    /**
+     * @return Whether the joint was already within tolerance.
+     */
+    private boolean solveJointPosition(int j, int lane) {
+        final int n = laneCount;
+        final int k = j * n + lane;
+        final int b1 = JOINT_BODY1[j], b2 = JOINT_BODY2[j];
+        final int k1 = b1 * n + lane, k2 = b2 * n + lane;
+
+        final float r1x = cos[k1] * localArm1X[j] + -sin[k1] * localArm1Y[j];
+        final float r1y = sin[k1] * localArm1X[j] + cos[k1] * localArm1Y[j];
+        final float r2x = cos[k2] * localArm2X[j] + -sin[k2] * localArm2Y[j];
+        final float r2y = sin[k2] * localArm2X[j] + cos[k2] * localArm2Y[j];
+
+        final float errorX = (cx[k2] + r2x) - (cx[k1] + r1x);
+        final float errorY = (cy[k2] + r2y) - (cy[k1] + r1y);
+        final float positionError = MathUtils.sqrt(errorX * errorX + errorY * errorY);
+
+        final float invMass1 = invMass[b1], invMass2 = invMass[b2];
+        final float invI1 = invI[b1], invI2 = invI[b2];
+
+        // Solve K * impulse = -error.
+        final float k11 = invMass1 + invMass2 + invI1 * r1y * r1y + invI2 * r2y * r2y;
+        final float k12 = 0.0f + -invI1 * r1x * r1y + -invI2 * r2x * r2y;
+        final float k21 = 0.0f + -invI1 * r1x * r1y + -invI2 * r2x * r2y;
+        final float k22 = invMass1 + invMass2 + invI1 * r1x * r1x + invI2 * r2x * r2x;
+        final float bx = -errorX;
+        final float by = -errorY;
+        float det = k11 * k22 - k12 * k21;
+        det = 1.0f / det;
+        final float impulseY = det * (k11 * by - k21 * bx);
+        final float impulseX = det * (k22 * bx - k12 * by);
+
+        cx[k1] -= invMass1 * impulseX;
+        cy[k1] -= invMass1 * impulseY;
+        a[k1] -= invI1 * (r1x * impulseY - r1y * impulseX);
+        cx[k2] += invMass2 * impulseX;
+        cy[k2] += invMass2 * impulseY;
+        a[k2] += invI2 * (r2x * impulseY - r2y * impulseX);
+        synchronizeTransform(b1, k1);
+        synchronizeTransform(b2, k2);
+
+        // Handle limits.
+        float angularError = 0.0f;
+        if (enableLimit[j] && limitState[k] != LIMIT_INACTIVE) {
+            final float motorMass = 1.0f / (invI1 + invI2);
+            final float angle = a[k2] - a[k1] - referenceAngle[j];
+            float limitImpulse = 0.0f;
+            if (limitState[k] == LIMIT_EQUAL) {
+                final float limitC = MathUtils.clamp(angle, -Settings.maxAngularCorrection,
+                        Settings.maxAngularCorrection);
+                limitImpulse = -motorMass * limitC;
+                angularError = MathUtils.abs(limitC);
+            } else if (limitState[k] == LIMIT_LOWER) {
+                float limitC = angle - lowerAngle[k];
+                angularError = MathUtils.max(0.0f, -limitC);
+                limitC = MathUtils.clamp(limitC + Settings.angularSlop, -Settings.maxAngularCorrection, 0.0f);
+                limitImpulse = -motorMass * limitC;
+                final float oldLimitImpulse = limitPositionImpulse[k];
+                limitPositionImpulse[k] = MathUtils.max(limitPositionImpulse[k] + limitImpulse, 0.0f);
+                limitImpulse = limitPositionImpulse[k] - oldLimitImpulse;
+            } else if (limitState[k] == LIMIT_UPPER) {
+                float limitC = angle - upperAngle[k];
+                angularError = MathUtils.max(0.0f, limitC);
+                limitC = MathUtils.clamp(limitC - Settings.angularSlop, 0.0f, Settings.maxAngularCorrection);
+                limitImpulse = -motorMass * limitC;
+                final float oldLimitImpulse = limitPositionImpulse[k];
+                limitPositionImpulse[k] = MathUtils.min(limitPositionImpulse[k] + limitImpulse, 0.0f);
+                limitImpulse = limitPositionImpulse[k] - oldLimitImpulse;
+            }
+
+            a[k1] -= invI1 * limitImpulse;
+            a[k2] += invI2 * limitImpulse;
+            synchronizeTransform(b1, k1);
+            synchronizeTransform(b2, k2);
+        }
+        return positionError <= Settings.linearSlop && angularError <= Settings.angularSlop;
+    }
+
+    /*
+     * Broad-phase bounds and time of impact.
+     */
+
+    /**
+     * Update the swept bounds of the lane's awake body parts, from where they were at the start of the step to where
+     * they are now.
+     *
+     * @return False if the runner left the world, in which case the lane is failed and stops.
+     */
+    private boolean synchronizeShapes(int lane) {
+        final int n = laneCount;
+        for (int i = 0; i < BODY_COUNT; i++) {
+            final int b = bodyListOrder[i];
+            final int k = b * n + lane;
+            if (sleeping[k]) {
+                continue;
+            }
+            if (!synchronizeBounds(b, k)) {
+                leaveWorld(lane);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean synchronizeBounds(int b, int k) {
+        final float c = MathUtils.cos(a0[k]);
+        final float s = MathUtils.sin(a0[k]);
+        setXForm(sweptXForm, c0x[k] - (c * centerX[b] + -s * centerY[b]),
+                c0y[k] - (s * centerX[b] + c * centerY[b]), c, s);
+        setXForm(bodyXForm, px[k], py[k], cos[k], sin[k]);
+        shapes[b].computeSweptAABB(sweptBounds, sweptXForm, bodyXForm);
+        if (!inWorld(sweptBounds)) {
+            return false;
+        }
+        storeBounds(k, sweptBounds);
+        return true;
+    }
+
+    private void storeBounds(int k, AABB bounds) {
+        lowerX[k] = bounds.lowerBound.x;
+        lowerY[k] = bounds.lowerBound.y;
+        upperX[k] = bounds.upperBound.x;
+        upperY[k] = bounds.upperBound.y;
+    }
+
+    private boolean inWorld(AABB aabb) {
+        final float ax = aabb.lowerBound.x - worldBounds.upperBound.x;
+        final float ay = aabb.lowerBound.y - worldBounds.upperBound.y;
+        final float bx = worldBounds.lowerBound.x - aabb.upperBound.x;
+        final float by = worldBounds.lowerBound.y - aabb.upperBound.y;
+        final float dx = MathUtils.max(ax, bx);
+        final float dy = MathUtils.max(ay, by);
+        return (MathUtils.max(dx, dy) < 0.0f);
+    }
+
+    private void leaveWorld(int lane) {
+        outOfWorld[lane] = true;
+        isFailed[lane] = true;
+    }
+
+    /**
+     * Find fast-moving body parts which would pass into the track during the step, move them back to the time they hit
+     * it and solve them again from there, like {@link org.jbox2d.dynamics.World}'s solveTOI. Body parts are only
+     * solved against the track, since JBox2D leaves joints out of these islands.
+     */
+    private void solveTOI(int lane, float dt) {
+        final int n = laneCount;
+        for (int b = 0; b < BODY_COUNT; b++) {
+            t0[b * n + lane] = 0.0f;
+        }
+        trackT0[lane] = 0.0f;
+        for (int i = 0; i < contactCount[lane]; i++) {
+            toiValid[contactOrder[lane * BODY_COUNT + i] * n + lane] = false;
+        }
+
+        while (true) {
+            // Find the first time of impact.
+            int minBody = -1;
+            float minTOI = 1.0f;
+            for (int i = 0; i < contactCount[lane]; i++) {
+                final int b = contactOrder[lane * BODY_COUNT + i];
+                final int k = b * n + lane;
+                float contactTOI;
+                if (toiValid[k]) {
+                    contactTOI = toi[k];
+                } else {
+                    if (sleeping[k]) {
+                        continue;
+                    }
+                    // Put the sweeps onto the same time interval.
+                    float start = t0[k];
+                    if (t0[k] < trackT0[lane]) {
+                        start = trackT0[lane];
+                        advanceSweep(k, start);
+                    } else if (trackT0[lane] < t0[k]) {
+                        start = t0[k];
+                        advanceTrackSweep(lane, start);
+                    }
+                    contactTOI = timeOfImpact.timeOfImpact(shapes[b], getSweep(b, k), trackShape,
+                            getTrackSweep(lane));
+                    if (contactTOI > 0.0f && contactTOI < 1.0f) {
+                        contactTOI = MathUtils.min((1.0f - contactTOI) * start + contactTOI, 1.0f);
+                    }
+                    toi[k] = contactTOI;
+                    toiValid[k] = true;
+                }
+                if (Settings.EPSILON < contactTOI && contactTOI < minTOI) {
+                    minBody = b;
+                    minTOI = contactTOI;
+                }
+            }
+
+            if (minBody < 0 || 1.0f - 100.0f * Settings.EPSILON < minTOI) {
+                break;
+            }
+
+            // Advance the body part and the track to the time of impact.
+            final int k = minBody * n + lane;
+            advanceSweep(k, minTOI);
+            cx[k] = c0x[k];
+            cy[k] = c0y[k];
+            a[k] = a0[k];
+            synchronizeTransform(minBody, k);
+            advanceTrackSweep(lane, minTOI);
+            trackCx[lane] = trackC0x[lane];
+            trackCy[lane] = trackC0y[lane];
+            synchronizeTrack(lane);
+
+            // The contact likely has new points.
+            updateContact(minBody, lane);
+            toiValid[k] = false;
+            if (pointCount[k] == 0) {
+                continue;
+            }
+
+            // The island is just the body part, its contact and the track.
+            sleeping[k] = false;
+            trackSleeping[lane] = false;
+            solveTOIIsland(minBody, lane, (1.0f - minTOI) * dt);
+
+            if (!synchronizeBounds(minBody, k)) {
+                leaveWorld(lane);
+                return;
+            }
+            toiValid[k] = false;
+            commit(lane);
+        }
+    }
+
+    private void solveTOIIsland(int b, int lane, float dt) {
+        final int k = b * laneCount + lane;
+        initContact(b, lane);
+        for (int i = 0; i < iterations; i++) {
+            solveContactVelocity(b, lane);
+        }
+        c0x[k] = cx[k];
+        c0y[k] = cy[k];
+        a0[k] = a[k];
+        cx[k] += dt * vx[k];
+        cy[k] += dt * vy[k];
+        a[k] += dt * w[k];
+        synchronizeTransform(b, k);
+        for (int i = 0; i < iterations; i++) {
+            if (solveContactPosition(b, lane, TOI_BAUMGARTE, 0.0f) >= -1.5f * Settings.linearSlop) {
+                break;
+            }
+        }
+    }
+
+    private void advanceSweep(int k, float t) {
+        if (t0[k] < t && 1.0f - t0[k] > Settings.EPSILON) {
+            final float alpha = (t - t0[k]) / (1.0f - t0[k]);
+            c0x[k] = (1.0f - alpha) * c0x[k] + alpha * cx[k];
+            c0y[k] = (1.0f - alpha) * c0y[k] + alpha * cy[k];
+            a0[k] = (1.0f - alpha) * a0[k] + alpha * a[k];
+            t0[k] = t;
+        }
+    }
+
+    private void advanceTrackSweep(int lane, float t) {
+        if (trackT0[lane] < t && 1.0f - trackT0[lane] > Settings.EPSILON) {
+            final float alpha = (t - trackT0[lane]) / (1.0f - trackT0[lane]);
+            trackC0x[lane] = (1.0f - alpha) * trackC0x[lane] + alpha * trackCx[lane];
+            trackC0y[lane] = (1.0f - alpha) * trackC0y[lane] + alpha * trackCy[lane];
+            trackT0[lane] = t;
+        }
+    }
+
+    private Sweep getSweep(int b, int k) {
+        bodySweep.localCenter.set(centerX[b], centerY[b]);
+        bodySweep.c0.set(c0x[k], c0y[k]);
+        bodySweep.c.set(cx[k], cy[k]);
+        bodySweep.a0 = a0[k];
+        bodySweep.a = a[k];
+        bodySweep.t0 = t0[k];
+        return bodySweep;
+    }
+
+    private Sweep getTrackSweep(int lane) {
+        trackSweep.localCenter.set(trackCenterX, trackCenterY);
+        trackSweep.c0.set(trackC0x[lane], trackC0y[lane]);
+        trackSweep.c.set(trackCx[lane], trackCy[lane]);
+        trackSweep.a0 = 0.0f;
+        trackSweep.a = 0.0f;
+        trackSweep.t0 = trackT0[lane];
+        return trackSweep;
+    }
+
+    /*
+     * States.
+     */
+
+    /**
+     * Write the current state of one lane into a caller-supplied array without allocating anything, in the same order
+     * as {@link GameQWOP#getCurrentState(float[], int)}.
+     *
+     * @param lane Index of the lane.
+     * @param dest Array to write the {@link StateQWOP#STATE_SIZE} state values into.
+     * @param offset Index in dest at which to write the first value.
+     */
+    public void getCurrentState(int lane, float[] dest, int offset) {
+        if (offset < 0 || offset + StateQWOP.STATE_SIZE > dest.length) {
+            throw new IndexOutOfBoundsException("Not enough room in the destination array for a state. Array size: "
+                    + dest.length + ", offset: " + offset);
+        }
+        int idx = offset;
+        for (int b = 0; b < BODY_COUNT; b++) {
+            final int k = b * laneCount + lane;
+            dest[idx++] = px[k];
+            dest[idx++] = py[k];
+            dest[idx++] = a[k];
+            dest[idx++] = vx[k];
+            dest[idx++] = vy[k];
+            dest[idx++] = w[k];
+        }
+    }
+
+    /**
+     * Get the current state of one lane.
+     *
+     * @param lane Index of the lane.
+     * @return The full state of that lane's runner.
+     */
+    public StateQWOP getCurrentState(int lane) {
+        float[] state = new float[StateQWOP.STATE_SIZE];
+        getCurrentState(lane, state, 0);
+        return new StateQWOP(state, isFailed[lane]);
+    }
+
+    /**
+     * Write the current states of all lanes into one array in struct-of-arrays order: all lanes' values of the first
+     * state variable, then all lanes' values of the second, and so on. Variables are in the same order as
+     * {@link GameQWOP#getCurrentState(float[], int)}, so state variable v of lane l is at
+     * {@code dest[v * laneCount + l]}. Nothing is allocated.
+     *
+     * @param dest Array with room for {@link StateQWOP#STATE_SIZE} * {@link #laneCount} values.
+     */
+    public void getCurrentStates(float[] dest) {
+        Preconditions.checkArgument(dest.length >= StateQWOP.STATE_SIZE * laneCount,
+                "Not enough room in the destination array for the states of all lanes.", dest.length);
+        final int n = laneCount;
+        for (int b = 0; b < BODY_COUNT; b++) {
+            final int start = b * 6 * n;
+            System.arraycopy(px, b * n, dest, start, n);
+            System.arraycopy(py, b * n, dest, start + n, n);
+            System.arraycopy(a, b * n, dest, start + 2 * n, n);
+            System.arraycopy(vx, b * n, dest, start + 3 * n, n);
+            System.arraycopy(vy, b * n, dest, start + 4 * n, n);
+            System.arraycopy(w, b * n, dest, start + 5 * n, n);
+        }
+    }
+
+    /**
+     * Put one lane's runner in a state, like {@link GameQWOP#setState(StateQWOP)}. Only the positions and velocities
+     * are set. Contacts, warm starting and sleeping carry on from the lane's current state.
+     *
+     * @param lane Index of the lane.
+     * @param state State to put the runner in.
+     */
+    public void setState(int lane, StateQWOP state) {
+        isFailed[lane] = false;
+        outOfWorld[lane] = false;
+        final ObjectName[] names = ObjectName.values();
+        for (int b : SET_STATE_ORDER) {
+            final int k = b * laneCount + lane;
+            final StateVariable6D stateVariable = state.getStateVariableFromName(names[b]);
+            final float angle = stateVariable.getTh();
+            final float c = MathUtils.cos(angle);
+            final float s = MathUtils.sin(angle);
+            cos[k] = c;
+            sin[k] = s;
+            px[k] = stateVariable.getX();
+            py[k] = stateVariable.getY();
+            cy[k] = py[k] + s * centerX[b] + c * centerY[b];
+            cx[k] = px[k] + c * centerX[b] + -s * centerY[b];
+            c0x[k] = cx[k];
+            c0y[k] = cy[k];
+            a0[k] = a[k] = angle;
+
+            setXForm(bodyXForm, px[k], py[k], c, s);
+            shapes[b].computeSweptAABB(sweptBounds, bodyXForm, bodyXForm);
+            if (!inWorld(sweptBounds)) {
+                leaveWorld(lane);
+            } else {
+                storeBounds(k, sweptBounds);
+                commit(lane);
+            }
+
+            vx[k] = stateVariable.getDx();
+            vy[k] = stateVariable.getDy();
+            w[k] = stateVariable.getDth();
+        }
+    }
+
+    /**
+     * Check whether one lane's runner has fallen.
+     *
+     * @param lane Index of the lane.
+     * @return Whether that lane is in failure.
+     */
+    public boolean isFailed(int lane) {
+        return isFailed[lane];
+    }
+
+    /**
+     * Get the number of lanes whose runner has fallen.
+     */
+    public int getFailedCount() {
+        int count = 0;
+        for (boolean failed : isFailed) {
+            if (failed) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of timesteps one lane has been stepped since it was last reset.
+     *
+     * @param lane Index of the lane.
+     */
+    public long getTimestepsThisGame(int lane) {
+        return timesteps[lane];
+    }
+
+    public boolean isRightFootDown(int lane) {
+        return rFootDown[lane];
+    }
+
+    public boolean isLeftFootDown(int lane) {
+        return lFootDown[lane];
+    }
+
+    /**
+     * One lane of a {@link BatchGameQWOP}, as a game of its own. Stepping it steps only this lane.
+     */
+    public class Lane implements IGameInternal<CommandQWOP, StateQWOP> {
+
+        /**
+         * Index of this lane in the batch.
+         */
+        public final int lane;
+
+        private Lane(int lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void resetGame() {
+            BatchGameQWOP.this.resetGame(lane);
+        }
+
+        @Override
+        public void step(CommandQWOP command) {
+            Preconditions.checkNotNull(command);
+            laneCommands[lane] = command;
+            stepLanes(1);
+        }
+
+        @Override
+        public void command(CommandQWOP command) {
+            step(command);
+        }
+
+        @Override
+        public int getNumberOfChoices() {
+            return GameQWOP.ACTIONSPACE_SIZE;
+        }
+
+        @Override
+        public StateQWOP getCurrentState() {
+            return BatchGameQWOP.this.getCurrentState(lane);
+        }
+
+        /**
+         * See {@link BatchGameQWOP#getCurrentState(int, float[], int)}.
+         */
+        public void getCurrentState(float[] dest, int offset) {
+            BatchGameQWOP.this.getCurrentState(lane, dest, offset);
+        }
+
+        @Override
+        public boolean isFailed() {
+            return BatchGameQWOP.this.isFailed(lane);
+        }
+
+        @Override
+        public long getTimestepsThisGame() {
+            return BatchGameQWOP.this.getTimestepsThisGame(lane);
+        }
+
+        @Override
+        public int getStateDimension() {
+            return GameQWOP.STATE_SIZE;
+        }
+
+        public boolean isRightFootDown() {
+            return BatchGameQWOP.this.isRightFootDown(lane);
+        }
+
+        public boolean isLeftFootDown() {
+            return BatchGameQWOP.this.isLeftFootDown(lane);
+        }
+
+        @Override
+        public void setState(StateQWOP state) {
+            BatchGameQWOP.this.setState(lane, state);
+        }
+
+        /**
+         * Draw this lane's runner, centered on its torso like {@link GameQWOP#draw(Graphics, float, int, int)}. The
+         * track is not drawn.
+         */
+        @Override
+        public void draw(Graphics g, float runnerScaling, int xOffsetPixels, int yOffsetPixels) {
+            final int torsoX = (int) (runnerScaling * px[TORSO * laneCount + lane]);
+            GameQWOP.drawExtraRunner((Graphics2D) g, getCurrentState(), "", runnerScaling, xOffsetPixels - torsoX,
+                    yOffsetPixels, Color.BLACK, new BasicStroke(0.5f));
+        }
+
+        /**
+         * Get a separate game at its starting state, which runs the same as a lane would.
+         */
+        @Override
+        public GameQWOP getCopy() {
+            return new GameQWOP(true);
+        }
+    }
+}
@@ -165,6 +165,6 @@ public class CommandQWOP extends Command<boolean[]> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(keys, get());
+        return Objects.hash(keys, Arrays.hashCode(get())); // Equal commands may not share the same array.
     }
 }
@@ -1,6 +1,8 @@
 package game.qwop;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import game.IGameSerializable;
@@ -27,6 +29,8 @@ import org.nustaq.serialization.FSTConfiguration;
 
 import java.awt.*;
 import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.FloatBuffer;
 
 import static game.qwop.QWOPConstants.*;
 
@@ -76,6 +80,11 @@ public class GameQWOP implements IGameSerializable<CommandQWOP, StateQWOP> {
 
     private Body[] allBodies;
 
+    /**
+     * Same bodies as {@link #allBodies}, but in the order that {@link StateQWOP} flattens them.
+     */
+    private Body[] stateOrderBodies;
+
     /* Joint Definitions */
     @SuppressWarnings("FieldCanBeLocal")
     private RevoluteJointDef rHipJDef, lHipJDef, rKneeJDef, lKneeJDef, rAnkleJDef, lAnkleJDef, rShoulderJDef,
@@ -195,7 +204,26 @@ public class GameQWOP implements IGameSerializable<CommandQWOP, StateQWOP> {
      */
     private static FSTConfiguration fstConfiguration = FSTConfiguration.createDefaultConfiguration();
 
+    /**
+     * Should contacts with the track come from a direct body-vs-ground check instead of the general broad-phase? The
+     * body parts never collide with each other, so this makes the same contacts with less bookkeeping.
+     */
+    @JsonProperty("directGroundContacts")
+    public final boolean directGroundContacts;
+
     public GameQWOP() {
+        this(false);
+    }
+
+    /**
+     * Make a new game.
+     *
+     * @param directGroundContacts Make contacts with the track directly rather than with the general broad-phase. See
+     *                             {@link org.jbox2d.dynamics.GroundContactGenerator}.
+     */
+    @JsonCreator
+    public GameQWOP(@JsonProperty("directGroundContacts") boolean directGroundContacts) {
+        this.directGroundContacts = directGroundContacts;
         resetGame();
     }
 
@@ -375,7 +403,7 @@ public class GameQWOP implements IGameSerializable<CommandQWOP, StateQWOP> {
         timestepsSimulated = 0;
 
         /* World Settings */
-        world = new World(worldAABB, gravity, true);
+        world = new World(worldAABB, gravity, true, directGroundContacts);
         world.setWarmStarting(true);
         world.setPositionCorrection(true);
         world.setContinuousPhysics(true);
@@ -441,6 +469,8 @@ public class GameQWOP implements IGameSerializable<CommandQWOP, StateQWOP> {
 
         allBodies = new Body[]{rCalfBody, lCalfBody, rThighBody, lThighBody, torsoBody, rUArmBody,
                 lUArmBody, rLArmBody, lLArmBody, rFootBody, lFootBody, headBody};
+        stateOrderBodies = new Body[]{torsoBody, headBody, rThighBody, lThighBody, rCalfBody, lCalfBody, rFootBody,
+                lFootBody, rUArmBody, lUArmBody, rLArmBody, lLArmBody};
 
 //
 //        BodyDef blockBodyDef = new BodyDef();
@@ -862,6 +892,69 @@ public class GameQWOP implements IGameSerializable<CommandQWOP, StateQWOP> {
                 isFailed());
     }
 
+    /**
+     * Write the current full state of the runner into a caller-supplied array without allocating anything. Values are
+     * in the same order as {@link StateQWOP#StateQWOP(float[], boolean)} expects, and x coordinates are absolute, i.e.
+     * the body x is not subtracted out. Use {@link #isFailed()} for the failure flag.
+     *
+     * @param dest Array to write the {@link StateQWOP#STATE_SIZE} state values into.
+     * @param offset Index in dest at which to write the first value.
+     */
+    @JsonIgnore
+    public synchronized void getCurrentState(float[] dest, int offset) {
+        if (offset < 0 || offset + STATE_SIZE > dest.length) {
+            throw new IndexOutOfBoundsException("Not enough room in the destination array for a state. Array size: "
+                    + dest.length + ", offset: " + offset);
+        }
+        int idx = offset;
+        for (Body body : stateOrderBodies) {
+            if (noFeet && (body == rFootBody || body == lFootBody)) {
+                for (int i = 0; i < 6; i++) {
+                    dest[idx++] = 0;
+                }
+                continue;
+            }
+            Vec2 pos = body.getMemberPosition();
+            Vec2 vel = body.getLinearVelocity();
+            dest[idx++] = pos.x;
+            dest[idx++] = pos.y;
+            dest[idx++] = body.getAngle();
+            dest[idx++] = vel.x;
+            dest[idx++] = vel.y;
+            dest[idx++] = body.getAngularVelocity();
+        }
+    }
+
+    /**
+     * Write the current full state of the runner into a buffer without allocating anything. The
+     * {@link StateQWOP#STATE_SIZE} values are put at the buffer's current position in the same order as
+     * {@link #getCurrentState(float[], int)}, and the position is advanced past them.
+     *
+     * @param dest Buffer to put the state values into. Must have at least {@link StateQWOP#STATE_SIZE} remaining.
+     */
+    @JsonIgnore
+    public synchronized void getCurrentState(FloatBuffer dest) {
+        if (dest.remaining() < STATE_SIZE) {
+            throw new BufferOverflowException();
+        }
+        for (Body body : stateOrderBodies) {
+            if (noFeet && (body == rFootBody || body == lFootBody)) {
+                for (int i = 0; i < 6; i++) {
+                    dest.put(0);
+                }
+                continue;
+            }
+            Vec2 pos = body.getMemberPosition();
+            Vec2 vel = body.getLinearVelocity();
+            dest.put(pos.x);
+            dest.put(pos.y);
+            dest.put(body.getAngle());
+            dest.put(vel.x);
+            dest.put(vel.y);
+            dest.put(body.getAngularVelocity());
+        }
+    }
+
     /**
      * Get a new StateVariable6D for a given body.
      */
@@ -884,6 +977,15 @@ public class GameQWOP implements IGameSerializable<CommandQWOP, StateQWOP> {
         return allBodies;
     }
 
+    /**
+     * Get the runner's bodies in the same order as their state variables, i.e. torso, head, thighs, calves, feet,
+     * upper arms, then lower arms. For {@link BatchGameQWOP}, which copies the runner's layout from a game.
+     */
+    @JsonIgnore
+    Body[] getStateOrderBodies() {
+        return stateOrderBodies;
+    }
+
 
     // Avoid new allocations for what amounts to a temporary variable.
     private final Vec2 setPos = new Vec2();
@@ -929,7 +1031,7 @@ public class GameQWOP implements IGameSerializable<CommandQWOP, StateQWOP> {
 
     @JsonIgnore
     public GameQWOP getCopy() {
-        return new GameQWOP();
+        return new GameQWOP(directGroundContacts);
     }
 
     /**
@@ -1376,6 +1478,32 @@ public class GameQWOP implements IGameSerializable<CommandQWOP, StateQWOP> {
         return fstConfiguration.asByteArray(this);
     }
 
+    /**
+     * Copy the full state of another QWOP game into this one. This gives the same continuation as restoring the
+     * source's serialized state, down to the last bit, but copies the physics world's bodies, joints, broad-phase
+     * and contacts directly instead of going through bytes. This game must have been made in the same way as the
+     * source, e.g. not one with point feet and the other without.
+     *
+     * @param source Game to copy the full state of. Not changed.
+     * @return This game, or a new one if the source is not a {@link GameQWOP}.
+     */
+    @Override
+    public GameQWOP copyStateFrom(IGameSerializable<CommandQWOP, StateQWOP> source) {
+        if (!(source instanceof GameQWOP)) {
+            return restoreSerializedState(source.getSerializedState());
+        }
+        GameQWOP sourceGame = (GameQWOP) source;
+        synchronized (sourceGame) {
+            world.copyStateFrom(sourceGame.world);
+            isFailed = sourceGame.isFailed;
+            timestepsSimulated = sourceGame.timestepsSimulated;
+            iterations = sourceGame.iterations;
+            collisionListener.rFootDown = sourceGame.collisionListener.rFootDown;
+            collisionListener.lFootDown = sourceGame.collisionListener.lFootDown;
+        }
+        return this;
+    }
+
     @Override
     public GameQWOP restoreSerializedState(byte[] fullState) {
         GameQWOP gameRestored = (GameQWOP) fstConfiguration.asObject(fullState);
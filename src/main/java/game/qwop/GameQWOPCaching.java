@@ -6,9 +6,19 @@ import game.IGameSerializable;
 import org.nustaq.serialization.FSTConfiguration;
 
 import java.awt.*;
-import java.util.Arrays;
-import java.util.LinkedList;
 
+/**
+ * Wraps a {@link GameQWOP} and gives delay-embedded states, i.e. the current state stacked with the states from
+ * {@link #timestepDelay}, 2 * {@link #timestepDelay}, ... timesteps ago. Before the start of the game, the history
+ * is the initial state.
+ *
+ * Only as much history as the delay embedding can reach is kept, in a fixed-size ring buffer of raw state values.
+ * Stepping stores the new state into the buffer without allocating anything, and any delayed state can be looked up
+ * in constant time however long the game has run. {@link #getCurrentState(float[])} gives the flattened
+ * delay-embedded state without making any state objects at all.
+ *
+ * @author matt
+ */
 public class GameQWOPCaching<S extends StateQWOPDelayEmbedded> implements IGameSerializable<CommandQWOP, S> {
 
     @JsonIgnore
@@ -17,8 +27,34 @@ public class GameQWOPCaching<S extends StateQWOPDelayEmbedded> implements IGameS
     public enum StateType {
         POSES, DIFFERENCES, HIGHER_DIFFERENCES
     }
-    // Caches normal states to then assemble the delay-embedded ones.
-    private LinkedList<StateQWOP> cachedStates;
+    /**
+     * Recent states' values, {@link StateQWOP#STATE_SIZE} per slot, in the same order as
+     * {@link GameQWOP#getCurrentState(float[], int)}. Used as a ring buffer with one slot per timestep back to the
+     * oldest delayed state.
+     */
+    private float[] stateHistory;
+
+    /**
+     * Whether the runner had fallen in each slot of {@link #stateHistory}.
+     */
+    private boolean[] failedHistory;
+
+    /**
+     * Slot holding the current state.
+     */
+    private int newestSlot;
+
+    /**
+     * Number of slots filled since the last reset, up to the number of slots.
+     */
+    private int historyLength;
+
+    /**
+     * Reused working space for higher differences in {@link #getCurrentState(float[])}.
+     */
+    private float[] differenceBuffer;
+
+    private static final float[] initialStateValues = GameQWOP.getInitialState().flattenState(0f);
 
     // For delay embedding.
     @JsonProperty("timestepDelay")
@@ -38,14 +74,22 @@ public class GameQWOPCaching<S extends StateQWOPDelayEmbedded> implements IGameS
     public GameQWOPCaching(@JsonProperty("timestepDelay") int timestepDelay,
                            @JsonProperty("numDelayedStates") int numDelayedStates,
                            @JsonProperty("stateType") StateType stateType) {
-        game = new GameQWOP();
-        resetGame();
         if (timestepDelay < 1) {
             throw new IllegalArgumentException("Timestep delay must be at least one. Was: " + timestepDelay);
         }
+        if (numDelayedStates < 0) {
+            throw new IllegalArgumentException("Number of delayed states cannot be negative. Was: " + numDelayedStates);
+        }
         this.timestepDelay = timestepDelay;
         this.numDelayedStates = numDelayedStates;
 
+        int slots = timestepDelay * numDelayedStates + 1;
+        stateHistory = new float[slots * StateQWOP.STATE_SIZE];
+        failedHistory = new boolean[slots];
+        differenceBuffer = new float[(numDelayedStates + 1) * StateQWOP.STATE_SIZE / 2];
+        game = new GameQWOP();
+        resetGame();
+
         STATE_SIZE = (numDelayedStates + 1) * 36;
         this.stateType = stateType;
     }
@@ -64,17 +108,29 @@ public class GameQWOPCaching<S extends StateQWOPDelayEmbedded> implements IGameS
     public void resetGame() {
         game.resetGame();
 
-        if (cachedStates == null) {
-            cachedStates = new LinkedList<>();
-        }
-        cachedStates.clear();
-        cachedStates.add(GameQWOP.getInitialState());
+        newestSlot = 0;
+        historyLength = 1;
+        System.arraycopy(initialStateValues, 0, stateHistory, 0, StateQWOP.STATE_SIZE);
+        failedHistory[0] = false;
     }
 
     @Override
     public void step(CommandQWOP c) {
         game.step(c);
-        cachedStates.addFirst(game.getCurrentState());
+        newestSlot = (newestSlot + 1) % failedHistory.length;
+        game.getCurrentState(stateHistory, newestSlot * StateQWOP.STATE_SIZE);
+        failedHistory[newestSlot] = game.isFailed();
+        historyLength = Math.min(historyLength + 1, failedHistory.length);
+    }
+
+    /**
+     * Index in {@link #stateHistory} of the state some number of timesteps ago. Anything from before the history
+     * starts gives its oldest state, which is the initial state until the buffer has filled.
+     */
+    private int historyOffset(int timestepsAgo) {
+        int slotsBack = Math.min(timestepsAgo, historyLength - 1);
+        int slot = (newestSlot - slotsBack + failedHistory.length) % failedHistory.length;
+        return slot * StateQWOP.STATE_SIZE;
     }
 
     @Override
@@ -96,10 +152,11 @@ public class GameQWOPCaching<S extends StateQWOPDelayEmbedded> implements IGameS
     public S getCurrentState() {
 
         StateQWOP[] states = new StateQWOP[numDelayedStates + 1];
-        Arrays.fill(states, GameQWOP.getInitialState());
-
-        for (int i = 0; i < Integer.min(states.length, (cachedStates.size() + timestepDelay - 1) / timestepDelay); i++) {
-            states[i] = cachedStates.get(timestepDelay * i);
+        float[] stateValues = new float[StateQWOP.STATE_SIZE];
+        for (int i = 0; i < states.length; i++) {
+            int offset = historyOffset(timestepDelay * i);
+            System.arraycopy(stateHistory, offset, stateValues, 0, StateQWOP.STATE_SIZE);
+            states[i] = new StateQWOP(stateValues, failedHistory[offset / StateQWOP.STATE_SIZE]);
         }
 
         // TODO fix this gross below
@@ -115,6 +172,72 @@ public class GameQWOPCaching<S extends StateQWOPDelayEmbedded> implements IGameS
         }
     }
 
+    /**
+     * Write the current delay-embedded state into an array, without allocating anything. Values are the same as
+     * flattening the state from {@link #getCurrentState()} for this game's {@link #stateType}.
+     *
+     * @param dest Array to write {@link #getStateDimension()} values into.
+     */
+    public void getCurrentState(float[] dest) {
+        if (dest.length < STATE_SIZE) {
+            throw new IndexOutOfBoundsException("Not enough room in the destination array for a state. Array size: "
+                    + dest.length);
+        }
+        int poseSize = StateQWOPDelayEmbedded_Poses.INDIVIDUALSTATE_SIZE;
+        float xOffset = stateHistory[historyOffset(0)];
+
+        switch (stateType) {
+            case POSES:
+                for (int i = 0; i <= numDelayedStates; i++) {
+                    extractPositions(historyOffset(timestepDelay * i), xOffset, dest, i * poseSize);
+                }
+                break;
+            case DIFFERENCES:
+                extractPositions(historyOffset(0), xOffset, dest, 0);
+                for (int i = 1; i <= numDelayedStates; i++) {
+                    int newer = historyOffset(timestepDelay * (i - 1));
+                    int older = historyOffset(timestepDelay * i);
+                    for (int j = 0; j < StateQWOP.STATE_SIZE; j += 6) {
+                        int idx = i * poseSize + j / 2;
+                        dest[idx] = stateHistory[newer + j] - stateHistory[older + j];
+                        dest[idx + 1] = stateHistory[newer + j + 1] - stateHistory[older + j + 1];
+                        dest[idx + 2] = stateHistory[newer + j + 2] - stateHistory[older + j + 2];
+                    }
+                }
+                break;
+            case HIGHER_DIFFERENCES:
+                extractPositions(historyOffset(0), xOffset, dest, 0);
+                for (int i = 0; i <= numDelayedStates; i++) {
+                    extractPositions(historyOffset(timestepDelay * i), 0f, differenceBuffer, i * poseSize);
+                }
+                // Each pass turns the remaining values into differences of the next older minus the newer.
+                for (int order = 1; order <= numDelayedStates; order++) {
+                    for (int i = 0; i <= numDelayedStates - order; i++) {
+                        for (int j = 0; j < poseSize; j++) {
+                            differenceBuffer[i * poseSize + j] =
+                                    differenceBuffer[(i + 1) * poseSize + j] - differenceBuffer[i * poseSize + j];
+                        }
+                    }
+                    System.arraycopy(differenceBuffer, 0, dest, order * poseSize, poseSize);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unhandled state return type.");
+        }
+    }
+
+    /**
+     * Copy the x, y and angle of each body from a state in the history.
+     */
+    private void extractPositions(int historyOffset, float xOffset, float[] dest, int destOffset) {
+        for (int j = 0; j < StateQWOP.STATE_SIZE; j += 6) {
+            int idx = destOffset + j / 2;
+            dest[idx] = stateHistory[historyOffset + j] - xOffset;
+            dest[idx + 1] = stateHistory[historyOffset + j + 1];
+            dest[idx + 2] = stateHistory[historyOffset + j + 2];
+        }
+    }
+
     public void applyBodyImpulse(float xComp, float yComp) {
         game.applyBodyImpulse(xComp, yComp);
     }
@@ -129,13 +252,23 @@ public class GameQWOPCaching<S extends StateQWOPDelayEmbedded> implements IGameS
         return game.getTimestepsThisGame();
     }
 
+    /**
+     * Set the game to the newest state in a delay-embedded state, and the history to its older ones. Timesteps in
+     * between delayed states take the next older one.
+     */
     @Override
     public void setState(S state) {
-        cachedStates.clear();
-        for (int i = state.individualStates.length - 1; i >= 0; i--) { // element zero is the newest.
-            cachedStates.add(state.individualStates[i]);
+        StateQWOP[] states = state.individualStates; // Element zero is the newest.
+        newestSlot = 0;
+        historyLength = failedHistory.length;
+        for (int timestepsAgo = 0; timestepsAgo < failedHistory.length; timestepsAgo++) {
+            StateQWOP historyState = states[Math.min((timestepsAgo + timestepDelay - 1) / timestepDelay,
+                    states.length - 1)];
+            int offset = historyOffset(timestepsAgo);
+            System.arraycopy(historyState.flattenState(0f), 0, stateHistory, offset, StateQWOP.STATE_SIZE);
+            failedHistory[offset / StateQWOP.STATE_SIZE] = historyState.isFailed();
         }
-        game.setState(state.individualStates[0]);
+        game.setState(states[0]);
     }
 
     @Override
@@ -160,6 +293,31 @@ public class GameQWOPCaching<S extends StateQWOPDelayEmbedded> implements IGameS
         return gameRestored;
     }
 
+    /**
+     * Copy the full state of another caching game with the same delay embedding into this one, including the state
+     * history. See {@link GameQWOP#copyStateFrom(IGameSerializable)}.
+     *
+     * @param source Game to copy the full state of. Not changed.
+     * @return This game, or a new one if the source is some other kind of game.
+     */
+    @Override
+    public IGameSerializable<CommandQWOP, S> copyStateFrom(IGameSerializable<CommandQWOP, S> source) {
+        if (!(source instanceof GameQWOPCaching)) {
+            return restoreSerializedState(source.getSerializedState());
+        }
+        GameQWOPCaching<?> sourceGame = (GameQWOPCaching<?>) source;
+        if (sourceGame.timestepDelay != timestepDelay || sourceGame.numDelayedStates != numDelayedStates
+                || sourceGame.stateType != stateType) {
+            return restoreSerializedState(source.getSerializedState());
+        }
+        game.copyStateFrom(sourceGame.game);
+        System.arraycopy(sourceGame.stateHistory, 0, stateHistory, 0, stateHistory.length);
+        System.arraycopy(sourceGame.failedHistory, 0, failedHistory, 0, failedHistory.length);
+        newestSlot = sourceGame.newestSlot;
+        historyLength = sourceGame.historyLength;
+        return this;
+    }
+
     @Override
     public GameQWOPCaching<S> getCopy() {
         return new GameQWOPCaching<>(timestepDelay, numDelayedStates, stateType);
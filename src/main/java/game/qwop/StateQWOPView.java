@@ -0,0 +1,125 @@
+package game.qwop;
+
+import game.qwop.IStateQWOP.ObjectName;
+import game.state.StateVariable6D;
+import game.state.StateVariable6D.StateName;
+
+/**
+ * Mutable, reusable holder for a full runner state. Unlike {@link StateQWOP}, which allocates 12
+ * {@link StateVariable6D} every time one is made, this just holds the {@link StateQWOP#STATE_SIZE} values in a single
+ * array and can be refilled from a game every timestep without allocating anything. Good for rollouts and
+ * evaluations that look at every simulated timestep, but only need a few numbers from each.
+ *
+ * Since the contents change whenever {@link #capture(GameQWOP)} or {@link #set(StateQWOP)} is called, a view should
+ * never be stored in the tree. Use {@link #toState()} to make an immutable copy when one is actually needed.
+ *
+ * Not thread safe. Each thread should have its own.
+ *
+ * @author matt
+ */
+public class StateQWOPView {
+
+    /**
+     * State values in the same order as {@link StateQWOP#StateQWOP(float[], boolean)}. x coordinates are absolute.
+     */
+    private final float[] values = new float[StateQWOP.STATE_SIZE];
+
+    /**
+     * Does the currently held state represent a fallen runner?
+     */
+    private boolean failed;
+
+    /**
+     * Number of values held per body part.
+     */
+    private static final int VALUES_PER_BODY = StateQWOP.STATE_SIZE / StateQWOP.STATEVARIABLE_COUNT;
+
+    /**
+     * Fill this view with the current state of a game.
+     *
+     * @param game Game to capture the runner state from.
+     * @return This view, for chaining.
+     */
+    public StateQWOPView capture(GameQWOP game) {
+        game.getCurrentState(values, 0);
+        failed = game.isFailed();
+        return this;
+    }
+
+    /**
+     * Fill this view with the values of an existing state.
+     *
+     * @param state State to copy the values of.
+     * @return This view, for chaining.
+     */
+    public StateQWOPView set(StateQWOP state) {
+        int idx = 0;
+        for (StateVariable6D sv : state.getAllStateVariables()) {
+            values[idx++] = sv.getX();
+            values[idx++] = sv.getY();
+            values[idx++] = sv.getTh();
+            values[idx++] = sv.getDx();
+            values[idx++] = sv.getDy();
+            values[idx++] = sv.getDth();
+        }
+        failed = state.isFailed();
+        return this;
+    }
+
+    /**
+     * Get a single state value.
+     *
+     * @param obj Body part to get the value of.
+     * @param name Which of the 6 values to get.
+     * @return The requested state value.
+     */
+    public float get(ObjectName obj, StateName name) {
+        return values[obj.ordinal() * VALUES_PER_BODY + name.ordinal()];
+    }
+
+    public float getCenterX() {
+        return values[0];
+    }
+
+    public float getCenterDx() {
+        return values[3];
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the backing array of state values. This is NOT a copy. It should be treated as read-only, and will change
+     * the next time this view is filled.
+     *
+     * @return Array of {@link StateQWOP#STATE_SIZE} state values. x coordinates are absolute.
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    /**
+     * Same as {@link StateQWOP#flattenState()}, i.e. with the body x subtracted from all the x coordinates, but
+     * written into a caller-supplied array.
+     *
+     * @param dest Array of at least {@link StateQWOP#STATE_SIZE} to write the flattened state into.
+     */
+    public void flattenState(float[] dest) {
+        float bodyX = getCenterX();
+        System.arraycopy(values, 0, dest, 0, StateQWOP.STATE_SIZE);
+        for (int i = 0; i < StateQWOP.STATE_SIZE; i += VALUES_PER_BODY) {
+            dest[i] -= bodyX;
+        }
+    }
+
+    /**
+     * Make an immutable {@link StateQWOP} from the currently held values. This allocates, so only do it when the
+     * state needs to be kept around.
+     *
+     * @return A new state with the same values as this view.
+     */
+    public StateQWOP toState() {
+        return new StateQWOP(values, failed);
+    }
+}
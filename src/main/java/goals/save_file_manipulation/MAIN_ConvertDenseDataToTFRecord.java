@@ -3,7 +3,7 @@ package goals.save_file_manipulation;
 import com.google.protobuf.ByteString;
 import data.SavableDenseData;
 import data.SavableFileIO;
-import data.TFRecordWriter;
+import data.TFRecordChannelWriter;
 import game.action.Action;
 import game.qwop.CommandQWOP;
 import game.qwop.IStateQWOP.ObjectName;
@@ -15,7 +15,6 @@ import org.apache.logging.log4j.Logger;
 import org.tensorflow.example.*;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -114,7 +113,7 @@ public class MAIN_ConvertDenseDataToTFRecord {
         File file = new File(destinationPath + fileName);
 
         file.getParentFile().mkdirs();
-        FileOutputStream stream = new FileOutputStream(file);
+        TFRecordChannelWriter stream = TFRecordChannelWriter.open(file, false);
 
         // Iterate through all runs in a single file.
         for (SavableDenseData<CommandQWOP> dat : denseData) {
@@ -225,7 +224,7 @@ public class MAIN_ConvertDenseDataToTFRecord {
             seqEx.setContext(contextFeats.build());
 
             seqEx.setFeatureLists(featLists.build());
-            TFRecordWriter.writeToStream(seqEx.build().toByteArray(), stream);
+            stream.write(seqEx.build().toByteArray());
         }
         stream.close();
     }
@@ -1,12 +1,12 @@
 package goals.save_file_manipulation;
 
-import data.TFRecordDataParsers;
+import data.TFRecordDataset;
 import data.TFRecordWriter;
 import org.tensorflow.example.SequenceExample;
 
 import java.io.*;
-import java.util.List;
-import java.util.Objects;
+import java.util.Collections;
+import java.util.stream.Stream;
 
 /**
  * Take a (potentially) large TFRecord file of densely saved QWOP run data, and strip one run off, saving it to its
@@ -26,7 +26,7 @@ public class MAIN_PullRunOffTFRecord {
     }
 
     /**
-     * Load runs from a TFRecord file, save a specified one to its own file.
+     * Stream runs from a TFRecord file, save a specified one to its own file.
      * @param inFile Input file to load runs from.
      * @param outFile Output file to save the selected run to.
      * @param runIndex Index of the run to save to its own file.
@@ -42,25 +42,18 @@ public class MAIN_PullRunOffTFRecord {
             throw new FileNotFoundException("Looks like the input file is not the correct type.");
         }
 
-        // Read all the sequences from a file.
-        List<SequenceExample> dataSeries = null;
-        try {
-            dataSeries = TFRecordDataParsers.loadSequencesFromTFRecord(inFile);
-        } catch (IOException e) {
+        // Stream through the file only as far as the chosen run, rather than loading all of them.
+        SequenceExample chosenRun;
+        try (Stream<SequenceExample> dataSeries =
+                     new TFRecordDataset(Collections.singletonList(inFile), true).sequences(false)) {
+            chosenRun = dataSeries.skip(runIndex).findFirst().orElseThrow(() ->
+                    new IndexOutOfBoundsException("Specified run index is out of bounds of the found runs in the " +
+                            "TFRecord file."));
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
+            return;
         }
 
-        Objects.requireNonNull(dataSeries, "TFRecord files were not successfully loaded.");
-
-        if (dataSeries.isEmpty()) {
-            throw new IndexOutOfBoundsException("Could not locate any runs in the TFRecord file specified.");
-        }else if (dataSeries.size() - 1 < runIndex) {
-            throw new IndexOutOfBoundsException("Specified run index is out of bounds of the found runs in the " +
-                    "TFRecord file.");
-        }
-
-        SequenceExample chosenRun = dataSeries.get(runIndex);
-
         try (FileOutputStream fOut = new FileOutputStream(outFile)) {
             TFRecordWriter.writeToStream(chosenRun.toByteArray(), fOut);
 
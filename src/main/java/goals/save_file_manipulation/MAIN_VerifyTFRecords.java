@@ -1,16 +1,16 @@
 package goals.save_file_manipulation;
 
+import data.TFRecordMappedReader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.tensorflow.example.SequenceExample;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
-import static data.TFRecordDataParsers.loadSequencesFromTFRecord;
-
 /**
  * Check to make sure TFRecords are ok. This just verifies that the files can be loaded, not that the data itself is
  * correct. Sometimes if the executable is terminated in the middle of writing a file, it can produce an incomplete
@@ -38,18 +38,30 @@ public class MAIN_VerifyTFRecords {
         logger.info("Found " + exampleDataFiles.size() + " files to check.");
 
         List<File> badFiles = new ArrayList<>();
+        long totalBytes = 0;
+        long startTime = System.nanoTime();
         for (File file : exampleDataFiles) {
             logger.info("Checking " + file.getName() + "... ");
-            try {
-                List<SequenceExample> data = loadSequencesFromTFRecord(file);
-                logger.info("found " + data.size() + " sequences... ");
+            // Sequences are parsed and dropped one at a time, so files larger than memory can be checked.
+            int sequenceCount = 0;
+            try (TFRecordMappedReader reader = new TFRecordMappedReader(file, true)) {
+                ByteBuffer record;
+                while ((record = reader.next()) != null) {
+                    SequenceExample.parser().parseFrom(record);
+                    sequenceCount++;
+                }
+                totalBytes += reader.getFileSize();
+                logger.info("found " + sequenceCount + " sequences... ");
             } catch (IOException e) {
                 badFiles.add(file);
-                logger.warn(file.getName() + "failed");
+                logger.warn(file.getName() + " failed after " + sequenceCount + " sequences: " + e.getMessage());
                 continue;
             }
             logger.info("passed!");
         }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        logger.info(String.format("Checked %.1f MB in %.1f s (%.1f MB/s).", totalBytes / 1e6, seconds,
+                totalBytes / 1e6 / seconds));
         logger.info("Summary: ");
         if (badFiles.isEmpty()) {
             logger.info("All files seem ok!");
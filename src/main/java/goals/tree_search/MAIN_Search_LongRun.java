@@ -60,6 +60,10 @@ public class MAIN_Search_LongRun extends SearchTemplate {
         int bailAfterXGames1 = Integer.parseInt(properties.getProperty("bailAfterXGames1", "1000000")); // Stop stage
         // 1 after this many games even if we don't reach the goal depth.
         String fileSuffix1 = properties.getProperty("fileSuffix1", "");
+        int storeWindowCount = Integer.parseInt(properties.getProperty("storeWindowCount", "0")); // Search a window
+        // at a time from a compact TreeStore instead. 0 keeps the whole tree as nodes.
+        int storeWindowDepth = Integer.parseInt(properties.getProperty("storeWindowDepth", "10"));
+        int storeWindowSearchDepth = Integer.parseInt(properties.getProperty("storeWindowSearchDepth", "20"));
 
         String filename1 = "single_run_" + fileSuffix1;
 
@@ -84,8 +88,14 @@ public class MAIN_Search_LongRun extends SearchTemplate {
                 ui.addRootNode(rootNode);
 
                 logger.info("Starting stage 1. Run: " + count + ".");
-                doBasicMaxDepthStage(rootNode, filename1 + Utility.getTimestamp(), getToSteadyDepth,
-                        maxWorkerFraction1, bailAfterXGames1);
+                if (storeWindowCount > 0) {
+                    doStoreWindowStage(rootNode, actionGenerator, filename1 + Utility.getTimestamp(),
+                            storeWindowCount, storeWindowDepth, storeWindowSearchDepth, maxWorkerFraction1,
+                            bailAfterXGames1);
+                } else {
+                    doBasicMaxDepthStage(rootNode, filename1 + Utility.getTimestamp(), getToSteadyDepth,
+                            maxWorkerFraction1, bailAfterXGames1);
+                }
                 logger.info("Stage 1 done. Run: " + count + ".");
                 count++;
             }
@@ -26,6 +26,8 @@ import tree.sampler.ISampler;
 import tree.sampler.Sampler_UCB;
 import tree.sampler.rollout.*;
 import tree.stage.TreeStage_MaxDepth;
+import value.ValueFunctionTrainer;
+import value.ValueFunction_HotSwap;
 import value.ValueFunction_TensorFlow_StateOnly;
 import value.updaters.ValueUpdater_Average;
 
@@ -35,6 +37,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -101,6 +105,32 @@ public class MAIN_Search_ValueFun extends SearchTemplate {
 
     private ValueFunction_TensorFlow_StateOnly<StateQWOP> valueFunction;
 
+    /**
+     * Whether to train the value function on its own thread while the search keeps going, rather than stopping the
+     * search for each update. Set in config file. Default false.
+     */
+    private final boolean asyncValueTraining;
+
+    /**
+     * Number of the most recent nodes that background training samples from. Set in config file.
+     */
+    private final int replayCapacity;
+
+    /**
+     * Number of new nodes which background training waits for between updates. Set in config file. Defaults to the
+     * training batch size.
+     */
+    private final int newNodesPerUpdate;
+
+    private ValueFunctionTrainer<CommandQWOP, StateQWOP> valueTrainer;
+
+    /**
+     * Double-buffered value functions given to each worker's rollout controller, so they can be unregistered from
+     * the trainer when the worker is returned.
+     */
+    private final Map<TreeWorker<CommandQWOP, StateQWOP>, ValueFunction_HotSwap<CommandQWOP, StateQWOP>>
+            workerValueFunctions = new ConcurrentHashMap<>();
+
     private int prevStates = 0;
     private int delayTs = 1;
 
@@ -135,6 +165,10 @@ public class MAIN_Search_ValueFun extends SearchTemplate {
 
         learningRate = properties.getProperty("learningRate", "1e-3");
         trainingBatchSize = Integer.parseInt(properties.getProperty("trainingBatchSize", "1000"));
+        asyncValueTraining = Boolean.parseBoolean(properties.getProperty("asyncValueTraining", "false"));
+        replayCapacity = Integer.parseInt(properties.getProperty("replayCapacity", "50000"));
+        newNodesPerUpdate = Integer.parseInt(properties.getProperty("newNodesPerUpdate",
+                String.valueOf(trainingBatchSize)));
 
         String[] hiddenLayerSizesString = properties.getProperty("hiddenLayerSizes", "128,64").split(",");
         for (String layerSize : hiddenLayerSizesString) {
@@ -174,6 +208,14 @@ public class MAIN_Search_ValueFun extends SearchTemplate {
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
+
+        if (asyncValueTraining) {
+            // One checkpoint, written over after each update.
+            String checkpointPath = "src/main/resources/tflow_models/checkpoints/" + checkpointNamePrefix + "_latest";
+            valueTrainer = new ValueFunctionTrainer<>(valueFunction,
+                    ValueFunctionTrainer.checkpointPublisher(checkpointPath), replayCapacity, trainingBatchSize,
+                    newNodesPerUpdate);
+        }
     }
 
     @Override
@@ -183,6 +225,7 @@ public class MAIN_Search_ValueFun extends SearchTemplate {
         IRolloutPolicy<CommandQWOP, StateQWOP> rollout;
         IController<CommandQWOP, StateQWOP> rolloutController;
         IEvaluationFunction<CommandQWOP, StateQWOP> rolloutEvaluator;
+        ValueFunction_HotSwap<CommandQWOP, StateQWOP> rolloutValueFunction = null;
 
         switch(rolloutControllerType) {
             case RANDOM:
@@ -191,8 +234,15 @@ public class MAIN_Search_ValueFun extends SearchTemplate {
             case VALUE_FUNCTION:
 //                ValueFunction_TensorFlow_StateOnly hmm = vfunCopy.getCopy();
 //                hmm.loadCheckpoint("small329");
-                rolloutController = new Controller_ValueFunction<>(valueFunction.getCopy()); // NOTE: this copy is
-                // independent. I don't know if that's good or bad.
+                if (asyncValueTraining) {
+                    // Gets the background trainer's weights after each of its updates. Copied between updates, so
+                    // never from a half-written checkpoint.
+                    rolloutValueFunction = valueTrainer.addTargetCopy();
+                    rolloutController = new Controller_ValueFunction<>(rolloutValueFunction);
+                } else {
+                    rolloutController = new Controller_ValueFunction<>(valueFunction.getCopy()); // NOTE: this copy
+                    // is independent. I don't know if that's good or bad.
+                }
                 break;
             default:
                 throw new IllegalArgumentException("Unknown rollout controller type specified: " + rolloutControllerType.name());
@@ -244,7 +294,12 @@ public class MAIN_Search_ValueFun extends SearchTemplate {
 //        return (prevStates > 0 && delayTs > 0) ? TreeWorker.makeCachedStateTreeWorker(sampler, delayTs, prevStates,
 //                GameQWOPCaching.StateType.HIGHER_DIFFERENCES) :
 //                TreeWorker.makeStandardQWOPTreeWorker(sampler);
-        return TreeWorker.makeStandardQWOPTreeWorker(sampler);
+        TreeWorker<CommandQWOP, StateQWOP> worker = TreeWorker.makeStandardQWOPTreeWorker(sampler);
+        worker.setValueTrainer(valueTrainer);
+        if (rolloutValueFunction != null) {
+            workerValueFunctions.put(worker, rolloutValueFunction);
+        }
+        return worker;
     }
 
     public static void main(String[] args) {
@@ -304,6 +359,9 @@ public class MAIN_Search_ValueFun extends SearchTemplate {
         }
 
         /* Training and exploration loop. */
+        if (asyncValueTraining) {
+            valueTrainer.start();
+        }
 
         for (int k = 0; k < 10000; k++) {
 
@@ -340,6 +398,29 @@ public class MAIN_Search_ValueFun extends SearchTemplate {
 
         // Return the workers.
         tws.forEach(this::removeWorker);
+        logSearchStatistics();
+
+        if (asyncValueTraining) {
+            // Already training in the background, and saving its own checkpoints.
+            tws.forEach(tw -> {
+                ValueFunction_HotSwap<CommandQWOP, StateQWOP> rolloutValueFunction = workerValueFunctions.remove(tw);
+                if (rolloutValueFunction != null) {
+                    valueTrainer.removeTarget(rolloutValueFunction);
+                    // Workers finish their last game after being told to stop. They never finish once the tree is
+                    // fully explored, but do not evaluate anything more either.
+                    while (tw.isRunning() && !rootNode.isFullyExplored()) {
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    rolloutValueFunction.close();
+                }
+            });
+            logger.info(valueTrainer.toString());
+            return;
+        }
 
         // Update the value function.
         List<NodeGameExplorableBase<?, CommandQWOP, StateQWOP>> nodesBelow = new ArrayList<>();
@@ -21,6 +21,8 @@ import game.action.IActionGenerator;
 import game.state.IState;
 import org.apache.commons.io.output.XmlStreamWriter;
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
 import savers.DataSaver_Null;
 import savers.IDataSaver;
@@ -28,6 +30,8 @@ import tree.TreeWorker;
 import tree.node.NodeGameExplorable;
 import tree.node.NodeGameExplorableBase;
 import tree.node.NodeGameGraphics;
+import tree.node.NodeSnapshotCache;
+import tree.node.TranspositionTable;
 import tree.sampler.ISampler;
 import tree.stage.TreeStage;
 import ui.IUserInterface;
@@ -48,6 +52,8 @@ public class SearchConfiguration<C extends Command<?>, S extends IState, G exten
     public final IUserInterface<C, S> ui;
     public final G game;
 
+    private static final Logger logger = LogManager.getLogger(SearchConfiguration.class);
+
     SearchConfiguration(@JsonProperty("machine") Machine machine,
                         @JsonProperty("game") G game,
                         @JsonProperty("tree") Tree<C> tree,
@@ -156,9 +162,68 @@ public class SearchConfiguration<C extends Command<?>, S extends IState, G exten
          */
         public final IActionGenerator<C> actionGenerator;
 
+        /**
+         * New nodes which reach the same state as another node, to within this tolerance, are pruned (see
+         * {@link TranspositionTable}). One table is shared by all stages and workers, and is emptied whenever they
+         * move to a new root. Zero, the default, turns this off.
+         */
+        public final float transpositionTolerance;
+
+        /**
+         * Most game copies kept at interior nodes so workers can skip replaying from the root (see
+         * {@link NodeSnapshotCache}). One cache is shared by all stages and workers. Zero, the default, turns this
+         * off.
+         */
+        public final int snapshotLimit;
+
+        /**
+         * Only nodes at depths which are a multiple of this get snapshots. Defaults to 5.
+         */
+        public final int snapshotDepthInterval;
+
+        /**
+         * Nodes shallower than this never get snapshots. Defaults to 10.
+         */
+        public final int snapshotMinimumDepth;
+
+        @JsonCreator
         public Tree(
-                @JsonProperty("actionGenerator") IActionGenerator<C> actionGenerator) {
+                @JsonProperty("actionGenerator") IActionGenerator<C> actionGenerator,
+                @JsonProperty("transpositionTolerance") float transpositionTolerance,
+                @JsonProperty("snapshotLimit") int snapshotLimit,
+                @JsonProperty("snapshotDepthInterval") Integer snapshotDepthInterval,
+                @JsonProperty("snapshotMinimumDepth") Integer snapshotMinimumDepth) {
+            Preconditions.checkArgument(transpositionTolerance >= 0, "Transposition tolerance may not be negative.",
+                    transpositionTolerance);
+            Preconditions.checkArgument(snapshotLimit >= 0, "Snapshot limit may not be negative.", snapshotLimit);
             this.actionGenerator = actionGenerator;
+            this.transpositionTolerance = transpositionTolerance;
+            this.snapshotLimit = snapshotLimit;
+            this.snapshotDepthInterval = Objects.isNull(snapshotDepthInterval) ? 5 : snapshotDepthInterval;
+            this.snapshotMinimumDepth = Objects.isNull(snapshotMinimumDepth) ? 10 : snapshotMinimumDepth;
+        }
+
+        public Tree(IActionGenerator<C> actionGenerator) {
+            this(actionGenerator, 0, 0, null, null);
+        }
+
+        /**
+         * Make the transposition table for a new tree.
+         *
+         * @return An empty table, or null if transpositions are turned off.
+         */
+        <S extends IState> TranspositionTable<C, S> makeTranspositionTable() {
+            return transpositionTolerance > 0 ? new TranspositionTable<>(transpositionTolerance) : null;
+        }
+
+        /**
+         * Make the snapshot cache for a new tree.
+         *
+         * @return An empty cache, or null if snapshots are turned off.
+         */
+        <S extends IState> NodeSnapshotCache<C, S> makeSnapshotCache() {
+            return snapshotLimit > 0 ? new NodeSnapshotCache<>(snapshotLimit, snapshotDepthInterval,
+                    snapshotMinimumDepth) : null;
         }
     }
 
@@ -244,14 +309,20 @@ public class SearchConfiguration<C extends Command<?>, S extends IState, G exten
          * Begin this tree operation.
          * @param rootNode Node to build from.
          * @param machine Machine details, e.g. how many cores to use.
+         * @param transpositionTable Table shared by the workers on this tree. Null for none.
+         * @param snapshotCache Snapshots shared by the workers on this tree. Null for none.
          */
-        void startOperation(NodeGameExplorableBase<?, C, S> rootNode, Machine machine) {
+        void startOperation(NodeGameExplorableBase<?, C, S> rootNode, Machine machine,
+                            TranspositionTable<C, S> transpositionTable, NodeSnapshotCache<C, S> snapshotCache) {
             Preconditions.checkNotNull(rootNode);
             Preconditions.checkNotNull(machine);
 
             List<TreeWorker<C, S>> treeWorkers = new ArrayList<>();
             for (int i = 0; i < machine.getRequestedThreadCount(); i++) {
-                treeWorkers.add(getTreeWorker());
+                TreeWorker<C, S> worker = getTreeWorker();
+                worker.setTranspositionTable(transpositionTable);
+                worker.setSnapshotCache(snapshotCache);
+                treeWorkers.add(worker);
             }
 
             if (ui != null) {
@@ -286,11 +357,19 @@ public class SearchConfiguration<C extends Command<?>, S extends IState, G exten
         }
         ui.start();
 
+        TranspositionTable<C, S> transpositionTable = tree.makeTranspositionTable();
+        NodeSnapshotCache<C, S> snapshotCache = tree.makeSnapshotCache();
         for (SearchOperation<C, S, G> operation : searchOperations) {
             for (int i = 0; i <= operation.getRepetitionCount(); i++) {
-                operation.startOperation(rootNode, machine);
+                operation.startOperation(rootNode, machine, transpositionTable, snapshotCache);
             }
             operation.getSampler().close();
+            if (transpositionTable != null) {
+                logger.info(transpositionTable.toString());
+            }
+            if (snapshotCache != null) {
+                logger.info(snapshotCache.toString());
+            }
         }
     }
 
@@ -1,5 +1,6 @@
 package goals.tree_search;
 
+import game.action.IActionGenerator;
 import game.qwop.GameQWOP;
 import game.qwop.CommandQWOP;
 import game.qwop.StateQWOP;
@@ -11,6 +12,9 @@ import org.apache.logging.log4j.Logger;
 import tree.TreeWorker;
 import tree.Utility;
 import tree.node.NodeGameExplorableBase;
+import tree.node.NodeSnapshotCache;
+import tree.node.TranspositionTable;
+import tree.node.TreeStore;
 import tree.node.evaluator.EvaluationFunction_Distance;
 import tree.node.filter.NodeFilter_SurvivalHorizon;
 import tree.sampler.Sampler_UCB;
@@ -19,6 +23,7 @@ import tree.stage.TreeStage;
 import tree.stage.TreeStage_FixedGames;
 import tree.stage.TreeStage_MaxDepth;
 import tree.stage.TreeStage_MinDepth;
+import tree.stage.TreeStage_StoreWindows;
 import ui.IUserInterface;
 import ui.UI_Full;
 import ui.UI_Headless;
@@ -64,6 +69,20 @@ public abstract class SearchTemplate {
      */
     protected Properties properties;
 
+    /**
+     * Table of states already reached in the tree, shared by every worker handed out. Set with the
+     * transpositionTolerance property. Null if the property is missing or zero, which leaves duplicate checking off.
+     * It is emptied whenever the workers are given a new root, e.g. for each run of {@link MAIN_Search_LongRun}.
+     */
+    private final TranspositionTable<CommandQWOP, StateQWOP> transpositionTable;
+
+    /**
+     * Game copies at interior nodes, shared by every worker handed out, so they can skip replaying from the root. Set
+     * with the snapshotLimit, snapshotDepthInterval, and snapshotMinimumDepth properties. Null if snapshotLimit is
+     * missing or zero, which leaves snapshots off.
+     */
+    private final NodeSnapshotCache<CommandQWOP, StateQWOP> snapshotCache;
+
     /**
      * Where should data be saved?
      */
@@ -95,6 +114,12 @@ public abstract class SearchTemplate {
         properties = Utility.loadConfigFile(configFile);
         float workersFractionOfCores = Float.parseFloat(properties.getProperty("workersFractionOfCores", "0.8"));
         headless = Boolean.valueOf(properties.getProperty("headless", "false")); // Default to using fullUI
+        float transpositionTolerance = Float.parseFloat(properties.getProperty("transpositionTolerance", "0"));
+        transpositionTable = transpositionTolerance > 0 ? new TranspositionTable<>(transpositionTolerance) : null;
+        int snapshotLimit = Integer.parseInt(properties.getProperty("snapshotLimit", "0"));
+        snapshotCache = snapshotLimit > 0 ? new NodeSnapshotCache<>(snapshotLimit,
+                Integer.parseInt(properties.getProperty("snapshotDepthInterval", "5")),
+                Integer.parseInt(properties.getProperty("snapshotMinimumDepth", "10"))) : null;
 
         // Create the data save directory.
         saveLoc = new File("src/main/resources/saved_data/" + properties.getProperty("saveLocation", "./"));
@@ -140,7 +165,10 @@ public abstract class SearchTemplate {
     List<TreeWorker<CommandQWOP, StateQWOP>> getTreeWorkers(int numberOfWorkers) {
         List<TreeWorker<CommandQWOP, StateQWOP>> workerList = new ArrayList<>();
         for (int i = 0; i < numberOfWorkers; i++) {
-            workerList.add(getTreeWorker());
+            TreeWorker<CommandQWOP, StateQWOP> worker = getTreeWorker();
+            worker.setTranspositionTable(transpositionTable);
+            worker.setSnapshotCache(snapshotCache);
+            workerList.add(worker);
         }
         return workerList;
     }
@@ -205,6 +233,7 @@ public abstract class SearchTemplate {
 
         // Return the checked out workers.
         tws1.forEach(this::removeWorker);
+        logSearchStatistics();
     }
 
     /**
@@ -243,6 +272,56 @@ public abstract class SearchTemplate {
 
         // Return the checked out workers.
         tws2.forEach(this::removeWorker);
+        logSearchStatistics();
+    }
+
+    /**
+     * Setup and perform a {@link TreeStage_StoreWindows} search. The tree is kept in a compact {@link TreeStore}, and
+     * only one window of it at a time is made into nodes and searched with {@link TreeStage_MaxDepth}.
+     *
+     * @param rootNode Tree root node. Its tree is copied into the store, and the search continues there.
+     * @param actionGenerator Assigns untried actions to the nodes of each window.
+     * @param saveName Name of the file to save stage data to. This is sparse.
+     * @param windowCount Number of windows to search.
+     * @param windowDepth How many levels above the end of the most-visited line each window starts.
+     * @param windowSearchDepth Depth below each window to get a branch to.
+     * @param fractionOfWorkers 0 to 1, proportion of workers to allot to this stage.
+     * @param maxGames Maximum number of games to play in each window before giving up on it.
+     * @return Store holding the searched tree. Its root is the last one added.
+     */
+    protected TreeStore<CommandQWOP, StateQWOP> doStoreWindowStage(NodeGameExplorableBase<?, CommandQWOP,
+            StateQWOP> rootNode, IActionGenerator<CommandQWOP> actionGenerator, String saveName, int windowCount,
+                                                                 int windowDepth, int windowSearchDepth,
+                                                                 float fractionOfWorkers, int maxGames) {
+        if (fractionOfWorkers > 1)
+            throw new IllegalArgumentException("Cannot request more than 100% (i.e. fraction of 1) workers available." +
+                    " Asked for: " + fractionOfWorkers);
+
+        String stageName = "StoreWindowSearch";
+        int numWorkersToUse = (int) Math.max(1, fractionOfWorkers * maxWorkers);
+        logTreeStage(stageName, saveName, rootNode.getTreeDepth(), numWorkersToUse, maxGames);
+
+        long startTime = System.currentTimeMillis();
+
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        TreeStage_StoreWindows<CommandQWOP, StateQWOP> search = new TreeStage_StoreWindows<>(store, actionGenerator,
+                new TreeStage_MaxDepth<>(windowSearchDepth, maxGames), windowCount, windowDepth);
+
+        // Grab some workers from the pool.
+        List<TreeWorker<CommandQWOP, StateQWOP>> tws1 = getTreeWorkers(numWorkersToUse);
+
+        // Do stage search
+        search.initialize(tws1, rootNode);
+
+        float elapsedSeconds = Math.floorDiv(System.currentTimeMillis() - startTime, 100) / 10f; // To one decimal
+        // place.
+        logger.info(stageName + " finished after " + elapsedSeconds + " seconds.\n" + "Results -- " + store.size() +
+                " nodes stored in " + (store.getAllocatedBytes() / (1024 * 1024)) + " MB.");
+
+        // Return the checked out workers.
+        tws1.forEach(this::removeWorker);
+        logSearchStatistics();
+        return store;
     }
 
     /**
@@ -281,6 +360,7 @@ public abstract class SearchTemplate {
                 + (search.getResults().isEmpty() ? "<goal not met>" : search.getResults().get(0).getMaxBranchDepth() + " depth achieved."));
         // Return the checked out workers.
         tws1.forEach(this::removeWorker);
+        logSearchStatistics();
     }
 
     /**
@@ -364,6 +444,19 @@ public abstract class SearchTemplate {
                 + "\nSave file: " + saveName);
     }
 
+    /**
+     * Write how the shared search aids (the transposition table and snapshot cache) have done so far to the log.
+     * Nothing if none are on.
+     */
+    void logSearchStatistics() {
+        if (transpositionTable != null) {
+            logger.info(transpositionTable.toString());
+        }
+        if (snapshotCache != null) {
+            logger.info(snapshotCache.toString());
+        }
+    }
+
     /**
      * Write computer details (e.g. OS) to the logging stream.
      */
@@ -73,10 +73,11 @@ public class BroadPhase implements Externalizable {
 
 	static final boolean s_validate = false;
 
-	// Temp during computations
-//	volatile private BoundValues
-//			newValues = new BoundValues(),
-//			oldValues = new BoundValues();
+	// Temp during computations. Both are completely overwritten at the start of each moveProxy, so nothing carries
+	// over between calls. Not shared between worlds, so one simulation per thread is fine.
+	transient private BoundValues
+			newValues = new BoundValues(),
+			oldValues = new BoundValues();
 
 	public BroadPhase() {}
 
@@ -344,11 +345,8 @@ public class BroadPhase implements Externalizable {
 
 		final Proxy proxy = m_proxyPool[proxyId];
 
-		// MATT: TODO: figure out why treating these as transient fields didn't work well. Indexoutofbounds max int
-		//  happened.
-		BoundValues
-				newValues = new BoundValues(),
-				oldValues = new BoundValues();
+		final BoundValues newValues = this.newValues;
+		final BoundValues oldValues = this.oldValues;
 
 		// Get new bound values
 		computeBounds( newValues.lowerValues, newValues.upperValues, aabb);
@@ -700,6 +698,60 @@ public class BroadPhase implements Externalizable {
 		return low;
 	}
 
+	/**
+	 * Copy the proxies, bounds and pairs of another broad-phase with the same world bounds. The user data of proxies
+	 * and pairs (shapes and contacts) in the source is swapped for the matching objects in this one.
+	 * For internal use by {@link org.jbox2d.dynamics.World#copyStateFrom(org.jbox2d.dynamics.World)}.
+	 *
+	 * @param source broad-phase to copy.
+	 * @param sourceObjects user data objects of the source.
+	 * @param objects matching user data objects for this broad-phase, at the same indices as in sourceObjects.
+	 * @param objectCount number of objects to match up. User data which is not among them is copied as-is.
+	 */
+	public void copyStateFrom(final BroadPhase source, final Object[] sourceObjects, final Object[] objects,
+	                          final int objectCount) {
+		for ( int i = 0; i < m_proxyPool.length; i++) {
+			final Proxy proxy = m_proxyPool[i];
+			final Proxy sourceProxy = source.m_proxyPool[i];
+			proxy.lowerBounds[0] = sourceProxy.lowerBounds[0];
+			proxy.lowerBounds[1] = sourceProxy.lowerBounds[1];
+			proxy.upperBounds[0] = sourceProxy.upperBounds[0];
+			proxy.upperBounds[1] = sourceProxy.upperBounds[1];
+			proxy.overlapCount = sourceProxy.overlapCount;
+			proxy.timeStamp = sourceProxy.timeStamp;
+			proxy.userData = matchObject( sourceProxy.userData, sourceObjects, objects, objectCount);
+		}
+		for ( int axis = 0; axis < 2; ++axis) {
+			for ( int i = 0; i < m_bounds[axis].length; i++) {
+				m_bounds[axis][i].set( source.m_bounds[axis][i]);
+			}
+		}
+		System.arraycopy( source.m_queryResults, 0, m_queryResults, 0, m_queryResults.length);
+		m_queryResultCount = source.m_queryResultCount;
+		m_freeProxy = source.m_freeProxy;
+		m_proxyCount = source.m_proxyCount;
+		m_timeStamp = source.m_timeStamp;
+
+		m_pairManager.copyStateFrom( source.m_pairManager, sourceObjects, objects, objectCount);
+	}
+
+	/**
+	 * Find the object matching one from another broad-phase, or give back the same object if it has no match.
+	 * For internal use while copying state.
+	 */
+	public static Object matchObject( final Object sourceObject, final Object[] sourceObjects, final Object[] objects,
+	                           final int objectCount) {
+		if ( sourceObject == null) {
+			return null;
+		}
+		for ( int i = 0; i < objectCount; i++) {
+			if ( sourceObjects[i] == sourceObject) {
+				return objects[i];
+			}
+		}
+		return sourceObject;
+	}
+
 	public boolean inRange( final AABB aabb) {
 		final float ax = aabb.lowerBound.x - m_worldAABB.upperBound.x;
 		final float ay = aabb.lowerBound.y - m_worldAABB.upperBound.y;
@@ -740,8 +792,8 @@ public class BroadPhase implements Externalizable {
 		m_quantizationFactor = (Vec2) in.readObject();
 		m_proxyCount = in.readInt();
 		m_timeStamp = in.readInt();
-//
-//		newValues = new BoundValues();
-//		oldValues = new BoundValues();
+
+		newValues = new BoundValues();
+		oldValues = new BoundValues();
 	}
 }
@@ -76,6 +76,30 @@ public class PairManager implements Serializable {
 		m_callback = callback;
 	}
 
+	/**
+	 * Copy the pairs and hash table of another pair manager, swapping the pairs' user data for the matching objects
+	 * as in {@link BroadPhase#copyStateFrom(BroadPhase, Object[], Object[], int)}.
+	 */
+	void copyStateFrom(final PairManager source, final Object[] sourceObjects, final Object[] objects,
+	                   final int objectCount) {
+		for (int i = 0; i < m_pairs.length; i++) {
+			final Pair pair = m_pairs[i];
+			final Pair sourcePair = source.m_pairs[i];
+			pair.proxyId1 = sourcePair.proxyId1;
+			pair.proxyId2 = sourcePair.proxyId2;
+			pair.status = sourcePair.status;
+			pair.next = sourcePair.next;
+			pair.userData = BroadPhase.matchObject(sourcePair.userData, sourceObjects, objects, objectCount);
+
+			m_pairBuffer[i].proxyId1 = source.m_pairBuffer[i].proxyId1;
+			m_pairBuffer[i].proxyId2 = source.m_pairBuffer[i].proxyId2;
+		}
+		System.arraycopy(source.m_hashTable, 0, m_hashTable, 0, m_hashTable.length);
+		m_pairCount = source.m_pairCount;
+		m_freePair = source.m_freePair;
+		m_pairBufferCount = source.m_pairBufferCount;
+	}
+
 	// Add a pair and return the new pair. If the pair already exists,
 	// no new pair is created and the old one is returned.
 	public Pair addPair(int proxyId1, int proxyId2) {
@@ -62,6 +62,18 @@ public class CollidePoly implements Externalizable {
 	transient private XForm tempXForm1 = new XForm();
 	transient private XForm tempXForm2 = new XForm();
 
+	// Reused for each polygon pair. Clipping writes into these in place instead of making new vertices. - MWS
+	transient private ClipVertex[] incidentEdge = makeClipVertices();
+	transient private ClipVertex[] clipPoints1 = makeClipVertices();
+	transient private ClipVertex[] clipPoints2 = makeClipVertices();
+	transient private MaxSeparation sepA = new MaxSeparation();
+	transient private MaxSeparation sepB = new MaxSeparation();
+	transient private Vec2 negatedSide = new Vec2();
+
+	private static ClipVertex[] makeClipVertices() {
+		return new ClipVertex[] {new ClipVertex(), new ClipVertex()};
+	}
+
 	private int clipSegmentToLine(final ClipVertex[] vOut, final ClipVertex[] vIn,
 								  final Vec2 normal, final float offset) {
 		// Start with no output points
@@ -73,12 +85,10 @@ public class CollidePoly implements Externalizable {
 
 		// If the points are behind the plane
 		if (distance0 <= 0.0f) {
-			vOut[numOut] = new ClipVertex();
 			vOut[numOut].id.set(vIn[0].id);
 			vOut[numOut++].v.set(vIn[0].v);
 		}
 		if (distance1 <= 0.0f) {
-			vOut[numOut] = new ClipVertex();
 			vOut[numOut].id.set(vIn[1].id);
 			vOut[numOut++].v.set(vIn[1].v);
 		}
@@ -87,7 +97,6 @@ public class CollidePoly implements Externalizable {
 		if (distance0 * distance1 < 0.0f) {
 			// Find intersection point of edge and plane
 			final float interp = distance0 / (distance0 - distance1);
-			vOut[numOut] = new ClipVertex();
 			vOut[numOut].v.x = vIn[0].v.x + interp * (vIn[1].v.x - vIn[0].v.x);
 			vOut[numOut].v.y = vIn[0].v.y + interp * (vIn[1].v.y - vIn[0].v.y);
 
@@ -143,15 +152,18 @@ public class CollidePoly implements Externalizable {
 	/**
 	 * Find the max separation between poly1 and poly2 using face normals
 	 * from poly1.
+	 * @param separation holder for the result, overwritten and returned.
 	 * @param poly1
 	 * @param xf1
 	 * @param poly2
 	 * @param xf2
 	 * @return
 	 */
-	public final MaxSeparation findMaxSeparation(final PolygonShape poly1, final XForm xf1,
+	public final MaxSeparation findMaxSeparation(final MaxSeparation separation,
+												 final PolygonShape poly1, final XForm xf1,
 												 final PolygonShape poly2, final XForm xf2) {
-		final MaxSeparation separation = new MaxSeparation();
+		separation.bestFaceIndex = 0;
+		separation.bestSeparation = 0.0f;
 
 		final int count1 = poly1.getVertexCount();
 		final Vec2[] normals1 = poly1.getNormals();
@@ -280,18 +292,17 @@ public class CollidePoly implements Externalizable {
 		final int i1 = index;
 		final int i2 = i1 + 1 < count2 ? i1 + 1 : 0;
 
-		c[0] = new ClipVertex();
-		c[1] = new ClipVertex();
-
 		XForm.mulToOut(xf2, vertices2[i1], c[0].v);
 		c[0].id.features.referenceEdge = edge1;
 		c[0].id.features.incidentEdge = i1;
 		c[0].id.features.incidentVertex = 0;
+		c[0].id.features.flip = 0;
 
 		XForm.mulToOut(xf2, vertices2[i2], c[1].v);
 		c[1].id.features.referenceEdge = edge1;
 		c[1].id.features.incidentEdge = i2;
 		c[1].id.features.incidentVertex = 1;
+		c[1].id.features.flip = 0;
 	}
 
 	// Find edge normal of max separation on A - return if separating axis is found
@@ -305,12 +316,12 @@ public class CollidePoly implements Externalizable {
 									  final PolygonShape polyB, final XForm xfB) {
 
 		manif.pointCount = 0; // Fixed a problem with contacts
-		final MaxSeparation sepA = findMaxSeparation(polyA, xfA, polyB, xfB);
+		final MaxSeparation sepA = findMaxSeparation(this.sepA, polyA, xfA, polyB, xfB);
 		if (sepA.bestSeparation > 0.0f) {
 			return;
 		}
 
-		final MaxSeparation sepB = findMaxSeparation(polyB, xfB, polyA, xfA);
+		final MaxSeparation sepB = findMaxSeparation(this.sepB, polyB, xfB, polyA, xfA);
 		if (sepB.bestSeparation > 0.0f) {
 			return;
 		}
@@ -342,7 +353,7 @@ public class CollidePoly implements Externalizable {
 			flip = 0;
 		}
 
-		final ClipVertex[] incidentEdge = new ClipVertex[2];
+		final ClipVertex[] incidentEdge = this.incidentEdge;
 		findIncidentEdge(incidentEdge, poly1, xf1, edge1, poly2, xf2);
 
 		final int count1 = poly1.getVertexCount();
@@ -368,12 +379,13 @@ public class CollidePoly implements Externalizable {
 		final float sideOffset2 = temp9.x * v12x + temp9.y * v12y;
 
 		// Clip incident edge against extruded edge1 side edges.
-		final ClipVertex[] clipPoints1 = new ClipVertex[2];
-		final ClipVertex[] clipPoints2 = new ClipVertex[2];
+		final ClipVertex[] clipPoints1 = this.clipPoints1;
+		final ClipVertex[] clipPoints2 = this.clipPoints2;
 		int np;
 
 		// Clip to box side 1
-		np = clipSegmentToLine(clipPoints1, incidentEdge, temp9.negate(), sideOffset1);
+		negatedSide.set(-temp9.x, -temp9.y);
+		np = clipSegmentToLine(clipPoints1, incidentEdge, negatedSide, sideOffset1);
 
 		if (np < 2) {
 			return;
@@ -784,6 +796,13 @@ public class CollidePoly implements Externalizable {
 
 		tempXForm1 = new XForm();
 		tempXForm2 = new XForm();
+
+		incidentEdge = makeClipVertices();
+		clipPoints1 = makeClipVertices();
+		clipPoints2 = makeClipVertices();
+		sepA = new MaxSeparation();
+		sepB = new MaxSeparation();
+		negatedSide = new Vec2();
 	}
 }
 
@@ -63,6 +63,9 @@ public abstract class Shape implements Externalizable {
 
 	transient public Object m_userData;
 
+	// Reused when synchronizing every step. The broad-phase does not hold onto it. - MWS
+	transient private AABB sweptAABB = new AABB();
+
 	// Exists for deserializing only. Don't use otherwise.
 	public Shape() {}
 
@@ -225,7 +228,7 @@ public abstract class Shape implements Externalizable {
 		}
 
 		// Compute an AABB that covers the swept shape (may miss some rotation effect).
-		AABB aabb = new AABB();
+		final AABB aabb = sweptAABB;
 		computeSweptAABB(aabb, transform1, transform2);
 		if (broadPhase.inRange(aabb)) {
 			broadPhase.moveProxy(m_proxyId, aabb);
@@ -389,5 +392,7 @@ public abstract class Shape implements Externalizable {
 		m_proxyId = in.readInt();
 		m_filter = (FilterData) in.readObject();
 		m_isSensor = in.readBoolean();
+
+		sweptAABB = new AABB();
 	}
 }
@@ -262,7 +262,7 @@ public class Body implements Externalizable {
 				m_shapeList = s2;
 				++m_shapeCount;
 				s2.m_body = this;
-				s2.createProxy(m_world.m_broadPhase, m_xf);
+				m_world.createProxy(s2, m_xf);
 				s2.updateSweepRadius(m_sweep.localCenter);
 
 				if (s1 == null) {
@@ -289,7 +289,7 @@ public class Body implements Externalizable {
 		s.m_body = this;
 
 		// Add the shape to the world's broad-phase.
-		s.createProxy(m_world.m_broadPhase, m_xf);
+		m_world.createProxy(s, m_xf);
 
 		// Compute the sweep radius for CCD.
 		s.updateSweepRadius(m_sweep.localCenter);
@@ -307,7 +307,7 @@ public class Body implements Externalizable {
 	public void destroyShape(final Shape s){
 		assert(!m_world.m_lock);
 		assert(s.getBody() == this);
-		s.destroyProxy(m_world.m_broadPhase);
+		m_world.destroyProxy(s);
 
 		assert(m_shapeCount > 0);
 
@@ -390,7 +390,7 @@ public class Body implements Externalizable {
 		if (oldType != m_type) {
 			for (Shape s = m_shapeList; s != null; s = s.m_next)
 			{
-				s.refilterProxy(m_world.m_broadPhase, m_xf);
+				m_world.refilterProxy(s, m_xf);
 			}
 		}
 	}
@@ -458,7 +458,7 @@ public class Body implements Externalizable {
 		// If the body type changed, we need to refilter the broad-phase proxies.
 		if (oldType != m_type) {
 			for (Shape s = m_shapeList; s != null; s = s.m_next) {
-				s.refilterProxy(m_world.m_broadPhase, m_xf);
+				m_world.refilterProxy(s, m_xf);
 			}
 		}
 	}
@@ -489,7 +489,7 @@ public class Body implements Externalizable {
 		boolean freeze = false;
 
 		for (Shape s = m_shapeList; s != null; s = s.m_next) {
-			final boolean inRange = s.synchronize(m_world.m_broadPhase, m_xf, m_xf);
+			final boolean inRange = m_world.synchronizeProxy(s, m_xf, m_xf);
 
 			if (!inRange) {
 				freeze = true;
@@ -502,7 +502,7 @@ public class Body implements Externalizable {
 			m_linearVelocity.setZero();
 			m_angularVelocity = 0.0f;
 			for (Shape s = m_shapeList; s != null; s = s.m_next) {
-				s.destroyProxy(m_world.m_broadPhase);
+				m_world.destroyProxy(s);
 			}
 
 			// Failure
@@ -510,7 +510,7 @@ public class Body implements Externalizable {
 		}
 
 		// Success
-		m_world.m_broadPhase.commit();
+		m_world.commitProxies();
 
 		return true;
 	}
@@ -898,7 +898,7 @@ public class Body implements Externalizable {
 
 		boolean inRange = true;
 		for (Shape s = m_shapeList; s != null; s = s.m_next) {
-			inRange = s.synchronize(m_world.m_broadPhase, xf1, m_xf);
+			inRange = m_world.synchronizeProxy(s, xf1, m_xf);
 			if (!inRange) {
 				break;
 			}
@@ -909,7 +909,7 @@ public class Body implements Externalizable {
 			m_linearVelocity.setZero();
 			m_angularVelocity = 0.0f;
 			for (Shape s = m_shapeList; s != null; s = s.m_next) {
-				s.destroyProxy(m_world.m_broadPhase);
+				m_world.destroyProxy(s);
 			}
 			// Failure
 			return false;
@@ -941,6 +941,29 @@ public class Body implements Externalizable {
 		return false;
 	}
 
+	/**
+	 * Copy the motion and mass of another body, i.e. everything which may change after the body is made, except for
+	 * the shapes, joints and contacts attached to it.
+	 * For internal use by {@link World#copyStateFrom(World)}.
+	 */
+	public void copyStateFrom(final Body source) {
+		m_flags = source.m_flags;
+		m_type = source.m_type;
+		m_xf.set(source.m_xf);
+		m_sweep.set(source.m_sweep);
+		m_linearVelocity.set(source.m_linearVelocity);
+		m_angularVelocity = source.m_angularVelocity;
+		m_force.set(source.m_force);
+		m_torque = source.m_torque;
+		m_mass = source.m_mass;
+		m_invMass = source.m_invMass;
+		m_I = source.m_I;
+		m_invI = source.m_invI;
+		m_linearDamping = source.m_linearDamping;
+		m_angularDamping = source.m_angularDamping;
+		m_sleepTime = source.m_sleepTime;
+	}
+
 	/** For internal use only. */
 	public void advance(final float t){
 		// Advance to the new safe time
@@ -0,0 +1,219 @@
+package org.jbox2d.dynamics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.jbox2d.collision.AABB;
+import org.jbox2d.collision.shapes.Shape;
+import org.jbox2d.common.MathUtils;
+import org.jbox2d.common.XForm;
+import org.jbox2d.dynamics.contacts.Contact;
+import org.jbox2d.dynamics.contacts.ContactEdge;
+
+/**
+ * Makes contacts between shapes on moving bodies and shapes on static bodies directly, in place of the broad-phase and
+ * its pair manager. It is meant for worlds like QWOP, where a dozen body parts only ever touch one static track. The
+ * swept bounds of each shape are kept here as its body moves. Whenever the broad-phase would commit, every moving shape
+ * is checked against every static shape. A contact is made when their bounds start to overlap, and destroyed when they
+ * stop. The narrow-phase, the solver and any {@link ContactListener} then see the same contacts as with the
+ * broad-phase.
+ * <BR><BR>
+ * Moving bodies are never paired with each other. Use this only for worlds where they cannot collide anyway, e.g.
+ * where every moving shape is in the same negative filter group. The bounds are compared exactly instead of being
+ * quantized like the broad-phase's, so a contact may start or end one step apart from the broad-phase's when the
+ * bounds only just touch. Such contacts have no points yet, so runs agree closely with the general path. For QWOP
+ * they agree exactly.
+ *
+ * - MWS
+ */
+public class GroundContactGenerator implements Serializable {
+
+	private final ContactManager m_contactManager;
+
+	private final AABB m_worldAABB;
+
+	/** Every shape in the world, in the order they were made, with the latest swept bounds of each. */
+	private Shape[] m_shapes = new Shape[16];
+	private AABB[] m_bounds = new AABB[16];
+	private int m_shapeCount;
+
+	// Temp during computations.
+	private final AABB sweptAABB = new AABB();
+
+	GroundContactGenerator(final ContactManager contactManager, final AABB worldAABB) {
+		m_contactManager = contactManager;
+		m_worldAABB = new AABB(worldAABB);
+	}
+
+	/** Start pairing a new shape. Like the broad-phase, contacts are made right away for any bounds it overlaps. */
+	void addShape(final Shape shape, final XForm transform) {
+		final AABB aabb = new AABB();
+		shape.computeAABB(aabb, transform);
+		// You are creating a shape outside the world box.
+		assert(inRange(aabb));
+
+		if (m_shapeCount == m_shapes.length) {
+			m_shapes = Arrays.copyOf(m_shapes, 2 * m_shapeCount);
+			m_bounds = Arrays.copyOf(m_bounds, 2 * m_shapeCount);
+		}
+		m_shapes[m_shapeCount] = shape;
+		m_bounds[m_shapeCount] = aabb;
+		++m_shapeCount;
+		pairShape(m_shapeCount - 1);
+	}
+
+	/** Stop pairing a shape, and destroy its contacts. */
+	void removeShape(final Shape shape) {
+		final int index = indexOf(shape);
+		if (index < 0) {
+			return;
+		}
+		destroyContacts(shape);
+		System.arraycopy(m_shapes, index + 1, m_shapes, index, m_shapeCount - index - 1);
+		System.arraycopy(m_bounds, index + 1, m_bounds, index, m_shapeCount - index - 1);
+		--m_shapeCount;
+		m_shapes[m_shapeCount] = null;
+		m_bounds[m_shapeCount] = null;
+	}
+
+	/** Destroy a shape's contacts after its filtering changed, and make them again where they are still allowed. */
+	void refilterShape(final Shape shape, final XForm transform) {
+		final int index = indexOf(shape);
+		if (index < 0) {
+			return;
+		}
+		destroyContacts(shape);
+		shape.computeAABB(m_bounds[index], transform);
+		pairShape(index);
+	}
+
+	/**
+	 * Update the bounds of a shape which moved from one transform to another.
+	 * @return false if the shape left the world, in which case its bounds are left as they were.
+	 */
+	boolean synchronizeShape(final Shape shape, final XForm transform1, final XForm transform2) {
+		final int index = indexOf(shape);
+		if (index < 0) {
+			return false;
+		}
+		shape.computeSweptAABB(sweptAABB, transform1, transform2);
+		if (!inRange(sweptAABB)) {
+			return false;
+		}
+		m_bounds[index].set(sweptAABB);
+		return true;
+	}
+
+	/**
+	 * Make contacts between moving and static shapes whose bounds now overlap, and destroy those whose bounds no
+	 * longer do. Moving shapes are visited in the order of the world's body list, which is the order the broad-phase
+	 * hears about them moving in. Each new pair gets the shape made first as shape 1, like the broad-phase's lower proxy
+	 * id.
+	 */
+	void commit() {
+		for (int i = m_shapeCount - 1; i >= 0; --i) {
+			final Shape shape = m_shapes[i];
+			if (shape.getBody().isStatic()) {
+				continue;
+			}
+			for (int j = 0; j < m_shapeCount; ++j) {
+				final Shape other = m_shapes[j];
+				if (!other.getBody().isStatic()) {
+					continue;
+				}
+				final Contact contact = findContact(shape, other);
+				if (testOverlap(m_bounds[i], m_bounds[j])) {
+					if (contact == null) {
+						if (i < j) {
+							m_contactManager.pairAdded(shape, other);
+						} else {
+							m_contactManager.pairAdded(other, shape);
+						}
+					}
+				} else if (contact != null) {
+					m_contactManager.destroy(contact);
+				}
+			}
+		}
+	}
+
+	/** Make contacts between one shape and every shape it can pair with whose bounds overlap its own. */
+	private void pairShape(final int index) {
+		final Shape shape = m_shapes[index];
+		final boolean isStatic = shape.getBody().isStatic();
+		for (int i = 0; i < m_shapeCount; ++i) {
+			final Shape other = m_shapes[i];
+			if (i == index || (isStatic == other.getBody().isStatic())) {
+				continue;
+			}
+			if (testOverlap(m_bounds[index], m_bounds[i]) && findContact(shape, other) == null) {
+				if (i < index) {
+					m_contactManager.pairAdded(other, shape);
+				} else {
+					m_contactManager.pairAdded(shape, other);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Make the bounds the same as another generator's. Shapes are matched up by the order they were made in.
+	 * For internal use by {@link World#copyStateFrom(World)}.
+	 */
+	void copyStateFrom(final GroundContactGenerator source) {
+		if (source.m_shapeCount != m_shapeCount) {
+			throw new IllegalArgumentException("Cannot copy the state of a world with different shapes.");
+		}
+		for (int i = 0; i < m_shapeCount; i++) {
+			m_bounds[i].set(source.m_bounds[i]);
+		}
+	}
+
+	/** Find the contact between two shapes in the first one's contact list, if there is one. */
+	private static Contact findContact(final Shape shape, final Shape other) {
+		for (ContactEdge edge = shape.getBody().m_contactList; edge != null; edge = edge.next) {
+			final Contact contact = edge.contact;
+			if ((contact.m_shape1 == shape && contact.m_shape2 == other)
+					|| (contact.m_shape1 == other && contact.m_shape2 == shape)) {
+				return contact;
+			}
+		}
+		return null;
+	}
+
+	private void destroyContacts(final Shape shape) {
+		ContactEdge edge = shape.getBody().m_contactList;
+		while (edge != null) {
+			final Contact contact = edge.contact;
+			edge = edge.next;
+			if (contact.m_shape1 == shape || contact.m_shape2 == shape) {
+				m_contactManager.destroy(contact);
+			}
+		}
+	}
+
+	private int indexOf(final Shape shape) {
+		for (int i = 0; i < m_shapeCount; i++) {
+			if (m_shapes[i] == shape) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Overlap including touching, like the broad-phase. */
+	private static boolean testOverlap(final AABB a, final AABB b) {
+		return a.lowerBound.x <= b.upperBound.x && b.lowerBound.x <= a.upperBound.x
+				&& a.lowerBound.y <= b.upperBound.y && b.lowerBound.y <= a.upperBound.y;
+	}
+
+	private boolean inRange(final AABB aabb) {
+		final float ax = aabb.lowerBound.x - m_worldAABB.upperBound.x;
+		final float ay = aabb.lowerBound.y - m_worldAABB.upperBound.y;
+		final float bx = m_worldAABB.lowerBound.x - aabb.upperBound.x;
+		final float by = m_worldAABB.lowerBound.y - aabb.upperBound.y;
+		final float dx = MathUtils.max(ax, bx);
+		final float dy = MathUtils.max(ay, by);
+		return (MathUtils.max(dx, dy) < 0.0f);
+	}
+}
@@ -59,6 +59,10 @@ public class Island implements Serializable {
 
 	public ContactListener m_listener;
 
+	// Reused from step to step, along with its constraints. Islands are re-made when a World is deserialized. - MWS
+	transient private ContactSolver contactSolver = new ContactSolver();
+	transient private ContactResult contactResult = new ContactResult();
+
 	public void clear() {
 		m_bodyCount = 0;
 		m_contactCount = 0;
@@ -141,7 +145,7 @@ public class Island implements Serializable {
 			}
 		}
 
-		final ContactSolver contactSolver = new ContactSolver();
+		final ContactSolver contactSolver = this.contactSolver;
 		contactSolver.init(m_contacts, m_contactCount);
 
 		// Initialize velocity constraints.
@@ -249,7 +253,7 @@ public class Island implements Serializable {
 	}
 
 	void solveTOI(final TimeStep subStep) {
-		final ContactSolver contactSolver = new ContactSolver();
+		final ContactSolver contactSolver = this.contactSolver;
 		contactSolver.init(m_contacts, m_contactCount);
 
 		// No warm starting needed for TOI contact events.
@@ -335,7 +339,7 @@ public class Island implements Serializable {
 		for (int i = 0; i < m_contactCount; ++i) {
 			final Contact c = m_contacts[i];
 			final ContactConstraint cc = constraints[i];
-			final ContactResult cr = new ContactResult();
+			final ContactResult cr = contactResult;
 			cr.shape1 = c.getShape1();
 			cr.shape2 = c.getShape2();
 			final Body b1 = cr.shape1.getBody();
@@ -30,6 +30,7 @@ import org.jbox2d.collision.shapes.Shape;
 import org.jbox2d.common.MathUtils;
 import org.jbox2d.common.Settings;
 import org.jbox2d.common.Vec2;
+import org.jbox2d.common.XForm;
 import org.jbox2d.dynamics.contacts.Contact;
 import org.jbox2d.dynamics.contacts.ContactEdge;
 import org.jbox2d.dynamics.joints.Joint;
@@ -37,6 +38,7 @@ import org.jbox2d.dynamics.joints.JointDef;
 import org.jbox2d.dynamics.joints.JointEdge;
 
 import java.io.*;
+import java.util.Arrays;
 
 //Updated to rev 56->118->142->150 of b2World.cpp/.h
 
@@ -55,6 +57,9 @@ public class World implements Externalizable {
 
 	BroadPhase m_broadPhase;
 
+	/** Pairs moving shapes with static ones in place of the broad-phase, if not null. */
+	GroundContactGenerator m_groundContacts;
+
 	private ContactManager m_contactManager;
 
 	private Body m_bodyList;
@@ -102,6 +107,11 @@ public class World implements Externalizable {
 	transient private TimeStep subStep = new TimeStep();
 	transient private TimeStep step = new TimeStep();
 
+	// Matched-up objects and spare contacts for copying state from another world. Grown as needed.
+	transient private Object[] copySourceObjects = new Object[highestBodies];
+	transient private Object[] copyObjects = new Object[highestBodies];
+	transient private Contact[] spareContacts = new Contact[highestContacts];
+
 	/** Get the number of bodies. */
 	public int getBodyCount() {
 		return m_bodyCount;
@@ -164,6 +174,18 @@ public class World implements Externalizable {
 	 * @param doSleep improve performance by not simulating inactive bodies.
 	 */
 	public World(final AABB worldAABB, final Vec2 gravity, final boolean doSleep) {
+		this(worldAABB, gravity, doSleep, false);
+	}
+
+	/**
+	 * Construct a world object.
+	 * @param worldAABB a bounding box that completely encompasses all your shapes.
+	 * @param gravity the world gravity vector.
+	 * @param doSleep improve performance by not simulating inactive bodies.
+	 * @param groundContacts if true, make contacts with a {@link GroundContactGenerator} instead of the broad-phase.
+	 *                       Only for worlds where moving bodies never collide with each other.
+	 */
+	public World(final AABB worldAABB, final Vec2 gravity, final boolean doSleep, final boolean groundContacts) {
 		m_positionCorrection = true;
 		m_warmStarting = true;
 		m_continuousPhysics = true;
@@ -186,6 +208,9 @@ public class World implements Externalizable {
 		m_contactManager = new ContactManager();
 		m_contactManager.m_world = this;
 		m_broadPhase = new BroadPhase(worldAABB, m_contactManager);
+		if (groundContacts) {
+			m_groundContacts = new GroundContactGenerator(m_contactManager, worldAABB);
+		}
 
 		final BodyDef bd = new BodyDef();
 		m_groundBody = createBody(bd);
@@ -254,7 +279,7 @@ public class World implements Externalizable {
 		while (s != null) {
 			final Shape s0 = s;
 			s = s.m_next;
-			s0.destroyProxy(m_broadPhase);
+			destroyProxy(s0);
 			Shape.destroy(s0);
 		}
 
@@ -315,7 +340,7 @@ public class World implements Externalizable {
 			final Body b = def.body1.m_shapeCount < def.body2.m_shapeCount ? def.body1
 			                                                               : def.body2;
 			for (Shape s = b.m_shapeList; s != null; s = s.m_next) {
-				s.refilterProxy(m_broadPhase, b.getMemberXForm());
+				refilterProxy(s, b.getMemberXForm());
 			}
 		}
 		return j;
@@ -393,7 +418,7 @@ public class World implements Externalizable {
 			// Reset the proxies on the body with the minimum number of shapes.
 			final Body b = body1.m_shapeCount < body2.m_shapeCount ? body1 : body2;
 			for (Shape s = b.m_shapeList; s != null; s = s.m_next) {
-				s.refilterProxy(m_broadPhase, b.getMemberXForm());
+				refilterProxy(s, b.getMemberXForm());
 			}
 		}
 	}
@@ -587,7 +612,7 @@ public class World implements Externalizable {
 
 		// Commit shape proxy movements to the broad-phase so that new contacts are created.
 		// Also, some contacts can be destroyed.
-		m_broadPhase.commit();
+		commitProxies();
 	}
 
 	/** For internal use: find TOI contacts and solve them. */
@@ -848,10 +873,188 @@ public class World implements Externalizable {
 			}
 			// Commit shape proxy movements to the broad-phase so that new contacts are created.
 			// Also, some contacts can be destroyed.
+			commitProxies();
+		}
+	}
+
+	/* Shape proxies go in the broad-phase, or the ground contact generator when there is one. For internal use by the
+	 * world and its bodies. - MWS */
+
+	void createProxy(final Shape s, final XForm transform) {
+		if (m_groundContacts != null) {
+			m_groundContacts.addShape(s, transform);
+		} else {
+			s.createProxy(m_broadPhase, transform);
+		}
+	}
+
+	void destroyProxy(final Shape s) {
+		if (m_groundContacts != null) {
+			m_groundContacts.removeShape(s);
+		} else {
+			s.destroyProxy(m_broadPhase);
+		}
+	}
+
+	void refilterProxy(final Shape s, final XForm transform) {
+		if (m_groundContacts != null) {
+			m_groundContacts.refilterShape(s, transform);
+		} else {
+			s.refilterProxy(m_broadPhase, transform);
+		}
+	}
+
+	boolean synchronizeProxy(final Shape s, final XForm transform1, final XForm transform2) {
+		if (m_groundContacts != null) {
+			return m_groundContacts.synchronizeShape(s, transform1, transform2);
+		}
+		return s.synchronize(m_broadPhase, transform1, transform2);
+	}
+
+	void commitProxies() {
+		if (m_groundContacts != null) {
+			m_groundContacts.commit();
+		} else {
 			m_broadPhase.commit();
 		}
 	}
 
+	/**
+	 * Make the simulation state of this world the same as another's, without serializing anything. Stepping the two
+	 * worlds afterwards gives identical results. Both worlds must have been built the same way, i.e. the same
+	 * bodies, shapes and joints created in the same order. The state copied is everything which changes while
+	 * simulating: body motion, joint settings and forces, the broad-phase, and the contacts, including the impulses
+	 * kept for warm starting. This world keeps its own contact listener and filter. Its contacts are reused where
+	 * they match one in the source, so copying between similar states does not allocate.
+	 * <BR><em>Warning</em>: This function is locked during callbacks.
+	 * @param source world to copy the state of. Not changed.
+	 */
+	public void copyStateFrom(final World source) {
+		assert(!m_lock);
+		if (source.m_bodyCount != m_bodyCount || source.m_jointCount != m_jointCount) {
+			throw new IllegalArgumentException("Cannot copy the state of a world with different bodies or joints.");
+		}
+		if ((source.m_groundContacts == null) != (m_groundContacts == null)) {
+			throw new IllegalArgumentException("Cannot copy the state of a world which makes contacts differently.");
+		}
+
+		// Bodies, shapes, and joints are matched up by their order in the lists.
+		int objectCount = 0;
+		for (Body b = m_bodyList, sb = source.m_bodyList; b != null; b = b.m_next, sb = sb.m_next) {
+			if (b.m_shapeCount != sb.m_shapeCount) {
+				throw new IllegalArgumentException("Cannot copy the state of a world with different shapes.");
+			}
+			b.copyStateFrom(sb);
+			for (Shape s = b.m_shapeList, ss = sb.m_shapeList; s != null; s = s.m_next, ss = ss.m_next) {
+				s.m_proxyId = ss.m_proxyId;
+				objectCount = addCopiedObject(ss, s, objectCount);
+			}
+		}
+		for (Joint j = m_jointList, sj = source.m_jointList; j != null; j = j.m_next, sj = sj.m_next) {
+			if (j.m_type != sj.m_type) {
+				throw new IllegalArgumentException("Cannot copy the state of a world with different joints.");
+			}
+			j.copyStateFrom(sj);
+		}
+
+		// Take apart this world's contacts, keeping them to reuse.
+		int spareCount = 0;
+		for (Contact c = m_contactList; c != null; c = c.m_next) {
+			if (spareCount == spareContacts.length) {
+				spareContacts = Arrays.copyOf(spareContacts, 2 * spareCount);
+			}
+			spareContacts[spareCount++] = c;
+		}
+		for (Body b = m_bodyList; b != null; b = b.m_next) {
+			b.m_contactList = null;
+		}
+
+		// Contacts go in the world list in the same order as in the source.
+		final int shapeCount = objectCount;
+		m_contactList = null;
+		Contact last = null;
+		for (Contact sc = source.m_contactList; sc != null; sc = sc.m_next) {
+			final Shape shape1 = (Shape) BroadPhase.matchObject(sc.m_shape1, copySourceObjects, copyObjects, shapeCount);
+			final Shape shape2 = (Shape) BroadPhase.matchObject(sc.m_shape2, copySourceObjects, copyObjects, shapeCount);
+			Contact c = null;
+			for (int i = 0; i < spareCount; i++) {
+				final Contact spare = spareContacts[i];
+				if (spare != null && spare.m_shape1 == shape1 && spare.m_shape2 == shape2
+						&& spare.getClass() == sc.getClass()) {
+					c = spare;
+					spareContacts[i] = null;
+					break;
+				}
+			}
+			if (c == null) {
+				c = Contact.createContact(shape1, shape2);
+			}
+			c.copyStateFrom(sc);
+
+			c.m_prev = last;
+			c.m_next = null;
+			if (last == null) {
+				m_contactList = c;
+			} else {
+				last.m_next = c;
+			}
+			last = c;
+
+			c.m_node1.contact = c;
+			c.m_node1.other = shape2.getBody();
+			c.m_node2.contact = c;
+			c.m_node2.other = shape1.getBody();
+			objectCount = addCopiedObject(sc, c, objectCount);
+		}
+		m_contactCount = source.m_contactCount;
+		Arrays.fill(spareContacts, 0, spareCount, null);
+
+		// Contact edges go in each body's list in the same order as in the source, since the islands are built by
+		// walking them.
+		for (Body b = m_bodyList, sb = source.m_bodyList; b != null; b = b.m_next, sb = sb.m_next) {
+			ContactEdge lastEdge = null;
+			for (ContactEdge sce = sb.m_contactList; sce != null; sce = sce.next) {
+				final Contact c = (Contact) BroadPhase.matchObject(sce.contact, copySourceObjects, copyObjects,
+						objectCount);
+				final ContactEdge edge = sce == sce.contact.m_node1 ? c.m_node1 : c.m_node2;
+				edge.prev = lastEdge;
+				edge.next = null;
+				if (lastEdge == null) {
+					b.m_contactList = edge;
+				} else {
+					lastEdge.next = edge;
+				}
+				lastEdge = edge;
+			}
+		}
+
+		// Broad-phase pairs refer to the matching shapes and contacts.
+		if (m_groundContacts != null) {
+			m_groundContacts.copyStateFrom(source.m_groundContacts);
+		} else {
+			m_broadPhase.copyStateFrom(source.m_broadPhase, copySourceObjects, copyObjects, objectCount);
+		}
+		Arrays.fill(copySourceObjects, 0, objectCount, null);
+		Arrays.fill(copyObjects, 0, objectCount, null);
+
+		m_gravity = source.m_gravity;
+		m_allowSleep = source.m_allowSleep;
+		m_positionCorrection = source.m_positionCorrection;
+		m_warmStarting = source.m_warmStarting;
+		m_continuousPhysics = source.m_continuousPhysics;
+		m_inv_dt0 = source.m_inv_dt0;
+	}
+
+	private int addCopiedObject(final Object sourceObject, final Object object, final int objectCount) {
+		if (objectCount == copyObjects.length) {
+			copySourceObjects = Arrays.copyOf(copySourceObjects, 2 * objectCount);
+			copyObjects = Arrays.copyOf(copyObjects, 2 * objectCount);
+		}
+		copySourceObjects[objectCount] = sourceObject;
+		copyObjects[objectCount] = object;
+		return objectCount + 1;
+	}
+
 	/** Enable/disable warm starting. For testing. */
 	public void setWarmStarting(final boolean flag) { m_warmStarting = flag; }
 
@@ -871,6 +1074,7 @@ public class World implements Externalizable {
 
 		out.writeBoolean(m_lock);
 		out.writeObject(m_broadPhase); // BroadPhase
+		out.writeObject(m_groundContacts); // GroundContactGenerator
 		out.writeObject(m_contactManager); // ContactManager
 		out.writeObject(m_bodyList); // Body
 		out.writeObject(m_contactList); // Contact
@@ -899,6 +1103,7 @@ public class World implements Externalizable {
 
 		m_lock = in.readBoolean();
 		m_broadPhase = (BroadPhase) in.readObject();
+		m_groundContacts = (GroundContactGenerator) in.readObject();
 		m_contactManager = (ContactManager) in.readObject();
 		m_bodyList = (Body) in.readObject();
 		m_contactList = (Contact) in.readObject();
@@ -931,5 +1136,8 @@ public class World implements Externalizable {
 		queue = new Body[highestBodies];
 		subStep = new TimeStep();
 		step = new TimeStep();
+		copySourceObjects = new Object[highestBodies];
+		copyObjects = new Object[highestBodies];
+		spareContacts = new Contact[highestContacts];
 	}
 }
@@ -155,6 +155,32 @@ public abstract class Contact implements Serializable {
 		}
 	}
 
+	/**
+	 * Copy the state of another contact of the same type between matching shapes, including the manifold points and
+	 * their impulses used for warm starting. The list and graph pointers are not changed.
+	 * For internal use by {@link World#copyStateFrom(World)}.
+	 */
+	public void copyStateFrom(final Contact source) {
+		m_friction = source.m_friction;
+		m_restitution = source.m_restitution;
+		m_flags = source.m_flags;
+		m_manifoldCount = source.m_manifoldCount;
+		m_toi = source.m_toi;
+
+		final List<Manifold> manifolds = getManifolds();
+		final List<Manifold> sourceManifolds = source.getManifolds();
+		for (int i = 0; i < manifolds.size(); i++) {
+			final Manifold manifold = manifolds.get(i);
+			final Manifold sourceManifold = sourceManifolds.get(i);
+			// Points past the count are copied too, since they are left over rather than cleared.
+			for (int j = 0; j < manifold.points.length; j++) {
+				manifold.points[j].set(sourceManifold.points[j]);
+			}
+			manifold.normal.set(sourceManifold.normal);
+			manifold.pointCount = sourceManifold.pointCount;
+		}
+	}
+
 	/**
 	 * returns a clone of this contact.  rev 166: not used in the engine
 	 */
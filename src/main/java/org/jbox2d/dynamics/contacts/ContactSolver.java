@@ -52,9 +52,19 @@ public class ContactSolver {
 			m_constraintCount += contacts[i].getManifoldCount();
 		}
 
-		m_constraints = new ContactConstraint[m_constraintCount];
-		for (int i = 0; i < m_constraintCount; i++) {
-			m_constraints[i] = new ContactConstraint();
+		// Constraints are kept between steps and only added to when there are more contacts than ever before. Every
+		// field in use is written below, so nothing carries over from the last step. - MWS
+		if (m_constraints == null || m_constraints.length < m_constraintCount) {
+			final ContactConstraint[] grown = new ContactConstraint[m_constraintCount];
+			int existing = 0;
+			if (m_constraints != null) {
+				existing = m_constraints.length;
+				System.arraycopy(m_constraints, 0, grown, 0, existing);
+			}
+			for (int i = existing; i < m_constraintCount; i++) {
+				grown[i] = new ContactConstraint();
+			}
+			m_constraints = grown;
 		}
 
 		int count = 0;
@@ -34,6 +34,7 @@ import org.jbox2d.collision.shapes.CollidePoly;
 import org.jbox2d.collision.shapes.PolygonShape;
 import org.jbox2d.collision.shapes.Shape;
 import org.jbox2d.collision.shapes.ShapeType;
+import org.jbox2d.common.Settings;
 import org.jbox2d.common.Vec2;
 import org.jbox2d.dynamics.Body;
 import org.jbox2d.dynamics.ContactListener;
@@ -113,6 +114,7 @@ public class PolyContact extends Contact implements Serializable {
     private final Manifold m0 = new Manifold();
 	private final Vec2 v1 = new Vec2();
 	private final ContactPoint cp = new ContactPoint();
+	private final boolean[] persisted = new boolean[Settings.maxManifoldPoints];
 
 	@Override
 	public void evaluate(final ContactListener listener) {
@@ -124,7 +126,10 @@ public class PolyContact extends Contact implements Serializable {
 		collidePoly.collidePolygons(m_manifold, (PolygonShape) m_shape1,b1.getMemberXForm(),(PolygonShape) m_shape2,
                 b2.getMemberXForm());
 
-		final boolean[] persisted = {false, false};
+		final boolean[] persisted = this.persisted;
+		for (int i = 0; i < persisted.length; ++i) {
+			persisted[i] = false;
+		}
 
 		cp.shape1 = m_shape1;
 		cp.shape2 = m_shape2;
@@ -133,4 +133,14 @@ public abstract class Joint implements Serializable {
 
 	/** This returns true if the position errors are within tolerance. */
 	public abstract boolean solvePositionConstraints();
+
+	/**
+	 * Copy the state of another joint of the same type which may change while simulating, e.g. motor settings and
+	 * the forces kept for warm starting. The bodies it connects are not changed.
+	 * For internal use by {@link org.jbox2d.dynamics.World#copyStateFrom(org.jbox2d.dynamics.World)}.
+	 */
+	public void copyStateFrom(final Joint source) {
+		m_islandFlag = source.m_islandFlag;
+		m_collideConnected = source.m_collideConnected;
+	}
 }
@@ -89,6 +89,29 @@ public class RevoluteJoint extends Joint implements Serializable {
 		m_enableMotor = def.enableMotor;
 	}
 
+	@Override
+	public void copyStateFrom(final Joint source) {
+		super.copyStateFrom(source);
+		final RevoluteJoint other = (RevoluteJoint) source;
+		m_localAnchor1.set(other.m_localAnchor1);
+		m_localAnchor2.set(other.m_localAnchor2);
+		m_pivotForce.set(other.m_pivotForce);
+		m_lastWarmStartingPivotForce.set(other.m_lastWarmStartingPivotForce);
+		m_motorForce = other.m_motorForce;
+		m_limitForce = other.m_limitForce;
+		m_limitPositionImpulse = other.m_limitPositionImpulse;
+		m_pivotMass.set(other.m_pivotMass);
+		m_motorMass = other.m_motorMass;
+		m_enableMotor = other.m_enableMotor;
+		m_maxMotorTorque = other.m_maxMotorTorque;
+		m_motorSpeed = other.m_motorSpeed;
+		m_enableLimit = other.m_enableLimit;
+		m_referenceAngle = other.m_referenceAngle;
+		m_lowerAngle = other.m_lowerAngle;
+		m_upperAngle = other.m_upperAngle;
+		m_limitState = other.m_limitState;
+	}
+
 	// Locally-used temps
 	private final Vec2
 			r1 = new Vec2(),
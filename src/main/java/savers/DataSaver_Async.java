@@ -0,0 +1,365 @@
+package savers;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import game.IGameInternal;
+import game.action.Action;
+import game.action.Command;
+import game.state.IState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tree.node.NodeGameBase;
+
+import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves the work of any other saver off the {@link tree.TreeWorker} threads. Each worker's copy of this saver only
+ * records its current game in memory. Finished games are put on a bounded queue, and one background writer thread
+ * replays them into the wrapped saver, which does all the converting and file writing.
+ *
+ * All copies share the one wrapped saver and writer thread, so games from every worker go into the same files. When
+ * a stage ends, every worker reports it, but the wrapped saver only hears about it once.
+ * {@link #finalizeSaverData()} waits until everything queued so far has been written.
+ *
+ * If the writer falls behind, the queue fills up and workers wait for space at the end of their games, rather than
+ * using unbounded memory.
+ *
+ * @param <C> Command type used by the game.
+ * @param <S> State type used by the game.
+ *
+ * @author matt
+ */
+public class DataSaver_Async<C extends Command<?>, S extends IState> implements IDataSaver<C, S> {
+
+    /**
+     * Saver which actually handles the data. Only ever used by the writer thread once games start.
+     */
+    private final IDataSaver<C, S> saver;
+
+    /**
+     * Maximum number of finished games waiting to be written.
+     */
+    public final int queueCapacity;
+
+    /**
+     * Queue, writer thread and stage bookkeeping shared by this saver and all its copies.
+     */
+    private final WritePipeline<C, S> pipeline;
+
+    /**
+     * Whether the wrapped saver wants states at every timestep. If not, they are not even collected.
+     */
+    private final boolean recordTimesteps;
+
+    /**
+     * Current game being recorded by this copy.
+     */
+    private S initialState;
+    private final List<Action<C>> actions = new ArrayList<>();
+    private final List<S> states = new ArrayList<>();
+    private final List<Boolean> failedStates = new ArrayList<>();
+
+    /**
+     * Whether this copy's last stage ending was passed on to the wrapped saver. If not, its matching finalize is
+     * skipped too.
+     */
+    private boolean reportedStageEnding = true;
+
+    private static final Logger logger = LogManager.getLogger(DataSaver_Async.class);
+
+    /**
+     * Make a new asynchronous saver.
+     *
+     * @param saver Saver to do the actual saving, on a background thread.
+     * @param queueCapacity Maximum number of finished games waiting to be written before workers have to wait.
+     */
+    @JsonCreator
+    public DataSaver_Async(@JsonProperty("saver") IDataSaver<C, S> saver,
+                           @JsonProperty("queueCapacity") int queueCapacity) {
+        this(saver, queueCapacity, new WritePipeline<>(saver, queueCapacity));
+    }
+
+    private DataSaver_Async(IDataSaver<C, S> saver, int queueCapacity, WritePipeline<C, S> pipeline) {
+        Preconditions.checkNotNull(saver);
+        Preconditions.checkArgument(queueCapacity > 0, "Queue capacity must be positive.", queueCapacity);
+        this.saver = saver;
+        this.queueCapacity = queueCapacity;
+        this.pipeline = pipeline;
+        recordTimesteps = saver instanceof DataSaver_Dense;
+    }
+
+    @Override
+    public void reportGameInitialization(S initialState) {
+        this.initialState = initialState;
+        actions.clear();
+        states.clear();
+        failedStates.clear();
+    }
+
+    @Override
+    public void reportTimestep(Action<C> action, IGameInternal<C, S> game) {
+        if (recordTimesteps) {
+            actions.add(action);
+            states.add(game.getCurrentState());
+            failedStates.add(game.isFailed());
+        }
+    }
+
+    @Override
+    public void reportGameEnding(NodeGameBase<?, C, S> endNode) {
+        S gameInitialState = initialState;
+        List<Action<C>> gameActions = new ArrayList<>(actions);
+        List<S> gameStates = new ArrayList<>(states);
+        List<Boolean> gameFailedStates = new ArrayList<>(failedStates);
+        actions.clear();
+        states.clear();
+        failedStates.clear();
+
+        pipeline.enqueue(() -> {
+            if (gameInitialState != null)
+                saver.reportGameInitialization(gameInitialState);
+            RecordedGame<C, S> recordedGame = new RecordedGame<>();
+            for (int i = 0; i < gameActions.size(); i++) {
+                recordedGame.set(gameStates.get(i), gameFailedStates.get(i), i + 1);
+                saver.reportTimestep(gameActions.get(i), recordedGame);
+            }
+            saver.reportGameEnding(endNode);
+        });
+    }
+
+    @Override
+    public void reportStageEnding(NodeGameBase<?, C, S> rootNode, List<NodeGameBase<?, C, S>> targetNodes) {
+        reportedStageEnding = pipeline.isFirstStageEnding(this);
+        if (reportedStageEnding)
+            pipeline.enqueue(() -> saver.reportStageEnding(rootNode, targetNodes));
+    }
+
+    /**
+     * Write everything queued so far, and only return once it has been.
+     */
+    @Override
+    public void finalizeSaverData() {
+        if (reportedStageEnding)
+            pipeline.enqueue(saver::finalizeSaverData);
+        reportedStageEnding = true;
+        pipeline.flush();
+    }
+
+    @Override
+    public void setSaveInterval(int numGames) {
+        saver.setSaveInterval(numGames);
+    }
+
+    @Override
+    public int getSaveInterval() {
+        return saver.getSaveInterval();
+    }
+
+    @Override
+    public void setSavePath(String fileLoc) {
+        saver.setSavePath(fileLoc);
+    }
+
+    @Override
+    public String getSavePath() {
+        return saver.getSavePath();
+    }
+
+    public IDataSaver<C, S> getSaver() {
+        return saver;
+    }
+
+    /**
+     * Number of times any worker found the queue full and had to wait for the writer to catch up.
+     *
+     * @return Number of waits since this saver was made.
+     */
+    @JsonIgnore
+    public long getBackpressureWaitCount() {
+        return pipeline.backpressureWaits.sum();
+    }
+
+    /**
+     * Get a saver which records games independently of this one, but sends them to the same wrapped saver and
+     * writer thread.
+     */
+    @Override
+    public DataSaver_Async<C, S> getCopy() {
+        return new DataSaver_Async<>(saver, queueCapacity, pipeline);
+    }
+
+    /**
+     * Bounded queue of writing jobs and the thread which does them. Also used directly by savers which keep their own
+     * shared file, like {@link DataSaver_TreeFile}.
+     */
+    static class WritePipeline<C extends Command<?>, S extends IState> implements Runnable {
+
+        private final BlockingQueue<Runnable> queue;
+
+        private final IDataSaver<C, S> saver;
+
+        private Thread writerThread;
+
+        /**
+         * Copies which have reported the end of the current stage.
+         */
+        private final Set<IDataSaver<C, S>> stageEndingsReported =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private final LongAdder backpressureWaits = new LongAdder();
+
+        WritePipeline(IDataSaver<C, S> saver, int capacity) {
+            this.saver = saver;
+            queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Add a job for the writer thread. Waits if the queue is full.
+         */
+        void enqueue(Runnable job) {
+            startWriter();
+            if (!queue.offer(job)) {
+                backpressureWaits.increment();
+                try {
+                    queue.put(job);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.error("Interrupted while waiting to queue data for saving. Running it on this thread.");
+                    job.run();
+                }
+            }
+        }
+
+        /**
+         * Wait until the writer has done everything queued before now.
+         */
+        void flush() {
+            CountDownLatch done = new CountDownLatch(1);
+            enqueue(done::countDown);
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Every worker's copy reports each stage ending. Only the first one for each stage should be passed on. A
+         * copy reporting again means a new stage has ended.
+         */
+        synchronized boolean isFirstStageEnding(IDataSaver<C, S> copy) {
+            if (stageEndingsReported.contains(copy))
+                stageEndingsReported.clear();
+            stageEndingsReported.add(copy);
+            return stageEndingsReported.size() == 1;
+        }
+
+        private synchronized void startWriter() {
+            if (writerThread == null) {
+                writerThread = new Thread(this, "DataSaverWriter_" + saver.getClass().getSimpleName());
+                writerThread.setDaemon(true);
+                writerThread.start();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable job;
+                try {
+                    job = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    job.run();
+                } catch (RuntimeException e) {
+                    logger.error("Saver failed while writing queued data.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stands in for the game when replaying recorded timesteps to the wrapped saver. It only provides the state
+     * which was recorded at each timestep.
+     */
+    private static class RecordedGame<C extends Command<?>, S extends IState> implements IGameInternal<C, S> {
+
+        private S state;
+        private boolean failed;
+        private long timesteps;
+
+        void set(S state, boolean failed, long timesteps) {
+            this.state = state;
+            this.failed = failed;
+            this.timesteps = timesteps;
+        }
+
+        @Override
+        public S getCurrentState() {
+            return state;
+        }
+
+        @Override
+        public boolean isFailed() {
+            return failed;
+        }
+
+        @Override
+        public long getTimestepsThisGame() {
+            return timesteps;
+        }
+
+        @Override
+        public int getStateDimension() {
+            return state.getStateSize();
+        }
+
+        @Override
+        public void resetGame() {
+            throw new UnsupportedOperationException("Recorded games cannot be simulated.");
+        }
+
+        @Override
+        public void step(C command) {
+            throw new UnsupportedOperationException("Recorded games cannot be simulated.");
+        }
+
+        @Override
+        public void command(C command) {
+            throw new UnsupportedOperationException("Recorded games cannot be simulated.");
+        }
+
+        @Override
+        public int getNumberOfChoices() {
+            throw new UnsupportedOperationException("Recorded games cannot be simulated.");
+        }
+
+        @Override
+        public void draw(Graphics g, float runnerScaling, int xOffsetPixels, int yOffsetPixels) {
+            throw new UnsupportedOperationException("Recorded games cannot be drawn.");
+        }
+
+        @Override
+        public void setState(S st) {
+            throw new UnsupportedOperationException("Recorded games cannot be simulated.");
+        }
+
+        @Override
+        public IGameInternal<C, S> getCopy() {
+            throw new UnsupportedOperationException("Recorded games cannot be copied.");
+        }
+    }
+}
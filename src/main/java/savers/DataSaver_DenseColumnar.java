@@ -0,0 +1,132 @@
+package savers;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import data.DenseRun;
+import data.DenseRunWriter;
+import game.qwop.CommandQWOP;
+import game.qwop.StateQWOP;
+import game.state.IState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tree.node.NodeGameBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saves data at every timestep in the columnar binary format of {@link DenseRunWriter}. Meant to replace
+ * {@link DataSaver_DenseJava}. Files are about two thirds the size of serialized {@link data.SavableDenseData}, or
+ * about half when compressed, load straight into primitive arrays with {@link data.DenseRunReader}, and do not depend
+ * on the names of any Java classes.
+ * <p>
+ * Each saver, including each copy, writes to its own files, so workers saving at the same time never append to the
+ * same file.
+ *
+ * @author matt
+ */
+public class DataSaver_DenseColumnar extends DataSaver_Dense<CommandQWOP, StateQWOP> {
+
+    /**
+     * File prefix. Goes in front of date.
+     */
+    public static final String filePrefix = "qwop_dense";
+
+    /**
+     * Do not include dot before.
+     */
+    public static final String fileExtension = "denserun";
+
+    /**
+     * Number of savers made so far. Used to give each its own file names.
+     */
+    private static final AtomicInteger saverCount = new AtomicInteger();
+
+    /**
+     * Goes in this saver's file names, after {@link #filePrefix}.
+     */
+    private final int id = saverCount.getAndIncrement();
+
+    /**
+     * Whether to delta-encode and deflate the states.
+     */
+    private final boolean compress;
+
+    /**
+     * Games since last save.
+     */
+    private int saveCounter = 0;
+
+    /**
+     * Buffered games waiting to be written to file.
+     */
+    private final List<DenseRun> saveBuffer = new ArrayList<>();
+
+    private static final Logger logger = LogManager.getLogger(DataSaver_DenseColumnar.class);
+
+    /**
+     * Make a new saver.
+     *
+     * @param compress Whether to delta-encode and deflate the states. Roughly a quarter smaller on disk, but slower
+     *                 to write and load.
+     */
+    @JsonCreator
+    public DataSaver_DenseColumnar(@JsonProperty("compress") boolean compress) {
+        this.compress = compress;
+    }
+
+    @Override
+    public void reportGameEnding(NodeGameBase<?, CommandQWOP, StateQWOP> endNode) {
+        List<StateQWOP> states = new ArrayList<>(stateBuffer.size());
+        for (IState st : stateBuffer) {
+            states.add((StateQWOP) st);
+        }
+        saveBuffer.add(DenseRun.fromTimesteps(states, actionBuffer));
+        saveCounter++;
+
+        if (getSaveInterval() == saveCounter) {
+            toFile();
+            saveCounter = 0;
+        }
+        // Clear out for the next run to begin.
+        stateBuffer.clear();
+        actionBuffer.clear();
+    }
+
+    @Override
+    public void finalizeSaverData() {
+        if (getSaveInterval() == 0) {
+            toFile();
+        }
+    }
+
+    private void toFile() {
+        if (saveBuffer.isEmpty()) {
+            return;
+        }
+        File saveFile = new File(fileLocation + IDataSaver.generateFileName(filePrefix + "_" + id, fileExtension));
+        try (DenseRunWriter writer = DenseRunWriter.open(saveFile, true, compress)) {
+            writer.writeAll(saveBuffer);
+            logger.debug("Wrote " + saveBuffer.size() + " runs to " + saveFile + ".");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        saveBuffer.clear();
+    }
+
+    @JsonProperty("compress")
+    public boolean isCompressed() {
+        return compress;
+    }
+
+    @Override
+    public DataSaver_DenseColumnar getCopy() {
+        DataSaver_DenseColumnar newSaver = new DataSaver_DenseColumnar(compress);
+        newSaver.setSaveInterval(getSaveInterval());
+        newSaver.setSavePath(fileLocation);
+        return newSaver;
+    }
+}
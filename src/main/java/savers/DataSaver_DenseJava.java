@@ -12,7 +12,8 @@ import java.util.ArrayList;
 /**
  * Saves data at every timestep. Old saver which serializes java classes. Useful for manipulating data in java, not
  * good for TensorFlow stuff. Another disadvantage is that if any of the Java code, packages, or names change, then
- * the data might become unloadable.
+ * the data might become unloadable. {@link DataSaver_DenseColumnar} saves the same data much smaller and faster to
+ * load.
  *
  * @author matt
  */
@@ -1,7 +1,7 @@
 package savers;
 
 import com.google.protobuf.ByteString;
-import data.TFRecordWriter;
+import data.TFRecordChannelWriter;
 import game.action.Action;
 import game.qwop.CommandQWOP;
 import game.qwop.IStateQWOP.ObjectName;
@@ -14,7 +14,6 @@ import org.tensorflow.example.*;
 import tree.node.NodeGameBase;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -141,7 +140,7 @@ public class DataSaver_DenseTFRecord extends DataSaver_Dense<CommandQWOP, StateQ
             logger.debug("Directory structure created: " + file.getPath());
         }
 
-        FileOutputStream stream = new FileOutputStream(file);
+        TFRecordChannelWriter stream = TFRecordChannelWriter.open(file, false);
 
         // Iterate through all runs in a single file.
         for (GameContainer dat : gameData) {
@@ -275,7 +274,7 @@ public class DataSaver_DenseTFRecord extends DataSaver_Dense<CommandQWOP, StateQ
             seqEx.setContext(contextFeats.build());
 
             seqEx.setFeatureLists(featLists.build());
-            TFRecordWriter.writeToStream(seqEx.build().toByteArray(), stream);
+            stream.write(seqEx.build().toByteArray());
         }
         stream.close();
     }
@@ -0,0 +1,359 @@
+package savers;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import game.IGameInternal;
+import game.action.Action;
+import game.action.IActionGenerator;
+import game.qwop.CommandQWOP;
+import game.qwop.StateQWOP;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tree.node.NodeGameBase;
+import tree.node.NodeGameExplorableBase;
+import tree.node.NodeGameGraphics;
+import tree.node.TreeFile;
+import tree.node.TreeStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Writes the search tree itself to a {@link TreeFile} as it grows. At the end of each game, any nodes on the path to
+ * the end node which are not in the file yet are appended, and the values along the path are rewritten. Whole-tree
+ * values are rewritten when a stage ends.
+ *
+ * Unlike other savers, copies of this one (e.g. for each {@link tree.TreeWorker}) all write to the same file, since
+ * the workers share one tree. Workers never touch the disk themselves. The writes are queued for one background
+ * writer thread (see {@link DataSaver_Async}), and workers only wait when the queue is full or when
+ * {@link #finalizeSaverData()} waits for everything queued to be written.
+ *
+ * A search can be picked back up from a tree file with {@link #resume(File, IActionGenerator, int)}.
+ *
+ * @author matt
+ */
+public class DataSaver_TreeFile implements IDataSaver<CommandQWOP, StateQWOP> {
+
+    /**
+     * File prefix. Goes in front of date.
+     */
+    public final String filePrefix = "qwop_tree";
+
+    /**
+     * Do not include dot before.
+     */
+    public final String fileExtension = "tree";
+
+    /**
+     * File save location.
+     */
+    private String fileLocation = "./";
+
+    /**
+     * How many games in between forcing everything written to disk.
+     */
+    private int saveInterval = 100;
+
+    /**
+     * Games since last flush.
+     */
+    private int gamesSinceFlush = 0;
+
+    /**
+     * Maximum number of games waiting to be written before workers have to wait for the writer.
+     */
+    private static final int WRITE_QUEUE_CAPACITY = 256;
+
+    /**
+     * Whether this copy's last stage ending was the one which got written. If not, its matching finalize does not
+     * flush the file again.
+     */
+    private boolean reportedStageEnding = true;
+
+    /**
+     * File and node ids shared by this saver and all its copies.
+     */
+    private final SharedTreeFile sharedFile;
+
+    private static final Logger logger = LogManager.getLogger(DataSaver_TreeFile.class);
+
+    public DataSaver_TreeFile() {
+        sharedFile = new SharedTreeFile(new DataSaver_Async.WritePipeline<>(this, WRITE_QUEUE_CAPACITY));
+    }
+
+    private DataSaver_TreeFile(SharedTreeFile sharedFile) {
+        this.sharedFile = sharedFile;
+    }
+
+    /**
+     * Load a tree file, and keep appending to it from now on. The whole file is loaded into a compact
+     * {@link TreeStore}, but only its first root and the levels just below are made into ordinary nodes. Stored nodes
+     * deeper than that are not lost. If the search reaches one of them again, this saver finds it in the file by its
+     * action rather than appending a duplicate, and merges the stored value and visit count into the new node (see
+     * {@link NodeGameBase#mergeValue(float, int)}).
+     *
+     * @param file Existing tree file.
+     * @param actionGenerator Assigns untried actions to the loaded nodes, so search can continue from them.
+     * @param maxDepth How many levels below the root to make into ordinary nodes.
+     * @return Root of the loaded tree. Can be searched from, or drawn in a {@link ui.PanelTree}.
+     * @throws IOException If the file could not be read or reopened.
+     */
+    public NodeGameGraphics<CommandQWOP, StateQWOP> resume(File file, IActionGenerator<CommandQWOP> actionGenerator,
+                                                           int maxDepth) throws IOException {
+        TreeStore<CommandQWOP, StateQWOP> store = TreeFile.load(file, TreeStore.QWOP_STATES, false);
+        if (store.size() == 0)
+            throw new IOException("Tree file has no nodes to resume from.");
+        NodeGameGraphics<CommandQWOP, StateQWOP> root = store.materialize(new NodeGameGraphics<>(store.getState(0),
+                actionGenerator), 0, maxDepth);
+
+        sharedFile.pipeline.flush(); // Anything queued belongs to the old file.
+        synchronized (sharedFile) {
+            sharedFile.close();
+            sharedFile.treeFile = TreeFile.openForAppend(file, TreeStore.QWOP_STATES);
+            sharedFile.loadedStore = store;
+
+            // Materialized children come in the same order as the stored ones.
+            ArrayDeque<NodeGameBase<?, CommandQWOP, StateQWOP>> nodeStack = new ArrayDeque<>();
+            ArrayDeque<Integer> idStack = new ArrayDeque<>();
+            nodeStack.push(root);
+            idStack.push(0);
+            while (!nodeStack.isEmpty()) {
+                NodeGameBase<?, CommandQWOP, StateQWOP> node = nodeStack.pop();
+                int id = idStack.pop();
+                sharedFile.nodeIds.put(node, id);
+                int childId = store.getFirstChild(id);
+                for (NodeGameBase<?, CommandQWOP, StateQWOP> child : node.getChildren()) {
+                    nodeStack.push(child);
+                    idStack.push(childId);
+                    childId = store.getNextSibling(childId);
+                }
+            }
+        }
+        logger.info("Resumed from " + file.getName() + " with " + store.size() + " nodes.");
+        return root;
+    }
+
+    @Override
+    public void reportGameInitialization(StateQWOP initialState) {}
+
+    @Override
+    public void reportTimestep(Action<CommandQWOP> action, IGameInternal<CommandQWOP, StateQWOP> game) {}
+
+    @Override
+    public void reportGameEnding(NodeGameBase<?, CommandQWOP, StateQWOP> endNode) {
+        sharedFile.pipeline.enqueue(() -> {
+            synchronized (sharedFile) {
+                try {
+                    if (sharedFile.treeFile == null) {
+                        File file = new File(fileLocation + IDataSaver.generateFileName(filePrefix, fileExtension));
+                        sharedFile.treeFile = TreeFile.create(file, TreeStore.QWOP_STATES);
+                    }
+                    List<NodeGameBase<?, CommandQWOP, StateQWOP>> path = new ArrayList<>();
+                    endNode.recurseUpTreeInclusive(path::add);
+                    for (int i = path.size() - 1; i >= 0; i--) {
+                        NodeGameBase<?, CommandQWOP, StateQWOP> node = path.get(i);
+                        sharedFile.writeValue(node, sharedFile.getOrAppend(node));
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+
+        gamesSinceFlush++;
+        if (gamesSinceFlush >= saveInterval) {
+            sharedFile.pipeline.enqueue(sharedFile::flush); // No need to wait for it here.
+            gamesSinceFlush = 0;
+        }
+    }
+
+    @Override
+    public void reportStageEnding(NodeGameBase<?, CommandQWOP, StateQWOP> rootNode,
+                                  List<NodeGameBase<?, CommandQWOP, StateQWOP>> targetNodes) {
+        // Every worker's copy reports the same stage ending for the same tree. One walk is enough.
+        reportedStageEnding = sharedFile.pipeline.isFirstStageEnding(this);
+        if (!reportedStageEnding)
+            return;
+        sharedFile.pipeline.enqueue(() -> {
+            synchronized (sharedFile) {
+                if (sharedFile.treeFile == null)
+                    return;
+                try {
+                    // Backed-up values could have changed anywhere in the tree.
+                    ArrayDeque<NodeGameBase<?, CommandQWOP, StateQWOP>> nodeStack = new ArrayDeque<>();
+                    nodeStack.push(rootNode);
+                    while (!nodeStack.isEmpty()) {
+                        NodeGameBase<?, CommandQWOP, StateQWOP> node = nodeStack.pop();
+                        Integer id = sharedFile.nodeIds.get(node);
+                        if (id != null) {
+                            sharedFile.writeValue(node, id);
+                            for (NodeGameBase<?, CommandQWOP, StateQWOP> child : node.getChildren()) {
+                                nodeStack.push(child);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Write everything queued so far to disk, and only return once it has been. After a stage ending, only the copy
+     * which reported it flushes the file. The others just wait for that.
+     */
+    @Override
+    public void finalizeSaverData() {
+        if (reportedStageEnding)
+            sharedFile.pipeline.enqueue(sharedFile::flush);
+        reportedStageEnding = true;
+        sharedFile.pipeline.flush();
+    }
+
+    /**
+     * Get the file currently being written to. Writes are queued, so call {@link #finalizeSaverData()} first to be
+     * sure it has everything reported so far.
+     *
+     * @return The tree file, or null if nothing has been written yet.
+     */
+    @JsonIgnore
+    public TreeFile<CommandQWOP, StateQWOP> getTreeFile() {
+        synchronized (sharedFile) {
+            return sharedFile.treeFile;
+        }
+    }
+
+    /**
+     * Flush and close the file. Copies of this saver will start a new file if they are given more games.
+     */
+    public void close() {
+        sharedFile.pipeline.flush();
+        synchronized (sharedFile) {
+            try {
+                sharedFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void setSaveInterval(int numGames) {
+        saveInterval = numGames;
+    }
+
+    @Override
+    public int getSaveInterval() {
+        return saveInterval;
+    }
+
+    @Override
+    public void setSavePath(String fileLoc) {
+        this.fileLocation = fileLoc;
+    }
+
+    @Override
+    public String getSavePath() {
+        return fileLocation;
+    }
+
+    /**
+     * Get a saver with the same settings which writes to the same file as this one.
+     */
+    @Override
+    public DataSaver_TreeFile getCopy() {
+        DataSaver_TreeFile newSaver = new DataSaver_TreeFile(sharedFile);
+        newSaver.setSaveInterval(saveInterval);
+        newSaver.setSavePath(fileLocation);
+        return newSaver;
+    }
+
+    /**
+     * Tree file, the ids of nodes already in it, and the writer thread which does all the writing. All access to the
+     * file and ids is synchronized on this object, which in practice only the writer thread holds while searching.
+     */
+    private static class SharedTreeFile {
+
+        final DataSaver_Async.WritePipeline<CommandQWOP, StateQWOP> pipeline;
+
+        TreeFile<CommandQWOP, StateQWOP> treeFile;
+
+        /**
+         * Nodes already written, and their ids. Weak, so pruned branches can still be collected.
+         */
+        final Map<NodeGameBase<?, CommandQWOP, StateQWOP>, Integer> nodeIds = new WeakHashMap<>();
+
+        /**
+         * Everything which was in the file when it was resumed, including nodes which were not materialized. Null if
+         * this is a new file.
+         */
+        TreeStore<CommandQWOP, StateQWOP> loadedStore;
+
+        SharedTreeFile(DataSaver_Async.WritePipeline<CommandQWOP, StateQWOP> pipeline) {
+            this.pipeline = pipeline;
+        }
+
+        /**
+         * Get the id of a node in the file, adding it if it is not there yet. Its parent must already be there.
+         */
+        int getOrAppend(NodeGameBase<?, CommandQWOP, StateQWOP> node) throws IOException {
+            Integer id = nodeIds.get(node);
+            if (id == null) {
+                if (node.getTreeDepth() == 0) {
+                    id = treeFile.appendRoot(node.getState());
+                } else {
+                    int parentId = nodeIds.get(node.getParent());
+                    id = findLoaded(parentId, node);
+                    if (id == TreeStore.NO_NODE) {
+                        id = treeFile.appendNode(parentId, node.getAction(), node.getState());
+                    } else {
+                        // The search found a stored node again. Carry on from its statistics rather than writing the
+                        // few new visits over them.
+                        node.mergeValue(loadedStore.getValue(id), loadedStore.getUpdateCount(id));
+                    }
+                }
+                nodeIds.put(node, id);
+            }
+            return id;
+        }
+
+        /**
+         * Find a node which was in the file when resumed, but was not materialized.
+         */
+        private int findLoaded(int parentId, NodeGameBase<?, CommandQWOP, StateQWOP> node) {
+            if (loadedStore == null || parentId >= loadedStore.size())
+                return TreeStore.NO_NODE;
+            return loadedStore.findChild(parentId, node.getAction());
+        }
+
+        synchronized void flush() {
+            if (treeFile != null) {
+                try {
+                    treeFile.flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        void writeValue(NodeGameBase<?, CommandQWOP, StateQWOP> node, int id) throws IOException {
+            boolean fullyExplored = node instanceof NodeGameExplorableBase &&
+                    ((NodeGameExplorableBase<?, CommandQWOP, StateQWOP>) node).isFullyExplored();
+            treeFile.writeValue(id, node.getValue(), node.getUpdateCount(), fullyExplored);
+        }
+
+        void close() throws IOException {
+            if (treeFile != null) {
+                treeFile.close();
+                treeFile = null;
+                nodeIds.clear();
+                loadedStore = null;
+            }
+        }
+    }
+}
@@ -20,8 +20,11 @@ import java.util.List;
         @JsonSubTypes.Type(value = DataSaver_Null.class, name = "null"),
         @JsonSubTypes.Type(value = DataSaver_DenseTFRecord.class, name = "dense_tfrecord"),
         @JsonSubTypes.Type(value = DataSaver_DenseJava.class, name = "dense_java"),
+        @JsonSubTypes.Type(value = DataSaver_DenseColumnar.class, name = "dense_columnar"),
         @JsonSubTypes.Type(value = DataSaver_Sparse.class, name = "sparse"),
-        @JsonSubTypes.Type(value = DataSaver_StageSelected.class, name = "stage_selected")
+        @JsonSubTypes.Type(value = DataSaver_StageSelected.class, name = "stage_selected"),
+        @JsonSubTypes.Type(value = DataSaver_TreeFile.class, name = "tree_file"),
+        @JsonSubTypes.Type(value = DataSaver_Async.class, name = "async")
 
 })
 public interface IDataSaver<C extends Command<?>, S extends IState> {
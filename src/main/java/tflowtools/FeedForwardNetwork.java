@@ -0,0 +1,345 @@
+package tflowtools;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Forward pass of a small fully-connected network done in plain Java, without going through a TensorFlow session.
+ * The weights and biases are copied out of a {@link TrainableNetwork} once, so later training of that network is not
+ * reflected here until a new snapshot is made with {@link #fromTrainableNetwork(TrainableNetwork)}.
+ *
+ * For the value-function-sized nets used here (a couple of layers of ~100 units), the cost of a session run on a
+ * single example is mostly overhead, and this is a few times faster. That is the case for the value functions, which
+ * evaluate one predicted state at a time. By a batch of ten or so the two are about even, and for larger batches
+ * TensorFlow's vectorized kernels win. This is also safe to evaluate from many threads at once. Each thread keeps
+ * its own scratch buffers for the hidden layers, so evaluations do not allocate once those buffers are large enough
+ * for the batch size used.
+ *
+ * Weights are stored transposed from TensorFlow's [input][output] layout, as one flat [output][input] array per layer.
+ * This way each output unit is a dot product over two contiguous arrays.
+ *
+ * @author matt
+ */
+public class FeedForwardNetwork {
+
+    /**
+     * Activation functions available when creating a net with create_generic_graph.py.
+     */
+    public enum Activation {
+        IDENTITY, RELU, LEAKY_RELU, ELU, SIGMOID, TANH, SOFTMAX;
+
+        /**
+         * Get the activation matching a TensorFlow operation type.
+         * @param operationType Type of the activation operation in the graph, e.g. "LeakyRelu".
+         * @return The matching activation.
+         * @throws IllegalArgumentException If this operation type is not one of the supported activations.
+         */
+        public static Activation fromOperationType(String operationType) {
+            switch (operationType) {
+                case "Identity":
+                    return IDENTITY;
+                case "Relu":
+                    return RELU;
+                case "LeakyRelu":
+                    return LEAKY_RELU;
+                case "Elu":
+                    return ELU;
+                case "Sigmoid":
+                    return SIGMOID;
+                case "Tanh":
+                    return TANH;
+                case "Softmax":
+                    return SOFTMAX;
+                default:
+                    throw new IllegalArgumentException("Unsupported activation operation type: " + operationType);
+            }
+        }
+    }
+
+    /**
+     * Slope for negative inputs to {@link Activation#LEAKY_RELU}. The Java TensorFlow API cannot read operation
+     * attributes, so this is tf.nn.leaky_relu's default, which is what create_generic_graph.py uses.
+     */
+    public static final float LEAKY_RELU_ALPHA = 0.2f;
+
+    /**
+     * Sizes of all layers, including the input and output.
+     */
+    private final int[] layerSizes;
+
+    /**
+     * Flat [output][input] weights for each layer.
+     */
+    private final float[][] weights;
+
+    private final float[][] biases;
+
+    private final Activation[] layerActivations;
+
+    private final Activation outputActivation;
+
+    /**
+     * Largest hidden layer. Sets the scratch buffer size per example.
+     */
+    private final int maxHiddenSize;
+
+    /**
+     * Two buffers per thread for hidden layer values, swapped from layer to layer.
+     */
+    private final ThreadLocal<float[][]> scratch = ThreadLocal.withInitial(() -> new float[2][0]);
+
+    /**
+     * Flat input and output buffers per thread, for {@link #evaluateInput(float[][])}.
+     */
+    private final ThreadLocal<float[][]> flatScratch = ThreadLocal.withInitial(() -> new float[2][0]);
+
+    /**
+     * Make a network from weights and biases.
+     * @param layerWeights Weights for each layer, in TensorFlow's [input][output] layout. These are copied.
+     * @param layerBiases Biases for each layer. These are copied.
+     * @param layerActivations Activation applied at the end of each layer.
+     * @param outputActivation Activation applied to the output of the last layer, after its own layer activation.
+     */
+    public FeedForwardNetwork(@NotNull float[][][] layerWeights, @NotNull float[][] layerBiases,
+                              @NotNull Activation[] layerActivations, @NotNull Activation outputActivation) {
+        Preconditions.checkArgument(layerWeights.length > 0, "Network must have at least one layer.");
+        Preconditions.checkArgument(layerBiases.length == layerWeights.length
+                        && layerActivations.length == layerWeights.length,
+                "Number of layers in weights, biases, and activations must match.", layerWeights.length,
+                layerBiases.length, layerActivations.length);
+
+        int layerCount = layerWeights.length;
+        layerSizes = new int[layerCount + 1];
+        weights = new float[layerCount][];
+        biases = new float[layerCount][];
+        int maxHidden = 0;
+        for (int layer = 0; layer < layerCount; layer++) {
+            float[][] w = layerWeights[layer];
+            Preconditions.checkArgument(w.length > 0 && w[0].length > 0, "Layer weights must not be empty.", layer);
+            int inSize = w.length;
+            int outSize = w[0].length;
+            if (layer > 0) {
+                Preconditions.checkArgument(inSize == layerSizes[layer], "Layer input size does not match the " +
+                        "previous layer's output size.", inSize, layerSizes[layer]);
+                maxHidden = Math.max(maxHidden, inSize);
+            }
+            Preconditions.checkArgument(layerBiases[layer].length == outSize, "Layer biases should match the layer " +
+                    "output size.", layerBiases[layer].length, outSize);
+            layerSizes[layer] = inSize;
+            layerSizes[layer + 1] = outSize;
+
+            float[] transposed = new float[inSize * outSize];
+            for (int i = 0; i < inSize; i++) {
+                Preconditions.checkArgument(w[i].length == outSize, "Layer weights should be rectangular.", layer);
+                for (int o = 0; o < outSize; o++) {
+                    transposed[o * inSize + i] = w[i][o];
+                }
+            }
+            weights[layer] = transposed;
+            biases[layer] = layerBiases[layer].clone();
+        }
+        this.layerActivations = layerActivations.clone();
+        this.outputActivation = outputActivation;
+        maxHiddenSize = maxHidden;
+    }
+
+    /**
+     * Copy the current weights, biases, and activation types out of a TensorFlow network.
+     * @param network Network to snapshot. It is not changed.
+     * @return A Java network which gives the same outputs as the given one at the time of this call.
+     */
+    public static FeedForwardNetwork fromTrainableNetwork(@NotNull TrainableNetwork network) {
+        int layerCount = network.getLayerSizes().length - 1;
+        float[][][] layerWeights = new float[layerCount][][];
+        float[][] layerBiases = new float[layerCount][];
+        Activation[] layerActivations = new Activation[layerCount];
+        for (int i = 0; i < layerCount; i++) {
+            layerWeights[i] = network.getLayerWeights(i);
+            layerBiases[i] = network.getLayerBiases(i);
+            layerActivations[i] = Activation.fromOperationType(network.getLayerActivationType(i));
+        }
+        return new FeedForwardNetwork(layerWeights, layerBiases, layerActivations,
+                Activation.fromOperationType(network.getOutputActivationType()));
+    }
+
+    /**
+     * Evaluate a batch of examples laid out one after the other in a flat array. Allocates nothing once this thread's
+     * scratch buffers have grown to fit the batch size.
+     * @param inputs Flat [batchSize][inputSize] examples. May be longer than needed.
+     * @param outputs Flat [batchSize][outputSize] destination for the results. May be longer than needed.
+     * @param batchSize Number of examples to evaluate.
+     */
+    public void evaluate(@NotNull float[] inputs, @NotNull float[] outputs, int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive.", batchSize);
+        Preconditions.checkArgument(inputs.length >= batchSize * getInputSize(), "Input array is too short for the " +
+                "batch size.", inputs.length, batchSize);
+        Preconditions.checkArgument(outputs.length >= batchSize * getOutputSize(), "Output array is too short for " +
+                "the batch size.", outputs.length, batchSize);
+
+        float[][] buffers = scratchBuffers(batchSize);
+        int layerCount = weights.length;
+        float[] layerIn = inputs;
+        for (int layer = 0; layer < layerCount; layer++) {
+            float[] layerOut = (layer == layerCount - 1) ? outputs : buffers[layer % 2];
+            int outSize = layerSizes[layer + 1];
+            denseLayer(layerIn, weights[layer], biases[layer], layerOut, batchSize, layerSizes[layer], outSize);
+            applyActivation(layerActivations[layer], layerOut, batchSize, outSize);
+            layerIn = layerOut;
+        }
+        applyActivation(outputActivation, outputs, batchSize, getOutputSize());
+    }
+
+    /**
+     * Evaluate a single example.
+     * @param input Input of length {@link #getInputSize()}.
+     * @param output Destination of length {@link #getOutputSize()}.
+     */
+    public void evaluate(@NotNull float[] input, @NotNull float[] output) {
+        evaluate(input, output, 1);
+    }
+
+    /**
+     * Evaluate one or more examples, with the same form of arguments and results as
+     * {@link TrainableNetwork#evaluateInput(float[][])}. The inputs are flattened into this thread's scratch
+     * buffers, but the result is allocated, so prefer {@link #evaluate(float[], float[], int)} in hot code.
+     * @param inputs One or more inputs to feed in. For a single example, the first dimension should be 1.
+     * @return The evaluated values of the inputs.
+     */
+    public float[][] evaluateInput(@NotNull float[][] inputs) {
+        Preconditions.checkArgument(inputs.length > 0, "Input to evaluate must have at least 1 example (the first " +
+                "dimension).");
+        int inputSize = getInputSize();
+        int outputSize = getOutputSize();
+        float[][] flat = flatScratch.get();
+        if (flat[0].length < inputs.length * inputSize) {
+            flat[0] = new float[inputs.length * inputSize];
+            flat[1] = new float[inputs.length * outputSize];
+        }
+        float[] flatInputs = flat[0];
+        float[] flatOutputs = flat[1];
+        for (int i = 0; i < inputs.length; i++) {
+            Preconditions.checkArgument(inputs[i].length == inputSize, "Example input should match the input " +
+                    "dimension.", inputSize, inputs[i].length);
+            System.arraycopy(inputs[i], 0, flatInputs, i * inputSize, inputSize);
+        }
+        evaluate(flatInputs, flatOutputs, inputs.length);
+
+        float[][] outputs = new float[inputs.length][outputSize];
+        for (int i = 0; i < inputs.length; i++) {
+            System.arraycopy(flatOutputs, i * outputSize, outputs[i], 0, outputSize);
+        }
+        return outputs;
+    }
+
+    public int getInputSize() {
+        return layerSizes[0];
+    }
+
+    public int getOutputSize() {
+        return layerSizes[layerSizes.length - 1];
+    }
+
+    /**
+     * @return Sizes of all layers, including the input and output. This is a copy.
+     */
+    public int[] getLayerSizes() {
+        return layerSizes.clone();
+    }
+
+    private float[][] scratchBuffers(int batchSize) {
+        float[][] buffers = scratch.get();
+        int needed = batchSize * maxHiddenSize;
+        if (buffers[0].length < needed) {
+            buffers[0] = new float[needed];
+            buffers[1] = new float[needed];
+        }
+        return buffers;
+    }
+
+    /**
+     * out = in * W + b for every example. Each dot product is split into four partial sums so consecutive
+     * multiply-adds do not wait on each other.
+     */
+    private static void denseLayer(float[] in, float[] w, float[] b, float[] out, int batchSize, int inSize,
+                                   int outSize) {
+        for (int s = 0; s < batchSize; s++) {
+            int inOffset = s * inSize;
+            int outOffset = s * outSize;
+            for (int o = 0; o < outSize; o++) {
+                int wOffset = o * inSize;
+                float sum0 = 0f;
+                float sum1 = 0f;
+                float sum2 = 0f;
+                float sum3 = 0f;
+                int i = 0;
+                for (; i <= inSize - 4; i += 4) {
+                    sum0 += w[wOffset + i] * in[inOffset + i];
+                    sum1 += w[wOffset + i + 1] * in[inOffset + i + 1];
+                    sum2 += w[wOffset + i + 2] * in[inOffset + i + 2];
+                    sum3 += w[wOffset + i + 3] * in[inOffset + i + 3];
+                }
+                for (; i < inSize; i++) {
+                    sum0 += w[wOffset + i] * in[inOffset + i];
+                }
+                out[outOffset + o] = (sum0 + sum1) + (sum2 + sum3) + b[o];
+            }
+        }
+    }
+
+    /**
+     * Apply an activation in place to the first batchSize * width values.
+     */
+    private static void applyActivation(Activation activation, float[] values, int batchSize, int width) {
+        int length = batchSize * width;
+        switch (activation) {
+            case IDENTITY:
+                break;
+            case RELU:
+                for (int i = 0; i < length; i++) {
+                    values[i] = Math.max(values[i], 0f);
+                }
+                break;
+            case LEAKY_RELU:
+                for (int i = 0; i < length; i++) {
+                    values[i] = Math.max(values[i], LEAKY_RELU_ALPHA * values[i]);
+                }
+                break;
+            case ELU:
+                for (int i = 0; i < length; i++) {
+                    float v = values[i];
+                    values[i] = v > 0f ? v : (float) Math.expm1(v);
+                }
+                break;
+            case SIGMOID:
+                for (int i = 0; i < length; i++) {
+                    values[i] = (float) (1.0 / (1.0 + Math.exp(-values[i])));
+                }
+                break;
+            case TANH:
+                for (int i = 0; i < length; i++) {
+                    values[i] = (float) Math.tanh(values[i]);
+                }
+                break;
+            case SOFTMAX:
+                for (int s = 0; s < batchSize; s++) {
+                    int offset = s * width;
+                    float max = values[offset];
+                    for (int i = 1; i < width; i++) {
+                        max = Math.max(max, values[offset + i]);
+                    }
+                    float sum = 0f;
+                    for (int i = 0; i < width; i++) {
+                        float e = (float) Math.exp(values[offset + i] - max);
+                        values[offset + i] = e;
+                        sum += e;
+                    }
+                    for (int i = 0; i < width; i++) {
+                        values[offset + i] /= sum;
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unhandled activation: " + activation);
+        }
+    }
+}
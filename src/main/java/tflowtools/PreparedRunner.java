@@ -0,0 +1,170 @@
+package tflowtools;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.tensorflow.Graph;
+import org.tensorflow.Operation;
+import org.tensorflow.Output;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * Evaluates batches of float inputs through one input and one output of a TensorFlow graph, with as little per-call
+ * work as the Java API allows. The graph operations are looked up once, up front, rather than by name on every call.
+ * Inputs are written straight into a reusable direct buffer sized for the largest batch. Outputs are copied into
+ * another reusable direct buffer instead of new arrays. The only thing made per call is the input tensor itself,
+ * which TensorFlow copies the buffer into natively.
+ * <p>
+ * Typical use is to put examples into {@link #getInputBuffer()} one after another, then call {@link #run(int)} and
+ * read the results out of the returned buffer. Not thread-safe, since the buffers are shared between calls. Make one
+ * per thread.
+ *
+ * @author matt
+ */
+public class PreparedRunner {
+
+    /**
+     * Number of floats in one input example.
+     */
+    public final int inputSize;
+
+    /**
+     * Largest number of examples which can be run at once.
+     */
+    public final int maxBatchSize;
+
+    private final Session session;
+
+    private final Output<?> input;
+
+    private final Output<?> output;
+
+    private final FloatBuffer inputBuffer;
+
+    /**
+     * Grown if a batch's outputs do not fit.
+     */
+    private FloatBuffer outputBuffer;
+
+    /**
+     * Shape of the input tensor. The first dimension is changed to the batch size for each call.
+     */
+    private final long[] inputShape;
+
+    private long[] outputShape = new long[0];
+
+    /**
+     * Prepare to run a graph's input through to one of its outputs.
+     *
+     * @param session Session to run in. Must be for the given graph.
+     * @param graph Graph holding the input and output operations.
+     * @param inputName Name of the operation to feed inputs to. Its first output is used.
+     * @param outputName Name of the operation to fetch. Its first output is used.
+     * @param inputSize Number of floats in one input example.
+     * @param maxBatchSize Largest number of examples to run at once.
+     */
+    public PreparedRunner(@NotNull Session session, @NotNull Graph graph, @NotNull String inputName,
+                          @NotNull String outputName, int inputSize, int maxBatchSize) {
+        Preconditions.checkArgument(inputSize > 0, "Input size must be positive.", inputSize);
+        Preconditions.checkArgument(maxBatchSize > 0, "Maximum batch size must be positive.", maxBatchSize);
+        this.session = session;
+        this.inputSize = inputSize;
+        this.maxBatchSize = maxBatchSize;
+        input = getOperation(graph, inputName).output(0);
+        output = getOperation(graph, outputName).output(0);
+        inputShape = new long[]{0, inputSize};
+        inputBuffer = makeDirectBuffer(maxBatchSize * inputSize);
+        outputBuffer = makeDirectBuffer(maxBatchSize);
+    }
+
+    /**
+     * Get the buffer to put inputs into. Examples go one after another, starting from index 0. Only the first
+     * {@code inputSize} times the batch size floats are read by {@link #run(int)}, no matter the buffer's position.
+     *
+     * @return The reusable input buffer, cleared and ready for writing.
+     */
+    public FloatBuffer getInputBuffer() {
+        inputBuffer.clear();
+        return inputBuffer;
+    }
+
+    /**
+     * Run the inputs currently in the input buffer through the graph.
+     *
+     * @param batchSize Number of examples in the input buffer to run.
+     * @return The reusable output buffer, holding the outputs of each example one after another, from position 0 to
+     * the limit. Overwritten by the next call.
+     */
+    public FloatBuffer run(int batchSize) {
+        Preconditions.checkArgument(batchSize > 0 && batchSize <= maxBatchSize, "Batch size must be positive and no " +
+                "more than the maximum.", batchSize, maxBatchSize);
+
+        FloatBuffer batchInput = inputBuffer.duplicate();
+        batchInput.clear();
+        batchInput.limit(batchSize * inputSize);
+        inputShape[0] = batchSize;
+
+        try (Tensor<Float> inputTensor = Tensor.create(inputShape, batchInput)) {
+            List<Tensor<?>> result = session.runner().feed(input, inputTensor).fetch(output).run();
+            try (Tensor<Float> outputTensor = result.get(0).expect(Float.class)) {
+                int outputCount = outputTensor.numElements();
+                if (outputCount > outputBuffer.capacity()) {
+                    outputBuffer = makeDirectBuffer(outputCount);
+                }
+                outputBuffer.clear();
+                outputTensor.writeTo(outputBuffer);
+                outputBuffer.flip();
+                if (outputShape.length != outputTensor.numDimensions()) {
+                    outputShape = new long[outputTensor.numDimensions()];
+                }
+                System.arraycopy(outputTensor.shape(), 0, outputShape, 0, outputShape.length);
+            }
+        }
+        return outputBuffer;
+    }
+
+    /**
+     * Run a single example through the graph.
+     *
+     * @param example Input values. Must be {@link #inputSize} long.
+     * @return The reusable output buffer, holding this example's outputs. Overwritten by the next call.
+     */
+    public FloatBuffer run(@NotNull float[] example) {
+        Preconditions.checkArgument(example.length == inputSize, "Example input should match the input dimension.",
+                inputSize, example.length);
+        getInputBuffer().put(example);
+        return run(1);
+    }
+
+    /**
+     * Get the shape of the output from the last {@link #run(int)}.
+     *
+     * @return Output dimensions. The first is the batch size. Empty if nothing has run yet.
+     */
+    public long[] getOutputShape() {
+        return outputShape.clone();
+    }
+
+    private static Operation getOperation(Graph graph, String name) {
+        Operation operation = graph.operation(name);
+        if (operation == null) {
+            throw new IllegalArgumentException("No operation in the graph named: " + name);
+        }
+        return operation;
+    }
+
+    /**
+     * Make a direct float buffer in native order, which TensorFlow can copy from without conversion.
+     *
+     * @param floats Capacity of the buffer.
+     * @return A new, empty direct buffer.
+     */
+    public static FloatBuffer makeDirectBuffer(int floats) {
+        return ByteBuffer.allocateDirect(floats * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+}
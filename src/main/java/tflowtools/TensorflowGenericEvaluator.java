@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * For evaluating a previously-trained model with arbitrary tensor inputs and outputs.
@@ -35,6 +36,11 @@ public class TensorflowGenericEvaluator implements AutoCloseable {
      */
     private final Graph graph;
 
+    /**
+     * Graph outputs already looked up, by name, so that each is only looked up once.
+     */
+    private final Map<String, Output<?>> outputsByName = new ConcurrentHashMap<>();
+
     private static final Logger logger = LogManager.getLogger(TensorflowLoader.class);
 
     public TensorflowGenericEvaluator(@NotNull File graphFile) {
@@ -62,8 +68,8 @@ public class TensorflowGenericEvaluator implements AutoCloseable {
 
         final Session.Runner runner = session.runner();
 
-        inputs.forEach((s, t) -> runner.feed(s + ":0", t));
-        outputsToFetch.stream().map(s -> s + ":0").forEach(runner::fetch);
+        inputs.forEach((s, t) -> runner.feed(getOutput(s), t));
+        outputsToFetch.stream().map(this::getOutput).forEach(runner::fetch);
 
         List<Tensor<?>> outputsComputed = runner.run();
         assert outputsComputed.size() == outputsToFetch.size();
@@ -72,8 +78,8 @@ public class TensorflowGenericEvaluator implements AutoCloseable {
 
     protected float[] evaluate(float[] input, String inputName, String outputName) {
         Tensor<Float> inputTensor = Tensor.create(input, Float.class);
-        List<Tensor<?>> output = session.runner().feed(inputName + ":0", inputTensor)
-                .fetch(outputName + ":0")
+        List<Tensor<?>> output = session.runner().feed(getOutput(inputName), inputTensor)
+                .fetch(getOutput(outputName))
                 .run();
         Tensor<Float> result = output.get(0).expect(Float.class);
         long[] outputShape = result.shape();
@@ -85,6 +91,32 @@ public class TensorflowGenericEvaluator implements AutoCloseable {
         return reshapedResult;
     }
 
+    /**
+     * Prepare to run batches of inputs through one input and output of the graph repeatedly, with as little per-call
+     * work as possible. See {@link PreparedRunner}.
+     *
+     * @param inputName Name of the graph input to feed.
+     * @param outputName Name of the graph output to fetch.
+     * @param inputSize Number of floats in one input example.
+     * @param maxBatchSize Largest number of examples to run at once.
+     * @return A new runner. Use from one thread only.
+     */
+    public PreparedRunner prepareRunner(String inputName, String outputName, int inputSize, int maxBatchSize) {
+        return new PreparedRunner(session, graph, inputName, outputName, inputSize, maxBatchSize);
+    }
+
+    /**
+     * Get the first output of the named operation.
+     */
+    private Output<?> getOutput(String operationName) {
+        return outputsByName.computeIfAbsent(operationName, name -> {
+            Operation operation = graph.operation(name);
+            if (operation == null) {
+                throw new IllegalArgumentException("No operation in the graph named: " + name);
+            }
+            return operation.output(0);
+        });
+    }
 
     /**
      * Load a checkpoint file. Must match the graph loaded. Name does not need to include path or file extension.
@@ -8,10 +8,13 @@ import org.apache.logging.log4j.Logger;
 import org.tensorflow.*;
 
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Basic utilities and loaders for getting TensorFlow models in here and working. Users should extend this class.
@@ -31,6 +34,11 @@ public abstract class TensorflowLoader implements AutoCloseable {
      */
     private final Graph graph;
 
+    /**
+     * Prepared runners for {@link #sisoFloatPrediction(IState, String, String)}, by input and output name.
+     */
+    private final Map<String, PreparedRunner> sisoRunners = new ConcurrentHashMap<>();
+
     private static final Logger logger = LogManager.getLogger(TensorflowLoader.class);
 
     /**
@@ -67,20 +75,31 @@ public abstract class TensorflowLoader implements AutoCloseable {
      * @return List of values returned by the specified graph output.
      */
     protected List<Float> sisoFloatPrediction(IState state, String inputName, String outputName) {
-        Tensor<Float> inputTensor = Tensor.create(flattenState(state), Float.class);
-         List<Tensor<?>> output = session.runner().feed(inputName + ":0", inputTensor)
-                        .fetch(outputName + ":0")
-                        .run();
-        Tensor<Float> result = output.get(0).expect(Float.class);
-        long[] outputShape = result.shape();
-
-        float[] reshapedResult = result.copyTo(new float[(int) outputShape[0]][(int) outputShape[1]])[0];
-
-        inputTensor.close();
-        result.close();
-        return Floats.asList(reshapedResult);
+        float[] flatState = state.flattenState();
+        PreparedRunner runner = sisoRunners.computeIfAbsent(inputName + ":" + outputName,
+                key -> prepareRunner(inputName, outputName, flatState.length, 1));
+        float[] result;
+        synchronized (runner) {
+            FloatBuffer output = runner.run(flatState);
+            result = new float[output.remaining()];
+            output.get(result);
+        }
+        return Floats.asList(result);
     }
 
+    /**
+     * Prepare to run batches of inputs through one input and output of the graph repeatedly, with as little per-call
+     * work as possible. See {@link PreparedRunner}.
+     *
+     * @param inputName Name of the graph input to feed.
+     * @param outputName Name of the graph output to fetch.
+     * @param inputSize Number of floats in one input example.
+     * @param maxBatchSize Largest number of examples to run at once.
+     * @return A new runner. Use from one thread only.
+     */
+    public PreparedRunner prepareRunner(String inputName, String outputName, int inputSize, int maxBatchSize) {
+        return new PreparedRunner(session, graph, inputName, outputName, inputSize, maxBatchSize);
+    }
 
     /**
      * Print out all operations in the TensorFlow graph to help determine which ones we want to use. There can be an
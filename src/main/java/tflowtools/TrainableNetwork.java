@@ -14,9 +14,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -55,6 +57,23 @@ public class TrainableNetwork implements AutoCloseable {
     public final int inputSize;
     public int outputSize;
 
+    /**
+     * Graph input and output used for every evaluation and training step. Looked up once rather than by name on
+     * every call.
+     */
+    private final Output<?> inputOp, outputOp;
+
+    /**
+     * Training operations. Looked up on the first training step, since older graphs may not have all of them.
+     */
+    private Output<?> outputTargetOp, keepProbabilityOp, lossOp;
+    private Operation trainOp;
+
+    /**
+     * Dropout keep probability tensors, reused between training steps. There are usually only one or two values.
+     */
+    private final Map<Float, Tensor<Float>> keepProbabilityTensors = new ConcurrentHashMap<>();
+
     /**
      * Send Python TensorFlow output to console? Tests don't like this, and it kind of clutters up stuff.
      */
@@ -118,6 +137,9 @@ public class TrainableNetwork implements AutoCloseable {
         inputSize = layerSizes[0];
         outputSize = layerSizes[layerSizes.length - 1];
 
+        inputOp = getRequiredOperation("input").output(0);
+        outputOp = getRequiredOperation("output").output(0);
+
         logger.info("Created a network from a saved model file: " + graphDefinition.toString() + ".");
         openCount.incrementAndGet();
 
@@ -161,21 +183,55 @@ public class TrainableNetwork implements AutoCloseable {
      */
     public float trainingStep(Session.Runner sess, float[][] inputs, float[][] desiredOutputs, float keepProbability,
                               int steps) {
-        Tensor<Float> input = Tensors.create(inputs);
-        Tensor<Float> value_out = Tensors.create(desiredOutputs);
-        Tensor<Float> keep_probability = Tensors.create(keepProbability);
-        sess = sess
-                .feed("input", input)
-                .feed("keep_probability_dropout", keep_probability)
-                .feed("output_target", value_out)
-                .addTarget("train")
-                .fetch("loss");
+        try (Tensor<Float> input = Tensors.create(inputs);
+             Tensor<Float> valueOut = Tensors.create(desiredOutputs)) {
+            return runTrainingSteps(sess, input, valueOut, keepProbability, steps);
+        }
+    }
+
+    public float trainingStep(float[][] inputs, float[][] desiredOutputs, float keepProbability, int steps) {
+        return trainingStep(session.runner(), inputs, desiredOutputs, keepProbability, steps);
+    }
+
+    /**
+     * Run training on a batch already laid out in buffers, e.g. from a {@link value.ReplayBuffer}. Nothing is copied
+     * on the Java side. Direct, native-order buffers are cheapest.
+     *
+     * @param inputs Inputs of each example, one after another, from the buffer's position to its limit.
+     * @param desiredOutputs Outputs which we want inputs to produce, laid out the same way.
+     * @param exampleCount Number of examples in the batch.
+     * @param steps Number of training steps to use on this batch.
+     * @return The loss of the last step performed (smaller is better).
+     */
+    public float trainingStep(@NotNull FloatBuffer inputs, @NotNull FloatBuffer desiredOutputs, int exampleCount,
+                              float keepProbability, int steps) {
+        try (Tensor<Float> input = Tensor.create(new long[]{exampleCount, inputSize}, inputs.duplicate());
+             Tensor<Float> valueOut = Tensor.create(new long[]{exampleCount, outputSize}, desiredOutputs.duplicate())) {
+            return runTrainingSteps(session.runner(), input, valueOut, keepProbability, steps);
+        }
+    }
+
+    private float runTrainingSteps(Session.Runner runner, Tensor<Float> input, Tensor<Float> valueOut,
+                                   float keepProbability, int steps) {
+        if (trainOp == null) {
+            outputTargetOp = getRequiredOperation("output_target").output(0);
+            keepProbabilityOp = getRequiredOperation("keep_probability_dropout").output(0);
+            lossOp = getRequiredOperation("loss").output(0);
+            trainOp = getRequiredOperation("train");
+        }
+        Tensor<Float> keepProb = keepProbabilityTensors.computeIfAbsent(keepProbability, Tensors::create);
+        runner = runner
+                .feed(inputOp, input)
+                .feed(keepProbabilityOp, keepProb)
+                .feed(outputTargetOp, valueOut)
+                .addTarget(trainOp)
+                .fetch(lossOp);
+        if (useTensorboard) {
+            runner = runner.fetch("summary/summary");
+        }
         float loss = 0;
         for (int i = 0; i < steps; i++) {
-            if (useTensorboard) {
-                sess = sess.fetch("summary/summary");
-            }
-            List<Tensor<?>> out = sess.run();
+            List<Tensor<?>> out = runner.run();
             loss = out.get(0).expect(Float.class).floatValue();
 
             if (useTensorboard) {
@@ -183,17 +239,9 @@ public class TrainableNetwork implements AutoCloseable {
             }
             out.forEach(Tensor::close);
         }
-
-        input.close();
-        keep_probability.close();
-        value_out.close();
         return loss; // Could be problematic with softmax which doesn't spit out a single value.
     }
 
-    public float trainingStep(float[][] inputs, float[][] desiredOutputs, float keepProbability, int steps) {
-        return trainingStep(session.runner(), inputs, desiredOutputs, keepProbability, steps);
-    }
-
     protected void toTensorBoardOutput(@NotNull Tensor<?> summaryTensor) {
         byte[] summaryMessage = summaryTensor.bytesValue();
         try (FileOutputStream os = new FileOutputStream(tensorboardLogFile, true)) {
@@ -287,7 +335,7 @@ public class TrainableNetwork implements AutoCloseable {
 
         Tensor<Float> inputTensor = Tensors.create(inputs);
         List<Tensor<?>> result =
-                session.runner().feed("input", inputTensor).fetch("output").run();
+                session.runner().feed(inputOp, inputTensor).fetch(outputOp).run();
         Tensor<Float> outputTensor = result.get(0).expect(Float.class);
 
         long[] outputShape = outputTensor.shape();
@@ -309,6 +357,47 @@ public class TrainableNetwork implements AutoCloseable {
         return output;
     }
 
+    /**
+     * Evaluate a batch already laid out in a buffer. Does not perform any training.
+     *
+     * @param inputs Inputs of each example, one after another, from the buffer's position to its limit.
+     * @param exampleCount Number of examples in the batch.
+     * @param outputs Buffer to write the outputs of each example into, one after another, starting at its position.
+     *                Must have room for all of them.
+     */
+    public void evaluateInput(@NotNull FloatBuffer inputs, int exampleCount, @NotNull FloatBuffer outputs) {
+        Preconditions.checkArgument(exampleCount > 0, "Input to evaluate must have at least 1 example.");
+        Preconditions.checkArgument(inputs.remaining() == exampleCount * inputSize, "Input buffer should hold " +
+                "exactly the given number of examples.", exampleCount * inputSize, inputs.remaining());
+        Preconditions.checkArgument(outputs.remaining() >= exampleCount * outputSize, "Output buffer does not have " +
+                "room for every example.", exampleCount * outputSize, outputs.remaining());
+
+        try (Tensor<Float> inputTensor = Tensor.create(new long[]{exampleCount, inputSize}, inputs.duplicate())) {
+            List<Tensor<?>> result = session.runner().feed(inputOp, inputTensor).fetch(outputOp).run();
+            result.get(0).expect(Float.class).writeTo(outputs);
+            result.forEach(Tensor::close);
+        }
+    }
+
+    private Operation getRequiredOperation(String operationName) {
+        Operation operation = graph.operation(operationName);
+        if (operation == null) {
+            throw new IllegalStateException("Network graph does not have the operation: " + operationName);
+        }
+        return operation;
+    }
+
+    /**
+     * Prepare to evaluate batches of inputs repeatedly with as little per-call work as possible. See
+     * {@link PreparedRunner}. The runner is only valid until this network is closed.
+     *
+     * @param maxBatchSize Largest number of examples to evaluate at once.
+     * @return A new runner from this network's input to its output. Use from one thread only.
+     */
+    public PreparedRunner prepareRunner(int maxBatchSize) {
+        return new PreparedRunner(session, graph, "input", "output", inputSize, maxBatchSize);
+    }
+
     /**
      * Print all operations in the graph for debugging.
      */
@@ -413,6 +502,26 @@ public class TrainableNetwork implements AutoCloseable {
         return layer;
     }
 
+    /**
+     * Get the TensorFlow operation type of a layer's activation function, e.g. "LeakyRelu" or "Identity".
+     * @param layerIndex Index of the fully-connected layer.
+     * @return Operation type of the activation at the end of that layer.
+     */
+    public String getLayerActivationType(int layerIndex) {
+        Preconditions.checkArgument(layerIndex < layerSizes.length - 1 && layerIndex >= 0, "Invalid layer index.",
+                layerIndex);
+        return graph.operation("fully_connected" + layerIndex + "/activation").type();
+    }
+
+    /**
+     * Get the TensorFlow operation type of the activation applied to the output of the last layer, e.g. "Identity"
+     * or "Softmax".
+     * @return Operation type of the output activation.
+     */
+    public String getOutputActivationType() {
+        return graph.operation("output_activation").type();
+    }
+
     public void setLayerWeights(int layerIndex, float[][] newWeights) {
         Preconditions.checkArgument(layerIndex < layerSizes.length - 1 && layerIndex >= 0, "Invalid layer index.",
                 layerIndex);
@@ -460,6 +569,8 @@ public class TrainableNetwork implements AutoCloseable {
         if (!haveResourcesBeenReleased)
             openCount.decrementAndGet();
 
+        keepProbabilityTensors.values().forEach(Tensor::close);
+        keepProbabilityTensors.clear();
         session.close();
         graph.close();
         haveResourcesBeenReleased = true;
@@ -6,21 +6,26 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import game.qwop.*;
 import game.IGameInternal;
+import game.IGameSerializable;
 import game.action.Action;
-import game.action.ActionQueue;
+import game.action.ActionCursor;
+import game.action.ActionPath;
 import game.action.Command;
 import game.state.IState;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import savers.DataSaver_Dense;
 import savers.DataSaver_Null;
 import savers.IDataSaver;
 import tree.node.NodeGameBase;
 import tree.node.NodeGameExplorableBase;
+import tree.node.NodeSnapshotCache;
+import tree.node.TranspositionTable;
 import tree.sampler.ISampler;
 import ui.runner.PanelRunner;
+import value.ValueFunctionTrainer;
 
 import java.awt.*;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -61,7 +66,9 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
     private boolean paused = true;
 
     /**
-     * The current game instance that this FSM is using. This will now not change.
+     * The current game instance that this FSM is using. Restoring a snapshot (see
+     * {@link TreeWorker#setSnapshotCache(NodeSnapshotCache)}) copies into it, and only replaces it for games which
+     * cannot copy their state directly.
      */
     private IGameInternal<C, S> game;
 
@@ -93,10 +100,10 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
     private Action<C> targetActionToTest;
 
     /**
-     * Queued commands, IE QWOP key presses
+     * Queued commands, IE QWOP key presses. Only touched by this worker's thread.
      */
     @JsonIgnore
-    public ActionQueue<C> actionQueue = new ActionQueue<>();
+    public final ActionCursor<C> actionCursor = new ActionCursor<>();
 
     /**
      * Current status of this FSM
@@ -152,7 +159,32 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
      */
     private final Object pauseLock = new Object();
 
-    private final List<Action<C>> actionSequence = new ArrayList<>();
+    /**
+     * Optional cache of game copies at interior nodes. If assigned, the tree policy restores the deepest
+     * snapshot on the way to the expansion node instead of replaying from the root. Null means always replay.
+     */
+    private NodeSnapshotCache<C, S> snapshotCache;
+
+    /**
+     * Tree depth that the current tree policy replay started from. 0 unless a snapshot was restored.
+     */
+    private int replayStartDepth;
+
+    /**
+     * Optional trainer which is handed every node this worker adds, once valued. Null means no background training.
+     */
+    private ValueFunctionTrainer<C, S> valueTrainer;
+
+    /**
+     * Optional table of states already reached elsewhere in the tree. If assigned, newly-expanded nodes which
+     * duplicate another node's state are pruned, and the expansion stops there. Null means no checking.
+     */
+    private TranspositionTable<C, S> transpositionTable;
+
+    /**
+     * Whether the node just expanded was pruned as a duplicate, so nothing more can be expanded from it this game.
+     */
+    private boolean reachedTransposition;
 
     private static final Logger logger = LogManager.getLogger(TreeWorker.class);
 
@@ -222,12 +254,15 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
     @JsonIgnore
     public void setRoot(NodeGameExplorableBase<?, C, S> rootNode) {
         this.rootNode = rootNode;
+        if (transpositionTable != null)
+            transpositionTable.setRoot(rootNode);
     }
 
     /**
      * Finite state machine loop. Runnable.
      */
     @Override
+    @SuppressWarnings("unchecked")
     public void run() {
         do {
             switch (currentStatus) {
@@ -253,10 +288,11 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
                     }
                     break;
                 case INITIALIZE:
-                    actionQueue.clearAll();
+                    actionCursor.clearAll();
                     game.resetGame(); // Create a new game world.
                     saver.reportGameInitialization(game.getCurrentState());
                     currentGameNode = rootNode;
+                    reachedTransposition = false;
                     changeStatus(Status.TREE_POLICY_CHOOSING);
 
                     break;
@@ -284,14 +320,19 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
                                     " This is bad behavior.";
                             assert expansionNode.isLocked() : "It is the sampler's responsibility to lock a node when " +
                                     "executing the tree policy.";
-                            actionQueue.clearAll();
-
-                            actionSequence.clear();
+                            actionCursor.clearAll();
 
                             targetNodeToTest = expansionNode;
+                            replayStartDepth = 0;
                             if (targetNodeToTest.getTreeDepth() != 0) { // No command sequence to add if target node
                                 // is root (we're already there!).
-                                actionQueue.addSequence(targetNodeToTest.getSequence(actionSequence));
+                                if (snapshotCache != null) {
+                                    restoreDeepestSnapshot();
+                                }
+                                ActionPath<C> path = targetNodeToTest.getActionPath();
+                                if (replayStartDepth < path.size()) {
+                                    actionCursor.addPath(path, replayStartDepth);
+                                }
                             }
                             changeStatus(Status.TREE_POLICY_EXECUTING);
                         }
@@ -303,8 +344,12 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
                     assert !game.isFailed() : "Game encountered a failure while executing the tree policy. The tree " +
                             "policy should be safe, since it's ground that's been covered before.";
 
+                    if (snapshotCache != null) {
+                        storeSnapshotIfAtNode();
+                    }
+
                     // When all game.command in queue are done, figure out what to do next.
-                    if (actionQueue.isEmpty()) {
+                    if (actionCursor.isEmpty()) {
                         currentGameNode = targetNodeToTest;
                         assert currentGameNode.getUntriedActionCount() > 0;
                         sampler.treePolicyActionDone(currentGameNode);
@@ -316,10 +361,13 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
                         // failure, others add a fewer number and move to rollout before failure.
                         changeStatus(Status.ROLLOUT_POLICY);
                         sampler.expansionPolicyActionDone(currentGameNode);
+                    } else if (reachedTransposition) { // Samplers which expand until failure cannot go past a
+                        // pruned duplicate, so the game ends there.
+                        changeStatus(Status.ROLLOUT_POLICY);
                     } else {
                         targetActionToTest = sampler.expansionPolicy(currentGameNode);
-                        actionQueue.clearAll();
-                        actionQueue.addAction(targetActionToTest);
+                        actionCursor.clearAll();
+                        actionCursor.addAction(targetActionToTest);
                         changeStatus(Status.EXPANSION_POLICY_EXECUTING);
                     }
                     break;
@@ -328,12 +376,18 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
                     executeNextOnQueue(); // Execute a single timestep with the game.command that have been queued.
 
                     // When done, record state and go back to choosing. If failed, the sampler guards will tell us.
-                    if (actionQueue.isEmpty() || game.isFailed()) {
+                    if (actionCursor.isEmpty() || game.isFailed()) {
                         // TODO possibly update the command to what was actually possible until the runner fell.
                         // Subtract out the extra timesteps that weren't possible due to failure.
 //                        assert currentGameNode.isLocked();
                         currentGameNode = currentGameNode.addDoublyLinkedChild(targetActionToTest,
                                 game.getCurrentState());
+                        if (transpositionTable != null) {
+                            reachedTransposition = transpositionTable.addOrPrune(currentGameNode) != currentGameNode;
+                        }
+                        if (snapshotCache != null && snapshotCache.shouldStore(currentGameNode)) {
+                            snapshotCache.store(currentGameNode, (IGameSerializable<C, S>) game);
+                        }
 
                         sampler.expansionPolicyActionDone(currentGameNode);
                         changeStatus(Status.EXPANSION_POLICY_CHOOSING);
@@ -350,13 +404,16 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
                     break;
                 case EVALUATE_GAME:
                     saver.reportGameEnding(currentGameNode);
+                    if (valueTrainer != null) {
+                        offerNewNodes();
+                    }
                     long gameTs = game.getTimestepsThisGame();
                     addToTotalTimesteps(gameTs);
 
                     workerGamesPlayed.increment();
                     incrementTotalGameCount();
 
-                    expansionNode.releaseExpansionRights();
+                    sampler.releaseExpansionRights(expansionNode);
 
                     if (rootNode.isFullyExplored()) {
                         pauseWorker();
@@ -394,9 +451,9 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
      * Pop the next command off the queue and execute one timestep.
      */
     private void executeNextOnQueue() {
-        if (!actionQueue.isEmpty()) {
-            game.step(actionQueue.pollCommand());
-            Action<C> action = actionQueue.peekThisAction();
+        if (!actionCursor.isEmpty()) {
+            game.step(actionCursor.pollCommand());
+            Action<C> action = actionCursor.peekThisAddedAction();
             saver.reportTimestep(action, game);
             workerStepsSimulated++;
             tsPerSecondUpdateCounter++;
@@ -412,6 +469,120 @@ public class TreeWorker<C extends Command<?>, S extends IState> extends PanelRun
         }
     }
 
+    /**
+     * Restore the game to the deepest snapshot between the tree policy target and the root. Afterwards,
+     * {@link TreeWorker#replayStartDepth} says how many actions of the sequence no longer need to be simulated.
+     */
+    @SuppressWarnings("unchecked")
+    private void restoreDeepestSnapshot() {
+        NodeGameExplorableBase<?, C, S> snapshotNode = snapshotCache.getDeepestSnapshotAncestor(targetNodeToTest);
+        if (snapshotNode == null) return;
+
+        IGameSerializable<C, S> snapshot = snapshotCache.getSnapshot(snapshotNode);
+        if (snapshot == null) return; // Evicted by another worker in the meantime. Just replay everything.
+
+        game = ((IGameSerializable<C, S>) game).copyStateFrom(snapshot);
+        replayStartDepth = snapshotNode.getTreeDepth();
+        snapshotCache.reportTimestepsSaved(snapshotNode.getCumulativeTimesteps());
+        assert snapshotNode.getState().equals(game.getCurrentState());
+    }
+
+    /**
+     * If the tree policy replay has just finished an action, and the node it arrived at should have a snapshot,
+     * store a copy of the game there. Newly-expanded nodes are also given snapshots directly in
+     * {@link TreeWorker#run()}.
+     */
+    @SuppressWarnings("unchecked")
+    private void storeSnapshotIfAtNode() {
+        int nodeDepth;
+        if (actionCursor.isEmpty()) {
+            nodeDepth = targetNodeToTest.getTreeDepth();
+        } else if (actionCursor.getTimestepsRemainingInAction() == 0) {
+            nodeDepth = replayStartDepth + actionCursor.getCurrentActionIdx() + 1;
+        } else {
+            return; // In the middle of an action.
+        }
+        if (nodeDepth == replayStartDepth || !snapshotCache.isSnapshotDepth(nodeDepth)) return;
+
+        NodeGameExplorableBase<?, C, S> node = targetNodeToTest;
+        while (node.getTreeDepth() > nodeDepth) {
+            node = node.getParent();
+        }
+        if (snapshotCache.shouldStore(node)) {
+            snapshotCache.store(node, (IGameSerializable<C, S>) game);
+        }
+    }
+
+    /**
+     * Give this worker a cache of game snapshots on interior nodes. This should be shared with the other workers on
+     * the same tree. Note that timesteps skipped by restoring a snapshot are not reported to the saver, so savers
+     * which record every timestep will only see the replayed tail of the tree policy.
+     *
+     * @param snapshotCache Cache of game copies to use. Null turns snapshots off.
+     */
+    @JsonIgnore
+    public void setSnapshotCache(NodeSnapshotCache<C, S> snapshotCache) {
+        if (snapshotCache != null && !(game instanceof IGameSerializable)) {
+            throw new IllegalArgumentException("Snapshots require a game which implements IGameSerializable. Was: " +
+                    game.getClass().getSimpleName());
+        }
+        if (snapshotCache != null && saver instanceof DataSaver_Dense) {
+            logger.warn("Dense savers will only see the timesteps after a restored snapshot, not the whole game.");
+        }
+        this.snapshotCache = snapshotCache;
+    }
+
+    @JsonIgnore
+    public NodeSnapshotCache<C, S> getSnapshotCache() {
+        return snapshotCache;
+    }
+
+    /**
+     * Give this worker a table of states already reached in the tree, so duplicates are not expanded again. This
+     * should be shared with the other workers on the same tree. The table is emptied whenever the worker is given the
+     * root of a different tree (see {@link TranspositionTable#setRoot(NodeGameBase)}).
+     *
+     * @param transpositionTable Table of canonical nodes to use. Null turns duplicate checking off.
+     */
+    @JsonIgnore
+    public void setTranspositionTable(TranspositionTable<C, S> transpositionTable) {
+        this.transpositionTable = transpositionTable;
+        if (transpositionTable != null && rootNode != null)
+            transpositionTable.setRoot(rootNode);
+    }
+
+    @JsonIgnore
+    public TranspositionTable<C, S> getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * Give this worker a trainer to hand each node it adds to, once the game that added it has been valued. Can be
+     * shared with the other workers.
+     *
+     * @param valueTrainer Background value function trainer. Null turns this off.
+     */
+    @JsonIgnore
+    public void setValueTrainer(ValueFunctionTrainer<C, S> valueTrainer) {
+        this.valueTrainer = valueTrainer;
+    }
+
+    @JsonIgnore
+    public ValueFunctionTrainer<C, S> getValueTrainer() {
+        return valueTrainer;
+    }
+
+    /**
+     * Hand the nodes added during this game, below the expansion node, to the value trainer.
+     */
+    private void offerNewNodes() {
+        NodeGameExplorableBase<?, C, S> node = currentGameNode;
+        while (node != expansionNode && node.getTreeDepth() > 0) {
+            valueTrainer.offer(node);
+            node = node.getParent();
+        }
+    }
+
     /**
      * Get the state of the runner.
      */
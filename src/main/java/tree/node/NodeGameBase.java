@@ -4,6 +4,7 @@ import com.google.common.util.concurrent.AtomicDouble;
 import data.SavableSingleGame;
 import game.IGameInternal;
 import game.action.Action;
+import game.action.ActionPath;
 import game.action.ActionQueue;
 import game.action.Command;
 import game.state.IState;
@@ -12,7 +13,6 @@ import value.updaters.IValueUpdater;
 import value.updaters.ValueUpdater_HardSet;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -31,6 +31,11 @@ public abstract class NodeGameBase<N extends NodeGameBase<N, C, S>, C extends Co
      */
     private final Action<C> action;
 
+    /**
+     * All actions from the root to this node. Shares storage with the parent's path.
+     */
+    private final ActionPath<C> actionPath;
+
     /**
      * StateQWOP arrived at when taking this node's command from the parent node's state.
      */
@@ -45,13 +50,15 @@ public abstract class NodeGameBase<N extends NodeGameBase<N, C, S>, C extends Co
     /**
      * Number of times that the value has been update (or in many cases, number of times the node has been "visited")
      * . This is updated automatically whenever {@link NodeGameBase#updateValue(float, IValueUpdater)} is called.
+     * Only written while holding this node's monitor, but volatile so the tree policy can read it without one.
      */
-    private int updateCount;
+    private volatile int updateCount;
 
 
     public NodeGameBase(@NotNull S rootState) {
         super();
         action = null;
+        actionPath = ActionPath.empty();
         state = rootState;
     }
 
@@ -60,6 +67,7 @@ public abstract class NodeGameBase<N extends NodeGameBase<N, C, S>, C extends Co
         Objects.requireNonNull(state);
         this.action = action;
         this.state = state;
+        actionPath = parent.getActionPath().append(action);
         // Check to make sure this node isn't already there in the parent's nodes.
         // TODO check disabled for now because backwards linked children could be duplicates.
 //        for (N parentChildren : parent.getChildren()) {
@@ -91,14 +99,26 @@ public abstract class NodeGameBase<N extends NodeGameBase<N, C, S>, C extends Co
 
     public Action<C> getAction() { return action; }
 
-    public synchronized List<Action<C>> getSequence(List<Action<C>> actionList) {
+    /**
+     * Get all the actions from the root to this node. Prefer {@link #getActionPath()}, which does not need a list.
+     *
+     * @param actionList List to fill with the actions. Its contents are replaced.
+     * @return The same list, for convenience.
+     */
+    public List<Action<C>> getSequence(List<Action<C>> actionList) {
         if (getTreeDepth() <= 0)
             throw new IndexOutOfBoundsException("Cannot get a sequence at the root node, since it has no game.command " +
                     "leading up to it.");
-        actionList.clear();
-        recurseUpTreeInclusiveNoRoot(n -> actionList.add(n.getAction()));
-        Collections.reverse(actionList);
-        return actionList;
+        return actionPath.toList(actionList);
+    }
+
+    /**
+     * Get all the actions from the root to this node, without copying anything.
+     *
+     * @return Path of actions to this node. Empty at the root.
+     */
+    public ActionPath<C> getActionPath() {
+        return actionPath;
     }
 
     /**
@@ -203,13 +223,7 @@ public abstract class NodeGameBase<N extends NodeGameBase<N, C, S>, C extends Co
      */
     @SuppressWarnings("unused")
     public int getCumulativeTimesteps() {
-        int timesteps = 0;
-        N currentNode = getThis();
-        while (currentNode.getTreeDepth() > 0) {
-            timesteps += currentNode.getAction().getTimestepsTotal();
-            currentNode = currentNode.getParent();
-        }
-        return timesteps;
+        return actionPath.getTotalTimesteps();
     }
 
     /**
@@ -222,6 +236,32 @@ public abstract class NodeGameBase<N extends NodeGameBase<N, C, S>, C extends Co
         updateCount++;
     }
 
+    /**
+     * Directly set both the value and the update count of this node, e.g. when rebuilding it from a {@link TreeStore}.
+     * @param value Value to give this node.
+     * @param updateCount Number of updates that value represents.
+     */
+    synchronized void restoreValue(float value, int updateCount) {
+        this.value.set(value);
+        this.updateCount = updateCount;
+    }
+
+    /**
+     * Fold in updates which this node's state received somewhere else, e.g. in an earlier search saved to a
+     * {@link TreeFile}. The two values are averaged, weighted by their update counts, which is exactly what
+     * {@link value.updaters.ValueUpdater_Average} would have given if all the updates had happened here. Updaters which
+     * work the value out from the children instead replace it at the next update anyway.
+     * @param value Value from the other updates.
+     * @param updateCount Number of other updates that value represents.
+     */
+    public synchronized void mergeValue(float value, int updateCount) {
+        int totalCount = this.updateCount + updateCount;
+        if (totalCount > 0) {
+            this.value.set((getValue() * this.updateCount + value * updateCount) / totalCount);
+            this.updateCount = totalCount;
+        }
+    }
+
     /**
      * Get the estimated value associated with this node.
      * @return The scalar value estimated for this node.
@@ -234,7 +274,7 @@ public abstract class NodeGameBase<N extends NodeGameBase<N, C, S>, C extends Co
      * Number of times this node's value has been updated, or number of times this node has been "visited."
      * @return Number of times this node has been visited.
      */
-    public synchronized int getUpdateCount() {
+    public int getUpdateCount() {
         return updateCount;
     }
 }
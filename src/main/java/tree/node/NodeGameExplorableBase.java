@@ -1,6 +1,7 @@
 package tree.node;
 
 import distributions.Distribution;
+import game.IGameSerializable;
 import game.action.*;
 import game.state.IState;
 import org.apache.logging.log4j.LogManager;
@@ -10,6 +11,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Expands on basic QWOP data storage ({@link NodeGameBase}) and tree functionality ({@link NodeGenericBase}) to provide
@@ -44,6 +46,12 @@ public abstract class NodeGameExplorableBase<
      */
     private final AtomicBoolean locked = new AtomicBoolean(false);
 
+    /**
+     * Number of workers currently partway through an iteration which passes through this node, and which have not
+     * yet backed up their results. Only used by samplers doing lock-free parallel search with virtual loss.
+     */
+    private final AtomicInteger virtualLossCount = new AtomicInteger(0);
+
     /**
      * Action generator used to make the set of untried child game.command for this node. This is used during the creation
      * of this node and not again by this node. When a new child is created it will 'inherit' this generator by
@@ -51,6 +59,12 @@ public abstract class NodeGameExplorableBase<
      */
     final IActionGenerator<C> actionGenerator;
 
+    /**
+     * Copy of the game at this node's state. Only a small subset of nodes will ever hold one, and only while a
+     * {@link NodeSnapshotCache} has it within its limit. Null otherwise.
+     */
+    private volatile IGameSerializable<C, S> snapshot;
+
     private static final Logger logger = LogManager.getLogger(NodeGameExplorableBase.class);
 
     /**
@@ -424,6 +438,9 @@ public abstract class NodeGameExplorableBase<
     synchronized void propagateLock() {
         if (getUntriedActionCount() > 0) // may 19 - New addition. I don't see why this isn't ok...
             return;
+        if (getChildCount() == 0) // Only reached from a backwards-linked child, e.g. the root of a window from a
+            // TreeStore. Workers below it never come up here, and nothing could unlock it again.
+            return;
         // Lock this node unless we find evidence that we don't need to.
         for (N child : getChildren()) {
             if (!child.isLocked() && !child.isFullyExplored()) {
@@ -449,6 +466,57 @@ public abstract class NodeGameExplorableBase<
         }
     }
 
+    /*
+     * LOCK-FREE RESERVATION:
+     *
+     * Instead of locking off whole subtrees, samplers doing parallel search with virtual loss only reserve the single
+     * node they are about to expand from, with one compare-and-set. Other workers are steered elsewhere by the
+     * virtual loss on the path to that node rather than by locks. Nothing propagates up the tree, and no monitors are
+     * taken. Do not mix these with the propagating versions above on the same tree.
+     */
+
+    /**
+     * Reserve exclusive rights to expand from this node, without taking any monitors or locking any nodes further up
+     * the tree.
+     *
+     * @return Whether the reservation was successful. False means that another worker already holds it.
+     */
+    public boolean reserveExpansionRightsLockFree() {
+        assert !isFullyExplored();
+        assert !getState().isFailed();
+        return locked.compareAndSet(false, true);
+    }
+
+    /**
+     * Release rights obtained with {@link #reserveExpansionRightsLockFree()}.
+     */
+    public void releaseExpansionRightsLockFree() {
+        locked.set(false);
+    }
+
+    /**
+     * Mark that one more worker has an iteration in progress through this node.
+     */
+    public void addVirtualLoss() {
+        virtualLossCount.incrementAndGet();
+    }
+
+    /**
+     * Mark that a worker's iteration through this node has been backed up. Undoes {@link #addVirtualLoss()}.
+     */
+    public void removeVirtualLoss() {
+        virtualLossCount.decrementAndGet();
+    }
+
+    /**
+     * Get the number of workers with iterations in progress through this node.
+     *
+     * @return Number of unresolved virtual visits to this node.
+     */
+    public int getVirtualLossCount() {
+        return virtualLossCount.get();
+    }
+
     /**
      * Determine whether any sampler has exclusive rights to sample from this node.
      *
@@ -458,6 +526,24 @@ public abstract class NodeGameExplorableBase<
         return locked.get();
     }
 
+    /**
+     * Get the game snapshot stored at this node, if any.
+     * @return Game at this node's state, or null if none is stored here.
+     * @see NodeSnapshotCache
+     */
+    IGameSerializable<C, S> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Store or clear the serialized game snapshot at this node. Only {@link NodeSnapshotCache} should do this, since
+     * it is responsible for keeping the total under its limit.
+     * @param snapshot Game at this node's state. Null to clear.
+     */
+    void setSnapshot(IGameSerializable<C, S> snapshot) {
+        this.snapshot = snapshot;
+    }
+
     /**
      * Simply a wrapper about the lock. This is useful for inheriting classes that want to override to perform some
      * other behavior when locking occurs.
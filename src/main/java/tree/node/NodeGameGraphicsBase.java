@@ -179,6 +179,21 @@ public abstract class NodeGameGraphicsBase
         super.releaseExpansionRights();
     }
 
+    @Override
+    public boolean reserveExpansionRightsLockFree() {
+        boolean reserved = super.reserveExpansionRightsLockFree();
+        if (reserved) {
+            setOverridePointColor(Color.PINK);
+        }
+        return reserved;
+    }
+
+    @Override
+    public void releaseExpansionRightsLockFree() {
+        setOverridePointColor(null);
+        super.releaseExpansionRightsLockFree();
+    }
+
     private static synchronized int makeNewBuffer(GL2 gl, List<NodeGameGraphicsBase> nodesToBuffer) {
         int [] aiVertexBufferIndices = new int [] {-1};
 
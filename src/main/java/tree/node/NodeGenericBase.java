@@ -91,9 +91,10 @@ public abstract class NodeGenericBase<N extends NodeGenericBase<N>> {
     /**
      * Get the children of this node.
      *
-     * @return The actual list of children of this node.
+     * @return The actual list of children of this node. It is copy-on-write, so it is safe to iterate while other
+     * threads add children.
      */
-    public synchronized List<N> getChildren() {
+    public List<N> getChildren() {
         return children;
     }
 
@@ -0,0 +1,274 @@
+package tree.node;
+
+import com.google.common.base.Preconditions;
+import game.IGameSerializable;
+import game.action.Command;
+import game.state.IState;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps copies of the game (see {@link IGameSerializable#copyStateFrom(IGameSerializable)}) on a bounded subset of
+ * interior tree nodes. A {@link tree.TreeWorker} heading for a deep node can copy the state of the deepest ancestor
+ * which has a snapshot into its own game and only re-simulate the remaining actions, rather than replaying everything
+ * from the root.
+ *
+ * Only nodes at depths which are a multiple of the snapshot interval (and at least the minimum depth) are candidates.
+ * The number of stored snapshots is kept under a limit. When a new snapshot would exceed it, the
+ * least-recently-used snapshots are dropped from their nodes.
+ *
+ * Nodes are only weakly held. A node removed from the tree, e.g. by {@link NodeGenericBase#destroyNodesBelow()}, is
+ * not kept around by the cache, and its snapshot no longer counts towards the limit once it has been collected.
+ *
+ * One cache should be shared by all the workers operating on the same tree.
+ *
+ * @param <C> Command type used by the game.
+ * @param <S> State type used by the game.
+ *
+ * @author matt
+ */
+public class NodeSnapshotCache<C extends Command<?>, S extends IState> {
+
+    /**
+     * Maximum number of snapshots stored at once.
+     */
+    private final int maxSnapshots;
+
+    /**
+     * Only nodes at depths which are a multiple of this are candidates for snapshots.
+     */
+    private final int depthInterval;
+
+    /**
+     * Nodes shallower than this never get snapshots. Replaying to them is cheap anyway.
+     */
+    private final int minimumDepth;
+
+    /**
+     * Nodes currently holding snapshots. Kept in access order so the eldest entry is the least-recently-used one.
+     * Used as a set. Only the keys matter.
+     */
+    private final LinkedHashMap<NodeReference, Boolean> storedSnapshots = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Entries of nodes which have been garbage collected, waiting to be removed from {@link #storedSnapshots}.
+     */
+    private final ReferenceQueue<NodeGameExplorableBase<?, ?, ?>> collectedNodes = new ReferenceQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder snapshotsStored = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Total timesteps which did not need to be re-simulated thanks to restoring a snapshot.
+     */
+    private final LongAdder timestepsSaved = new LongAdder();
+
+    /**
+     * Make a new, empty snapshot cache.
+     *
+     * @param maxSnapshots Maximum number of snapshots to keep. Each one is a full game, so this bounds memory.
+     * @param depthInterval Only nodes at depths which are a multiple of this will be given snapshots.
+     * @param minimumDepth Nodes shallower than this will never be given snapshots.
+     */
+    public NodeSnapshotCache(int maxSnapshots, int depthInterval, int minimumDepth) {
+        Preconditions.checkArgument(maxSnapshots > 0, "Snapshot limit must be positive.", maxSnapshots);
+        Preconditions.checkArgument(depthInterval > 0, "Snapshot depth interval must be positive.", depthInterval);
+        Preconditions.checkArgument(minimumDepth > 0, "Snapshots are never needed at the root.", minimumDepth);
+        this.maxSnapshots = maxSnapshots;
+        this.depthInterval = depthInterval;
+        this.minimumDepth = minimumDepth;
+    }
+
+    /**
+     * Check whether a node at this depth is a candidate for storing a snapshot. This is cheap and can be called
+     * before looking up the node itself.
+     *
+     * @param treeDepth Absolute tree depth of a node.
+     * @return Whether nodes at this depth may be given snapshots.
+     */
+    public boolean isSnapshotDepth(int treeDepth) {
+        return treeDepth >= minimumDepth && treeDepth % depthInterval == 0;
+    }
+
+    /**
+     * Check whether a node should be given a snapshot. It must be at a snapshot depth, not already have one, and not
+     * be failed.
+     *
+     * @param node Node to check.
+     * @return Whether the caller should call {@link #store(NodeGameExplorableBase, IGameSerializable)}.
+     */
+    public boolean shouldStore(NodeGameExplorableBase<?, C, S> node) {
+        return isSnapshotDepth(node.getTreeDepth()) && node.getSnapshot() == null && !node.getState().isFailed();
+    }
+
+    /**
+     * Store a copy of a game at a node. The game must be exactly at the state of this node, including all
+     * warm-starting information, or continuations from here will not match the rest of the tree. The given game is
+     * not kept, and can go on being used. Least-recently-used snapshots will be evicted to stay within the limit.
+     *
+     * @param node Node at which the game is.
+     * @param game Game to copy the state of.
+     */
+    public void store(NodeGameExplorableBase<?, C, S> node, IGameSerializable<C, S> game) {
+        IGameSerializable<C, S> snapshot = game.getCopy().copyStateFrom(game);
+        synchronized (this) {
+            removeCollectedNodes();
+            storedSnapshots.put(new NodeReference(node, collectedNodes), Boolean.TRUE);
+            node.setSnapshot(snapshot);
+            snapshotsStored.increment();
+
+            Iterator<NodeReference> iterator = storedSnapshots.keySet().iterator();
+            while (storedSnapshots.size() > maxSnapshots && iterator.hasNext()) {
+                NodeGameExplorableBase<?, ?, ?> eldest = iterator.next().get();
+                if (eldest == node) continue; // Never evict the one just added.
+                if (eldest != null) {
+                    eldest.setSnapshot(null);
+                }
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Find the deepest node between the given one (inclusive) and the root (exclusive) which holds a snapshot.
+     *
+     * @param node Node that the game needs to get to.
+     * @return The deepest ancestor with a snapshot, or null if there is none.
+     */
+    public NodeGameExplorableBase<?, C, S> getDeepestSnapshotAncestor(NodeGameExplorableBase<?, C, S> node) {
+        NodeGameExplorableBase<?, C, S> currentNode = node;
+        while (currentNode.getTreeDepth() > 0) {
+            if (currentNode.getSnapshot() != null) {
+                NodeReference lookup = new NodeReference(currentNode, null);
+                synchronized (this) {
+                    storedSnapshots.get(lookup); // Marks it as recently used.
+                }
+                hits.increment();
+                return currentNode;
+            }
+            currentNode = currentNode.getParent();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Get the snapshot stored at a node. It may be evicted at any time, so callers should hold onto the returned
+     * game rather than asking repeatedly. Copy its state into another game with
+     * {@link IGameSerializable#copyStateFrom(IGameSerializable)}. Never step it.
+     *
+     * @param node Node to get the snapshot of.
+     * @return Game at that node's state, or null if it has none (anymore).
+     */
+    public IGameSerializable<C, S> getSnapshot(NodeGameExplorableBase<?, C, S> node) {
+        return node.getSnapshot();
+    }
+
+    /**
+     * Report that restoring a snapshot let a worker skip re-simulating some timesteps.
+     *
+     * @param timesteps Number of timesteps which did not need to be replayed.
+     */
+    public void reportTimestepsSaved(long timesteps) {
+        timestepsSaved.add(timesteps);
+    }
+
+    /**
+     * Drop all snapshots.
+     */
+    public synchronized void clear() {
+        for (NodeReference reference : storedSnapshots.keySet()) {
+            NodeGameExplorableBase<?, ?, ?> node = reference.get();
+            if (node != null) {
+                node.setSnapshot(null);
+            }
+        }
+        storedSnapshots.clear();
+        removeCollectedNodes();
+    }
+
+    /**
+     * Forget the entries of nodes which have been garbage collected.
+     */
+    private void removeCollectedNodes() {
+        Reference<?> collected;
+        while ((collected = collectedNodes.poll()) != null) {
+            storedSnapshots.remove(collected);
+        }
+    }
+
+    public int getMaxSnapshots() {
+        return maxSnapshots;
+    }
+
+    public synchronized int getSnapshotCount() {
+        removeCollectedNodes();
+        return storedSnapshots.size();
+    }
+
+    public long getHitCount() {
+        return hits.longValue();
+    }
+
+    public long getMissCount() {
+        return misses.longValue();
+    }
+
+    public long getStoreCount() {
+        return snapshotsStored.longValue();
+    }
+
+    public long getEvictionCount() {
+        return evictions.longValue();
+    }
+
+    /**
+     * Get the total number of replay timesteps that workers skipped by restoring snapshots.
+     * @return Total timesteps saved.
+     */
+    public long getTimestepsSaved() {
+        return timestepsSaved.longValue();
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshots: " + getSnapshotCount() + "/" + maxSnapshots + ", hits: " + getHitCount() + ", misses: " +
+                getMissCount() + ", evictions: " + getEvictionCount() + ", timesteps saved: " + getTimestepsSaved();
+    }
+
+    /**
+     * Weak reference to a node, as a map key. Equal to another if both still refer to the same node. Once the node
+     * is collected, it is only equal to itself, which is still enough to remove it.
+     */
+    private static final class NodeReference extends WeakReference<NodeGameExplorableBase<?, ?, ?>> {
+
+        private final int hash;
+
+        NodeReference(NodeGameExplorableBase<?, ?, ?> node,
+                      ReferenceQueue<NodeGameExplorableBase<?, ?, ?>> queue) {
+            super(node, queue);
+            hash = System.identityHashCode(node);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof NodeReference) || hash != other.hashCode()) return false;
+            NodeGameExplorableBase<?, ?, ?> node = get();
+            return node != null && node == ((NodeReference) other).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
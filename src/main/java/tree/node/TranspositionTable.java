@@ -0,0 +1,253 @@
+package tree.node;
+
+import com.google.common.base.Preconditions;
+import game.action.Command;
+import game.state.IState;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds tree nodes which reach practically the same state as another node by a different sequence of actions. Each
+ * state is quantized by rounding every value of {@link IState#flattenState()} and the center x to a multiple of the
+ * tolerance. The first node to reach a quantized state becomes its canonical node. Later nodes with the same
+ * quantized state are duplicates, and have their untried actions removed, so that the same subtree is not explored
+ * and valued again beneath them. They still get whatever value the sampler gives them directly.
+ *
+ * States which round differently can still be very close, e.g. on either side of a rounding boundary, so not every
+ * near-duplicate is found. A bigger tolerance finds more, but also merges states which really do behave differently.
+ *
+ * One table should be shared by all the workers operating on the same tree, and only that tree. Workers give it their
+ * root with {@link #setRoot(NodeGameBase)}, and it forgets every entry when it is given a different one, e.g. for a
+ * new run from the initial state. Nodes are only held weakly, so ones which have been removed from the tree can still
+ * be collected. Removing nodes through {@link #remove(NodeGameExplorableBase)} (as {@link TreeCompactor} does) also
+ * stops new nodes being matched against them before then.
+ *
+ * @param <C> Command type used by the game.
+ * @param <S> State type used by the game.
+ *
+ * @author matt
+ */
+public class TranspositionTable<C extends Command<?>, S extends IState> {
+
+    /**
+     * State values are rounded to multiples of this before comparing.
+     */
+    private final float tolerance;
+
+    private final ConcurrentHashMap<QuantizedState, NodeReference> canonicalNodes = new ConcurrentHashMap<>();
+
+    /**
+     * Canonical nodes which have been garbage collected, waiting for their entries to be removed.
+     */
+    private final ReferenceQueue<NodeGameExplorableBase<?, ?, ?>> collectedNodes = new ReferenceQueue<>();
+
+    /**
+     * Root of the tree the entries belong to. Weak, so that an old tree is not kept alive by the table.
+     */
+    private WeakReference<NodeGameBase<?, C, S>> root = new WeakReference<>(null);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Make a new, empty transposition table.
+     *
+     * @param tolerance States are rounded to multiples of this before being compared. Must be positive.
+     */
+    public TranspositionTable(float tolerance) {
+        Preconditions.checkArgument(tolerance > 0, "Transposition tolerance must be positive.", tolerance);
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Look up a newly-added node's state. If no other node has reached the same quantized state, this node becomes
+     * the canonical one for it. Otherwise, this node is pruned: its untried actions are removed, and the
+     * fully-explored status is updated up the tree. Failed nodes are never entered or pruned.
+     *
+     * @param node Node which was just added to the tree.
+     * @return The canonical node for this node's state. This node itself unless it was pruned as a duplicate.
+     */
+    public NodeGameExplorableBase<?, C, S> addOrPrune(NodeGameExplorableBase<?, C, S> node) {
+        if (node.getState().isFailed()) {
+            return node;
+        }
+        removeCollected();
+        QuantizedState key = quantize(node.getState());
+        NodeReference reference = new NodeReference(node, key, collectedNodes);
+        while (true) {
+            NodeReference existing = canonicalNodes.putIfAbsent(key, reference);
+            if (existing == null) {
+                misses.increment();
+                return node;
+            }
+            NodeGameExplorableBase<?, C, S> canonicalNode = existing.getNode();
+            if (canonicalNode == node) {
+                misses.increment();
+                return node;
+            } else if (canonicalNode != null) {
+                hits.increment();
+                node.clearUntriedActions();
+                return canonicalNode;
+            } else if (canonicalNodes.replace(key, existing, reference)) { // Old canonical node was collected.
+                misses.increment();
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Get the canonical node for a state, without adding anything or counting a lookup.
+     *
+     * @param state State to find an equivalent node for.
+     * @return The first node added which reached the same quantized state, or null if there is none.
+     */
+    public NodeGameExplorableBase<?, C, S> getCanonicalNode(S state) {
+        NodeReference reference = canonicalNodes.get(quantize(state));
+        return reference == null ? null : reference.getNode();
+    }
+
+    /**
+     * Stop using a node as the canonical one for its state, e.g. because it is being removed from the tree. Nothing
+     * happens if another node is canonical for the state.
+     *
+     * @param node Node to forget.
+     */
+    public void remove(NodeGameExplorableBase<?, C, S> node) {
+        if (node.getState().isFailed()) {
+            return;
+        }
+        QuantizedState key = quantize(node.getState());
+        NodeReference reference = canonicalNodes.get(key);
+        if (reference != null && reference.getNode() == node) {
+            canonicalNodes.remove(key, reference);
+        }
+    }
+
+    /**
+     * Use this table for the tree below a root. If it was being used for a different tree, everything in it is
+     * forgotten first, since those nodes are not part of this search.
+     *
+     * @param rootNode Any node of the tree being searched. Its overall root is used.
+     */
+    public synchronized void setRoot(NodeGameBase<?, C, S> rootNode) {
+        NodeGameBase<?, C, S> newRoot = rootNode.getRoot();
+        if (root.get() != newRoot) {
+            clear();
+            root = new WeakReference<>(newRoot);
+        }
+    }
+
+    /**
+     * Remove the entries of canonical nodes which have been garbage collected.
+     */
+    private void removeCollected() {
+        Reference<?> collected;
+        while ((collected = collectedNodes.poll()) != null) {
+            NodeReference reference = (NodeReference) collected;
+            canonicalNodes.remove(reference.key, reference);
+        }
+    }
+
+    QuantizedState quantize(S state) {
+        float[] values = state.flattenState();
+        long[] quantized = new long[values.length + 1];
+        for (int i = 0; i < values.length; i++) {
+            quantized[i] = Math.round((double) values[i] / tolerance);
+        }
+        quantized[values.length] = Math.round((double) state.getCenterX() / tolerance);
+        return new QuantizedState(quantized);
+    }
+
+    /**
+     * Forget all canonical nodes. Nodes pruned before keep their cleared untried actions.
+     */
+    public void clear() {
+        canonicalNodes.clear();
+        removeCollected(); // Nothing left for these to remove.
+    }
+
+    public float getTolerance() {
+        return tolerance;
+    }
+
+    public int getEntryCount() {
+        removeCollected();
+        return canonicalNodes.size();
+    }
+
+    /**
+     * Get the number of nodes pruned as duplicates of another.
+     * @return Number of lookups which found an existing node.
+     */
+    public long getHitCount() {
+        return hits.longValue();
+    }
+
+    public long getMissCount() {
+        return misses.longValue();
+    }
+
+    /**
+     * Get the fraction of new nodes which turned out to be duplicates.
+     * @return Hits over all lookups, or 0 if there have not been any.
+     */
+    public float getHitRate() {
+        long lookups = getHitCount() + getMissCount();
+        return lookups == 0 ? 0 : getHitCount() / (float) lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "Transpositions: " + getEntryCount() + " states, hits: " + getHitCount() + ", misses: " +
+                getMissCount() + String.format(", hit rate: %.3f", getHitRate());
+    }
+
+    /**
+     * Weak reference to a canonical node, which knows its entry so that it can be removed once the node is collected.
+     */
+    private final class NodeReference extends WeakReference<NodeGameExplorableBase<?, ?, ?>> {
+
+        private final QuantizedState key;
+
+        NodeReference(NodeGameExplorableBase<?, C, S> node, QuantizedState key,
+                      ReferenceQueue<NodeGameExplorableBase<?, ?, ?>> queue) {
+            super(node, queue);
+            this.key = key;
+        }
+
+        @SuppressWarnings("unchecked")
+        NodeGameExplorableBase<?, C, S> getNode() {
+            return (NodeGameExplorableBase<?, C, S>) get(); // Only ever made from a NodeGameExplorableBase<?, C, S>.
+        }
+    }
+
+    /**
+     * Rounded state values, as a map key.
+     */
+    static final class QuantizedState {
+
+        private final long[] values;
+        private final int hash;
+
+        QuantizedState(long[] values) {
+            this.values = values;
+            hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof QuantizedState && hash == ((QuantizedState) other).hash
+                    && Arrays.equals(values, ((QuantizedState) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package tree.node;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import game.action.Command;
+import game.state.IState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a tree which is searched for a long time within the heap. Once the heap still in use after garbage collection
+ * passes a high-water mark, nodes are thrown out in two ways:
+ * <ul>
+ *     <li>Fully-explored branches lose everything below their top node. Nothing is sampled in them anymore, and the
+ *     top node keeps its value, so the rest of the tree sees no difference.</li>
+ *     <li>The lowest-valued fraction of the branches which are still open are collapsed into their top node. It keeps
+ *     its value and update count as a summary of the branch, but has its children and untried actions removed, so it
+ *     becomes fully-explored and is not sampled again.</li>
+ * </ul>
+ *
+ * This is meant to run on a different thread than the workers, e.g. the stage's, while they keep going. Branches
+ * holding a locked node or one with virtual loss are left alone, since a worker is partway through an iteration
+ * there. A worker which has already chosen a path into an open branch just before it is collapsed finishes its
+ * iteration on the detached nodes. Its results still reach the root, but the nodes it adds are thrown out.
+ *
+ * Nodes thrown out are removed from the {@link TranspositionTable} given with
+ * {@link #setTranspositionTable(TranspositionTable)}, so that new nodes are not pruned as duplicates of them. Other
+ * holders of node references keep thrown-out nodes reachable.
+ *
+ * @param <C> Command type used by the game.
+ * @param <S> State type used by the game.
+ *
+ * @author matt
+ */
+public class TreeCompactor<C extends Command<?>, S extends IState> {
+
+    /**
+     * Compaction happens when the fraction of the maximum heap still in use after garbage collection is above this.
+     */
+    public final float highWaterFraction;
+
+    /**
+     * Fraction of the open branches, lowest-valued first, to collapse each time.
+     */
+    public final float collapseFraction;
+
+    /**
+     * Open branches are only collapsed at or below this tree depth, so the top of the tree stays as it is.
+     */
+    public final int minCollapseDepth;
+
+    /**
+     * Garbage collection count at the last compaction. The heap use after collection is not updated until the next
+     * collection, so compacting again before then would throw out too much.
+     */
+    private long collectionCountAtCompaction = -1;
+
+    /**
+     * Table used by the workers on the tree being compacted. Null if they do not use one.
+     */
+    private TranspositionTable<C, S> transpositionTable;
+
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder nodesRemoved = new LongAdder();
+    private final LongAdder branchesCollapsed = new LongAdder();
+
+    private static final Logger logger = LogManager.getLogger(TreeCompactor.class);
+
+    /**
+     * Make a new tree compactor.
+     *
+     * @param highWaterFraction Fraction of the maximum heap which may be in use after garbage collection before nodes
+     *                          are thrown out. Must be between 0 and 1.
+     * @param collapseFraction Fraction of the open branches to collapse each time, lowest-valued first. Must be between
+     *                         0 and 1.
+     * @param minCollapseDepth Tree depth above which open branches are never collapsed. Must be at least 1.
+     */
+    @JsonCreator
+    public TreeCompactor(@JsonProperty("highWaterFraction") float highWaterFraction,
+                         @JsonProperty("collapseFraction") float collapseFraction,
+                         @JsonProperty("minCollapseDepth") int minCollapseDepth) {
+        Preconditions.checkArgument(highWaterFraction > 0 && highWaterFraction <= 1,
+                "High-water mark must be a fraction of the heap between 0 and 1.", highWaterFraction);
+        Preconditions.checkArgument(collapseFraction >= 0 && collapseFraction <= 1,
+                "Collapse fraction must be between 0 and 1.", collapseFraction);
+        Preconditions.checkArgument(minCollapseDepth >= 1, "The root cannot be collapsed.", minCollapseDepth);
+        this.highWaterFraction = highWaterFraction;
+        this.collapseFraction = collapseFraction;
+        this.minCollapseDepth = minCollapseDepth;
+    }
+
+    /**
+     * Compact the tree if the heap is above the high-water mark, and there has been a garbage collection since the
+     * last compaction.
+     *
+     * @param root Root of the tree to compact. Never removed itself.
+     * @return Number of nodes removed from the tree.
+     */
+    public int compactIfNeeded(NodeGameExplorableBase<?, C, S> root) {
+        long collectionCount = getCollectionCount();
+        if (collectionCount == collectionCountAtCompaction || getHeapFractionAfterCollection() < highWaterFraction) {
+            return 0;
+        }
+        collectionCountAtCompaction = collectionCount;
+        int removed = compact(root);
+        logger.info("Heap over " + highWaterFraction + " after collection. " + this + ". Removed this time: " +
+                removed);
+        return removed;
+    }
+
+    /**
+     * Throw out fully-explored branches and collapse the lowest-valued open ones, regardless of heap use.
+     *
+     * @param root Root of the tree to compact. Never removed itself.
+     * @return Number of nodes removed from the tree.
+     */
+    public int compact(NodeGameExplorableBase<?, C, S> root) {
+        List<NodeGameExplorableBase<?, C, S>> exploredBranches = new ArrayList<>();
+        List<NodeGameExplorableBase<?, C, S>> openBranches = new ArrayList<>();
+        findBranches(root, exploredBranches, openBranches);
+
+        int removed = 0;
+        for (NodeGameExplorableBase<?, C, S> branch : exploredBranches) {
+            if (!isBusy(branch)) {
+                removed += branch.countDescendants();
+                forgetNodesBelow(branch);
+                branch.destroyNodesBelow();
+            }
+        }
+
+        openBranches.sort(Comparator.comparingDouble(NodeGameBase::getValue));
+        int toCollapse = (int) (collapseFraction * openBranches.size());
+        long collapsedBefore = branchesCollapsed.longValue();
+        for (NodeGameExplorableBase<?, C, S> branch : openBranches) {
+            if (branchesCollapsed.longValue() - collapsedBefore >= toCollapse) {
+                break;
+            }
+            removed += collapse(branch);
+        }
+
+        compactions.increment();
+        nodesRemoved.add(removed);
+        return removed;
+    }
+
+    /**
+     * Find the top nodes of fully-explored branches, and every node at or below the minimum collapse depth which
+     * still has an open branch below it.
+     */
+    private void findBranches(NodeGameExplorableBase<?, C, S> node,
+                              List<NodeGameExplorableBase<?, C, S>> exploredBranches,
+                              List<NodeGameExplorableBase<?, C, S>> openBranches) {
+        for (NodeGameExplorableBase<?, C, S> child : node.getChildren()) {
+            if (child.getChildCount() == 0) {
+                continue;
+            }
+            if (child.isFullyExplored()) {
+                exploredBranches.add(child);
+            } else {
+                if (child.getTreeDepth() >= minCollapseDepth && child.getUpdateCount() > 0) {
+                    openBranches.add(child);
+                }
+                findBranches(child, exploredBranches, openBranches);
+            }
+        }
+    }
+
+    /**
+     * Remove everything below an open node and mark it fully-explored. The node is reserved first, so that no worker
+     * starts expanding from it meanwhile.
+     *
+     * @return Number of nodes removed.
+     */
+    private int collapse(NodeGameExplorableBase<?, C, S> branch) {
+        // Already inside a branch collapsed this time.
+        NodeGameExplorableBase<?, C, S> ancestor = branch;
+        while (ancestor.getTreeDepth() > 0) {
+            ancestor = ancestor.getParent();
+            if (ancestor.isFullyExplored()) {
+                return 0;
+            }
+        }
+        if (branch.isFullyExplored() || !branch.reserveExpansionRightsLockFree()) {
+            return 0;
+        }
+        try {
+            if (branch.getVirtualLossCount() > 0) {
+                return 0;
+            }
+            for (NodeGameExplorableBase<?, C, S> child : branch.getChildren()) {
+                if (isBusy(child)) {
+                    return 0;
+                }
+            }
+            int removed = branch.countDescendants();
+            forgetNodesBelow(branch);
+            branch.destroyNodesBelow();
+            branch.clearUntriedActions();
+            branchesCollapsed.increment();
+            return removed;
+        } finally {
+            branch.releaseExpansionRightsLockFree();
+        }
+    }
+
+    /**
+     * Remove the nodes below a branch from the transposition table, if there is one.
+     */
+    private void forgetNodesBelow(NodeGameExplorableBase<?, C, S> branch) {
+        if (transpositionTable != null) {
+            branch.recurseDownTreeExclusive(transpositionTable::remove);
+        }
+    }
+
+    /**
+     * Set the table of canonical nodes used by the workers on the tree being compacted. Nodes thrown out are removed
+     * from it.
+     *
+     * @param transpositionTable Table shared by the workers. Null if they do not use one.
+     */
+    @JsonIgnore
+    public void setTranspositionTable(TranspositionTable<C, S> transpositionTable) {
+        this.transpositionTable = transpositionTable;
+    }
+
+    /**
+     * Check whether any worker is partway through an iteration at or below this node.
+     */
+    private boolean isBusy(NodeGameExplorableBase<?, C, S> node) {
+        if (node.isLocked() || node.getVirtualLossCount() > 0) {
+            return true;
+        }
+        for (NodeGameExplorableBase<?, C, S> child : node.getChildren()) {
+            if (isBusy(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the fraction of the maximum heap which was still in use after the most recent garbage collection of each
+     * heap memory pool.
+     *
+     * @return Used fraction of the heap, between 0 and 1.
+     */
+    @JsonIgnore
+    public static float getHeapFractionAfterCollection() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used / (float) Runtime.getRuntime().maxMemory();
+    }
+
+    private static long getCollectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    @JsonIgnore
+    public long getCompactionCount() {
+        return compactions.longValue();
+    }
+
+    @JsonIgnore
+    public long getNodesRemovedCount() {
+        return nodesRemoved.longValue();
+    }
+
+    @JsonIgnore
+    public long getBranchesCollapsedCount() {
+        return branchesCollapsed.longValue();
+    }
+
+    @Override
+    public String toString() {
+        return "Compactions: " + getCompactionCount() + ", nodes removed: " + getNodesRemovedCount() +
+                ", branches collapsed: " + getBranchesCollapsedCount();
+    }
+}
@@ -0,0 +1,409 @@
+package tree.node;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import game.action.Action;
+import game.action.Command;
+import game.state.IState;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only binary file for a search tree. Nodes are fixed-width records in the tree file, in the order they were
+ * added, so a node's id is just its record number and parents always come before their children. States go in a
+ * separate file alongside it (same name plus {@link #STATE_FILE_SUFFIX}), also at a fixed width per node.
+ *
+ * Tree file layout, all little-endian:
+ * <ul>
+ *     <li>Header of {@link #HEADER_BYTES}: magic number, version, floats per state, record width, then the length and
+ *     JSON of the list of commands which record command indices refer to.</li>
+ *     <li>One record of {@link #RECORD_BYTES} per node: parent id (int, -1 for roots), action duration (int), command
+ *     index (short), failed (byte), fully explored (byte), value (float), update count (int).</li>
+ * </ul>
+ *
+ * Workers can keep appending nodes and rewriting values while they search. Each state is written before its record,
+ * so after a crash, any partial records at the end are just dropped when the file is next opened. Loading with
+ * {@link #load(File, TreeStore.StateCodec, boolean)} memory-maps both files and copies them straight into a
+ * {@link TreeStore}, without making any objects per node.
+ *
+ * @param <C> Command type used by the game.
+ * @param <S> State type used by the game.
+ *
+ * @author matt
+ */
+public class TreeFile<C extends Command<?>, S extends IState> implements AutoCloseable {
+
+    public static final String STATE_FILE_SUFFIX = ".states";
+
+    public static final int HEADER_BYTES = 4096;
+
+    public static final int RECORD_BYTES = 20;
+
+    private static final int MAGIC = 0x51545245;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Byte offset within a record of the parts which can change after it is written.
+     */
+    private static final int MUTABLE_OFFSET = 11;
+
+    /**
+     * Largest region mapped at once. Mappings are limited to 2GB.
+     */
+    private static final int MAX_MAPPING_BYTES = 1 << 30;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final FileChannel treeChannel;
+
+    private final FileChannel stateChannel;
+
+    private final TreeStore.StateCodec<S> stateCodec;
+
+    private final int stateSize;
+
+    /**
+     * Commands written so far. Records refer to them by index.
+     */
+    private final List<C> commands = new ArrayList<>();
+    private final Map<C, Integer> commandIndices = new HashMap<>();
+
+    private int nodeCount;
+
+    /**
+     * Buffers reused for every write. Only used while holding this object's monitor.
+     */
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer stateBuffer;
+    private final float[] encodeBuffer;
+
+    private TreeFile(File file, TreeStore.StateCodec<S> stateCodec, boolean create) throws IOException {
+        Preconditions.checkNotNull(stateCodec);
+        this.stateCodec = stateCodec;
+        stateSize = stateCodec.getStateSize();
+        stateBuffer = ByteBuffer.allocate(stateSize * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        encodeBuffer = new float[stateSize];
+
+        if (create) {
+            treeChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            stateChannel = FileChannel.open(getStateFile(file).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            writeHeader();
+        } else {
+            treeChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            stateChannel = FileChannel.open(getStateFile(file).toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(treeChannel, header, 0);
+            commands.addAll(readHeader(header, stateSize));
+            for (int i = 0; i < commands.size(); i++) {
+                commandIndices.put(commands.get(i), i);
+            }
+            nodeCount = countCompleteNodes(treeChannel.size(), stateChannel.size(), stateSize);
+            treeChannel.truncate(HEADER_BYTES + (long) nodeCount * RECORD_BYTES);
+            stateChannel.truncate((long) nodeCount * stateSize * Float.BYTES);
+        }
+    }
+
+    /**
+     * Make a new, empty tree file, replacing any existing one.
+     *
+     * @param file Tree file to make. The state file goes next to it.
+     * @param stateCodec Converts states to the floats which are stored.
+     * @return A tree file, open for writing.
+     * @throws IOException If the files cannot be made.
+     */
+    public static <C extends Command<?>, S extends IState> TreeFile<C, S> create(File file,
+                                                                                TreeStore.StateCodec<S> stateCodec) throws IOException {
+        return new TreeFile<>(file, stateCodec, true);
+    }
+
+    /**
+     * Open an existing tree file to keep adding to it. Node ids continue from those already in the file.
+     *
+     * @param file Existing tree file.
+     * @param stateCodec Converts states to the floats which are stored. Must match the one the file was made with.
+     * @return A tree file, open for writing.
+     * @throws IOException If the files cannot be read, or are not tree files.
+     */
+    public static <C extends Command<?>, S extends IState> TreeFile<C, S> openForAppend(File file,
+                                                                                       TreeStore.StateCodec<S> stateCodec) throws IOException {
+        return new TreeFile<>(file, stateCodec, false);
+    }
+
+    /**
+     * Write a whole {@link TreeStore} to a new tree file. Ids in the file will match those in the store.
+     *
+     * @param store Store to write.
+     * @param file Tree file to make, replacing any existing one.
+     * @throws IOException If the files cannot be written.
+     */
+    public static <C extends Command<?>, S extends IState> void write(TreeStore<C, S> store, File file) throws IOException {
+        try (TreeFile<C, S> treeFile = create(file, store.getStateCodec())) {
+            float[] state = new float[store.getStateCodec().getStateSize()];
+            int size = store.size();
+            for (int id = 0; id < size; id++) {
+                store.getState(id, state);
+                int parent = store.getParent(id);
+                if (parent == TreeStore.NO_NODE) {
+                    treeFile.append(TreeStore.NO_NODE, 0, null, state, store.isFailed(id));
+                } else {
+                    treeFile.append(parent, store.getActionDuration(id), store.getCommand(id), state,
+                            store.isFailed(id));
+                }
+                treeFile.writeValue(id, store.getValue(id), store.getUpdateCount(id), store.isFullyExplored(id));
+            }
+        }
+    }
+
+    /**
+     * Load a tree file into a new {@link TreeStore}. Both files are memory-mapped and copied across directly. Ids in
+     * the store will match those in the file. The files are not modified, and can still be appended to by another
+     * process while this happens; any nodes added after loading starts may or may not be included.
+     *
+     * @param file Tree file to load.
+     * @param stateCodec Converts the stored floats to states. Must match the one the file was made with.
+     * @param offHeapStates Whether the new store should keep states outside the heap.
+     * @return A new store holding all the nodes in the file.
+     * @throws IOException If the files cannot be read, or are not tree files.
+     */
+    public static <C extends Command<?>, S extends IState> TreeStore<C, S> load(File file,
+                                                                               TreeStore.StateCodec<S> stateCodec,
+                                                                               boolean offHeapStates) throws IOException {
+        int stateSize = stateCodec.getStateSize();
+        int stateBytes = stateSize * Float.BYTES;
+        TreeStore<C, S> store = new TreeStore<>(stateCodec, offHeapStates);
+
+        try (FileChannel treeChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             FileChannel stateChannel = FileChannel.open(getStateFile(file).toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer header = treeChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            List<C> commands = readHeader(header, stateSize);
+            int nodeCount = countCompleteNodes(treeChannel.size(), stateChannel.size(), stateSize);
+
+            int nodesPerMapping = MAX_MAPPING_BYTES / stateBytes;
+            float[] state = new float[stateSize];
+            for (int first = 0; first < nodeCount; first += nodesPerMapping) {
+                int count = Math.min(nodesPerMapping, nodeCount - first);
+                ByteBuffer records = treeChannel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + (long) first * RECORD_BYTES, (long) count * RECORD_BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                FloatBuffer states = stateChannel.map(FileChannel.MapMode.READ_ONLY, (long) first * stateBytes,
+                        (long) count * stateBytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+                for (int i = 0; i < count; i++) {
+                    int offset = i * RECORD_BYTES;
+                    int parent = records.getInt(offset);
+                    boolean failed = records.get(offset + 10) != 0;
+                    states.get(state);
+
+                    int id;
+                    if (parent == TreeStore.NO_NODE) {
+                        id = store.addRoot(state, failed);
+                    } else {
+                        id = store.addChild(parent, records.getInt(offset + 4), commands.get(records.getShort(offset + 8)),
+                                state, failed);
+                    }
+                    assert id == first + i;
+                    store.restoreValue(id, records.getFloat(offset + 12), records.getInt(offset + 16));
+                    if (records.get(offset + MUTABLE_OFFSET) != 0)
+                        store.setFullyExplored(id);
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Add a root node to the file.
+     *
+     * @param state State at the root.
+     * @return Id of the new node.
+     * @throws IOException If the node could not be written.
+     */
+    public synchronized int appendRoot(S state) throws IOException {
+        stateCodec.encode(state, encodeBuffer);
+        return append(TreeStore.NO_NODE, 0, null, encodeBuffer, state.isFailed());
+    }
+
+    /**
+     * Add a node to the file below one which has already been added.
+     *
+     * @param parent Id of the parent node.
+     * @param action Action taking the game from the parent's state to this one.
+     * @param state State reached by the action.
+     * @return Id of the new node.
+     * @throws IOException If the node could not be written.
+     */
+    public synchronized int appendNode(int parent, Action<C> action, S state) throws IOException {
+        Preconditions.checkArgument(parent >= 0 && parent < nodeCount, "Parent is not in the file.", parent);
+        stateCodec.encode(state, encodeBuffer);
+        return append(parent, action.getTimestepsTotal(), action.getCommand(), encodeBuffer, state.isFailed());
+    }
+
+    private synchronized int append(int parent, int actionDuration, C command, float[] state, boolean failed) throws IOException {
+        int commandIndex = 0;
+        if (command != null) {
+            Integer index = commandIndices.get(command);
+            if (index == null) {
+                index = commands.size();
+                commands.add(command);
+                commandIndices.put(command, index);
+                writeHeader();
+            }
+            commandIndex = index;
+        }
+
+        // State first, so a record is never on disk without its state.
+        stateBuffer.clear();
+        stateBuffer.asFloatBuffer().put(state, 0, stateSize);
+        writeFully(stateChannel, stateBuffer, (long) nodeCount * stateSize * Float.BYTES);
+
+        recordBuffer.clear();
+        recordBuffer.putInt(parent)
+                .putInt(actionDuration)
+                .putShort((short) commandIndex)
+                .put((byte) (failed ? 1 : 0))
+                .put((byte) 0)
+                .putFloat(0f)
+                .putInt(0);
+        recordBuffer.flip();
+        writeFully(treeChannel, recordBuffer, HEADER_BYTES + (long) nodeCount * RECORD_BYTES);
+        return nodeCount++;
+    }
+
+    /**
+     * Overwrite the value, update count and fully-explored status of a node already in the file.
+     *
+     * @param id Id of the node.
+     * @param value New value.
+     * @param updateCount New update count.
+     * @param fullyExplored Whether the node is now fully explored.
+     * @throws IOException If the values could not be written.
+     */
+    public synchronized void writeValue(int id, float value, int updateCount, boolean fullyExplored) throws IOException {
+        Preconditions.checkArgument(id >= 0 && id < nodeCount, "Node is not in the file.", id);
+        recordBuffer.clear();
+        recordBuffer.put((byte) (fullyExplored ? 1 : 0))
+                .putFloat(value)
+                .putInt(updateCount);
+        recordBuffer.flip();
+        writeFully(treeChannel, recordBuffer, HEADER_BYTES + (long) id * RECORD_BYTES + MUTABLE_OFFSET);
+    }
+
+    /**
+     * Number of nodes in the file.
+     */
+    public synchronized int size() {
+        return nodeCount;
+    }
+
+    /**
+     * Make sure everything written so far is on disk.
+     *
+     * @throws IOException If the files could not be synced.
+     */
+    public synchronized void flush() throws IOException {
+        stateChannel.force(false);
+        treeChannel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (treeChannel.isOpen())
+            flush();
+        stateChannel.close();
+        treeChannel.close();
+    }
+
+    /**
+     * Get the state file which goes with a tree file.
+     *
+     * @param file Tree file.
+     * @return File holding the tree's states.
+     */
+    public static File getStateFile(File file) {
+        return new File(file.getPath() + STATE_FILE_SUFFIX);
+    }
+
+    private void writeHeader() throws IOException {
+        byte[] commandJson = objectMapper.writerFor(new TypeReference<List<Command<?>>>() {})
+                .writeValueAsBytes(commands);
+        if (commandJson.length > HEADER_BYTES - 5 * Integer.BYTES)
+            throw new IllegalStateException("Too many distinct commands to fit in the tree file header.");
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(stateSize)
+                .putInt(RECORD_BYTES)
+                .putInt(commandJson.length)
+                .put(commandJson);
+        header.clear();
+        writeFully(treeChannel, header, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C extends Command<?>> List<C> readHeader(ByteBuffer header, int stateSize) throws IOException {
+        if (header.getInt(0) != MAGIC)
+            throw new IOException("Not a tree file.");
+        if (header.getInt(4) != VERSION)
+            throw new IOException("Unsupported tree file version: " + header.getInt(4) + ".");
+        if (header.getInt(8) != stateSize)
+            throw new IOException("Tree file has states of size " + header.getInt(8) + ", but " + stateSize + " were " +
+                    "expected.");
+        if (header.getInt(12) != RECORD_BYTES)
+            throw new IOException("Unexpected tree file record size: " + header.getInt(12) + ".");
+
+        byte[] commandJson = new byte[header.getInt(16)];
+        for (int i = 0; i < commandJson.length; i++) {
+            commandJson[i] = header.get(20 + i);
+        }
+        if (commandJson.length == 0)
+            return new ArrayList<>();
+        List<Command<?>> commands = objectMapper.readValue(new String(commandJson, StandardCharsets.UTF_8),
+                new TypeReference<List<Command<?>>>() {});
+        return (List<C>) (List<?>) commands;
+    }
+
+    /**
+     * Number of nodes with both a complete record and a complete state.
+     */
+    private static int countCompleteNodes(long treeBytes, long stateBytes, int stateSize) throws IOException {
+        if (treeBytes < HEADER_BYTES)
+            throw new IOException("Tree file is missing its header.");
+        long records = (treeBytes - HEADER_BYTES) / RECORD_BYTES;
+        long states = stateBytes / ((long) stateSize * Float.BYTES);
+        return (int) Math.min(Math.min(records, states), Integer.MAX_VALUE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Tree file ended early.");
+            position += read;
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,729 @@
+package tree.node;
+
+import com.google.common.base.Preconditions;
+import game.action.Action;
+import game.action.ActionGenerator_Null;
+import game.action.Command;
+import game.action.IActionGenerator;
+import game.qwop.StateQWOP;
+import game.state.IState;
+import game.state.StateVariable6D;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Compact tree backend for very large searches. Rather than one object graph per node (child list, atomic value,
+ * {@link IState} made of many small objects, untried {@link game.action.ActionList}, flags...), every node is just an
+ * int id into a set of primitive arrays: parent, depth, child links, action duration, command, value, visit count,
+ * flags and the flattened state. Nodes take roughly {@link #getBytesPerNode()} bytes each (329 for QWOP), and the
+ * arrays are allocated in fixed-size chunks, so the garbage collector sees a few hundred large arrays rather than tens
+ * of millions of small objects. States can optionally live off-heap in direct buffers.
+ *
+ * The store has no notion of untried actions, so samplers do not run on it directly. Instead, a window of it can be
+ * turned into ordinary {@link NodeGameExplorable} nodes with {@link #materialize(int, IActionGenerator, int)}. The
+ * window hangs below a backwards-linked chain of its stored ancestors, so it keeps its real depth and action path, and
+ * a {@link tree.TreeWorker} given the window as its root replays to it and searches below it as usual. The results
+ * are then written back with {@link #mergeTree(NodeGameBase, int)}. Only the window and its ancestors ever need to
+ * exist as objects. {@link tree.stage.TreeStage_StoreWindows} searches a whole tree this way.
+ *
+ * Adding nodes is synchronized on the store. Everything else, including reading structure while other threads add
+ * nodes, value updates and expansion locking, is lock-free.
+ *
+ * @param <C> Command type used by the game.
+ * @param <S> State type used by the game.
+ *
+ * @author matt
+ */
+public class TreeStore<C extends Command<?>, S extends IState> {
+
+    /**
+     * Id returned in place of a node when there is none, e.g. the parent of a root or the first child of a leaf.
+     */
+    public static final int NO_NODE = -1;
+
+    /**
+     * Nodes per chunk of storage is 2^CHUNK_BITS.
+     */
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int FLAG_FAILED = 1;
+    private static final int FLAG_FULLY_EXPLORED = 1 << 1;
+    private static final int FLAG_LOCKED = 1 << 2;
+
+    /**
+     * Converts states to and from the flat float arrays kept in the store.
+     */
+    private final StateCodec<S> stateCodec;
+
+    private final int stateSize;
+
+    /**
+     * Are states kept in direct buffers rather than on the heap?
+     */
+    private final boolean offHeapStates;
+
+    /**
+     * Commands seen so far. Nodes only keep the index of their command in this list.
+     */
+    private final List<C> commandDictionary = new CopyOnWriteArrayList<>();
+    private final Map<C, Integer> commandIndices = new ConcurrentHashMap<>();
+
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    /**
+     * Number of nodes in the store. Ids are always below this.
+     */
+    private volatile int nodeCount;
+
+    /**
+     * Scratch array for encoding states while adding nodes. Only used while holding the store's monitor.
+     */
+    private final float[] encodeBuffer;
+
+    /**
+     * Make a new, empty store.
+     *
+     * @param stateCodec Converts states to and from flat arrays of floats. Use {@link #QWOP_STATES} for QWOP.
+     * @param offHeapStates If true, state values are kept in direct buffers outside the Java heap.
+     */
+    public TreeStore(StateCodec<S> stateCodec, boolean offHeapStates) {
+        Preconditions.checkNotNull(stateCodec);
+        Preconditions.checkArgument(stateCodec.getStateSize() > 0, "State size must be positive.",
+                stateCodec.getStateSize());
+        this.stateCodec = stateCodec;
+        this.offHeapStates = offHeapStates;
+        stateSize = stateCodec.getStateSize();
+        encodeBuffer = new float[stateSize];
+    }
+
+    /**
+     * Add a new root node, with no parent. A store may have any number of roots.
+     *
+     * @param state State at the root.
+     * @return Id of the new root.
+     */
+    public synchronized int addRoot(S state) {
+        Preconditions.checkNotNull(state);
+        stateCodec.encode(state, encodeBuffer);
+        return addRoot(encodeBuffer, state.isFailed());
+    }
+
+    /**
+     * Add a new root node from already-flattened state values.
+     *
+     * @param stateValues State values, as written by {@link StateCodec#encode(IState, float[])}.
+     * @param isFailed Whether the state is a failed one.
+     * @return Id of the new root.
+     */
+    public synchronized int addRoot(float[] stateValues, boolean isFailed) {
+        return addNode(NO_NODE, 0, (byte) 0, stateValues, isFailed);
+    }
+
+    /**
+     * Add a new child below an existing node. It goes after any existing children.
+     *
+     * @param parent Id of the node to add the child to.
+     * @param action Action taking the game from the parent's state to the child's.
+     * @param state State reached after the action.
+     * @return Id of the new child.
+     */
+    public synchronized int addChild(int parent, Action<C> action, S state) {
+        Preconditions.checkNotNull(action);
+        Preconditions.checkNotNull(state);
+        stateCodec.encode(state, encodeBuffer);
+        return addChild(parent, action.getTimestepsTotal(), action.getCommand(), encodeBuffer, state.isFailed());
+    }
+
+    /**
+     * Add a new child below an existing node from already-flattened state values. It goes after any existing
+     * children.
+     *
+     * @param parent Id of the node to add the child to.
+     * @param actionDuration Timesteps of the action taking the game from the parent's state to the child's.
+     * @param command Command of that action.
+     * @param stateValues State values, as written by {@link StateCodec#encode(IState, float[])}.
+     * @param isFailed Whether the state is a failed one.
+     * @return Id of the new child.
+     */
+    public synchronized int addChild(int parent, int actionDuration, C command, float[] stateValues,
+                                     boolean isFailed) {
+        checkId(parent);
+        Preconditions.checkArgument(actionDuration >= 0, "Action duration cannot be negative.", actionDuration);
+        int child = addNode(parent, actionDuration, getCommandIndex(command), stateValues, isFailed);
+
+        Chunk parentChunk = chunk(parent);
+        int parentIdx = parent & CHUNK_MASK;
+        if (parentChunk.firstChild.get(parentIdx) == NO_NODE) {
+            parentChunk.firstChild.set(parentIdx, child);
+        } else {
+            int lastChild = parentChunk.lastChild[parentIdx];
+            chunk(lastChild).nextSibling.set(lastChild & CHUNK_MASK, child);
+        }
+        parentChunk.lastChild[parentIdx] = child;
+        parentChunk.childCount.incrementAndGet(parentIdx);
+        return child;
+    }
+
+    /**
+     * Write all the fields of a new node. The node is not yet linked to its parent. Must hold the store's monitor.
+     */
+    private int addNode(int parent, int actionDuration, byte command, float[] stateValues, boolean isFailed) {
+        Preconditions.checkArgument(stateValues.length >= stateSize, "State array is too small.",
+                stateValues.length);
+        int id = nodeCount;
+        if (id == Integer.MAX_VALUE)
+            throw new IllegalStateException("Tree store is full.");
+        if ((id >>> CHUNK_BITS) == chunks.length) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = new Chunk(stateSize, offHeapStates);
+            chunks = grown;
+        }
+        Chunk chunk = chunk(id);
+        int idx = id & CHUNK_MASK;
+
+        chunk.parent[idx] = parent;
+        chunk.depth[idx] = parent == NO_NODE ? 0 : getDepth(parent) + 1;
+        chunk.firstChild.set(idx, NO_NODE);
+        chunk.lastChild[idx] = NO_NODE;
+        chunk.nextSibling.set(idx, NO_NODE);
+        chunk.actionDuration[idx] = actionDuration;
+        chunk.command[idx] = command;
+        chunk.flags.set(idx, isFailed ? FLAG_FAILED : 0);
+
+        int offset = idx * stateSize;
+        if (chunk.states.hasArray()) {
+            System.arraycopy(stateValues, 0, chunk.states.array(), offset, stateSize);
+        } else {
+            for (int i = 0; i < stateSize; i++) {
+                chunk.states.put(offset + i, stateValues[i]);
+            }
+        }
+        nodeCount = id + 1; // Publishes the node.
+        return id;
+    }
+
+    private byte getCommandIndex(C command) {
+        Preconditions.checkNotNull(command);
+        Integer index = commandIndices.get(command);
+        if (index == null) {
+            if (commandDictionary.size() > 255)
+                throw new IllegalStateException("Tree store can hold at most 256 distinct commands.");
+            index = commandDictionary.size();
+            commandDictionary.add(command);
+            commandIndices.put(command, index);
+        }
+        return (byte) index.intValue();
+    }
+
+    /**
+     * Copy a whole tree of ordinary nodes into this store as a new root.
+     *
+     * @param root Root of the nodes to copy. It does not need to be the actual root of its tree.
+     * @return Id of the new root in this store.
+     */
+    public int importTree(NodeGameBase<?, C, S> root) {
+        int rootId = addRoot(root.getState());
+        mergeTree(root, rootId);
+        return rootId;
+    }
+
+    /**
+     * Write a tree of ordinary nodes back over an existing node in this store. Children are matched by action. Any
+     * which the store does not have yet are added. Values, visit counts and fully-explored status are taken from the
+     * ordinary nodes. Stored children which have no matching ordinary node are left alone.
+     *
+     * @param node Node corresponding to the stored node.
+     * @param id Id of the stored node.
+     */
+    public void mergeTree(NodeGameBase<?, C, S> node, int id) {
+        checkId(id);
+        ArrayDeque<NodeGameBase<?, C, S>> nodeStack = new ArrayDeque<>();
+        ArrayDeque<Integer> idStack = new ArrayDeque<>();
+        nodeStack.push(node);
+        idStack.push(id);
+
+        while (!nodeStack.isEmpty()) {
+            NodeGameBase<?, C, S> current = nodeStack.pop();
+            int currentId = idStack.pop();
+
+            restoreValue(currentId, current.getValue(), current.getUpdateCount());
+            if (current instanceof NodeGameExplorableBase && ((NodeGameExplorableBase<?, C, S>) current).isFullyExplored())
+                setFullyExplored(currentId);
+
+            for (NodeGameBase<?, C, S> child : current.getChildren()) {
+                Action<C> action = child.getAction();
+                int childId = findChild(currentId, action);
+                if (childId == NO_NODE)
+                    childId = addChild(currentId, action, child.getState());
+                nodeStack.push(child);
+                idStack.push(childId);
+            }
+        }
+    }
+
+    /**
+     * Make ordinary nodes for part of this store, so that the usual samplers can work on it. The stored ancestors of
+     * the node are made too, each linked only backwards to its parent, so the returned node has its real tree depth
+     * and action path. The ancestors have no untried actions, so they are never expanded. Samplers started from the
+     * returned node will not wander up into the ancestors, but workers replay the actions leading to it from the initial
+     * state as they would for any other node.
+     *
+     * @param id Id of the stored node which will become the root of the new nodes.
+     * @param actionGenerator Assigns untried actions to the new nodes, as it would during a normal search.
+     * @param maxDepth How many levels below the given node to include. 0 for just the node itself.
+     * @return A new node with the same state, value and visit count as the stored node, its ancestors above it, and
+     * descendants down to the given depth.
+     */
+    public NodeGameExplorable<C, S> materialize(int id, IActionGenerator<C> actionGenerator, int maxDepth) {
+        checkId(id);
+        int[] ancestry = new int[getDepth(id) + 1];
+        for (int i = ancestry.length - 1, ancestor = id; i >= 0; i--, ancestor = getParent(ancestor)) {
+            ancestry[i] = ancestor;
+        }
+
+        // Only the window gets actions to try. The ancestors are there for depth and replay, not to be expanded.
+        IActionGenerator<C> ancestorActionGenerator = new ActionGenerator_Null<>();
+        NodeGameExplorable<C, S> node = new NodeGameExplorable<>(getState(ancestry[0]),
+                ancestry.length == 1 ? actionGenerator : ancestorActionGenerator);
+        for (int i = 1; i < ancestry.length; i++) {
+            node.restoreValue(getValue(ancestry[i - 1]), getUpdateCount(ancestry[i - 1]));
+            node = node.addBackwardsLinkedChild(getAction(ancestry[i]), getState(ancestry[i]),
+                    i == ancestry.length - 1 ? actionGenerator : ancestorActionGenerator);
+        }
+        return materialize(node, id, maxDepth);
+    }
+
+    /**
+     * Make ordinary nodes of any type for part of this store, e.g. {@link NodeGameGraphics} for drawing. Children are
+     * added in the same order as in the store, with the root's {@link IActionGenerator}.
+     *
+     * @param root New root node, made with the state of the stored node (see {@link #getState(int)}). Its value and
+     *             visit count are overwritten with the stored ones. It must be at the same tree depth as the stored
+     *             node, e.g. a new root for the stored root.
+     * @param id Id of the stored node which corresponds to the root.
+     * @param maxDepth How many levels below the given node to include. 0 for just the node itself.
+     * @param <N> Type of node to make.
+     * @return The given root node, with descendants down to the given depth.
+     */
+    public <N extends NodeGameExplorableBase<N, C, S>> N materialize(N root, int id, int maxDepth) {
+        checkId(id);
+        Preconditions.checkArgument(maxDepth >= 0, "Materialized depth cannot be negative.", maxDepth);
+        Preconditions.checkArgument(root.getTreeDepth() == getDepth(id), "Node to materialize into is at depth %s, " +
+                "but the stored node is at depth %s.", root.getTreeDepth(), getDepth(id));
+        root.restoreValue(getValue(id), getUpdateCount(id));
+
+        ArrayDeque<N> nodeStack = new ArrayDeque<>();
+        ArrayDeque<Integer> idStack = new ArrayDeque<>();
+        nodeStack.push(root);
+        idStack.push(id);
+        int rootDepth = getDepth(id);
+
+        while (!nodeStack.isEmpty()) {
+            N current = nodeStack.pop();
+            int currentId = idStack.pop();
+            if (getDepth(currentId) - rootDepth >= maxDepth)
+                continue;
+            for (int child = getFirstChild(currentId); child != NO_NODE; child = getNextSibling(child)) {
+                N childNode = current.addDoublyLinkedChild(getAction(child), getState(child));
+                childNode.restoreValue(getValue(child), getUpdateCount(child));
+                nodeStack.push(childNode);
+                idStack.push(child);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Find the child of a node reached by a given action.
+     *
+     * @param id Id of the parent node.
+     * @param action Action to look for.
+     * @return Id of the matching child, or {@link #NO_NODE} if there is none.
+     */
+    public int findChild(int id, Action<C> action) {
+        Integer commandIndex = commandIndices.get(action.getCommand());
+        if (commandIndex == null)
+            return NO_NODE;
+        for (int child = getFirstChild(id); child != NO_NODE; child = getNextSibling(child)) {
+            Chunk chunk = chunk(child);
+            int idx = child & CHUNK_MASK;
+            if (chunk.actionDuration[idx] == action.getTimestepsTotal() && (chunk.command[idx] & 0xFF) == commandIndex)
+                return child;
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * Number of nodes in the store. Ids run from 0 to one less than this.
+     */
+    public int size() {
+        return nodeCount;
+    }
+
+    public int getParent(int id) {
+        checkId(id);
+        return chunk(id).parent[id & CHUNK_MASK];
+    }
+
+    public int getDepth(int id) {
+        checkId(id);
+        return chunk(id).depth[id & CHUNK_MASK];
+    }
+
+    public int getChildCount(int id) {
+        checkId(id);
+        return chunk(id).childCount.get(id & CHUNK_MASK);
+    }
+
+    /**
+     * Get the first child of a node. Others can be found with {@link #getNextSibling(int)}.
+     *
+     * @param id Id of the parent node.
+     * @return Id of the first child, or {@link #NO_NODE} if it has none.
+     */
+    public int getFirstChild(int id) {
+        checkId(id);
+        return chunk(id).firstChild.get(id & CHUNK_MASK);
+    }
+
+    /**
+     * Get the next child of the same parent.
+     *
+     * @param id Id of a child node.
+     * @return Id of the next child, or {@link #NO_NODE} if this was the last.
+     */
+    public int getNextSibling(int id) {
+        checkId(id);
+        return chunk(id).nextSibling.get(id & CHUNK_MASK);
+    }
+
+    /**
+     * Apply an operation to the ids of all children of a node, in the order they were added.
+     *
+     * @param id Id of the parent node.
+     * @param operation Operation to apply to each child id.
+     */
+    public void forEachChild(int id, IntConsumer operation) {
+        for (int child = getFirstChild(id); child != NO_NODE; child = getNextSibling(child)) {
+            operation.accept(child);
+        }
+    }
+
+    /**
+     * Get the action leading to a node. This is a new object each time.
+     *
+     * @param id Id of a node which is not a root.
+     * @return A new action with the stored duration and command.
+     */
+    public Action<C> getAction(int id) {
+        checkId(id);
+        Preconditions.checkArgument(getParent(id) != NO_NODE, "Root nodes have no action.", id);
+        return new Action<>(getActionDuration(id), getCommand(id));
+    }
+
+    public int getActionDuration(int id) {
+        checkId(id);
+        return chunk(id).actionDuration[id & CHUNK_MASK];
+    }
+
+    public C getCommand(int id) {
+        checkId(id);
+        return commandDictionary.get(chunk(id).command[id & CHUNK_MASK] & 0xFF);
+    }
+
+    /**
+     * Make a new state object from the values stored for a node.
+     *
+     * @param id Id of the node.
+     * @return A new state equal to the one the node was added with.
+     */
+    public S getState(int id) {
+        float[] values = new float[stateSize];
+        getState(id, values);
+        return stateCodec.decode(values, isFailed(id));
+    }
+
+    /**
+     * Copy the stored state values of a node without making a state object.
+     *
+     * @param id Id of the node.
+     * @param dest Array of at least {@link StateCodec#getStateSize()} to copy the values into.
+     */
+    public void getState(int id, float[] dest) {
+        checkId(id);
+        Chunk chunk = chunk(id);
+        int offset = (id & CHUNK_MASK) * stateSize;
+        if (chunk.states.hasArray()) {
+            System.arraycopy(chunk.states.array(), offset, dest, 0, stateSize);
+        } else {
+            for (int i = 0; i < stateSize; i++) {
+                dest[i] = chunk.states.get(offset + i);
+            }
+        }
+    }
+
+    public float getValue(int id) {
+        checkId(id);
+        return Float.intBitsToFloat((int) chunk(id).stats.get(id & CHUNK_MASK));
+    }
+
+    public int getUpdateCount(int id) {
+        checkId(id);
+        return (int) (chunk(id).stats.get(id & CHUNK_MASK) >>> 32);
+    }
+
+    /**
+     * Fold a new value into the running average value of a node and increment its visit count, like
+     * {@link value.updaters.ValueUpdater_Average}. The value and count always change together.
+     *
+     * @param id Id of the node.
+     * @param valueUpdate New value sample.
+     */
+    public void addValueSample(int id, float valueUpdate) {
+        checkId(id);
+        AtomicLongArray stats = chunk(id).stats;
+        int idx = id & CHUNK_MASK;
+        long current;
+        long updated;
+        do {
+            current = stats.get(idx);
+            int count = (int) (current >>> 32);
+            float value = Float.intBitsToFloat((int) current);
+            updated = packStats((value * count + valueUpdate) / (count + 1), count + 1);
+        } while (!stats.compareAndSet(idx, current, updated));
+    }
+
+    /**
+     * Replace the value of a node and increment its visit count, like {@link value.updaters.ValueUpdater_HardSet}.
+     *
+     * @param id Id of the node.
+     * @param value New value.
+     */
+    public void setValue(int id, float value) {
+        checkId(id);
+        AtomicLongArray stats = chunk(id).stats;
+        int idx = id & CHUNK_MASK;
+        long current;
+        do {
+            current = stats.get(idx);
+        } while (!stats.compareAndSet(idx, current, packStats(value, (int) (current >>> 32) + 1)));
+    }
+
+    /**
+     * Directly set both the value and the visit count of a node, e.g. when loading it from a file.
+     *
+     * @param id Id of the node.
+     * @param value Value to give the node.
+     * @param updateCount Number of updates that value represents.
+     */
+    public void restoreValue(int id, float value, int updateCount) {
+        checkId(id);
+        chunk(id).stats.set(id & CHUNK_MASK, packStats(value, updateCount));
+    }
+
+    /**
+     * Mark a node as having nothing left to explore below it.
+     *
+     * @param id Id of the node.
+     */
+    public void setFullyExplored(int id) {
+        setFlag(id, FLAG_FULLY_EXPLORED);
+    }
+
+    public boolean isFailed(int id) {
+        return hasFlag(id, FLAG_FAILED);
+    }
+
+    public boolean isFullyExplored(int id) {
+        return hasFlag(id, FLAG_FULLY_EXPLORED);
+    }
+
+    public boolean isLocked(int id) {
+        return hasFlag(id, FLAG_LOCKED);
+    }
+
+    /**
+     * Try to claim a node for expansion, so that no other worker expands from it at the same time.
+     *
+     * @param id Id of the node.
+     * @return True if the node was claimed. False if someone else already has it.
+     */
+    public boolean reserveExpansionRights(int id) {
+        return setFlag(id, FLAG_LOCKED);
+    }
+
+    /**
+     * Give up a claim made with {@link #reserveExpansionRights(int)}.
+     *
+     * @param id Id of the node.
+     */
+    public void releaseExpansionRights(int id) {
+        checkId(id);
+        AtomicIntegerArray flags = chunk(id).flags;
+        int idx = id & CHUNK_MASK;
+        int current;
+        do {
+            current = flags.get(idx);
+            if ((current & FLAG_LOCKED) == 0)
+                throw new IllegalStateException("Tried to release a node which was not locked.");
+        } while (!flags.compareAndSet(idx, current, current & ~FLAG_LOCKED));
+    }
+
+    public StateCodec<S> getStateCodec() {
+        return stateCodec;
+    }
+
+    /**
+     * Are states kept in direct buffers outside the heap?
+     */
+    public boolean hasOffHeapStates() {
+        return offHeapStates;
+    }
+
+    /**
+     * Approximate storage used by each node, not counting the partially-used last chunk.
+     *
+     * @return Bytes per node.
+     */
+    public int getBytesPerNode() {
+        return 7 * Integer.BYTES + Byte.BYTES + Long.BYTES + Integer.BYTES + stateSize * Float.BYTES;
+    }
+
+    /**
+     * Total storage allocated for nodes, including unused space at the end of the last chunk.
+     *
+     * @return Allocated bytes, on and off the heap.
+     */
+    public long getAllocatedBytes() {
+        return (long) chunks.length * CHUNK_SIZE * getBytesPerNode();
+    }
+
+    private boolean hasFlag(int id, int flag) {
+        checkId(id);
+        return (chunk(id).flags.get(id & CHUNK_MASK) & flag) != 0;
+    }
+
+    /**
+     * Set a flag on a node.
+     * @return False if it was already set.
+     */
+    private boolean setFlag(int id, int flag) {
+        checkId(id);
+        AtomicIntegerArray flags = chunk(id).flags;
+        int idx = id & CHUNK_MASK;
+        int current;
+        do {
+            current = flags.get(idx);
+            if ((current & flag) != 0)
+                return false;
+        } while (!flags.compareAndSet(idx, current, current | flag));
+        return true;
+    }
+
+    private static long packStats(float value, int updateCount) {
+        return ((long) updateCount << 32) | (Float.floatToRawIntBits(value) & 0xFFFFFFFFL);
+    }
+
+    private Chunk chunk(int id) {
+        return chunks[id >>> CHUNK_BITS];
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= nodeCount)
+            throw new IndexOutOfBoundsException("No node with id " + id + " in a store of " + nodeCount + " nodes.");
+    }
+
+    /**
+     * Storage for {@link #CHUNK_SIZE} nodes. Fields which can change after a node is published are atomic. The rest
+     * are written once before the node is linked into the tree.
+     */
+    private static final class Chunk {
+        final int[] parent = new int[CHUNK_SIZE];
+        final int[] depth = new int[CHUNK_SIZE];
+        final AtomicIntegerArray firstChild = new AtomicIntegerArray(CHUNK_SIZE);
+        final int[] lastChild = new int[CHUNK_SIZE]; // Only used while adding, under the store's monitor.
+        final AtomicIntegerArray nextSibling = new AtomicIntegerArray(CHUNK_SIZE);
+        final AtomicIntegerArray childCount = new AtomicIntegerArray(CHUNK_SIZE);
+        final int[] actionDuration = new int[CHUNK_SIZE];
+        final byte[] command = new byte[CHUNK_SIZE];
+        final AtomicLongArray stats = new AtomicLongArray(CHUNK_SIZE); // Update count in the high bits, value in the low.
+        final AtomicIntegerArray flags = new AtomicIntegerArray(CHUNK_SIZE);
+        final FloatBuffer states;
+
+        Chunk(int stateSize, boolean offHeapStates) {
+            states = offHeapStates ? ByteBuffer.allocateDirect(CHUNK_SIZE * stateSize * Float.BYTES)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer() : FloatBuffer.allocate(CHUNK_SIZE * stateSize);
+        }
+    }
+
+    /**
+     * Converts states to and from the flat arrays of floats kept in a {@link TreeStore}.
+     *
+     * @param <S> State type being converted.
+     */
+    public interface StateCodec<S extends IState> {
+
+        /**
+         * Number of floats stored for each state.
+         */
+        int getStateSize();
+
+        /**
+         * Write a state's values into an array.
+         *
+         * @param state State to flatten.
+         * @param dest Array of at least {@link #getStateSize()} to write into.
+         */
+        void encode(S state, float[] dest);
+
+        /**
+         * Rebuild a state from its values.
+         *
+         * @param values Values written by {@link #encode(IState, float[])}.
+         * @param isFailed Whether the state was a failed one.
+         * @return A new state.
+         */
+        S decode(float[] values, boolean isFailed);
+    }
+
+    /**
+     * Stores all {@link StateQWOP#STATE_SIZE} values of QWOP states, with absolute x coordinates.
+     */
+    public static final StateCodec<StateQWOP> QWOP_STATES = new StateCodec<StateQWOP>() {
+        @Override
+        public int getStateSize() {
+            return StateQWOP.STATE_SIZE;
+        }
+
+        @Override
+        public void encode(StateQWOP state, float[] dest) {
+            int idx = 0;
+            for (StateVariable6D sv : state.getAllStateVariables()) {
+                dest[idx++] = sv.getX();
+                dest[idx++] = sv.getY();
+                dest[idx++] = sv.getTh();
+                dest[idx++] = sv.getDx();
+                dest[idx++] = sv.getDy();
+                dest[idx++] = sv.getDth();
+            }
+        }
+
+        @Override
+        public StateQWOP decode(float[] values, boolean isFailed) {
+            return new StateQWOP(values, isFailed);
+        }
+    };
+}
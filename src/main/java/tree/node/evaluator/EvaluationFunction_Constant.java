@@ -3,6 +3,7 @@ package tree.node.evaluator;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import game.action.Command;
+import game.qwop.StateQWOPView;
 import game.state.IState;
 import tree.node.NodeGameBase;
 
@@ -34,6 +35,16 @@ public class EvaluationFunction_Constant<C extends Command<?>, S extends IState>
         return constantValue;
     }
 
+    @Override
+    public boolean supportsStateView() {
+        return true;
+    }
+
+    @Override
+    public float getValue(StateQWOPView state) {
+        return constantValue;
+    }
+
     @Override
     public String getValueString(NodeGameBase<?, C, S> nodeToEvaluate) {
         return String.valueOf(constantValue);
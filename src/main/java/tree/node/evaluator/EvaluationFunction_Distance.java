@@ -1,6 +1,7 @@
 package tree.node.evaluator;
 
 import game.action.Command;
+import game.qwop.StateQWOPView;
 import game.state.IState;
 import tree.node.NodeGameBase;
 
@@ -20,6 +21,16 @@ public class EvaluationFunction_Distance<C extends Command<?>, S extends IState>
         return Objects.requireNonNull(nodeToEvaluate.getState()).getCenterX() * scalingFactor;
     }
 
+    @Override
+    public boolean supportsStateView() {
+        return true;
+    }
+
+    @Override
+    public float getValue(StateQWOPView state) {
+        return state.getCenterX() * scalingFactor;
+    }
+
     @Override
     public String getValueString(NodeGameBase<?, C, S> nodeToEvaluate) {
         return String.valueOf(getValue(nodeToEvaluate));
@@ -3,7 +3,9 @@ package tree.node.evaluator;
 import game.action.Command;
 import game.qwop.IStateQWOP.ObjectName;
 import game.qwop.StateQWOP;
+import game.qwop.StateQWOPView;
 import game.state.IState;
+import game.state.StateVariable6D.StateName;
 import tree.node.NodeGameBase;
 
 import java.util.Objects;
@@ -29,6 +31,16 @@ public class EvaluationFunction_HandTunedOnState<C extends Command<?>, S extends
         return value;
     }
 
+    @Override
+    public boolean supportsStateView() {
+        return true;
+    }
+
+    @Override
+    public float getValue(StateQWOPView state) {
+        return state.get(ObjectName.BODY, StateName.TH) + state.getCenterX() + state.get(ObjectName.BODY, StateName.DX);
+    }
+
     @Override
     public String getValueString(NodeGameBase<?, C, S> nodeToEvaluate) {
         Objects.requireNonNull(nodeToEvaluate.getState());
@@ -1,6 +1,7 @@
 package tree.node.evaluator;
 
 import game.action.Command;
+import game.qwop.StateQWOPView;
 import game.state.IState;
 import tree.node.NodeGameBase;
 
@@ -18,6 +19,16 @@ public class EvaluationFunction_Velocity<C extends Command<?>, S extends IState>
         return nodeToEvaluate.getState().getCenterDx() * scalingFactor;
     }
 
+    @Override
+    public boolean supportsStateView() {
+        return true;
+    }
+
+    @Override
+    public float getValue(StateQWOPView state) {
+        return state.getCenterDx() * scalingFactor;
+    }
+
     @Override
     public String getValueString(NodeGameBase<?, C, S> nodeToEvaluate) {
         return String.valueOf(getValue(nodeToEvaluate));
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import game.action.Command;
+import game.qwop.StateQWOPView;
 import game.state.IState;
 import tree.node.NodeGameBase;
 
@@ -45,6 +46,31 @@ public interface IEvaluationFunction<C extends Command<?>, S extends IState> ext
     @JsonIgnore
     String getValueString(NodeGameBase<?, C, S> nodeToEvaluate);
 
+    /**
+     * Whether this function can evaluate a bare QWOP runner state with {@link #getValue(StateQWOPView)}. Functions
+     * which look at anything besides the node's state, e.g. its depth in the tree, cannot.
+     *
+     * @return True if {@link #getValue(StateQWOPView)} is supported.
+     */
+    @JsonIgnore
+    default boolean supportsStateView() {
+        return false;
+    }
+
+    /**
+     * Determine the value of a QWOP runner state held in a reusable {@link StateQWOPView}. Gives the same value as
+     * {@link #getValue(NodeGameBase)} would for a node with that state, but needs no node or
+     * {@link game.qwop.StateQWOP}, so rollouts can score every timestep without allocating.
+     *
+     * @param state Runner state to evaluate.
+     * @return Scalar value of the state, with higher being "better".
+     * @throws UnsupportedOperationException If {@link #supportsStateView()} is false.
+     */
+    @JsonIgnore
+    default float getValue(StateQWOPView state) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot evaluate a state view.");
+    }
+
     /**
      * Create a copy of this IEvaluationFunction.
      *
@@ -69,6 +69,14 @@ public interface ISampler<C extends Command<?>, S extends IState> extends AutoCl
      **/
     boolean rolloutPolicyGuard(NodeGameExplorableBase<?, C, S> currentNode);
 
+    /**
+     * Give up the expansion rights that {@link #treePolicy(NodeGameExplorableBase)} reserved, once the worker is done
+     * with everything after it. Samplers which reserve nodes some other way must override this to match.
+     **/
+    default void releaseExpansionRights(NodeGameExplorableBase<?, C, S> expansionNode) {
+        expansionNode.releaseExpansionRights();
+    }
+
     /**
      * Copy this sampler and its settings. Each worker needs an individual copy.
      **/
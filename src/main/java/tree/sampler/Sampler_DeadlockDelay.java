@@ -3,6 +3,8 @@ package tree.sampler;
 import game.action.Command;
 import game.state.IState;
 
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Workers can end up fighting over tree areas to expand. If a worker can't find anything to do, wait for an
  * increasing length of time. When things open up again, reset the delay back to zero.
@@ -12,9 +14,16 @@ public abstract class Sampler_DeadlockDelay<C extends Command<?>, S extends ISta
     private int deadlockDelayCurrent = 0;
     private int deadlockMax = 5000; // No delays larger than 5 seconds.
 
+    /**
+     * Number of delays, and total time slept in them, across all workers.
+     */
+    private static final LongAdder totalDelays = new LongAdder();
+    private static final LongAdder totalDelayMillis = new LongAdder();
 
     void deadlockDelay() {
         try {
+            totalDelays.increment();
+            totalDelayMillis.add(deadlockDelayCurrent);
             Thread.sleep(deadlockDelayCurrent);
             deadlockDelayCurrent = Math.min(deadlockDelayCurrent * 2 + 1, deadlockMax);
             if (deadlockDelayCurrent == deadlockMax)
@@ -26,4 +35,28 @@ public abstract class Sampler_DeadlockDelay<C extends Command<?>, S extends ISta
     void resetDeadlockDelay() {
         deadlockDelayCurrent = 0;
     }
+
+    /**
+     * Get the number of times any worker has waited because it couldn't find anything to do.
+     * @return Total deadlock delays since the last reset.
+     */
+    public static long getTotalDeadlockDelays() {
+        return totalDelays.sum();
+    }
+
+    /**
+     * Get the total time slept by all workers in deadlock delays.
+     * @return Sum of all delays since the last reset, in milliseconds.
+     */
+    public static long getTotalDeadlockDelayMillis() {
+        return totalDelayMillis.sum();
+    }
+
+    /**
+     * Zero the deadlock delay totals.
+     */
+    public static void resetDeadlockDelayTotals() {
+        totalDelays.reset();
+        totalDelayMillis.reset();
+    }
 }
@@ -1,5 +1,6 @@
 package tree.sampler;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import game.IGameInternal;
@@ -15,10 +16,17 @@ import tree.node.evaluator.IEvaluationFunction;
 import tree.sampler.rollout.IRolloutPolicy;
 import value.updaters.IValueUpdater;
 
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Implements upper confidence bound for trees (UCBT, UCT, UCB, depending on who you ask).
  * Key feature is that it lets the user define a value, c, that weights exploration vs exploitation.
  *
+ * With {@link #lockFree} set, many workers can share one tree without the usual locking of subtrees. Each worker
+ * only reserves the node it expands from, and marks a virtual loss on every node on the path to it until its result
+ * is backed up. The virtual loss makes those nodes look worse to the other workers in the meantime, so they spread
+ * out to other parts of the tree instead of colliding and waiting.
+ *
  * @author Matt
  */
 public class Sampler_UCB<C extends Command<?>, S extends IState> extends Sampler_DeadlockDelay<C, S> implements AutoCloseable {
@@ -30,13 +38,40 @@ public class Sampler_UCB<C extends Command<?>, S extends IState> extends Sampler
 
     public final float explorationRandomFactor;
 
+    /**
+     * Use lock-free parallel search with virtual loss, rather than locking subtrees which other workers are in. All
+     * workers on a tree must agree on this.
+     */
+    public final boolean lockFree;
+
+    /**
+     * Only used when {@link #lockFree}. Each worker partway through an iteration below a node counts as an extra
+     * visit to it which scored this much less than the node's current value. Even at zero, the extra visits shrink
+     * the exploration bonus.
+     */
+    public final float virtualLoss;
+
+    /**
+     * Lock-free tree policy attempts in a row which end in a collision before the worker starts sleeping between
+     * attempts with {@link #deadlockDelay()}. Before that, it only yields.
+     */
+    private static final int lockFreeRetriesBeforeDelay = 100;
+
+    /**
+     * Completed tree policy calls and collisions along the way, across all workers. A collision is any attempt to
+     * reach an expandable node which had to start over or back up because other workers held the nodes it wanted.
+     */
+    private static final LongAdder totalTreePolicyCalls = new LongAdder();
+    private static final LongAdder totalTreePolicyCollisions = new LongAdder();
+
     /**
      * Evaluation function used to score single nodes after rollouts are done.
      */
     private final IEvaluationFunction<C, S> evaluationFunction;
 
     /**
-     * Policy used to evaluateActionDistribution the score of a tree expansion Node by doing rollout(s).
+     * Policy used to evaluateActionDistribution the score of a tree expansion Node by doing rollout(s). Wrap it in a
+     * {@link tree.sampler.rollout.RolloutPolicy_Parallel} to do several rollouts at once for each expansion.
      */
     private final IRolloutPolicy<C, S> rolloutPolicy;
 
@@ -68,20 +103,37 @@ public class Sampler_UCB<C extends Command<?>, S extends IState> extends Sampler
      * Must provide an evaluationFunction to get a numeric score for nodes after a rollout.
      * Also specify a rollout policy to use.
      */
+    @JsonCreator
     public Sampler_UCB(
             @JsonProperty("evaluationFunction") IEvaluationFunction<C, S> evaluationFunction,
             @JsonProperty("rolloutPolicy") IRolloutPolicy<C, S> rolloutPolicy,
             @JsonProperty("valueUpdater") IValueUpdater<C, S> valueUpdater,
             @JsonProperty("explorationConstant") float explorationConstant,
-            @JsonProperty("explorationRandomFactor") float explorationRandomFactor) {
+            @JsonProperty("explorationRandomFactor") float explorationRandomFactor,
+            @JsonProperty("lockFree") boolean lockFree,
+            @JsonProperty("virtualLoss") float virtualLoss) {
         this.evaluationFunction = evaluationFunction;
         this.rolloutPolicy = rolloutPolicy;
         this.valueUpdater = valueUpdater;
         this.explorationConstant = explorationConstant;
         this.explorationRandomFactor = explorationRandomFactor;
+        this.lockFree = lockFree;
+        this.virtualLoss = virtualLoss;
         c = explorationRandomFactor * Random.nextFloat() + explorationConstant;
     }
 
+    /**
+     * Sampler which locks subtrees being explored by other workers. See
+     * {@link #Sampler_UCB(IEvaluationFunction, IRolloutPolicy, IValueUpdater, float, float, boolean, float)}.
+     */
+    public Sampler_UCB(IEvaluationFunction<C, S> evaluationFunction,
+                       IRolloutPolicy<C, S> rolloutPolicy,
+                       IValueUpdater<C, S> valueUpdater,
+                       float explorationConstant,
+                       float explorationRandomFactor) {
+        this(evaluationFunction, rolloutPolicy, valueUpdater, explorationConstant, explorationRandomFactor, false, 0f);
+    }
+
     /**
      * Propagate the score and visit count back up the tree.
      */
@@ -92,14 +144,30 @@ public class Sampler_UCB<C extends Command<?>, S extends IState> extends Sampler
 
     @Override
     public NodeGameExplorableBase<?, C, S> treePolicy(NodeGameExplorableBase<?, C, S> startNode) {
+        NodeGameExplorableBase<?, C, S> expansionNode = lockFree ? treePolicyLockFree(startNode) :
+                treePolicyLocking(startNode, startNode);
+        totalTreePolicyCalls.increment();
+        return expansionNode;
+    }
+
+    /**
+     * Tree policy which reserves whole subtrees while they are being expanded.
+     * @param searchRoot Node the worker started its tree policy from. Treated as the root of the search, even when
+     *                   it has ancestors (e.g. a window materialized from a {@link tree.node.TreeStore}). The policy
+     *                   never backs up above it.
+     * @param startNode Node to continue the tree policy from.
+     */
+    private NodeGameExplorableBase<?, C, S> treePolicyLocking(NodeGameExplorableBase<?, C, S> searchRoot,
+                                                              NodeGameExplorableBase<?, C, S> startNode) {
 
-        if (startNode.getTreeDepth() == 0 && (startNode.getChildCount() == 0 || startNode.isLocked())) {
+        if (startNode == searchRoot && (startNode.getChildCount() == 0 || startNode.isLocked())) {
             if (startNode.reserveExpansionRights()) {
                 resetDeadlockDelay();
                 return startNode;
             } else {
+                totalTreePolicyCollisions.increment();
                 deadlockDelay();
-                return treePolicy(startNode);
+                return treePolicyLocking(searchRoot, startNode);
             }
         }
 
@@ -107,15 +175,20 @@ public class Sampler_UCB<C extends Command<?>, S extends IState> extends Sampler
             if (startNode.reserveExpansionRights()) { // We immediately expand
                 // if there's an untried command.
                 assert startNode.isLocked();
+                if (startNode.getUntriedActionCount() == 0) {
+                    // Another worker used up the last untried action between the check and the reservation.
+                    startNode.releaseExpansionRights();
+                    return treePolicyLocking(searchRoot, startNode);
+                }
                 resetDeadlockDelay();
                 return startNode;
             } else {
-                if (startNode.getTreeDepth() > 0) {
-                    return treePolicy(startNode.getParent()); // TODO this could cause it to back up beyond the point
-                    // we want to expand. Just keep that in mind.
+                totalTreePolicyCollisions.increment();
+                if (startNode != searchRoot) {
+                    return treePolicyLocking(searchRoot, startNode.getParent());
                 } else {
                     deadlockDelay();
-                    return treePolicy(startNode);
+                    return treePolicyLocking(searchRoot, startNode);
                 }
             }
         }
@@ -137,13 +210,77 @@ public class Sampler_UCB<C extends Command<?>, S extends IState> extends Sampler
         }
 
         if (bestNodeSoFar == null) { // This worker can't get a lock on any of the children it wants. Starting back
+            totalTreePolicyCollisions.increment();
         	deadlockDelay();
             bestNodeSoFar = startNode;
         } else {
             resetDeadlockDelay();
         }
 
-        return treePolicy(bestNodeSoFar); // Recurse until we reach a node with an unchecked command.
+        return treePolicyLocking(searchRoot, bestNodeSoFar); // Recurse until we reach a node with an unchecked command.
+    }
+
+    /**
+     * Tree policy for {@link #lockFree} search. Descends by UCB with virtual loss until reaching a node with untried
+     * actions, and reserves only that node. On a collision, starts over from startNode. Virtual loss is added to the
+     * path once a node is reserved, and removed in {@link #releaseExpansionRights(NodeGameExplorableBase)}.
+     */
+    private NodeGameExplorableBase<?, C, S> treePolicyLockFree(NodeGameExplorableBase<?, C, S> startNode) {
+        int failedAttempts = 0;
+        while (true) {
+            NodeGameExplorableBase<?, C, S> currentNode = startNode;
+            while (currentNode != null) {
+                if (currentNode.getUntriedActionCount() > 0) {
+                    if (!currentNode.reserveExpansionRightsLockFree()) {
+                        break; // Another worker is expanding from here.
+                    }
+                    if (currentNode.getUntriedActionCount() == 0) {
+                        // Its last untried action was used up between the check and the reservation. Keep descending.
+                        currentNode.releaseExpansionRightsLockFree();
+                        continue;
+                    }
+                    currentNode.recurseUpTreeInclusive(n -> n.addVirtualLoss());
+                    resetDeadlockDelay();
+                    return currentNode;
+                }
+                currentNode = selectChildWithVirtualLoss(currentNode);
+            }
+
+            totalTreePolicyCollisions.increment();
+            if (++failedAttempts < lockFreeRetriesBeforeDelay) {
+                Thread.yield();
+            } else {
+                deadlockDelay();
+            }
+        }
+    }
+
+    /**
+     * Pick the child with the best UCB score, counting workers still partway through iterations below each child
+     * as virtual visits with a reduced value.
+     * @return The best child, or null if all children are fully explored, reserved, or not yet visited.
+     */
+    private NodeGameExplorableBase<?, C, S> selectChildWithVirtualLoss(NodeGameExplorableBase<?, C, S> parent) {
+        double logParentVisits = Math.log(parent.getUpdateCount() + parent.getVirtualLossCount());
+        double bestScoreSoFar = -Double.MAX_VALUE;
+        NodeGameExplorableBase<?, C, S> bestNodeSoFar = null;
+
+        for (NodeGameExplorableBase<?, C, S> child : parent.getChildren()) {
+            int visits = child.getUpdateCount();
+            if (child.isFullyExplored() || child.isLocked() || visits == 0) {
+                continue;
+            }
+            int virtualVisits = child.getVirtualLossCount();
+            int totalVisits = visits + virtualVisits;
+            float value = child.getValue() - virtualLoss * virtualVisits / totalVisits;
+            float val = (value + c * (float) Math.sqrt(2. * logParentVisits / (double) totalVisits));
+            assert !Float.isNaN(val);
+            if (val > bestScoreSoFar) {
+                bestNodeSoFar = child;
+                bestScoreSoFar = val;
+            }
+        }
+        return bestNodeSoFar;
     }
 
     @Override
@@ -198,11 +335,24 @@ public class Sampler_UCB<C extends Command<?>, S extends IState> extends Sampler
         return rolloutPolicyDone;
     }
 
+    /**
+     * In {@link #lockFree} mode, also removes the virtual loss added on the way to the node.
+     */
+    @Override
+    public void releaseExpansionRights(NodeGameExplorableBase<?, C, S> expansionNode) {
+        if (lockFree) {
+            expansionNode.recurseUpTreeInclusive(n -> n.removeVirtualLoss());
+            expansionNode.releaseExpansionRightsLockFree();
+        } else {
+            expansionNode.releaseExpansionRights();
+        }
+    }
+
     @JsonIgnore
     @Override
     public Sampler_UCB<C, S> getCopy() {
         return new Sampler_UCB<>(evaluationFunction.getCopy(), rolloutPolicy.getCopy(),
-                valueUpdater.getCopy(), explorationConstant, explorationRandomFactor);
+                valueUpdater.getCopy(), explorationConstant, explorationRandomFactor, lockFree, virtualLoss);
     }
 
     public IEvaluationFunction<C, S> getEvaluationFunction() {
@@ -222,6 +372,31 @@ public class Sampler_UCB<C extends Command<?>, S extends IState> extends Sampler
         return c;
     }
 
+    /**
+     * Get the number of completed tree policy calls by all UCB samplers.
+     * @return Total tree policy calls since the last reset.
+     */
+    public static long getTotalTreePolicyCalls() {
+        return totalTreePolicyCalls.sum();
+    }
+
+    /**
+     * Get the number of times any UCB sampler's tree policy was blocked by another worker and had to back up, start
+     * over, or wait.
+     * @return Total tree policy collisions since the last reset.
+     */
+    public static long getTotalTreePolicyCollisions() {
+        return totalTreePolicyCollisions.sum();
+    }
+
+    /**
+     * Zero the tree policy call and collision totals.
+     */
+    public static void resetContentionTotals() {
+        totalTreePolicyCalls.reset();
+        totalTreePolicyCollisions.reset();
+    }
+
     @Override
     public void close() {
         evaluationFunction.close();
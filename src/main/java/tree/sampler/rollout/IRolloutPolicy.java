@@ -19,7 +19,8 @@ import tree.node.NodeGameExplorableBase;
         @JsonSubTypes.Type(value = RolloutPolicy_EndScore.class, name = "end_score"),
         @JsonSubTypes.Type(value = RolloutPolicy_DecayingHorizon.class, name = "decaying_horizon"),
         @JsonSubTypes.Type(value = RolloutPolicy_Window.class, name = "window"),
-        @JsonSubTypes.Type(value = RolloutPolicy_EntireRun.class, name = "entire_run")
+        @JsonSubTypes.Type(value = RolloutPolicy_EntireRun.class, name = "entire_run"),
+        @JsonSubTypes.Type(value = RolloutPolicy_Parallel.class, name = "parallel")
 
 })
 public interface IRolloutPolicy<C extends Command<?>, S extends IState> extends AutoCloseable {
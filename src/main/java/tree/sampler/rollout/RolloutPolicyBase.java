@@ -9,7 +9,9 @@ import game.IGameInternal;
 import game.IGameSerializable;
 import game.action.*;
 import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
 import game.qwop.QWOPConstants;
+import game.qwop.StateQWOPView;
 import game.state.IState;
 import org.jetbrains.annotations.NotNull;
 import tree.node.NodeGameBase;
@@ -17,8 +19,6 @@ import tree.node.NodeGameExplorable;
 import tree.node.NodeGameExplorableBase;
 import tree.node.evaluator.IEvaluationFunction;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.stream.IntStream;
 
 /**
@@ -33,12 +33,16 @@ public abstract class RolloutPolicyBase<C extends Command<?>, S extends IState>
 
     public final IActionGenerator<C> rolloutActionGenerator;
 
-    private ActionQueue<C> actionQueue = new ActionQueue<>();
-
-    private final List<Action<C>> actionSequence = new ArrayList<>(); // Reused local list.
+    private ActionCursor<C> actionCursor = new ActionCursor<>();
 
     public final int maxTimesteps;
 
+    /**
+     * Runner states before and after each timestep, refilled every timestep when scoring a QWOP rollout from views.
+     */
+    private StateQWOPView viewBefore = new StateQWOPView();
+    private StateQWOPView viewAfter = new StateQWOPView();
+
     @JsonProperty
     public boolean useSerializedState = false;
 
@@ -60,12 +64,11 @@ public abstract class RolloutPolicyBase<C extends Command<?>, S extends IState>
                        @NotNull IGameInternal<C, S> game) {
         // Reset the game and command queue.
         game.resetGame();
-        actionQueue.clearAll();
-        targetNode.getSequence(actionSequence);
-        actionQueue.addSequence(actionSequence);
+        actionCursor.clearAll();
+        actionCursor.addPath(targetNode.getActionPath(), 0);
 
-        while (!actionQueue.isEmpty()) {
-            game.step(actionQueue.pollCommand());
+        while (!actionCursor.isEmpty()) {
+            game.step(actionCursor.pollCommand());
         }
     }
 
@@ -79,7 +82,7 @@ public abstract class RolloutPolicyBase<C extends Command<?>, S extends IState>
                              @NotNull IGameInternal<C, S> game) {
         // Reset the game.
         game.resetGame();
-        actionQueue.clearAll();
+        actionCursor.clearAll();
         game.setState(target.getState());
     }
 
@@ -118,16 +121,31 @@ public abstract class RolloutPolicyBase<C extends Command<?>, S extends IState>
             Action<C> childAction = useSerializedState ? getRolloutController().policy(rolloutNode, (IGameSerializable<C, S>) game) :
                     getRolloutController().policy(rolloutNode);
 
-            actionQueue.addAction(childAction);
+            actionCursor.addAction(childAction);
 
             NodeGameBase<?, C, S> intermediateNodeBefore = rolloutNode;
-            while (!actionQueue.isEmpty() && !game.isFailed() && timestepCounter < maxTimesteps) {
-                game.step(actionQueue.pollCommand());
-                NodeGameBase<?, C, S> intermediateNodeAfter =
-                        intermediateNodeBefore.addBackwardsLinkedChild(childAction,
-                        game.getCurrentState());
-                totalScore += accumulateScore(timestepCounter, intermediateNodeBefore, intermediateNodeAfter);
-                intermediateNodeBefore = intermediateNodeAfter;
+            boolean scoreEachTimestep = scoresEachTimestep();
+            // QWOP states can be scored straight from the game, without making a state and node every timestep.
+            boolean scoreFromViews = scoreEachTimestep && game instanceof GameQWOP
+                    && evaluationFunction.supportsStateView();
+            if (scoreFromViews) {
+                viewBefore.capture((GameQWOP) game);
+            }
+            while (!actionCursor.isEmpty() && !game.isFailed() && timestepCounter < maxTimesteps) {
+                game.step(actionCursor.pollCommand());
+                if (scoreFromViews) {
+                    viewAfter.capture((GameQWOP) game);
+                    totalScore += accumulateScore(timestepCounter, viewBefore, viewAfter);
+                    StateQWOPView previous = viewBefore;
+                    viewBefore = viewAfter;
+                    viewAfter = previous;
+                } else if (scoreEachTimestep) { // Otherwise, don't bother making a state and node every timestep.
+                    NodeGameBase<?, C, S> intermediateNodeAfter =
+                            intermediateNodeBefore.addBackwardsLinkedChild(childAction,
+                            game.getCurrentState());
+                    totalScore += accumulateScore(timestepCounter, intermediateNodeBefore, intermediateNodeAfter);
+                    intermediateNodeBefore = intermediateNodeAfter;
+                }
                 timestepCounter++;
             }
 
@@ -158,6 +176,30 @@ public abstract class RolloutPolicyBase<C extends Command<?>, S extends IState>
     abstract float accumulateScore(int timestepSinceRolloutStart, NodeGameBase<?, C, S> before,
                                    NodeGameBase<?, C, S> after);
 
+    /**
+     * Same as {@link #accumulateScore(int, NodeGameBase, NodeGameBase)}, but from views of the runner before and after
+     * the timestep. Used instead when the game is a {@link GameQWOP} and the evaluation function
+     * {@link IEvaluationFunction#supportsStateView() supports views}. Policies which score each timestep must give
+     * the same score from either.
+     * @param timestepSinceRolloutStart Number of simulated timesteps in the rollout so far.
+     * @param before Runner at the previous timestep. Only valid until this returns.
+     * @param after Runner at this timestep. Only valid until this returns.
+     * @return A score component having to do with a single timestep.
+     */
+    float accumulateScore(int timestepSinceRolloutStart, StateQWOPView before, StateQWOPView after) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not score from state views.");
+    }
+
+    /**
+     * Whether {@link #accumulateScore(int, NodeGameBase, NodeGameBase)} contributes anything. If not, the rollout
+     * skips capturing a state and making a node for every intermediate timestep, which is most of the allocation in
+     * a long rollout.
+     * @return True if accumulateScore should be called every timestep. False if it always returns zero anyway.
+     */
+    boolean scoresEachTimestep() {
+        return true;
+    }
+
     /**
      * Component of the score that comes from the final node in the rollout. For all rollouts that inherit from
      * {@link RolloutPolicyBase}, this final node is either fallen, at the finish line, or has reached max specified
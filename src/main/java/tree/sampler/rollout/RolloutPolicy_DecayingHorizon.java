@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import controllers.IController;
 import game.action.Command;
 import game.action.IActionGenerator;
+import game.qwop.StateQWOPView;
 import game.state.IState;
 import tree.node.NodeGameBase;
 import tree.node.NodeGameExplorableBase;
@@ -47,6 +48,14 @@ public class RolloutPolicy_DecayingHorizon<C extends Command<?>, S extends IStat
         return multiplier * (getEvaluationFunction().getValue(after) - getEvaluationFunction().getValue(before));
     }
 
+    @Override
+    float accumulateScore(int timestepSinceRolloutStart, StateQWOPView before, StateQWOPView after) {
+        float multiplier = getKernelMultiplier(
+                timestepSinceRolloutStart / (float) (maxTimesteps - 1));
+
+        return multiplier * (getEvaluationFunction().getValue(after) - getEvaluationFunction().getValue(before));
+    }
+
     float endScore(NodeGameExplorableBase<?, C, S> endNode) {
         return 0; // evaluationFunction.getValue(endNode);
     }
@@ -52,6 +52,11 @@ public class RolloutPolicy_DeltaScore<C extends Command<?>, S extends IState> ex
         return 0;
     }
 
+    @Override
+    boolean scoresEachTimestep() {
+        return false;
+    }
+
     @Override
     float endScore(NodeGameExplorableBase<?, C, S> endNode) {
         return getEvaluationFunction().getValue(endNode);
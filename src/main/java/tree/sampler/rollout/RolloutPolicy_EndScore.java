@@ -46,6 +46,11 @@ public class RolloutPolicy_EndScore<C extends Command<?>, S extends IState> exte
         return 0;
     }
 
+    @Override
+    boolean scoresEachTimestep() {
+        return false;
+    }
+
     @Override
     float endScore(NodeGameExplorableBase<?, C, S> endNode) {
         return getEvaluationFunction().getValue(endNode);
@@ -43,6 +43,11 @@ public class RolloutPolicy_EntireRun<C extends Command<?>, S extends IState> ext
         return 0;
     }
 
+    @Override
+    boolean scoresEachTimestep() {
+        return false;
+    }
+
     @Override
     float endScore(NodeGameExplorableBase<?, C, S> endNode) {
         return (endNode.getState().getCenterX()) * distanceMultiplier;
@@ -0,0 +1,243 @@
+package tree.sampler.rollout;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import game.IGameInternal;
+import game.IGameSerializable;
+import game.action.ActionCursor;
+import game.action.Command;
+import game.state.IState;
+import org.jetbrains.annotations.NotNull;
+import tree.node.NodeGameExplorableBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This is a meta-rollout policy. Each time it is asked for a rollout, it does several independent rollouts from the
+ * same node at once and reduces their scores into one. Only one score gets backed up per tree policy iteration, but
+ * it has less variance than a single rollout's, e.g. when the rollout controller is random.
+ *
+ * The worker's thread does one rollout on its own game. The others are run on a pool shared by all workers, each on
+ * a game of its own which is kept between rollouts. Before they start, the worker's thread copies its game's state
+ * into each of them with {@link IGameSerializable#copyStateFrom(IGameSerializable)} if the game supports it.
+ * Otherwise, they replay the actions to the node. When there are fewer workers than cores, the extra rollouts use
+ * the idle cores.
+ *
+ * @author matt
+ */
+public class RolloutPolicy_Parallel<C extends Command<?>, S extends IState> implements IRolloutPolicy<C, S> {
+
+    @JsonProperty
+    private final IRolloutPolicy<C, S> individualRollout;
+
+    /**
+     * Number of rollouts done for each node.
+     */
+    public final int rolloutCount;
+
+    public enum Reduction {
+        MEAN, MAX, MIN, QUANTILE
+    }
+
+    /**
+     * How the scores of the rollouts are combined.
+     */
+    public final Reduction reduction;
+
+    /**
+     * Only used with {@link Reduction#QUANTILE}. Fraction of the rollouts which should score at or below the
+     * reported score, between 0 (worst) and 1 (best).
+     */
+    public final float quantile;
+
+    /**
+     * Rollouts done on the pool, each with its own copy of the individual rollout policy and its own game.
+     */
+    private final List<Helper<C, S>> helpers = new ArrayList<>();
+
+    private final float[] scores;
+
+    /**
+     * Shared by all parallel rollout policies. Made when first needed.
+     */
+    private static ForkJoinPool rolloutPool;
+
+    /**
+     * Make a new meta-rollout which does several rollouts at once.
+     *
+     * @param individualRollout Rollout policy used for each of the rollouts. Copied for all but the first.
+     * @param rolloutCount Number of rollouts done for each node. Must be at least 1.
+     * @param reduction How the rollout scores are combined into one.
+     * @param quantile Which quantile of the scores to use for {@link Reduction#QUANTILE}. Must be between 0 and 1.
+     */
+    @JsonCreator
+    public RolloutPolicy_Parallel(@JsonProperty("individualRollout") IRolloutPolicy<C, S> individualRollout,
+                                  @JsonProperty("rolloutCount") int rolloutCount,
+                                  @JsonProperty("reduction") Reduction reduction,
+                                  @JsonProperty("quantile") float quantile) {
+        Preconditions.checkNotNull(individualRollout);
+        Preconditions.checkArgument(rolloutCount >= 1, "Must do at least one rollout.", rolloutCount);
+        Preconditions.checkArgument(quantile >= 0 && quantile <= 1, "Quantile must be between 0 and 1.", quantile);
+        this.individualRollout = individualRollout;
+        this.rolloutCount = rolloutCount;
+        this.reduction = reduction == null ? Reduction.MEAN : reduction;
+        this.quantile = quantile;
+        scores = new float[rolloutCount];
+    }
+
+    @Override
+    public float rollout(@NotNull NodeGameExplorableBase<?, C, S> startNode, IGameInternal<C, S> game) {
+        Preconditions.checkNotNull(game);
+        if (rolloutCount == 1) {
+            return individualRollout.rollout(startNode, game);
+        }
+        while (helpers.size() < rolloutCount - 1) {
+            helpers.add(new Helper<>(individualRollout.getCopy(), game.getCopy()));
+        }
+
+        // Must be done before the worker's own rollout moves its game along.
+        boolean copyState = game instanceof IGameSerializable;
+        for (Helper<C, S> helper : helpers) {
+            helper.startGameFrom(startNode, game, copyState);
+        }
+
+        ForkJoinPool pool = getRolloutPool();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(helpers.size());
+        for (int i = 0; i < helpers.size(); i++) {
+            Helper<C, S> helper = helpers.get(i);
+            int scoreIndex = i + 1;
+            tasks.add(pool.submit(() -> {
+                scores[scoreIndex] = helper.rollout(startNode);
+            }));
+        }
+        try {
+            scores[0] = individualRollout.rollout(startNode, game);
+        } finally {
+            // The helpers must be done with the scores and their games before the next rollout either way.
+            for (ForkJoinTask<?> task : tasks) {
+                task.quietlyJoin();
+            }
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join(); // Passes on any exception from the helper's rollout.
+        }
+        return reduce(scores);
+    }
+
+    /**
+     * Combine rollout scores according to {@link #reduction}.
+     */
+    float reduce(float[] values) {
+        switch (reduction) {
+            case MEAN:
+                float sum = 0;
+                for (float value : values) {
+                    sum += value;
+                }
+                return sum / values.length;
+            case MAX:
+                float max = -Float.MAX_VALUE;
+                for (float value : values) {
+                    max = Math.max(max, value);
+                }
+                return max;
+            case MIN:
+                float min = Float.MAX_VALUE;
+                for (float value : values) {
+                    min = Math.min(min, value);
+                }
+                return min;
+            case QUANTILE:
+                float[] sorted = values.clone();
+                Arrays.sort(sorted);
+                float position = quantile * (sorted.length - 1);
+                int below = (int) position;
+                if (below == sorted.length - 1)
+                    return sorted[below];
+                return sorted[below] + (position - below) * (sorted[below + 1] - sorted[below]);
+            default:
+                throw new IllegalArgumentException("Unknown reduction specified: " + reduction.name());
+        }
+    }
+
+    private static synchronized ForkJoinPool getRolloutPool() {
+        if (rolloutPool == null) {
+            rolloutPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return rolloutPool;
+    }
+
+    @JsonIgnore
+    @Override
+    public RolloutPolicy_Parallel<C, S> getCopy() {
+        return new RolloutPolicy_Parallel<>(individualRollout.getCopy(), rolloutCount, reduction, quantile);
+    }
+
+    public IRolloutPolicy<C, S> getIndividualRollout() {
+        return individualRollout;
+    }
+
+    @Override
+    public void close() {
+        individualRollout.close();
+        for (Helper<C, S> helper : helpers) {
+            helper.rolloutPolicy.close();
+        }
+    }
+
+    /**
+     * One of the extra rollouts. Only used by one pool thread at a time.
+     */
+    private static class Helper<C extends Command<?>, S extends IState> {
+
+        final IRolloutPolicy<C, S> rolloutPolicy;
+
+        /**
+         * Game this helper does its rollouts on. Copied into, or replayed to the start node, each time.
+         */
+        private IGameInternal<C, S> game;
+
+        /**
+         * Whether the game still has to be replayed to the start node, because its state was not copied.
+         */
+        private boolean replayToStart;
+
+        private final ActionCursor<C> actionCursor = new ActionCursor<>();
+
+        Helper(IRolloutPolicy<C, S> rolloutPolicy, IGameInternal<C, S> game) {
+            this.rolloutPolicy = rolloutPolicy;
+            this.game = game;
+        }
+
+        /**
+         * Get ready to roll out from the start node. Called from the worker's thread, while its game is still at the
+         * start node.
+         */
+        @SuppressWarnings("unchecked")
+        void startGameFrom(NodeGameExplorableBase<?, C, S> startNode, IGameInternal<C, S> workerGame,
+                           boolean copyState) {
+            replayToStart = !copyState;
+            if (copyState) {
+                game = ((IGameSerializable<C, S>) game).copyStateFrom((IGameSerializable<C, S>) workerGame);
+            }
+        }
+
+        float rollout(NodeGameExplorableBase<?, C, S> startNode) {
+            if (replayToStart) {
+                game.resetGame();
+                actionCursor.clearAll();
+                actionCursor.addPath(startNode.getActionPath(), 0);
+                while (!actionCursor.isEmpty()) {
+                    game.step(actionCursor.pollCommand());
+                }
+            }
+            return rolloutPolicy.rollout(startNode, game);
+        }
+    }
+}
@@ -5,7 +5,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.primitives.Floats;
 import game.IGameInternal;
 import game.action.Action;
-import game.action.ActionQueue;
+import game.action.ActionCursor;
 import game.action.Command;
 import game.state.IState;
 import org.jetbrains.annotations.NotNull;
@@ -28,8 +28,7 @@ public class RolloutPolicy_Window<C extends Command<?>, S extends IState> implem
     @JsonProperty
     private final IRolloutPolicy<C, S> individualRollout;
 
-    private ActionQueue<C> actionQueue = new ActionQueue<>();
-    private final List<Action<C>> actionSequence = new ArrayList<>(); // Reused local list.
+    private ActionCursor<C> actionCursor = new ActionCursor<>();
 
     public enum Criteria {
         WORST, BEST, AVERAGE,
@@ -57,15 +56,14 @@ public class RolloutPolicy_Window<C extends Command<?>, S extends IState> implem
 
         float[] windowScores = new float[windowActions.size()];
         for (int i = 0; i < windowActions.size(); i++) {
-            actionQueue.clearAll();
+            actionCursor.clearAll();
             if (startNode.getTreeDepth() > 1) {
-                startNode.getParent().getSequence(actionSequence);
-                actionQueue.addSequence(actionSequence);
+                actionCursor.addPath(startNode.getParent().getActionPath(), 0);
             }
-            actionQueue.addAction(windowActions.get(i));
+            actionCursor.addAction(windowActions.get(i));
             game.resetGame();
-            while (!actionQueue.isEmpty()) {
-                game.step(actionQueue.pollCommand());
+            while (!actionCursor.isEmpty()) {
+                game.step(actionCursor.pollCommand());
             }
 
             NodeGameExplorableBase<?, C, S> windowNode =
@@ -1,8 +1,13 @@
 package tree.stage;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import game.action.Command;
 import game.state.IState;
+import tree.TreeWorker;
 import tree.node.NodeGameBase;
+import tree.node.NodeGameExplorableBase;
+import tree.node.TreeCompactor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -11,14 +16,44 @@ import java.util.List;
  * Tree search which continues sampling until the root node is fully-explored. If a broad set of game.command is provided,
  * this will probably never occur. This is mostly useful for testing.
  *
+ * With a {@link TreeCompactor}, the tree is compacted while the workers run whenever the heap gets too full, so the
+ * search can keep going in a fixed heap.
+ *
  * @author matt
  */
 public class TreeStage_SearchForever<C extends Command<?>, S extends IState> extends TreeStage<C, S> {
 
+    /**
+     * Throws out parts of the tree when memory runs low. Null means the tree grows without bound.
+     */
+    @JsonProperty
+    public final TreeCompactor<C, S> compactor;
+
     /**
      * Tree stage which goes forever or until the root node is fully-explored.
      */
-    public TreeStage_SearchForever() {}
+    public TreeStage_SearchForever() {
+        this(null);
+    }
+
+    /**
+     * Tree stage which goes forever or until the root node is fully-explored.
+     *
+     * @param compactor Checked each time the termination conditions are, to keep the tree within the heap. May be
+     *                  null.
+     */
+    @JsonCreator
+    public TreeStage_SearchForever(@JsonProperty("compactor") TreeCompactor<C, S> compactor) {
+        this.compactor = compactor;
+    }
+
+    @Override
+    public void initialize(List<TreeWorker<C, S>> treeWorkers, NodeGameExplorableBase<?, C, S> stageRoot) {
+        if (compactor != null && !treeWorkers.isEmpty()) {
+            compactor.setTranspositionTable(treeWorkers.get(0).getTranspositionTable()); // Shared by all of them.
+        }
+        super.initialize(treeWorkers, stageRoot);
+    }
 
     @Override
     public List<NodeGameBase<?, C, S>> getResults() {
@@ -29,6 +64,9 @@ public class TreeStage_SearchForever<C extends Command<?>, S extends IState> ext
 
     @Override
     public boolean checkTerminationConditions() {
+        if (compactor != null) {
+            compactor.compactIfNeeded(getRootNode());
+        }
         return getRootNode().isFullyExplored(); // Only termination condition is a completely explored tree. Unlikely when the
         // selection pool is good.
     }
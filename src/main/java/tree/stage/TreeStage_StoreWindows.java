@@ -0,0 +1,188 @@
+package tree.stage;
+
+import com.google.common.base.Preconditions;
+import game.action.Command;
+import game.action.IActionGenerator;
+import game.state.IState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tree.TreeWorker;
+import tree.node.NodeGameBase;
+import tree.node.NodeGameExplorable;
+import tree.node.NodeGameExplorableBase;
+import tree.node.TreeStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searches a tree kept in a {@link TreeStore}, one window at a time. Each window is the subtree below a stored node,
+ * made into ordinary nodes with {@link TreeStore#materialize(int, IActionGenerator, int)}. Another stage searches
+ * it with the usual samplers, and the results are written back with {@link TreeStore#mergeTree(NodeGameBase, int)}.
+ * Only the current window and its ancestors exist as objects, so the rest of the tree takes just
+ * {@link TreeStore#getBytesPerNode()} bytes per node.
+ *
+ * Each window starts a fixed number of levels above the end of the most-visited line of the stored tree, so the
+ * search keeps pushing that line deeper. Whole subtrees are materialized, so a window never has stored descendants
+ * which the workers do not know about.
+ *
+ * @param <C> Command type used by the game.
+ * @param <S> State type used by the game.
+ *
+ * @author matt
+ */
+public class TreeStage_StoreWindows<C extends Command<?>, S extends IState> extends TreeStage<C, S> {
+
+    /**
+     * Store holding the whole tree between windows.
+     */
+    private final TreeStore<C, S> store;
+
+    /**
+     * Assigns untried actions to the nodes of each window.
+     */
+    private final IActionGenerator<C> actionGenerator;
+
+    /**
+     * Stage used to search each window. It is initialized again for every window.
+     */
+    private final TreeStage<C, S> windowStage;
+
+    /**
+     * Number of windows to search.
+     */
+    public final int windowCount;
+
+    /**
+     * How many levels above the end of the most-visited stored line each window starts.
+     */
+    public final int windowDepth;
+
+    /**
+     * Id of the stored root for this stage's tree.
+     */
+    private int rootId = TreeStore.NO_NODE;
+
+    private final List<NodeGameBase<?, C, S>> results = new ArrayList<>();
+
+    private boolean isFinished = false;
+
+    private static final Logger logger = LogManager.getLogger(TreeStage_StoreWindows.class);
+
+    /**
+     * Stage which searches a stored tree one window at a time.
+     *
+     * @param store Store to keep the tree in. The stage root is added to it as a new root.
+     * @param actionGenerator Assigns untried actions to the nodes of each window.
+     * @param windowStage Stage used to search each window, e.g. a {@link TreeStage_MaxDepth} which goes a little
+     *                    deeper than windowDepth.
+     * @param windowCount Number of windows to search.
+     * @param windowDepth How many levels above the end of the most-visited stored line each window starts.
+     */
+    public TreeStage_StoreWindows(TreeStore<C, S> store, IActionGenerator<C> actionGenerator,
+                                  TreeStage<C, S> windowStage, int windowCount, int windowDepth) {
+        Preconditions.checkArgument(windowCount > 0, "Must search at least one window.", windowCount);
+        Preconditions.checkArgument(windowDepth >= 0, "Window depth cannot be negative.", windowDepth);
+        this.store = store;
+        this.actionGenerator = actionGenerator;
+        this.windowStage = windowStage;
+        this.windowCount = windowCount;
+        this.windowDepth = windowDepth;
+    }
+
+    @Override
+    public void initialize(List<TreeWorker<C, S>> treeWorkers, NodeGameExplorableBase<?, C, S> stageRoot) {
+        Preconditions.checkArgument(stageRoot.getTreeDepth() == 0, "Stored trees must start from a real root, but " +
+                "the given stage root is at depth %s.", stageRoot.getTreeDepth());
+        isFinished = false;
+        results.clear();
+        rootId = store.importTree(stageRoot);
+
+        List<TreeWorker<C, S>> workers = new ArrayList<>(treeWorkers);
+        for (int i = 0; i < windowCount && !store.isFullyExplored(rootId); i++) {
+            int windowId = pickWindow();
+            NodeGameExplorable<C, S> window = store.materialize(windowId, actionGenerator, Integer.MAX_VALUE);
+            logger.info("Searching window " + (i + 1) + " of " + windowCount + " at depth " + window.getTreeDepth() +
+                    ".");
+
+            windowStage.initialize(workers, window);
+            List<NodeGameBase<?, C, S>> windowResults = windowStage.getResults();
+            if (windowResults != null)
+                results.addAll(windowResults);
+            awaitWorkers(workers, window);
+            store.mergeTree(window, windowId);
+
+            // Workers are finished at the end of a stage. Fresh ones search the next window.
+            List<TreeWorker<C, S>> finishedWorkers = workers;
+            workers = new ArrayList<>();
+            for (TreeWorker<C, S> worker : finishedWorkers) {
+                workers.add(worker.getCopy());
+            }
+        }
+        isFinished = true;
+    }
+
+    /**
+     * Workers are only flagged to stop at the end of a stage. Wait until they have finished their last games, so that
+     * nothing is still being added to a window while it is written back. Workers never finish once their root is fully
+     * explored, but they cannot add anything to it either.
+     */
+    private void awaitWorkers(List<TreeWorker<C, S>> workers, NodeGameExplorableBase<?, C, S> window) {
+        for (TreeWorker<C, S> worker : workers) {
+            while (worker.isRunning() && !window.isFullyExplored()) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Follow the most-visited children which are not fully explored down from the stored root, and back up
+     * {@link #windowDepth} levels from where that line ends.
+     *
+     * @return Id of the stored node to search below next.
+     */
+    private int pickWindow() {
+        int id = rootId;
+        while (true) {
+            int bestChild = TreeStore.NO_NODE;
+            for (int child = store.getFirstChild(id); child != TreeStore.NO_NODE; child = store.getNextSibling(child)) {
+                if (!store.isFullyExplored(child) && (bestChild == TreeStore.NO_NODE ||
+                        store.getUpdateCount(child) > store.getUpdateCount(bestChild))) {
+                    bestChild = child;
+                }
+            }
+            if (bestChild == TreeStore.NO_NODE)
+                break;
+            id = bestChild;
+        }
+        for (int i = 0; i < windowDepth && id != rootId; i++) {
+            id = store.getParent(id);
+        }
+        return id;
+    }
+
+    /**
+     * Get the id of the stored root of the tree searched by the most recent {@link #initialize(List,
+     * NodeGameExplorableBase)}. The whole searched tree can be drawn or saved from it, e.g. with
+     * {@link TreeStore#materialize(NodeGameExplorableBase, int, int)}.
+     *
+     * @return Id of the stored root, or {@link TreeStore#NO_NODE} if the stage has not run yet.
+     */
+    public int getStoredRootId() {
+        return rootId;
+    }
+
+    @Override
+    public List<NodeGameBase<?, C, S>> getResults() {
+        return results;
+    }
+
+    @Override
+    public boolean checkTerminationConditions() {
+        return isFinished;
+    }
+}
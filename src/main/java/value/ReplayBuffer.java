@@ -0,0 +1,393 @@
+package value;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import tflowtools.PreparedRunner;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Fixed-capacity buffer of value function training examples, for training on the same data over and over. Each
+ * example is stored already transformed, as a network input and a target output, along with a little about the node
+ * it came from. Everything lives in flat primitive arrays, so adding and sampling examples do not allocate, and
+ * batches are copied into reusable direct buffers which can go straight into a TensorFlow tensor.
+ * <p>
+ * When full, new examples replace the oldest ones. Batches can be drawn uniformly or in proportion to each example's
+ * priority. Priorities come either from the training error of each example, updated after it is trained on, or from
+ * the number of times its node was visited during the search.
+ * <p>
+ * Not thread-safe. Fill and sample it from one thread, e.g. a trainer's.
+ *
+ * @author matt
+ * @see ValueFunction_TensorFlow#update(ReplayBuffer, int, boolean)
+ */
+public class ReplayBuffer {
+
+    /**
+     * What an example's sampling priority is based on.
+     */
+    public enum Prioritization {
+        /**
+         * Priority is the size of the error between the network's prediction and the target, the last time the
+         * example was trained on. New examples get the highest priority so far, so that each is trained on soon.
+         */
+        TD_ERROR,
+        /**
+         * Priority is the number of times the example's node had been visited when it was added. Frequently visited
+         * nodes have more reliable values.
+         */
+        VISIT_COUNT
+    }
+
+    public final int capacity;
+    public final int inputSize;
+    public final int targetSize;
+
+    public final Prioritization prioritization;
+
+    /**
+     * Exponent applied to each raw priority. 0 is the same as uniform sampling. 1 samples in direct proportion to the
+     * raw priority.
+     */
+    public final float priorityExponent;
+
+    /**
+     * Added to each error before the exponent, so that every example can still be sampled.
+     */
+    private static final float minimumError = 1e-3f;
+
+    /**
+     * Longest array the JVM reliably allows.
+     */
+    private static final int maxArrayLength = Integer.MAX_VALUE - 8;
+
+    /**
+     * Example inputs, one after another.
+     */
+    private final float[] inputs;
+
+    /**
+     * Example targets, one after another.
+     */
+    private final float[] targets;
+
+    private final int[] treeDepths;
+    private final int[] visitCounts;
+
+    /**
+     * Sum tree of the priorities. Leaves start at {@link #leafOffset}, and each other entry is the sum of its two
+     * children, so the root is the sum of all priorities. Lets prioritized sampling and priority changes happen in
+     * log(capacity) time.
+     */
+    private final double[] priorityTree;
+
+    private final int leafOffset;
+
+    /**
+     * Highest priority given so far. New examples get this one when prioritizing by error.
+     */
+    private float maxPriority = 1f;
+
+    /**
+     * Number of examples added since the last clear, including ones since replaced.
+     */
+    private long addCount;
+
+    /**
+     * Reusable batch of examples copied out of a {@link ReplayBuffer}. The inputs and targets are direct, native-order
+     * buffers of the whole batch, ready to wrap in tensors. Only the first {@link #size()} examples are valid.
+     */
+    public static final class Batch {
+
+        public final int maxSize;
+
+        /**
+         * Inputs of the batch, one example after another. Position is 0 and limit is the end of the last example.
+         */
+        public final FloatBuffer inputs;
+
+        /**
+         * Targets of the batch, one example after another. Position is 0 and limit is the end of the last example.
+         */
+        public final FloatBuffer targets;
+
+        /**
+         * Where in the replay buffer each example came from, for updating priorities after training.
+         */
+        final int[] slots;
+
+        private final int inputSize;
+        private final int targetSize;
+        private int size;
+
+        Batch(int maxSize, int inputSize, int targetSize) {
+            this.maxSize = maxSize;
+            this.inputSize = inputSize;
+            this.targetSize = targetSize;
+            inputs = PreparedRunner.makeDirectBuffer(maxSize * inputSize);
+            targets = PreparedRunner.makeDirectBuffer(maxSize * targetSize);
+            slots = new int[maxSize];
+        }
+
+        /**
+         * Get the number of examples in the batch.
+         *
+         * @return Number of examples filled in by the last sample.
+         */
+        public int size() {
+            return size;
+        }
+
+        void clear() {
+            inputs.clear();
+            targets.clear();
+            size = 0;
+        }
+
+        /**
+         * Add an example straight to the end of the batch, without it going through a replay buffer. Between
+         * {@link #clear()} and {@link #flip()}. Such examples have no slot, so their priorities cannot be updated.
+         */
+        void add(float[] input, float[] target) {
+            Preconditions.checkState(size < maxSize, "Batch is already full.");
+            inputs.put(input, 0, inputSize);
+            targets.put(target, 0, targetSize);
+            slots[size++] = -1;
+        }
+
+        void flip() {
+            inputs.flip();
+            targets.flip();
+        }
+    }
+
+    /**
+     * Make a new, empty replay buffer.
+     *
+     * @param capacity Maximum number of examples held. Beyond this, the oldest ones are replaced.
+     * @param inputSize Length of each example's input.
+     * @param targetSize Length of each example's target output.
+     * @param prioritization What to base each example's sampling priority on.
+     * @param priorityExponent Exponent applied to each raw priority. Usually between 0 and 1.
+     */
+    public ReplayBuffer(int capacity, int inputSize, int targetSize, @NotNull Prioritization prioritization,
+                        float priorityExponent) {
+        Preconditions.checkArgument(capacity > 0, "Replay buffer capacity must be positive.", capacity);
+        Preconditions.checkArgument(inputSize > 0 && targetSize > 0, "Input and target sizes must be positive.",
+                inputSize, targetSize);
+        Preconditions.checkArgument(priorityExponent >= 0, "Priority exponent cannot be negative.", priorityExponent);
+        // Capacity times example length, and the priority tree's leaves doubled, must all fit in an array.
+        Preconditions.checkArgument((long) capacity * Math.max(inputSize, targetSize) <= maxArrayLength
+                        && capacity <= 1 << 29, "Replay buffer is too large to hold in arrays.", capacity, inputSize,
+                targetSize);
+        this.capacity = capacity;
+        this.inputSize = inputSize;
+        this.targetSize = targetSize;
+        this.prioritization = prioritization;
+        this.priorityExponent = priorityExponent;
+
+        inputs = new float[capacity * inputSize];
+        targets = new float[capacity * targetSize];
+        treeDepths = new int[capacity];
+        visitCounts = new int[capacity];
+
+        int leaves = Integer.highestOneBit(capacity);
+        if (leaves < capacity) {
+            leaves <<= 1;
+        }
+        leafOffset = leaves;
+        priorityTree = new double[2 * leaves];
+    }
+
+    /**
+     * Make a batch which examples can be sampled into. Reuse it for every sample.
+     *
+     * @param maxSize Largest number of examples to sample into it at once.
+     * @return A new, empty batch.
+     */
+    public Batch makeBatch(int maxSize) {
+        Preconditions.checkArgument(maxSize > 0, "Batch size must be positive.", maxSize);
+        return new Batch(maxSize, inputSize, targetSize);
+    }
+
+    /**
+     * Add an example, replacing the oldest one if full. The arrays are copied.
+     *
+     * @param input Transformed network input.
+     * @param target Network output to train towards.
+     * @param treeDepth Depth of the node the example came from.
+     * @param visitCount Number of times that node had been visited.
+     * @return Index of the slot the example went into.
+     */
+    public int add(@NotNull float[] input, @NotNull float[] target, int treeDepth, int visitCount) {
+        Preconditions.checkArgument(input.length == inputSize, "Input size does not match.", inputSize, input.length);
+        Preconditions.checkArgument(target.length == targetSize, "Target size does not match.", targetSize,
+                target.length);
+        int slot = (int) (addCount++ % capacity);
+        System.arraycopy(input, 0, inputs, slot * inputSize, inputSize);
+        System.arraycopy(target, 0, targets, slot * targetSize, targetSize);
+        treeDepths[slot] = treeDepth;
+        visitCounts[slot] = visitCount;
+        if (prioritization == Prioritization.VISIT_COUNT) {
+            setPriority(slot, (float) Math.pow(Math.max(visitCount, 1), priorityExponent));
+        } else {
+            setPriority(slot, maxPriority);
+        }
+        return slot;
+    }
+
+    /**
+     * Sample examples with replacement, each equally likely.
+     *
+     * @param batch Batch to fill. Its previous contents are replaced.
+     * @param batchSize Number of examples to draw. No more than the batch's maximum size.
+     * @param random Source of randomness.
+     */
+    public void sampleUniform(@NotNull Batch batch, int batchSize, @NotNull Random random) {
+        checkSampleable(batch, batchSize);
+        int size = size();
+        batch.clear();
+        for (int i = 0; i < batchSize; i++) {
+            copyToBatch(random.nextInt(size), batch);
+        }
+        batch.flip();
+    }
+
+    /**
+     * Sample examples with replacement, each with probability in proportion to its priority.
+     *
+     * @param batch Batch to fill. Its previous contents are replaced.
+     * @param batchSize Number of examples to draw. No more than the batch's maximum size.
+     * @param random Source of randomness.
+     */
+    public void samplePrioritized(@NotNull Batch batch, int batchSize, @NotNull Random random) {
+        checkSampleable(batch, batchSize);
+        double total = priorityTree[1];
+        batch.clear();
+        for (int i = 0; i < batchSize; i++) {
+            copyToBatch(findSlot(random.nextDouble() * total), batch);
+        }
+        batch.flip();
+    }
+
+    /**
+     * Copy examples in the order they are stored, e.g. to go through all of them once.
+     *
+     * @param batch Batch to fill. Its previous contents are replaced.
+     * @param firstSlot Slot of the first example to copy.
+     * @return Number of examples copied. Less than the batch's maximum size when the end of the buffer is reached.
+     */
+    public int copyInOrder(@NotNull Batch batch, int firstSlot) {
+        checkBatch(batch);
+        Preconditions.checkElementIndex(firstSlot, size(), "Slot to start copying from");
+        int count = Math.min(batch.maxSize, size() - firstSlot);
+        batch.clear();
+        for (int i = 0; i < count; i++) {
+            copyToBatch(firstSlot + i, batch);
+        }
+        batch.flip();
+        return count;
+    }
+
+    /**
+     * Update the priorities of the examples in a batch from their errors after training. Does nothing unless
+     * prioritizing by error. Examples which were replaced since the batch was sampled are updated anyway.
+     *
+     * @param batch Batch which was just trained on.
+     * @param errors Difference between the prediction and the target for each example in the batch.
+     */
+    public void updatePriorities(@NotNull Batch batch, @NotNull float[] errors) {
+        Preconditions.checkArgument(errors.length >= batch.size, "Need an error for each example in the batch.",
+                batch.size, errors.length);
+        if (prioritization != Prioritization.TD_ERROR) {
+            return;
+        }
+        for (int i = 0; i < batch.size; i++) {
+            float priority = (float) Math.pow(Math.abs(errors[i]) + minimumError, priorityExponent);
+            setPriority(batch.slots[i], priority);
+            maxPriority = Math.max(maxPriority, priority);
+        }
+    }
+
+    /**
+     * Remove all examples.
+     */
+    public void clear() {
+        addCount = 0;
+        maxPriority = 1f;
+        Arrays.fill(priorityTree, 0);
+    }
+
+    /**
+     * Get the number of examples which may be sampled.
+     *
+     * @return Number of examples held.
+     */
+    public int size() {
+        return (int) Math.min(addCount, capacity);
+    }
+
+    public boolean isEmpty() {
+        return addCount == 0;
+    }
+
+    public float getPriority(int slot) {
+        Preconditions.checkElementIndex(slot, size());
+        return (float) priorityTree[leafOffset + slot];
+    }
+
+    public int getTreeDepth(int slot) {
+        Preconditions.checkElementIndex(slot, size());
+        return treeDepths[slot];
+    }
+
+    public int getVisitCount(int slot) {
+        Preconditions.checkElementIndex(slot, size());
+        return visitCounts[slot];
+    }
+
+    private void setPriority(int slot, float priority) {
+        int idx = leafOffset + slot;
+        priorityTree[idx] = priority;
+        for (idx >>= 1; idx > 0; idx >>= 1) {
+            priorityTree[idx] = priorityTree[2 * idx] + priorityTree[2 * idx + 1];
+        }
+    }
+
+    /**
+     * Walk down the sum tree to the slot whose priority range contains the given value.
+     */
+    private int findSlot(double value) {
+        int idx = 1;
+        while (idx < leafOffset) {
+            int left = 2 * idx;
+            if (value < priorityTree[left] || priorityTree[left + 1] == 0) {
+                idx = left;
+            } else {
+                value -= priorityTree[left];
+                idx = left + 1;
+            }
+        }
+        return Math.min(idx - leafOffset, size() - 1); // Only off the end through rounding.
+    }
+
+    private void copyToBatch(int slot, Batch batch) {
+        batch.inputs.put(inputs, slot * inputSize, inputSize);
+        batch.targets.put(targets, slot * targetSize, targetSize);
+        batch.slots[batch.size++] = slot;
+    }
+
+    private void checkBatch(Batch batch) {
+        Preconditions.checkArgument(batch.inputSize == inputSize && batch.targetSize == targetSize, "Batch was made " +
+                "for examples of a different size.");
+    }
+
+    private void checkSampleable(Batch batch, int batchSize) {
+        checkBatch(batch);
+        Preconditions.checkArgument(batchSize > 0 && batchSize <= batch.maxSize, "Batch size must be positive and " +
+                "fit in the batch.", batchSize, batch.maxSize);
+        Preconditions.checkState(!isEmpty(), "Cannot sample from an empty replay buffer.");
+    }
+}
@@ -0,0 +1,355 @@
+package value;
+
+import com.google.common.base.Preconditions;
+import game.action.Command;
+import game.state.IState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import tree.node.NodeGameBase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Trains a value function on its own thread while the tree search keeps going. Workers hand over nodes as they are
+ * added and valued (see {@link tree.TreeWorker#setValueTrainer(ValueFunctionTrainer)}). These go into a fixed-size
+ * replay buffer which keeps the most recent nodes. Once enough new nodes have come in, an update samples the buffer
+ * uniformly and trains the value function on the samples, using their values at that time. Nothing is trained while
+ * no new nodes arrive, so the rate of updates is bounded by the rate of the search.
+ *
+ * A {@link ValueFunction_TensorFlow} is trained from a {@link ReplayBuffer} instead. Each node is transformed into a
+ * training example once, as it is taken in, with its value at that time. Updates then only cost the training
+ * itself. After each update, the new
+ * weights are published to every registered {@link ValueFunction_HotSwap}, e.g. the ones in the workers' rollout
+ * controllers.
+ *
+ * Handing over a node never blocks. If the trainer falls behind, nodes which do not fit in the hand-over queue are
+ * dropped and counted.
+ *
+ * @param <C> Command type used by the game.
+ * @param <S> State type used by the game.
+ *
+ * @author matt
+ */
+public class ValueFunctionTrainer<C extends Command<?>, S extends IState> implements AutoCloseable {
+
+    /**
+     * Gets trained weights from the value function being trained into others.
+     */
+    @FunctionalInterface
+    public interface WeightPublisher<C extends Command<?>, S extends IState> {
+
+        /**
+         * Save the weights of the trained value function. Called on the training thread after each update.
+         *
+         * @param trainee Value function which was just trained.
+         * @param publishIndex Number of times weights have been published before.
+         * @return Loads the saved weights into whichever value function it is given.
+         * @throws IOException If the weights could not be saved.
+         */
+        Consumer<IValueFunction<C, S>> save(IValueFunction<C, S> trainee, int publishIndex) throws IOException;
+    }
+
+    /**
+     * Value function being trained. Only touched by the training thread once started.
+     */
+    private final IValueFunction<C, S> trainee;
+
+    private final WeightPublisher<C, S> publisher;
+
+    /**
+     * Number of samples drawn from the replay buffer for each update.
+     */
+    public final int samplesPerUpdate;
+
+    /**
+     * Number of new nodes which must come in between updates.
+     */
+    public final int newNodesPerUpdate;
+
+    /**
+     * Nodes handed over by the workers, but not yet moved into the replay buffer.
+     */
+    private final ArrayBlockingQueue<NodeGameBase<?, C, S>> incoming;
+
+    /**
+     * Ring of the most recent nodes. Only touched by the training thread. Null when training from
+     * {@link #replayExamples}.
+     */
+    private final List<NodeGameBase<?, C, S>> replay;
+
+    /**
+     * Training examples of the most recent nodes, when the trainee is a {@link ValueFunction_TensorFlow}. Only touched
+     * by the training thread. Null otherwise.
+     */
+    private final ReplayBuffer replayExamples;
+
+    private final int replayCapacity;
+
+    private long replayWrites;
+
+    private final List<ValueFunction_HotSwap<C, S>> targets = new CopyOnWriteArrayList<>();
+
+    /**
+     * Held while weights are saved and loaded into the targets, and while copies of the trainee are made, so that a
+     * copy never loads weights which are only partly saved.
+     */
+    private final Object publishLock = new Object();
+
+    private final Random random = new Random();
+
+    private final LongAdder nodesOffered = new LongAdder();
+    private final LongAdder nodesDropped = new LongAdder();
+    private volatile int updateCount;
+
+    private volatile boolean running;
+
+    private Thread trainingThread;
+
+    private static final Logger logger = LogManager.getLogger(ValueFunctionTrainer.class);
+
+    /**
+     * Make a new background trainer. Call {@link #start()} to begin training.
+     *
+     * @param trainee Value function to train. Only the training thread should update it once started.
+     * @param publisher Saves the trained weights after each update, and loads them into the hot-swapped value
+     *                  functions.
+     * @param replayCapacity Number of the most recent nodes to sample training data from.
+     * @param samplesPerUpdate Number of nodes drawn from the replay buffer for each update. Training waits until the
+     *                         buffer has at least this many, or is full.
+     * @param newNodesPerUpdate Number of nodes which must be handed over between one update and the next, or the
+     *                          replay capacity if that is smaller.
+     */
+    public ValueFunctionTrainer(@NotNull IValueFunction<C, S> trainee, @NotNull WeightPublisher<C, S> publisher,
+                                int replayCapacity, int samplesPerUpdate, int newNodesPerUpdate) {
+        Preconditions.checkArgument(replayCapacity > 0, "Replay buffer capacity must be positive.", replayCapacity);
+        Preconditions.checkArgument(samplesPerUpdate > 0, "Samples per update must be positive.", samplesPerUpdate);
+        Preconditions.checkArgument(newNodesPerUpdate > 0, "New nodes per update must be positive.",
+                newNodesPerUpdate);
+        this.trainee = trainee;
+        this.publisher = publisher;
+        this.samplesPerUpdate = samplesPerUpdate;
+        this.newNodesPerUpdate = newNodesPerUpdate;
+        this.replayCapacity = replayCapacity;
+        if (trainee instanceof ValueFunction_TensorFlow) {
+            replay = null;
+            replayExamples = ((ValueFunction_TensorFlow<C, S>) trainee).makeReplayBuffer(replayCapacity,
+                    ReplayBuffer.Prioritization.TD_ERROR, 0f);
+        } else {
+            replay = new ArrayList<>(replayCapacity);
+            replayExamples = null;
+        }
+        incoming = new ArrayBlockingQueue<>(replayCapacity);
+    }
+
+    /**
+     * Make a new background trainer which waits for as many new nodes as it samples for each update.
+     *
+     * @see #ValueFunctionTrainer(IValueFunction, WeightPublisher, int, int, int)
+     */
+    public ValueFunctionTrainer(@NotNull IValueFunction<C, S> trainee, @NotNull WeightPublisher<C, S> publisher,
+                                int replayCapacity, int samplesPerUpdate) {
+        this(trainee, publisher, replayCapacity, samplesPerUpdate, samplesPerUpdate);
+    }
+
+    /**
+     * Publisher for TensorFlow value functions. Saves a checkpoint of the trained network after each update, and
+     * loads it into the hot-swapped ones. The same checkpoint is written over each time, so only the latest weights
+     * are kept on disk. This is safe because every target has loaded it before the next update is saved, and copies
+     * from {@link #addTargetCopy()} are only made between updates.
+     *
+     * @param checkpointName Name of the checkpoint to write over after each update.
+     * @return A publisher which goes through a checkpoint file.
+     */
+    public static <C extends Command<?>, S extends IState> WeightPublisher<C, S> checkpointPublisher(
+            String checkpointName) {
+        return (trainee, publishIndex) -> {
+            ((ValueFunction_TensorFlow<C, S>) trainee).saveCheckpoint(checkpointName);
+            logger.debug("Saved update " + publishIndex + " as checkpoint: " + checkpointName);
+            return valueFunction -> {
+                try {
+                    ((ValueFunction_TensorFlow<C, S>) valueFunction).loadCheckpoint(checkpointName);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        };
+    }
+
+    /**
+     * Publish the weights to this value function after each update from now on.
+     *
+     * @param target Double-buffered value function, e.g. used by one worker's rollouts.
+     */
+    public void addTarget(@NotNull ValueFunction_HotSwap<C, S> target) {
+        targets.add(target);
+    }
+
+    /**
+     * Make a new double-buffered copy of the value function being trained, and publish the weights to it after each
+     * update from now on. The copies are made between updates, so they start from complete weights even when those
+     * are loaded from a checkpoint which the training thread writes over. Safe to call from any thread.
+     *
+     * @return Double-buffered value function which gets every update, e.g. for one worker's rollouts. Close it once
+     * it is removed and no longer used.
+     */
+    public ValueFunction_HotSwap<C, S> addTargetCopy() {
+        synchronized (publishLock) {
+            ValueFunction_HotSwap<C, S> target = new ValueFunction_HotSwap<>(trainee.getCopy(), trainee.getCopy());
+            targets.add(target);
+            return target;
+        }
+    }
+
+    public void removeTarget(ValueFunction_HotSwap<C, S> target) {
+        targets.remove(target);
+    }
+
+    /**
+     * Hand over a node which has been valued, to be trained on. Never blocks. Safe to call from any thread.
+     *
+     * @param node Node to add to the replay buffer. Its value is read when it is sampled or, for TensorFlow value
+     *             functions, when the trainer takes it in. Not now.
+     */
+    public void offer(@NotNull NodeGameBase<?, C, S> node) {
+        nodesOffered.increment();
+        if (!incoming.offer(node)) {
+            nodesDropped.increment();
+        }
+    }
+
+    /**
+     * Start training on a new daemon thread.
+     */
+    public synchronized void start() {
+        Preconditions.checkState(trainingThread == null, "Trainer was already started.");
+        running = true;
+        trainingThread = new Thread(this::trainUntilStopped, "value-trainer");
+        trainingThread.setDaemon(true);
+        trainingThread.start();
+    }
+
+    private void trainUntilStopped() {
+        List<NodeGameBase<?, C, S>> samples = new ArrayList<>(samplesPerUpdate);
+        int minimumReplaySize = Math.min(samplesPerUpdate, replayCapacity);
+        int minimumNewNodes = Math.min(newNodesPerUpdate, replayCapacity);
+        int newNodes = 0;
+        while (running) {
+            try {
+                NodeGameBase<?, C, S> node = incoming.poll(10, TimeUnit.MILLISECONDS);
+                while (node != null) {
+                    if (replayExamples != null) {
+                        if (node.getParent() != null) { // Root has no action leading to it to train on.
+                            ((ValueFunction_TensorFlow<C, S>) trainee).addToReplayBuffer(replayExamples, node);
+                        }
+                    } else if (replay.size() < replayCapacity) {
+                        replay.add(node);
+                    } else {
+                        replay.set((int) (replayWrites % replayCapacity), node);
+                    }
+                    replayWrites++;
+                    newNodes++;
+                    node = incoming.poll();
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            int replaySize = getReplaySize();
+            if (replaySize < minimumReplaySize || newNodes < minimumNewNodes) {
+                continue;
+            }
+            newNodes = 0;
+
+            if (replayExamples != null) {
+                ValueFunction_TensorFlow<C, S> network = (ValueFunction_TensorFlow<C, S>) trainee;
+                int batchSize = network.getTrainingBatchSize();
+                network.update(replayExamples, (samplesPerUpdate + batchSize - 1) / batchSize, false);
+            } else {
+                samples.clear();
+                for (int i = 0; i < samplesPerUpdate; i++) {
+                    samples.add(replay.get(random.nextInt(replaySize)));
+                }
+                trainee.update(samples);
+            }
+            publish();
+        }
+    }
+
+    private void publish() {
+        synchronized (publishLock) {
+            Consumer<IValueFunction<C, S>> loader;
+            try {
+                loader = publisher.save(trainee, updateCount);
+            } catch (IOException e) {
+                logger.error("Could not save the trained value function. Not publishing this update.", e);
+                return;
+            }
+            for (ValueFunction_HotSwap<C, S> target : targets) {
+                target.swap(loader);
+            }
+            updateCount++;
+        }
+    }
+
+    /**
+     * Stop training after the current update, and wait for the training thread to finish.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (trainingThread != null) {
+            try {
+                trainingThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Get the number of updates which have been trained and published.
+     *
+     * @return Completed updates.
+     */
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    public long getNodesOfferedCount() {
+        return nodesOffered.longValue();
+    }
+
+    /**
+     * Get the number of nodes which were not trained on because the trainer fell behind.
+     *
+     * @return Nodes dropped from the hand-over queue.
+     */
+    public long getNodesDroppedCount() {
+        return nodesDropped.longValue();
+    }
+
+    /**
+     * Get the number of nodes in the replay buffer. Only up to date when called from the training thread, or after
+     * {@link #close()}.
+     *
+     * @return Number of nodes which may be sampled.
+     */
+    int getReplaySize() {
+        return replayExamples != null ? replayExamples.size() : replay.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Value updates: " + getUpdateCount() + ", nodes offered: " + getNodesOfferedCount() + ", dropped: " +
+                getNodesDroppedCount();
+    }
+}
@@ -0,0 +1,165 @@
+package value;
+
+import com.google.common.base.Preconditions;
+import game.IGameSerializable;
+import game.action.Action;
+import game.action.Command;
+import game.state.IState;
+import org.jetbrains.annotations.NotNull;
+import tree.node.NodeGameBase;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Double-buffered value function, so that new weights can be put in while rollouts keep evaluating. One of two
+ * value functions is active, and answers all evaluations. The other is on standby. {@link #swap(Consumer)} waits
+ * until no evaluation is still using the standby one, loads new weights into it, and then makes it the active one.
+ * Evaluations never wait on training or loading.
+ *
+ * Each of the two value functions is only used by one evaluation at a time if this is only used from one thread,
+ * e.g. by one worker's rollout controller. Give each worker its own.
+ *
+ * @param <C> Command type used by the game.
+ * @param <S> State type used by the game.
+ *
+ * @author matt
+ * @see ValueFunctionTrainer
+ */
+public class ValueFunction_HotSwap<C extends Command<?>, S extends IState> implements IValueFunction<C, S> {
+
+    /**
+     * One of the two value functions, and the number of evaluations using it right now.
+     */
+    private static final class Slot<C extends Command<?>, S extends IState> {
+        final IValueFunction<C, S> valueFunction;
+        final AtomicInteger users = new AtomicInteger();
+
+        Slot(IValueFunction<C, S> valueFunction) {
+            this.valueFunction = valueFunction;
+        }
+    }
+
+    private volatile Slot<C, S> active;
+
+    private Slot<C, S> standby;
+
+    private int swapCount;
+
+    /**
+     * Make a new double-buffered value function. The two should be the same kind of value function, e.g. two copies of
+     * the same network.
+     *
+     * @param active Value function to evaluate with until the first swap.
+     * @param standby Value function to load new weights into at the first swap. Must be a different object.
+     */
+    public ValueFunction_HotSwap(@NotNull IValueFunction<C, S> active, @NotNull IValueFunction<C, S> standby) {
+        Preconditions.checkArgument(active != standby, "Active and standby value functions must be different objects.");
+        this.active = new Slot<>(active);
+        this.standby = new Slot<>(standby);
+    }
+
+    /**
+     * Load new weights into the standby value function and make it the active one. Blocks until evaluations which
+     * started on the standby one before the previous swap are done. Call from one thread at a time, e.g. a trainer's.
+     *
+     * @param loader Puts the new weights into the value function it is given.
+     */
+    public synchronized void swap(@NotNull Consumer<IValueFunction<C, S>> loader) {
+        Slot<C, S> next = standby;
+        while (next.users.get() > 0) {
+            Thread.yield();
+        }
+        loader.accept(next.valueFunction);
+        standby = active;
+        active = next;
+        swapCount++;
+    }
+
+    /**
+     * Mark the active value function as in use. An evaluation which picks up a slot just as it is swapped out backs off
+     * and picks up the new active one instead, so the standby one is never loaded while it is being used.
+     */
+    private Slot<C, S> acquire() {
+        while (true) {
+            Slot<C, S> slot = active;
+            slot.users.incrementAndGet();
+            if (slot == active) {
+                return slot;
+            }
+            slot.users.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Action<C> getMaximizingAction(NodeGameBase<?, C, S> currentNode) {
+        Slot<C, S> slot = acquire();
+        try {
+            return slot.valueFunction.getMaximizingAction(currentNode);
+        } finally {
+            slot.users.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Action<C> getMaximizingAction(NodeGameBase<?, C, S> currentNode, IGameSerializable<C, S> game) {
+        Slot<C, S> slot = acquire();
+        try {
+            return slot.valueFunction.getMaximizingAction(currentNode, game);
+        } finally {
+            slot.users.decrementAndGet();
+        }
+    }
+
+    @Override
+    public float evaluate(NodeGameBase<?, C, S> currentNode) {
+        Slot<C, S> slot = acquire();
+        try {
+            return slot.valueFunction.evaluate(currentNode);
+        } finally {
+            slot.users.decrementAndGet();
+        }
+    }
+
+    /**
+     * Not supported. Train a separate value function, e.g. with a {@link ValueFunctionTrainer}, and swap its weights
+     * in.
+     */
+    @Override
+    public void update(List<? extends NodeGameBase<?, C, S>> nodes) {
+        throw new UnsupportedOperationException("Hot-swapped value functions are not trained directly. Use swap().");
+    }
+
+    /**
+     * Get the value function which is answering evaluations right now. It may be swapped out at any time.
+     *
+     * @return Active value function.
+     */
+    public IValueFunction<C, S> getActive() {
+        return active.valueFunction;
+    }
+
+    /**
+     * Get the number of swaps done so far.
+     *
+     * @return Number of times new weights have been put in.
+     */
+    public synchronized int getSwapCount() {
+        return swapCount;
+    }
+
+    /**
+     * Get an independent copy of the active value function. The copy is not double-buffered.
+     */
+    @Override
+    public IValueFunction<C, S> getCopy() {
+        return getActive().getCopy();
+    }
+
+    @Override
+    public synchronized void close() {
+        active.valueFunction.close();
+        standby.valueFunction.close();
+    }
+}
@@ -4,20 +4,22 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
-import com.google.common.collect.Iterables;
 import game.action.Command;
 import game.state.IState;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import tflowtools.PreparedRunner;
 import tflowtools.TrainableNetwork;
 import tree.node.NodeGameBase;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 @JsonTypeInfo(
         use = JsonTypeInfo.Id.NAME,
@@ -25,6 +27,7 @@ import java.util.List;
 @JsonSubTypes({
         @JsonSubTypes.Type(value = ValueFunction_TensorFlow_StateOnly.class, name = "tflow_state_only"),
         @JsonSubTypes.Type(value = ValueFunction_TensorFlow_StateOnlyLoaded.class, name = "tflow_state_only_loaded"),
+        @JsonSubTypes.Type(value = ValueFunction_TensorFlow_StateOnlyJava.class, name = "tflow_state_only_java"),
 })
 public abstract class ValueFunction_TensorFlow<C extends Command<?>, S extends IState> implements IValueFunction<C, S>,
         AutoCloseable {
@@ -74,6 +77,33 @@ public abstract class ValueFunction_TensorFlow<C extends Command<?>, S extends I
      */
     private float lossSum;
 
+    /**
+     * Reusable batch which training examples are copied into on their way to the network.
+     */
+    private ReplayBuffer.Batch trainingBatch;
+
+    /**
+     * Network predictions for the training batch, when finding errors for prioritized replay.
+     */
+    private FloatBuffer batchPredictions;
+
+    private float[] batchErrors;
+
+    private final Random random = new Random();
+
+    /**
+     * Per-thread flat output buffer for single evaluations, so evaluating a node does not allocate any network
+     * arrays.
+     */
+    private final ThreadLocal<float[]> evaluationOutput = ThreadLocal.withInitial(() -> new float[0]);
+
+    /**
+     * Per-thread direct buffers which {@link #evaluateNetwork(float[], float[], int)} feeds the session through.
+     * Grown to fit the largest batch evaluated on each thread.
+     */
+    private final ThreadLocal<FloatBuffer[]> evaluationBuffers = ThreadLocal.withInitial(() -> new FloatBuffer[]{
+            PreparedRunner.makeDirectBuffer(0), PreparedRunner.makeDirectBuffer(0)});
+
     private static final Logger logger = LogManager.getLogger(ValueFunction_TensorFlow.class);
 
     /**
@@ -205,6 +235,10 @@ public abstract class ValueFunction_TensorFlow<C extends Command<?>, S extends I
         trainingBatchSize = batchSize;
     }
 
+    public int getTrainingBatchSize() {
+        return trainingBatchSize;
+    }
+
     /**
      * Set the number of training iterations per batch.
      * @param stepsPerBatch Number of training steps taken per batch fed in.
@@ -214,6 +248,11 @@ public abstract class ValueFunction_TensorFlow<C extends Command<?>, S extends I
         trainingStepsPerBatch = stepsPerBatch;
     }
 
+    /**
+     * Train on the given nodes once, in order, in batches of the training batch size. Nodes are transformed straight
+     * into the reused training batch, so only one batch of examples exists at a time. To train over and over on
+     * nodes as they come in, fill a {@link ReplayBuffer} instead and use {@link #update(ReplayBuffer, int, boolean)}.
+     */
     @Override
     public void update(List<? extends NodeGameBase<?, C, S>> nodes) {
         assert trainingBatchSize > 0;
@@ -221,37 +260,24 @@ public abstract class ValueFunction_TensorFlow<C extends Command<?>, S extends I
         batchCount = 0;
         lossSum = 0f;
 
-        float[][] trainingInput = new float[trainingBatchSize][inputSize];
-        float[][] trainingOutput = new float[trainingBatchSize][outputSize];
-
         long startTime = System.currentTimeMillis();
 
         logger.info("Beginning value function update containing " + nodes.size() + " samples divided into batches of " + trainingBatchSize);
 
-        // Divide into batches.
-        Iterables.partition(nodes, trainingBatchSize).forEach(batch -> {
-
-            // Iterate through the nodes in the batch.
-            for (int i = 0; i < batch.size(); i++) {
-                NodeGameBase<?, C, S> n = batch.get(i);
-
-                // Don't include root node since it doesn't have a parent.
-                if (n.getParent() == null) {
-                    continue;
+        ReplayBuffer.Batch batch = getTrainingBatch();
+        batch.clear();
+        for (NodeGameBase<?, C, S> n : nodes) {
+            // Don't include root node since it doesn't have a parent.
+            if (n.getParent() != null) {
+                batch.add(assembleInputFromNode(n), assembleOutputFromNode(n));
+                if (batch.size() == batch.maxSize) {
+                    trainOnFilledBatch(batch);
                 }
-                // Get state.
-                float[] input = assembleInputFromNode(n);
-                assert input.length == inputSize;
-
-                float[] output = assembleOutputFromNode(n);
-                assert output.length == outputSize;
-
-                trainingInput[i] = input;
-                trainingOutput[i] = output;
             }
-            lossSum += network.trainingStep(trainingInput, trainingOutput, keepProbability, trainingStepsPerBatch);
-            batchCount++;
-        });
+        }
+        if (batch.size() > 0) {
+            trainOnFilledBatch(batch);
+        }
 
         String logMsg = String.format("Update complete. Epoch: %d. Batches this epoch: %d. Average loss: %.4f. Total " +
                         "time elapsed: %.1f sec.",
@@ -263,12 +289,132 @@ public abstract class ValueFunction_TensorFlow<C extends Command<?>, S extends I
         epochCount++;
     }
 
+    /**
+     * Take a training step on a batch filled by {@link ReplayBuffer.Batch#add(float[], float[])}, and empty it for
+     * the next one.
+     */
+    private void trainOnFilledBatch(ReplayBuffer.Batch batch) {
+        batch.flip();
+        lossSum += network.trainingStep(batch.inputs, batch.targets, batch.size(), keepProbability,
+                trainingStepsPerBatch);
+        batchCount++;
+        batch.clear();
+    }
+
+    /**
+     * Train on batches sampled from a replay buffer, e.g. one filled with {@link #addToReplayBuffer(ReplayBuffer,
+     * NodeGameBase)} as nodes are valued. The examples are already transformed, so this only costs the training
+     * itself. When sampling by priority from a buffer prioritized by error, each batch's priorities are updated from
+     * the network's error on it after training.
+     *
+     * @param replayBuffer Examples to train on. Made by {@link #makeReplayBuffer(int, ReplayBuffer.Prioritization,
+     *                     float)}, or with matching sizes.
+     * @param batches Number of batches of the training batch size to sample and train on.
+     * @param prioritized Sample by priority if true. Uniformly otherwise.
+     * @return Average loss over the batches.
+     */
+    public float update(@NotNull ReplayBuffer replayBuffer, int batches, boolean prioritized) {
+        ReplayBuffer.Batch batch = getTrainingBatch();
+        boolean updatePriorities = prioritized && replayBuffer.prioritization == ReplayBuffer.Prioritization.TD_ERROR;
+        float loss = 0f;
+        for (int i = 0; i < batches; i++) {
+            if (prioritized) {
+                replayBuffer.samplePrioritized(batch, trainingBatchSize, random);
+            } else {
+                replayBuffer.sampleUniform(batch, trainingBatchSize, random);
+            }
+            loss += network.trainingStep(batch.inputs, batch.targets, batch.size(), keepProbability,
+                    trainingStepsPerBatch);
+            if (updatePriorities) {
+                replayBuffer.updatePriorities(batch, findBatchErrors(batch));
+            }
+        }
+        epochCount++;
+        return loss / batches;
+    }
+
+    /**
+     * Transform a node and add it to a replay buffer for training.
+     *
+     * @param replayBuffer Buffer to add to. Must match this value function's input and output sizes.
+     * @param node Node which has been valued.
+     */
+    public void addToReplayBuffer(@NotNull ReplayBuffer replayBuffer, @NotNull NodeGameBase<?, C, S> node) {
+        replayBuffer.add(assembleInputFromNode(node), assembleOutputFromNode(node), node.getTreeDepth(),
+                node.getUpdateCount());
+    }
+
+    /**
+     * Make an empty replay buffer sized for this value function's inputs and outputs.
+     *
+     * @param capacity Maximum number of examples held.
+     * @param prioritization What to base sampling priorities on.
+     * @param priorityExponent Exponent applied to each raw priority. 0 is the same as uniform sampling.
+     * @return A new replay buffer.
+     */
+    public ReplayBuffer makeReplayBuffer(int capacity, ReplayBuffer.Prioritization prioritization,
+                                         float priorityExponent) {
+        return new ReplayBuffer(capacity, inputSize, outputSize, prioritization, priorityExponent);
+    }
+
+    private ReplayBuffer.Batch getTrainingBatch() {
+        if (trainingBatch == null || trainingBatch.maxSize != trainingBatchSize) {
+            trainingBatch = new ReplayBuffer.Batch(trainingBatchSize, inputSize, outputSize);
+            batchPredictions = PreparedRunner.makeDirectBuffer(trainingBatchSize * outputSize);
+            batchErrors = new float[trainingBatchSize];
+        }
+        return trainingBatch;
+    }
+
+    /**
+     * Get the summed absolute difference between the network's prediction and the target of each example in a batch.
+     */
+    private float[] findBatchErrors(ReplayBuffer.Batch batch) {
+        batchPredictions.clear();
+        network.evaluateInput(batch.inputs, batch.size(), batchPredictions);
+        for (int i = 0; i < batch.size(); i++) {
+            float error = 0f;
+            for (int j = i * outputSize; j < (i + 1) * outputSize; j++) {
+                error += Math.abs(batch.targets.get(j) - batchPredictions.get(j));
+            }
+            batchErrors[i] = error;
+        }
+        return batchErrors;
+    }
+
     @Override
     public float evaluate(@NotNull NodeGameBase<?, C, S> node) {
-        float[][] input = new float[1][inputSize];
-        input[0] = assembleInputFromNode(node);
-        float[][] result = network.evaluateInput(input);
-        return result[0][0];
+        float[] output = evaluationOutput.get();
+        if (output.length < outputSize) {
+            output = new float[outputSize];
+            evaluationOutput.set(output);
+        }
+        evaluateNetwork(assembleInputFromNode(node), output, 1);
+        return output[0];
+    }
+
+    /**
+     * Run inputs through the value network. Subclasses may evaluate somewhere other than the TensorFlow session, as
+     * long as the results match {@link TrainableNetwork#evaluateInput(FloatBuffer, int, FloatBuffer)}. The session
+     * path here copies the inputs and outputs through this thread's reused direct buffers.
+     * @param inputs Flat [batchSize][inputSize] assembled inputs. May be longer than needed.
+     * @param outputs Flat [batchSize][outputSize] destination for the network outputs. May be longer than needed.
+     * @param batchSize Number of inputs to evaluate.
+     */
+    void evaluateNetwork(float[] inputs, float[] outputs, int batchSize) {
+        FloatBuffer[] buffers = evaluationBuffers.get();
+        if (buffers[0].capacity() < batchSize * inputSize) {
+            buffers[0] = PreparedRunner.makeDirectBuffer(batchSize * inputSize);
+            buffers[1] = PreparedRunner.makeDirectBuffer(batchSize * outputSize);
+        }
+        FloatBuffer inputBuffer = buffers[0];
+        FloatBuffer outputBuffer = buffers[1];
+        inputBuffer.clear();
+        inputBuffer.put(inputs, 0, batchSize * inputSize).flip();
+        outputBuffer.clear();
+        network.evaluateInput(inputBuffer, batchSize, outputBuffer);
+        outputBuffer.flip();
+        outputBuffer.get(outputs, 0, batchSize * outputSize);
     }
 
     abstract float[] assembleInputFromNode(NodeGameBase<?, C, S> node);
@@ -38,6 +38,14 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
 
     private final boolean multithread = true;
 
+    /**
+     * If true, each {@link FuturePredictor} only simulates its horizon, and then the states from all of them go
+     * through the network in a single batched evaluation. This gives the same values as evaluating one state at a
+     * time, but with one TensorFlow session run per control decision instead of one per predicted timestep.
+     */
+    @JsonProperty
+    public boolean batchEvaluation = false;
+
     /**
      * Handles distributing different predictive simulations to different threads to run simultaneously.
      */
@@ -59,6 +67,17 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
 
     public final ITransform<S> stateNormalizer;
 
+    /**
+     * Copy of the full state of the real game at the most recent control decision, if it was given.
+     */
+    private IGameSerializable<CommandQWOP, S> startingGame;
+
+    /**
+     * Flat network inputs and outputs for batched evaluation of the predictors' states. Grown as needed and reused.
+     */
+    private float[] batchInputs = new float[0];
+    private float[] batchOutputs = new float[0];
+
     /**
      * Constructor which makes a new value function net based on provided parameters. If this net is similar enough
      * to a previously-used one, you can probably load a checkpoint file with weights with it too.
@@ -145,7 +164,11 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
     @Override
     public Action<CommandQWOP> getMaximizingAction(NodeGameBase<?, CommandQWOP, S> currentNode,
                                                    IGameSerializable<CommandQWOP, S> realGame) {
-        evaluations.forEach(e -> e.setStartingState(realGame.getSerializedState()));
+        // Predictors all start from one copy of the real game's full state, so the real game is free to carry on.
+        startingGame = startingGame == null ? realGame.getCopy() : startingGame;
+        startingGame = startingGame.copyStateFrom(realGame);
+        IGameSerializable<CommandQWOP, S> predictionStart = startingGame;
+        evaluations.forEach(e -> e.setStartingState(predictionStart));
         return runEvaluations();
     }
 
@@ -154,7 +177,26 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
 
         evalResults.clear(); // Remove existing results from any previous evaluations.
         try{
-            if (multithread) { // Multi-thread, send to executor.
+            if (batchEvaluation) {
+                // Simulate all the futures first, then evaluate every predicted state at once.
+                List<Callable<Object>> simulations = new ArrayList<>(evaluations.size());
+                for (FuturePredictor eval : evaluations) {
+                    simulations.add(Executors.callable(eval::simulate));
+                }
+                if (multithread) {
+                    for (Future<Object> future : executor.invokeAll(simulations)) {
+                        future.get(); // Each blocks until the thread is done.
+                    }
+                } else {
+                    for (Callable<Object> simulation : simulations) {
+                        simulation.call();
+                    }
+                }
+                evaluatePredictionsBatched();
+                for (FuturePredictor eval : evaluations) {
+                    evalResults.add(eval.selectBestResult());
+                }
+            } else if (multithread) { // Multi-thread, send to executor.
                 List<Future<EvaluationResult>> allResults = executor.invokeAll(evaluations);
                 for (Future<EvaluationResult> future : allResults) {
                     evalResults.add(future.get()); // Each blocks until the thread is done.
@@ -183,6 +225,35 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
         return new Action<>(evalResult.timestep, CommandQWOP.getCommand(evalResult.keys));
     }
 
+    /**
+     * Run every state predicted by the {@link FuturePredictor FuturePredictors} through the network in one batch, and
+     * give each predictor back its values.
+     */
+    private void evaluatePredictionsBatched() {
+        int totalPredictions = 0;
+        for (FuturePredictor eval : evaluations) {
+            totalPredictions += eval.maxHorizon;
+        }
+        if (batchInputs.length < totalPredictions * inputSize) {
+            batchInputs = new float[totalPredictions * inputSize];
+            batchOutputs = new float[totalPredictions * VALUE_SIZE];
+        }
+        int idx = 0;
+        for (FuturePredictor eval : evaluations) {
+            for (S st : eval.predictedStates) {
+                float[] input = stateNormalizer.transform(st); // Same as assembleInputFromNode.
+                System.arraycopy(input, 0, batchInputs, idx++ * inputSize, inputSize);
+            }
+        }
+        evaluateNetwork(batchInputs, batchOutputs, totalPredictions);
+        idx = 0;
+        for (FuturePredictor eval : evaluations) {
+            for (int i = 0; i < eval.maxHorizon; i++) {
+                eval.predictedValues[i] = batchOutputs[idx++ * VALUE_SIZE];
+            }
+        }
+    }
+
     @Override
     float[] assembleInputFromNode(NodeGameBase<?, CommandQWOP, S> node) {
         return stateNormalizer.transform(node.getState());
@@ -248,8 +319,8 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
          */
         S startingState;
 
-        private byte[] startStateFull;
-        private boolean useSerializedState = false;
+        private IGameSerializable<CommandQWOP, S> startingGame;
+        private boolean useFullGameState = false;
 
         /**
          * QWOP keys pressed during this future prediction.
@@ -298,6 +369,21 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
          */
         EvaluationResult bestResult = new EvaluationResult();
 
+        /**
+         * States reached after each of the 1 to maxHorizon timesteps of the most recent simulation.
+         */
+        final List<S> predictedStates;
+
+        /**
+         * Value of each of the predictedStates.
+         */
+        final float[] predictedValues;
+
+        /**
+         * Body x at the start of the most recent simulation.
+         */
+        private float startX;
+
         FuturePredictor(IGameSerializable<CommandQWOP, S> gameTemplate, Keys keys, int minHorizon,
                         int maxHorizon) {
             this.gameLocal = gameTemplate.getCopy();
@@ -305,23 +391,39 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
             command = CommandQWOP.getCommand(keys);
             this.minHorizon = minHorizon;
             this.maxHorizon = maxHorizon;
+            predictedStates = new ArrayList<>(maxHorizon);
+            predictedValues = new float[maxHorizon];
         }
 
         void setStartingState(@NotNull S startingState) {
             this.startingState = startingState;
-            useSerializedState = false;
+            useFullGameState = false;
         }
 
-        void setStartingState(@NotNull byte[] startingState) {
-            this.startStateFull = startingState;
-            useSerializedState = true;
+        /**
+         * Start predictions from a copy of a game's full state. The game must not change while predicting.
+         */
+        void setStartingState(@NotNull IGameSerializable<CommandQWOP, S> startingGame) {
+            this.startingGame = startingGame;
+            useFullGameState = true;
         }
 
         @Override
         public EvaluationResult call() {
+            simulate();
+            for (int i = 0; i < maxHorizon; i++) {
+                predictedValues[i] = evaluate(new NodeGame<>(predictedStates.get(i)));
+            }
+            return selectBestResult();
+        }
 
-            if (useSerializedState) {
-                gameLocal = gameLocal.restoreSerializedState(startStateFull);
+        /**
+         * Simulate this future from the starting state, holding the keys for maxHorizon timesteps. The states
+         * reached go in {@link #predictedStates}. Nothing is evaluated yet.
+         */
+        void simulate() {
+            if (useFullGameState) {
+                gameLocal = gameLocal.copyStateFrom(startingGame);
                 gameLocal.setPhysicsIterations(QWOPConstants.physIterations); // Don't need to 'catch up', since
                 // full game is
             } else {
@@ -333,9 +435,26 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
                 // "catch-up" to warm-started game.
             }
 
-            float startX = gameLocal.getCurrentState().getCenterX();
+            startX = gameLocal.getCurrentState().getCenterX();
+            predictedStates.clear();
+
+            for (int i = 1; i <= maxHorizon; i++) {
+                // Return to the normal number of physics iterations after the first step.
+                if (i > warmstartIterationCount) {
+                    gameLocal.setPhysicsIterations(QWOPConstants.physIterations);
+                }
+                gameLocal.step(command);
+                predictedStates.add(gameLocal.getCurrentState());
+            }
+        }
 
-            // Reset the game and set it to the specified starting state.
+        /**
+         * Pick the best duration to hold these keys for, based on the values of the most recent simulation. These
+         * must already be in {@link #predictedValues}.
+         *
+         * @return Best result from within this prediction of the future.
+         */
+        EvaluationResult selectBestResult() {
             bestResult.value = -Float.MAX_VALUE;
 
             // Keep track of a window of three adjacent game.command. Some of the selection approaches do a
@@ -348,19 +467,12 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
             float x3 = startX;
 
             for (int i = 1; i <= maxHorizon; i++) {
-                // Return to the normal number of physics iterations after the first step.
-                if (i > warmstartIterationCount) {
-                    gameLocal.setPhysicsIterations(QWOPConstants.physIterations);
-                }
-
                 x2 = x3;
 
-                gameLocal.step(command);
-                S st = gameLocal.getCurrentState();
-                NodeGameBase<?, CommandQWOP, S> nextNode = new NodeGame<>(st);
+                S st = predictedStates.get(i - 1);
                 val1 = val2;
                 val2 = val3;
-                val3 = evaluate(nextNode);
+                val3 = predictedValues[i - 1];
 
                 x3 = st.getCenterX();
 
@@ -421,6 +533,7 @@ public class ValueFunction_TensorFlow_StateOnly<S extends IStateQWOP> extends Va
                     getActiveCheckpoint(),
                     keepProbability,
                     tensorboardLogging);
+            valFunCopy.batchEvaluation = batchEvaluation;
         } catch (IOException e) {
             e.printStackTrace();
         }
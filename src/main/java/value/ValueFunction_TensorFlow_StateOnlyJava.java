@@ -0,0 +1,86 @@
+package value;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import game.IGameSerializable;
+import game.qwop.CommandQWOP;
+import game.qwop.IStateQWOP;
+import game.state.transform.ITransform;
+import tflowtools.FeedForwardNetwork;
+import tree.node.NodeGameBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Same as {@link ValueFunction_TensorFlow_StateOnlyLoaded}, but evaluation is done by a {@link FeedForwardNetwork}
+ * snapshot of the weights instead of by the TensorFlow session. The predictor threads can then evaluate at the same
+ * time without going through the session. Training still uses TensorFlow, and the snapshot is remade after each
+ * update or checkpoint load.
+ *
+ * @author matt
+ */
+public class ValueFunction_TensorFlow_StateOnlyJava<S extends IStateQWOP> extends ValueFunction_TensorFlow_StateOnlyLoaded<S> {
+
+    /**
+     * Copy of the network weights used for evaluation. Replaced whole, so evaluations in progress keep using the old
+     * weights.
+     */
+    private volatile FeedForwardNetwork javaNetwork;
+
+    @JsonCreator
+    public ValueFunction_TensorFlow_StateOnlyJava(@JsonProperty("modelFile") File modelFile,
+                                                  @JsonProperty("gameTemplate") IGameSerializable<CommandQWOP, S> gameTemplate,
+                                                  @JsonProperty("stateNormalizer") ITransform<S> stateNormalizer,
+                                                  @JsonProperty("activeCheckpoint") String checkpointFile,
+                                                  @JsonProperty("keepProbability") float keepProbability,
+                                                  @JsonProperty("tensorboardLogging") boolean tensorboardLogging) throws IOException {
+        super(modelFile, gameTemplate, stateNormalizer, checkpointFile, keepProbability, tensorboardLogging);
+        javaNetwork = FeedForwardNetwork.fromTrainableNetwork(network);
+    }
+
+    @Override
+    public void loadCheckpoint(String checkpointName) throws IOException {
+        super.loadCheckpoint(checkpointName);
+        javaNetwork = FeedForwardNetwork.fromTrainableNetwork(network);
+    }
+
+    @Override
+    public void update(List<? extends NodeGameBase<?, CommandQWOP, S>> nodes) {
+        super.update(nodes);
+        javaNetwork = FeedForwardNetwork.fromTrainableNetwork(network);
+    }
+
+    @Override
+    public float update(ReplayBuffer replayBuffer, int batches, boolean prioritized) {
+        float loss = super.update(replayBuffer, batches, prioritized);
+        javaNetwork = FeedForwardNetwork.fromTrainableNetwork(network);
+        return loss;
+    }
+
+    @Override
+    void evaluateNetwork(float[] inputs, float[] outputs, int batchSize) {
+        javaNetwork.evaluate(inputs, outputs, batchSize);
+    }
+
+    @JsonIgnore
+    @Override
+    public ValueFunction_TensorFlow_StateOnlyJava<S> getCopy() {
+        ValueFunction_TensorFlow_StateOnlyJava<S> valFunCopy = null;
+        try {
+            valFunCopy = new ValueFunction_TensorFlow_StateOnlyJava<>(
+                    modelFile,
+                    gameTemplate,
+                    stateNormalizer,
+                    getActiveCheckpoint(),
+                    keepProbability,
+                    tensorboardLogging);
+            valFunCopy.batchEvaluation = batchEvaluation;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return valFunCopy;
+    }
+}
@@ -0,0 +1,337 @@
+package data;
+
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tensorflow.example.SequenceExample;
+import savers.DataSaver_DenseColumnar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DenseRunWriterTest {
+
+    private static final File exampleRunFile = new File("src/test/resources/saved_data_examples/example_run.TFRecord");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * States and held actions of one simulated game.
+     */
+    private static class Game {
+        final List<StateQWOP> states = new ArrayList<>();
+        final List<Action<CommandQWOP>> timestepActions = new ArrayList<>();
+        final List<Action<CommandQWOP>> actions = new ArrayList<>();
+
+        DenseRun toRun() {
+            return DenseRun.fromTimesteps(states, timestepActions);
+        }
+    }
+
+    /**
+     * Play a game of repeated actions, stopping early if the runner falls.
+     */
+    private static Game playGame(int repeats, int... durations) {
+        CommandQWOP[] commands = {CommandQWOP.WO, CommandQWOP.NONE, CommandQWOP.QP, CommandQWOP.NONE};
+        Game played = new Game();
+        GameQWOP game = new GameQWOP();
+        played.states.add(game.getCurrentState());
+        for (int r = 0; r < repeats; r++) {
+            for (int i = 0; i < durations.length; i++) {
+                Action<CommandQWOP> action = new Action<>(durations[i], commands[i % commands.length]);
+                played.actions.add(action);
+                for (int t = 0; t < durations[i]; t++) {
+                    game.step(action.peek());
+                    played.states.add(game.getCurrentState());
+                    played.timestepActions.add(action);
+                    if (game.isFailed()) {
+                        return played;
+                    }
+                }
+            }
+        }
+        return played;
+    }
+
+    private static void assertRunMatches(Game expected, DenseRun run) {
+        Assert.assertEquals(expected.states.size(), run.stateCount);
+        Assert.assertArrayEquals(expected.states.toArray(), run.getStates());
+        float[] row = new float[StateQWOP.STATE_SIZE];
+        for (int i = 0; i < run.stateCount; i++) {
+            run.getStateRow(i, row);
+            Assert.assertArrayEquals(expected.states.get(i).flattenState(0f), row, 0f);
+        }
+        Assert.assertEquals(expected.states.get(expected.states.size() - 1).isFailed(), run.failed);
+        Assert.assertEquals(run.failed, run.getState(run.stateCount - 1).isFailed());
+
+        Assert.assertEquals(expected.timestepActions.size(), run.getCommandCount());
+        for (int i = 0; i < run.getCommandCount(); i++) {
+            Assert.assertEquals(expected.timestepActions.get(i).peek(), run.getCommand(i));
+        }
+        Assert.assertEquals(expected.actions, run.getActions());
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        List<Game> games = new ArrayList<>();
+        games.add(playGame(3, 10, 5, 12, 7));
+        games.add(playGame(1, 1)); // Odd number of commands.
+        games.add(playGame(20, 20, 30, 20, 30)); // Falls.
+        games.add(new Game()); // Nothing at all.
+        games.get(3).states.add(GameQWOP.getInitialState());
+        Assert.assertTrue(games.get(2).states.get(games.get(2).states.size() - 1).isFailed());
+
+        for (boolean compress : new boolean[]{false, true}) {
+            File file = folder.newFile();
+            try (DenseRunWriter writer = DenseRunWriter.open(file, false, compress)) {
+                for (Game game : games) {
+                    writer.write(game.toRun());
+                }
+                Assert.assertEquals(games.size(), writer.getRunCount());
+            }
+            try (DenseRunReader reader = new DenseRunReader(file)) {
+                Assert.assertEquals(games.size(), reader.getRunCount());
+                // Any order.
+                for (int i = games.size() - 1; i >= 0; i--) {
+                    assertRunMatches(games.get(i), reader.getRun(i));
+                }
+                List<DenseRun> runs = reader.getAllRuns();
+                for (int i = 0; i < games.size(); i++) {
+                    assertRunMatches(games.get(i), runs.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stateColumns() {
+        Game game = playGame(2, 8, 8);
+        DenseRun run = game.toRun();
+        for (int j = 0; j < StateQWOP.STATE_SIZE; j++) {
+            float[] column = run.getStateColumn(j);
+            Assert.assertEquals(game.states.size(), column.length);
+            for (int i = 0; i < column.length; i++) {
+                Assert.assertEquals(game.states.get(i).flattenState(0f)[j], column[i], 0f);
+            }
+        }
+    }
+
+    @Test
+    public void repeatedActionSplitByDuration() {
+        Game game = new Game();
+        game.states.add(GameQWOP.getInitialState());
+        Action<CommandQWOP> action = new Action<>(2, CommandQWOP.QP);
+        for (int i = 0; i < 4; i++) { // Same action done twice in a row.
+            game.states.add(GameQWOP.getInitialState());
+            game.timestepActions.add(action);
+        }
+        Assert.assertEquals(Collections.nCopies(2, action), game.toRun().getActions());
+    }
+
+    @Test
+    public void append() throws IOException {
+        Game first = playGame(2, 10, 10, 10, 10);
+        Game second = playGame(1, 3, 4);
+        File file = new File(folder.getRoot(), "new_dir/runs.denserun");
+        try (DenseRunWriter writer = DenseRunWriter.open(file, true, true)) { // Nothing to append to yet.
+            writer.write(first.toRun());
+        }
+        try (DenseRunWriter writer = DenseRunWriter.open(file, true, false)) { // Mixed compression is fine.
+            Assert.assertEquals(1, writer.getRunCount());
+            writer.writeAll(Collections.nCopies(2, second.toRun()));
+        }
+        try (DenseRunReader reader = new DenseRunReader(file)) {
+            Assert.assertEquals(3, reader.getRunCount());
+            assertRunMatches(first, reader.getRun(0));
+            assertRunMatches(second, reader.getRun(1));
+            assertRunMatches(second, reader.getRun(2));
+        }
+
+        try (DenseRunWriter writer = DenseRunWriter.open(file, false, false)) {
+            writer.write(second.toRun());
+        }
+        try (DenseRunReader reader = new DenseRunReader(file)) {
+            Assert.assertEquals(1, reader.getRunCount());
+        }
+    }
+
+    @Test
+    public void unfinishedAppend() throws IOException {
+        Game first = playGame(2, 10, 10, 10, 10);
+        Game second = playGame(1, 3, 4);
+        File file = folder.newFile();
+        try (DenseRunWriter writer = DenseRunWriter.open(file, false, false)) {
+            writer.write(first.toRun());
+        }
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        try (DenseRunWriter writer = DenseRunWriter.open(file, true, true)) {
+            writer.writeAll(Collections.nCopies(2, second.toRun()));
+        }
+        // The old file, index and all, is left as it was.
+        byte[] after = Files.readAllBytes(file.toPath());
+        Assert.assertArrayEquals(before, Arrays.copyOf(after, before.length));
+
+        // Lose the end of the append, as if it had been cut off partway.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(before.length + 30);
+        }
+        try (DenseRunReader reader = new DenseRunReader(file)) {
+            Assert.assertEquals(1, reader.getRunCount());
+            assertRunMatches(first, reader.getRun(0));
+        }
+
+        // Appending again replaces what the unfinished append left.
+        try (DenseRunWriter writer = DenseRunWriter.open(file, true, false)) {
+            Assert.assertEquals(1, writer.getRunCount());
+            writer.write(second.toRun());
+        }
+        try (DenseRunReader reader = new DenseRunReader(file)) {
+            Assert.assertEquals(2, reader.getRunCount());
+            assertRunMatches(first, reader.getRun(0));
+            assertRunMatches(second, reader.getRun(1));
+        }
+    }
+
+    @Test
+    public void smallerThanSerialized() throws IOException {
+        // A long, real run.
+        SequenceExample sequence = TFRecordDataParsers.loadSequencesFromTFRecord(exampleRunFile).get(0);
+        Game game = new Game();
+        Collections.addAll(game.states, TFRecordDataParsers.getStatesFromLoadedSequence(sequence));
+        for (Action<CommandQWOP> action : TFRecordDataParsers.getActionsFromLoadedSequence(sequence)) {
+            game.actions.add(action);
+            game.timestepActions.addAll(Collections.nCopies(action.getTimestepsTotal(), action));
+        }
+
+        File columnar = folder.newFile();
+        File compressed = folder.newFile();
+        try (DenseRunWriter writer = DenseRunWriter.open(columnar, false, false)) {
+            writer.write(game.toRun());
+        }
+        try (DenseRunWriter writer = DenseRunWriter.open(compressed, false, true)) {
+            writer.write(game.toRun());
+        }
+        try (DenseRunReader reader = new DenseRunReader(compressed)) {
+            assertRunMatches(game, reader.getRun(0));
+        }
+
+        // Only the states, since commands cannot be serialized.
+        File serialized = folder.newFile();
+        new SavableFileIO<SavableDenseData<CommandQWOP>>().storeObjects(Collections.singletonList(
+                new SavableDenseData<>(new ArrayList<>(game.states), new ArrayList<>())), serialized, false);
+
+        Assert.assertTrue(columnar.length() < serialized.length() * 3 / 4);
+        Assert.assertTrue(compressed.length() < columnar.length() * 4 / 5);
+    }
+
+    @Test
+    public void saver() throws IOException {
+        DataSaver_DenseColumnar saver = new DataSaver_DenseColumnar(true);
+        saver.setSavePath(folder.getRoot().getPath() + File.separator);
+        saver.setSaveInterval(2);
+
+        List<Game> games = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Game game = playGame(i, 6, 4, 6, 4);
+            games.add(game);
+            saver.reportGameInitialization(game.states.get(0));
+            for (int t = 0; t < game.timestepActions.size(); t++) {
+                GameQWOP replay = new GameQWOP();
+                replay.setState(game.states.get(t + 1));
+                saver.reportTimestep(game.timestepActions.get(t), replay);
+            }
+            saver.reportGameEnding(null);
+        }
+        saver.setSaveInterval(0);
+        saver.finalizeSaverData();
+
+        File[] files = folder.getRoot().listFiles((dir, name) -> name.endsWith("." +
+                DataSaver_DenseColumnar.fileExtension));
+        Assert.assertNotNull(files);
+        List<DenseRun> runs = new ArrayList<>();
+        for (File file : files) {
+            try (DenseRunReader reader = new DenseRunReader(file)) {
+                runs.addAll(reader.getAllRuns());
+            }
+        }
+        Assert.assertEquals(3, runs.size());
+        runs.sort((a, b) -> Integer.compare(a.stateCount, b.stateCount));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(games.get(i).states.size(), runs.get(i).stateCount);
+            Assert.assertArrayEquals(games.get(i).states.get(5).flattenState(0f),
+                    runs.get(i).getState(5).flattenState(0f), 1e-5f);
+        }
+
+        DataSaver_DenseColumnar copy = saver.getCopy();
+        Assert.assertTrue(copy.isCompressed());
+        Assert.assertEquals(saver.getSavePath(), copy.getSavePath());
+    }
+
+    @Test
+    public void saverCopiesWriteSeparateFiles() throws IOException {
+        DataSaver_DenseColumnar saver = new DataSaver_DenseColumnar(false);
+        saver.setSavePath(folder.getRoot().getPath() + File.separator);
+        saver.setSaveInterval(0);
+        List<DataSaver_DenseColumnar> copies = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            copies.add(saver.getCopy());
+        }
+
+        // Every copy saves within the same second, like workers finishing a stage together.
+        Game game = playGame(1, 6, 4, 6, 4);
+        for (DataSaver_DenseColumnar copy : copies) {
+            copy.reportGameInitialization(game.states.get(0));
+            for (int t = 0; t < game.timestepActions.size(); t++) {
+                GameQWOP replay = new GameQWOP();
+                replay.setState(game.states.get(t + 1));
+                copy.reportTimestep(game.timestepActions.get(t), replay);
+            }
+            copy.reportGameEnding(null);
+        }
+        copies.parallelStream().forEach(DataSaver_DenseColumnar::finalizeSaverData);
+
+        File[] files = folder.getRoot().listFiles((dir, name) -> name.endsWith("." +
+                DataSaver_DenseColumnar.fileExtension));
+        Assert.assertNotNull(files);
+        Assert.assertEquals(copies.size(), files.length);
+        for (File file : files) {
+            try (DenseRunReader reader = new DenseRunReader(file)) {
+                Assert.assertEquals(1, reader.getRunCount());
+                Assert.assertEquals(game.states.size(), reader.getRun(0).stateCount);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unclosedFile() throws IOException {
+        File file = folder.newFile();
+        try (DenseRunWriter writer = DenseRunWriter.open(file, false, false)) {
+            writer.write(playGame(1, 5).toRun());
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 4); // Lose the footer.
+        }
+        new DenseRunReader(file).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void notADenseRunFile() throws IOException {
+        File file = folder.newFile();
+        new SavableFileIO<String>().storeObjects(Collections.singletonList("Serialized objects, not dense runs."),
+                file, false);
+        new DenseRunReader(file).close();
+    }
+}
@@ -0,0 +1,173 @@
+package data;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tensorflow.example.SequenceExample;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TFRecordChannelWriterTest {
+
+    private static final File exampleRunFile = new File("src/test/resources/saved_data_examples/example_run.TFRecord");
+
+    private File makeTempFile() throws IOException {
+        File file = File.createTempFile("channelwriter", "TFRecord");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private List<byte[]> makeRecords() {
+        Random random = new Random(3);
+        List<byte[]> records = new ArrayList<>();
+        for (int length : new int[]{0, 1, 7, 8, 9, 1000, 100000}) {
+            byte[] record = new byte[length];
+            random.nextBytes(record);
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    public void crc32c() {
+        // Check value from the CRC catalogue.
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertEquals(0xe3069283, Crc32C.compute(check, 0, check.length));
+        Assert.assertEquals(0xe3069283, Crc32C.computeWithTables(ByteBuffer.wrap(check)));
+
+        // Built-in and table versions agree on odd lengths, offsets, and direct buffers.
+        byte[] data = new byte[1003];
+        new Random(5).nextBytes(data);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        direct.position(3);
+        int expected = Crc32C.computeWithTables(ByteBuffer.wrap(data, 3, data.length - 3));
+        Assert.assertEquals(expected, Crc32C.compute(data, 3, data.length - 3));
+        Assert.assertEquals(expected, Crc32C.compute(direct));
+        Assert.assertEquals(3, direct.position());
+
+        Assert.assertEquals(12345, Crc32C.unmask(Crc32C.mask(12345)));
+    }
+
+    @Test
+    public void sameBytesAsStreamWriter() throws IOException {
+        File streamFile = makeTempFile();
+        File channelFile = makeTempFile();
+        List<byte[]> records = makeRecords();
+
+        try (FileOutputStream stream = new FileOutputStream(streamFile)) {
+            for (byte[] record : records) {
+                TFRecordWriter.writeToStream(record, stream);
+            }
+        }
+        try (TFRecordChannelWriter writer = TFRecordChannelWriter.open(channelFile, false)) {
+            writer.write(records.get(0));
+            writer.writeAll(records.subList(1, 5));
+            writer.write(ByteBuffer.wrap(records.get(5)));
+            writer.writeAll(records.subList(6, records.size()));
+            Assert.assertEquals(streamFile.length(), writer.getBytesWritten());
+        }
+        Assert.assertArrayEquals(Files.readAllBytes(streamFile.toPath()), Files.readAllBytes(channelFile.toPath()));
+    }
+
+    @Test
+    public void mappedReaderMatchesStreamReader() throws IOException {
+        File file = makeTempFile();
+        List<byte[]> records = makeRecords();
+        try (TFRecordChannelWriter writer = TFRecordChannelWriter.open(file, false)) {
+            writer.writeAll(records);
+        }
+
+        try (TFRecordMappedReader reader = new TFRecordMappedReader(file, true);
+             DataInputStream stream = new DataInputStream(new FileInputStream(file))) {
+            TFRecordReader streamReader = new TFRecordReader(stream, true);
+            for (byte[] expected : records) {
+                Assert.assertTrue(reader.hasNext());
+                ByteBuffer record = reader.next();
+                Assert.assertTrue(record.isReadOnly());
+                byte[] actual = new byte[record.remaining()];
+                record.get(actual);
+                Assert.assertArrayEquals(expected, actual);
+                Assert.assertArrayEquals(expected, streamReader.read());
+            }
+            Assert.assertFalse(reader.hasNext());
+            Assert.assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void loadSavedSequences() throws IOException {
+        List<SequenceExample> sequences = TFRecordDataParsers.loadSequencesFromTFRecord(exampleRunFile);
+        Assert.assertFalse(sequences.isEmpty());
+
+        // Same runs as the old stream reader gives.
+        try (DataInputStream stream = new DataInputStream(new FileInputStream(exampleRunFile))) {
+            TFRecordReader streamReader = new TFRecordReader(stream, true);
+            for (SequenceExample sequence : sequences) {
+                Assert.assertEquals(SequenceExample.parseFrom(streamReader.read()), sequence);
+            }
+            Assert.assertNull(streamReader.read());
+        }
+    }
+
+    @Test
+    public void truncatedFileFails() throws IOException {
+        File file = makeTempFile();
+        try (TFRecordChannelWriter writer = TFRecordChannelWriter.open(file, false)) {
+            writer.writeAll(makeRecords());
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+        try (TFRecordMappedReader reader = new TFRecordMappedReader(file, true)) {
+            int recordsRead = 0;
+            try {
+                while (reader.next() != null) {
+                    recordsRead++;
+                }
+                Assert.fail("Truncated record was not caught.");
+            } catch (IOException e) {
+                Assert.assertEquals(makeRecords().size() - 1, recordsRead);
+            }
+        }
+    }
+
+    @Test
+    public void corruptedRecordFails() throws IOException {
+        File file = makeTempFile();
+        try (TFRecordChannelWriter writer = TFRecordChannelWriter.open(file, false)) {
+            writer.write("some record".getBytes(StandardCharsets.US_ASCII));
+        }
+        byte[] contents = Files.readAllBytes(file.toPath());
+        contents[TFRecordChannelWriter.HEADER_BYTES + 2] ^= 1;
+        Files.write(file.toPath(), contents);
+
+        try (TFRecordMappedReader reader = new TFRecordMappedReader(file, true)) {
+            reader.next();
+            Assert.fail("Corrupted record was not caught.");
+        } catch (IOException e) {
+            // Expected.
+        }
+        try (TFRecordMappedReader reader = new TFRecordMappedReader(file, false)) {
+            Assert.assertFalse(Arrays.equals("some record".getBytes(StandardCharsets.US_ASCII),
+                    toArray(reader.next())));
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.get(array);
+        return array;
+    }
+}
@@ -0,0 +1,166 @@
+package data;
+
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tensorflow.example.Feature;
+import org.tensorflow.example.Features;
+import org.tensorflow.example.Int64List;
+import org.tensorflow.example.SequenceExample;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class TFRecordDatasetTest {
+
+    private static final File exampleRunFile = new File("src/test/resources/saved_data_examples/example_run.TFRecord");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Sequence with no states, only an id to check the order it comes back in.
+     */
+    private static SequenceExample makeSequence(long id) {
+        Feature idFeature = Feature.newBuilder().setInt64List(Int64List.newBuilder().addValue(id)).build();
+        return SequenceExample.newBuilder().setContext(Features.newBuilder().putFeature("ID", idFeature)).build();
+    }
+
+    private static long getId(SequenceExample sequence) {
+        return sequence.getContext().getFeatureMap().get("ID").getInt64List().getValue(0);
+    }
+
+    /**
+     * Write files with the given numbers of sequences in them, with ids counting up across all the files.
+     */
+    private List<File> makeFiles(int... sequencesPerFile) throws IOException {
+        List<File> files = new ArrayList<>();
+        long id = 0;
+        for (int count : sequencesPerFile) {
+            File file = folder.newFile("dataset_" + files.size() + ".TFRecord");
+            try (TFRecordChannelWriter writer = TFRecordChannelWriter.open(file, false)) {
+                for (int i = 0; i < count; i++) {
+                    writer.write(makeSequence(id++).toByteArray());
+                }
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    @Test
+    public void statesMatchStateQWOP() throws IOException {
+        List<SequenceExample> loaded = TFRecordDataParsers.loadSequencesFromTFRecord(exampleRunFile);
+        TFRecordDataset dataset = new TFRecordDataset(Collections.singletonList(exampleRunFile), true);
+
+        List<float[][]> runs = dataset.runStates(false).collect(Collectors.toList());
+        List<float[][]> runColumns = dataset.runStateColumns(false).collect(Collectors.toList());
+        Assert.assertEquals(loaded.size(), runs.size());
+        Assert.assertEquals(loaded.size(), runColumns.size());
+
+        int totalStates = 0;
+        for (int run = 0; run < runs.size(); run++) {
+            StateQWOP[] states = TFRecordDataParsers.getStatesFromLoadedSequence(loaded.get(run));
+            float[][] rows = runs.get(run);
+            float[][] columns = runColumns.get(run);
+            Assert.assertEquals(states.length, rows.length);
+            Assert.assertEquals(StateQWOP.STATE_SIZE, columns.length);
+            for (int i = 0; i < states.length; i++) {
+                float[] expected = states[i].flattenState(0f);
+                Assert.assertArrayEquals(expected, rows[i], 0f);
+                Assert.assertEquals(states[i], new StateQWOP(rows[i], false));
+                for (int j = 0; j < StateQWOP.STATE_SIZE; j++) {
+                    Assert.assertEquals(expected[j], columns[j][i], 0f);
+                }
+            }
+            totalStates += states.length;
+        }
+        Assert.assertTrue(totalStates > 0);
+        Assert.assertEquals(totalStates, dataset.states(true).count());
+    }
+
+    @Test
+    public void filesInOrder() throws IOException {
+        TFRecordDataset dataset = new TFRecordDataset(makeFiles(3, 0, 1, 5, 2, 4, 1), false);
+        List<Long> expected = IntStream.range(0, 16).mapToObj(Long::valueOf).collect(Collectors.toList());
+
+        Assert.assertEquals(expected, dataset.sequences(false).map(TFRecordDatasetTest::getId)
+                .collect(Collectors.toList()));
+        // Split between threads, but still put back together in order.
+        Assert.assertEquals(expected, dataset.sequences(true).map(TFRecordDatasetTest::getId)
+                .collect(Collectors.toList()));
+        Assert.assertEquals(16, dataset.sequences(true).unordered().map(TFRecordDatasetTest::getId).distinct()
+                .count());
+    }
+
+    @Test
+    public void splitPartwayThroughFile() throws IOException {
+        TFRecordDataset dataset = new TFRecordDataset(makeFiles(2, 2, 2), false);
+        Spliterator<SequenceExample> rest = dataset.sequences(false).spliterator();
+        List<Long> ids = new ArrayList<>();
+        Assert.assertTrue(rest.tryAdvance(s -> ids.add(getId(s))));
+
+        // The first file is partway done, so it goes with the first half, along with the second file.
+        Spliterator<SequenceExample> first = rest.trySplit();
+        Assert.assertNotNull(first);
+        first.forEachRemaining(s -> ids.add(getId(s)));
+        Assert.assertEquals(4, ids.size());
+        rest.forEachRemaining(s -> ids.add(getId(s)));
+        Assert.assertEquals(IntStream.range(0, 6).mapToObj(Long::valueOf).collect(Collectors.toList()), ids);
+    }
+
+    @Test
+    public void stopEarly() throws IOException {
+        TFRecordDataset dataset = new TFRecordDataset(makeFiles(4, 4), true);
+        try (Stream<SequenceExample> sequences = dataset.sequences(false)) {
+            Assert.assertEquals(5, getId(sequences.skip(5).findFirst().orElseThrow(AssertionError::new)));
+        }
+    }
+
+    @Test
+    public void fromDirectory() throws IOException {
+        List<File> files = makeFiles(1, 2);
+        folder.newFile("not_a_record.txt");
+        TFRecordDataset dataset = TFRecordDataset.fromDirectory(folder.getRoot(), true);
+        Assert.assertEquals(files, dataset.getFiles());
+        Assert.assertEquals(3, dataset.sequences(false).count());
+    }
+
+    @Test
+    public void shuffle() {
+        List<Integer> source = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+
+        // A buffer of one does nothing.
+        Assert.assertEquals(source, TFRecordDataset.shuffle(source.stream(), 1, new Random(1))
+                .collect(Collectors.toList()));
+
+        // Every element comes out once, and none comes out before it could have been buffered.
+        int bufferSize = 20;
+        List<Integer> shuffled = TFRecordDataset.shuffle(source.stream(), bufferSize, new Random(1))
+                .collect(Collectors.toList());
+        Assert.assertNotEquals(source, shuffled);
+        Assert.assertEquals(source, shuffled.stream().sorted().collect(Collectors.toList()));
+        for (int i = 0; i < shuffled.size(); i++) {
+            Assert.assertTrue(shuffled.get(i) < i + bufferSize);
+        }
+
+        // Same seed, same order.
+        Assert.assertEquals(shuffled, TFRecordDataset.shuffle(source.stream(), bufferSize, new Random(1))
+                .collect(Collectors.toList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingFile() {
+        new TFRecordDataset(Collections.singletonList(new File("not_a_file.TFRecord")), true);
+    }
+}
@@ -0,0 +1,148 @@
+package game.action;
+
+import game.qwop.CommandQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ActionCursorTest {
+
+    private static final CommandQWOP[] commands = new CommandQWOP[]{CommandQWOP.NONE, CommandQWOP.Q, CommandQWOP.WO,
+            CommandQWOP.QP, CommandQWOP.P};
+
+    private static List<Action<CommandQWOP>> makeActions(Random random, int count) {
+        List<Action<CommandQWOP>> actions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            actions.add(new Action<>(random.nextInt(6), commands[random.nextInt(commands.length)])); // Some are 0.
+        }
+        return actions;
+    }
+
+    /**
+     * Poll both all the way through, checking that they agree at every timestep.
+     */
+    private static void assertSameAsQueue(ActionQueue<CommandQWOP> queue, ActionCursor<CommandQWOP> cursor) {
+        Assert.assertEquals(queue.getTotalQueueLengthTimesteps(), cursor.getTotalQueueLengthTimesteps());
+        Assert.assertEquals(queue.getActionsInCurrentRun(), cursor.getActionsInCurrentRun());
+        while (!queue.isEmpty()) {
+            Assert.assertFalse(cursor.isEmpty());
+            Assert.assertEquals(queue.peekCommand(), cursor.peekCommand());
+            Assert.assertEquals(queue.peekThisAction(), cursor.peekThisAddedAction());
+            Assert.assertEquals(queue.peekNextAction(), cursor.peekNextAddedAction());
+            Assert.assertEquals(queue.getCurrentActionIdx(), cursor.getCurrentActionIdx());
+            Assert.assertSame(queue.pollCommand(), cursor.pollCommand());
+            Assert.assertEquals(queue.peekThisAction().getTimestepsRemaining(), cursor.getTimestepsRemainingInAction());
+        }
+        Assert.assertTrue(cursor.isEmpty());
+    }
+
+    @Test
+    public void matchesActionQueue() {
+        Random random = new Random(12);
+        for (int trial = 0; trial < 50; trial++) {
+            List<Action<CommandQWOP>> actions = makeActions(random, 1 + random.nextInt(80));
+            actions.add(new Action<>(3, CommandQWOP.O)); // At least one non-empty action.
+            ActionQueue<CommandQWOP> queue = new ActionQueue<>();
+            ActionCursor<CommandQWOP> cursor = new ActionCursor<>();
+            queue.addSequence(actions);
+            cursor.addSequence(actions);
+            assertSameAsQueue(queue, cursor);
+
+            // More added after running out.
+            queue.addAction(new Action<>(2, CommandQWOP.W));
+            cursor.addAction(new Action<>(2, CommandQWOP.W));
+            assertSameAsQueue(queue, cursor);
+        }
+    }
+
+    @Test
+    public void addedActionsAreNotPolled() {
+        Action<CommandQWOP> action = new Action<>(4, CommandQWOP.QP);
+        ActionCursor<CommandQWOP> cursor = new ActionCursor<>();
+        cursor.addSequence(action, action);
+        while (!cursor.isEmpty()) {
+            Assert.assertSame(CommandQWOP.QP, cursor.pollCommand());
+        }
+        Assert.assertEquals(8, cursor.getCommandsPolled());
+        Assert.assertSame(action, cursor.peekThisAddedAction());
+        Assert.assertEquals(4, action.getTimestepsRemaining());
+    }
+
+    @Test
+    public void clearAndReset() {
+        ActionCursor<CommandQWOP> cursor = new ActionCursor<>();
+        Assert.assertTrue(cursor.isEmpty());
+        Assert.assertNull(cursor.peekThisAddedAction());
+        cursor.addSequence(new Action<>(2, CommandQWOP.Q), new Action<>(1, CommandQWOP.W));
+        cursor.pollCommand();
+        cursor.pollCommand();
+        // Stays on the finished action until the next poll, like ActionQueue.
+        Assert.assertEquals(0, cursor.getCurrentActionIdx());
+        Assert.assertEquals(0, cursor.getTimestepsRemainingInAction());
+        Assert.assertSame(CommandQWOP.W, cursor.peekCommand());
+
+        cursor.resetQueue();
+        Assert.assertEquals(0, cursor.getCurrentActionIdx());
+        Assert.assertEquals(0, cursor.getCommandsPolled());
+        Assert.assertSame(CommandQWOP.Q, cursor.pollCommand());
+
+        cursor.clearAll();
+        Assert.assertTrue(cursor.isEmpty());
+        Assert.assertEquals(0, cursor.getTotalQueueLengthTimesteps());
+        cursor.addAction(new Action<>(1, CommandQWOP.O));
+        Assert.assertSame(CommandQWOP.O, cursor.pollCommand());
+        Assert.assertTrue(cursor.isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void pollEmpty() {
+        ActionCursor<CommandQWOP> cursor = new ActionCursor<>();
+        cursor.addAction(new Action<>(1, CommandQWOP.O));
+        cursor.pollCommand();
+        cursor.pollCommand();
+    }
+
+    @Test
+    public void addPath() {
+        ActionPath<CommandQWOP> path = ActionPath.<CommandQWOP>empty()
+                .append(new Action<>(2, CommandQWOP.Q))
+                .append(new Action<>(1, CommandQWOP.W));
+        ActionCursor<CommandQWOP> cursor = new ActionCursor<>();
+        cursor.addPath(path, 1);
+        Assert.assertEquals(1, cursor.getTotalQueueLengthTimesteps());
+        Assert.assertSame(CommandQWOP.W, cursor.pollCommand());
+    }
+
+    @Test
+    public void splitQueueAtTimestep() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 20; trial++) {
+            List<Action<CommandQWOP>> actions = makeActions(random, 1 + random.nextInt(20));
+            actions.add(new Action<>(3, CommandQWOP.O));
+            ActionQueue<CommandQWOP> queue = new ActionQueue<>();
+            ActionCursor<CommandQWOP> cursor = new ActionCursor<>();
+            queue.addSequence(actions);
+            cursor.addSequence(actions);
+
+            for (int timestep = 0; timestep < queue.getTotalQueueLengthTimesteps(); timestep++) {
+                List<ActionQueue<CommandQWOP>> queueParts = queue.splitQueueAtTimestep(timestep);
+                List<ActionCursor<CommandQWOP>> cursorParts = cursor.splitQueueAtTimestep(timestep);
+                Assert.assertEquals(timestep, cursorParts.get(0).getTotalQueueLengthTimesteps());
+                for (int i = 0; i < 2; i++) {
+                    Assert.assertEquals(queueParts.get(i).getActionsInCurrentRun(),
+                            cursorParts.get(i).getActionsInCurrentRun());
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void splitPastEnd() {
+        ActionCursor<CommandQWOP> cursor = new ActionCursor<>();
+        cursor.addAction(new Action<>(3, CommandQWOP.O));
+        cursor.splitQueueAtTimestep(3);
+    }
+}
@@ -0,0 +1,148 @@
+package game.action;
+
+import game.qwop.CommandQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+public class ActionPathTest {
+
+    @Test
+    public void appendKeepsPrefix() {
+        ActionPath<CommandQWOP> empty = ActionPath.empty();
+        Assert.assertTrue(empty.isEmpty());
+        Assert.assertEquals(0, empty.getTotalTimesteps());
+
+        Action<CommandQWOP> a1 = new Action<>(5, CommandQWOP.Q);
+        Action<CommandQWOP> a2 = new Action<>(7, CommandQWOP.WO);
+        ActionPath<CommandQWOP> path1 = empty.append(a1);
+        ActionPath<CommandQWOP> path2 = path1.append(a2);
+
+        Assert.assertEquals(0, empty.size());
+        Assert.assertEquals(1, path1.size());
+        Assert.assertEquals(2, path2.size());
+        Assert.assertEquals(5, path1.getTotalTimesteps());
+        Assert.assertEquals(12, path2.getTotalTimesteps());
+        Assert.assertSame(a1, path2.getAction(0));
+        Assert.assertSame(a2, path2.getAction(1));
+        Assert.assertEquals(7, path2.getDuration(1));
+        Assert.assertEquals(CommandQWOP.WO, path2.getCommand(1));
+
+        List<Action<CommandQWOP>> list = new ArrayList<>();
+        list.add(new Action<>(1, CommandQWOP.P)); // Replaced.
+        path2.toList(list);
+        Assert.assertEquals(2, list.size());
+        Assert.assertSame(a1, list.get(0));
+        Assert.assertSame(a2, list.get(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void readPastEnd() {
+        ActionPath<CommandQWOP> path = ActionPath.<CommandQWOP>empty().append(new Action<>(5, CommandQWOP.Q));
+        path.getDuration(1);
+    }
+
+    @Test
+    public void siblingsDiverge() {
+        ActionPath<CommandQWOP> prefix = ActionPath.<CommandQWOP>empty().append(new Action<>(5, CommandQWOP.Q));
+        ActionPath<CommandQWOP> first = prefix.append(new Action<>(3, CommandQWOP.O));
+        ActionPath<CommandQWOP> second = prefix.append(new Action<>(4, CommandQWOP.P));
+
+        Assert.assertEquals(1, prefix.size());
+        Assert.assertEquals(CommandQWOP.O, first.getCommand(1));
+        Assert.assertEquals(CommandQWOP.P, second.getCommand(1));
+        Assert.assertSame(first.getAction(0), second.getAction(0));
+        Assert.assertEquals(8, first.getTotalTimesteps());
+        Assert.assertEquals(9, second.getTotalTimesteps());
+    }
+
+    @Test
+    public void longPathsGrow() {
+        ActionPath<CommandQWOP> path = ActionPath.empty();
+        for (int i = 1; i <= 100; i++) {
+            path = path.append(new Action<>(i, CommandQWOP.NONE));
+        }
+        Assert.assertEquals(100, path.size());
+        Assert.assertEquals(100 * 101 / 2, path.getTotalTimesteps());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i + 1, path.getDuration(i));
+        }
+
+        // Longer than the cursor's initial arrays.
+        ActionCursor<CommandQWOP> cursor = new ActionCursor<>();
+        cursor.addPath(path, 10);
+        Assert.assertEquals(100 * 101 / 2 - 10 * 11 / 2, cursor.getTotalQueueLengthTimesteps());
+        Assert.assertSame(path.getAction(10), cursor.peekThisAddedAction());
+    }
+
+    @Test
+    public void concurrentSiblings() {
+        ActionPath<CommandQWOP> prefix = ActionPath.empty();
+        for (int i = 0; i < 10; i++) {
+            prefix = prefix.append(new Action<>(i + 1, CommandQWOP.Q));
+        }
+        ActionPath<CommandQWOP> sharedPrefix = prefix;
+        ConcurrentLinkedQueue<ActionPath<CommandQWOP>> children = new ConcurrentLinkedQueue<>();
+        IntStream.range(0, 1000).parallel().forEach(i -> children.add(sharedPrefix.append(new Action<>(i,
+                CommandQWOP.P))));
+
+        boolean[] seen = new boolean[1000];
+        for (ActionPath<CommandQWOP> child : children) {
+            Assert.assertEquals(11, child.size());
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals(i + 1, child.getDuration(i));
+            }
+            seen[child.getDuration(10)] = true;
+        }
+        for (boolean s : seen) {
+            Assert.assertTrue(s);
+        }
+    }
+
+    @Test
+    public void queuePath() {
+        ActionPath<CommandQWOP> path = ActionPath.<CommandQWOP>empty()
+                .append(new Action<>(2, CommandQWOP.Q))
+                .append(new Action<>(1, CommandQWOP.W))
+                .append(new Action<>(3, CommandQWOP.O));
+
+        ActionQueue<CommandQWOP> queue = new ActionQueue<>();
+        queue.addPath(path, 1);
+        Assert.assertEquals(4, queue.getTotalQueueLengthTimesteps());
+        Assert.assertEquals(CommandQWOP.W, queue.pollCommand());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(CommandQWOP.O, queue.pollCommand());
+        }
+        Assert.assertTrue(queue.isEmpty());
+
+        // The path's own actions were not polled.
+        Assert.assertEquals(3, path.getAction(2).getTimestepsRemaining());
+    }
+
+    @Test
+    public void cursorSkipsZeroDuration() {
+        ActionPath<CommandQWOP> path = ActionPath.<CommandQWOP>empty()
+                .append(new Action<>(2, CommandQWOP.Q))
+                .append(new Action<>(0, CommandQWOP.W))
+                .append(new Action<>(1, CommandQWOP.O));
+
+        ActionCursor<CommandQWOP> cursor = new ActionCursor<>();
+        cursor.addAction(new Action<>(1, CommandQWOP.P));
+        cursor.addPath(path, 0);
+        Assert.assertEquals(4, cursor.getTotalQueueLengthTimesteps());
+        Assert.assertEquals(CommandQWOP.P, cursor.pollCommand());
+        Assert.assertEquals(CommandQWOP.Q, cursor.pollCommand());
+        Assert.assertEquals(CommandQWOP.Q, cursor.pollCommand());
+        Assert.assertEquals(CommandQWOP.O, cursor.pollCommand());
+        Assert.assertTrue(cursor.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queueEmptyPath() {
+        new ActionQueue<CommandQWOP>().addPath(ActionPath.empty(), 0);
+    }
+}
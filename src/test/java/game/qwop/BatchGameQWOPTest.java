@@ -0,0 +1,224 @@
+package game.qwop;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchGameQWOPTest {
+
+    private static final CommandQWOP[] commandCycle = {CommandQWOP.WO, CommandQWOP.QP, CommandQWOP.NONE,
+            CommandQWOP.Q, CommandQWOP.O, CommandQWOP.W, CommandQWOP.P};
+
+    /**
+     * Different keys in each lane, changing every few calls, so lanes fall at different times.
+     */
+    private static CommandQWOP[] laneCommands(int laneCount, int call) {
+        CommandQWOP[] commands = new CommandQWOP[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            commands[lane] = commandCycle[(call / (lane + 1) + lane * 3) % commandCycle.length];
+        }
+        return commands;
+    }
+
+    private static void assertSameGame(String message, GameQWOP game, BatchGameQWOP batch, int lane) {
+        float[] expected = new float[StateQWOP.STATE_SIZE];
+        float[] actual = new float[StateQWOP.STATE_SIZE];
+        game.getCurrentState(expected, 0);
+        batch.getCurrentState(lane, actual, 0);
+        for (int i = 0; i < expected.length; i++) {
+            // Bit for bit, including the sign of zeros.
+            Assert.assertEquals(message + ", state variable " + i, Float.floatToIntBits(expected[i]),
+                    Float.floatToIntBits(actual[i]));
+        }
+        Assert.assertEquals(message, game.isFailed(), batch.isFailed(lane));
+        Assert.assertEquals(message, game.isRightFootDown(), batch.isRightFootDown(lane));
+        Assert.assertEquals(message, game.isLeftFootDown(), batch.isLeftFootDown(lane));
+        Assert.assertEquals(message, game.getTimestepsThisGame(), batch.getTimestepsThisGame(lane));
+    }
+
+    @Test
+    public void lanesMatchSeparateGames() {
+        int laneCount = 6;
+        BatchGameQWOP batch = new BatchGameQWOP(laneCount);
+        GameQWOP[] games = new GameQWOP[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            games[lane] = new GameQWOP(true);
+            assertSameGame("Initial lane " + lane, games[lane], batch, lane);
+        }
+        // Long enough for every runner to fall, with many time of impact events along the way.
+        for (int call = 0; call < 120; call++) {
+            CommandQWOP[] commands = laneCommands(laneCount, call);
+            batch.step(commands, 5);
+            for (int lane = 0; lane < laneCount; lane++) {
+                for (int i = 0; i < 5; i++) {
+                    games[lane].step(commands[lane]);
+                }
+                assertSameGame("Lane " + lane + ", call " + call, games[lane], batch, lane);
+            }
+        }
+    }
+
+    @Test
+    public void sameCommandForAllLanes() {
+        BatchGameQWOP batch = new BatchGameQWOP(3);
+        GameQWOP game = new GameQWOP(true);
+        for (int i = 0; i < 10; i++) {
+            batch.step(CommandQWOP.QP, 4);
+            batch.step(CommandQWOP.WO, 4);
+            for (int j = 0; j < 4; j++) {
+                game.step(CommandQWOP.QP);
+            }
+            for (int j = 0; j < 4; j++) {
+                game.step(CommandQWOP.WO);
+            }
+        }
+        for (int lane = 0; lane < 3; lane++) {
+            assertSameGame("Lane " + lane, game, batch, lane);
+        }
+    }
+
+    @Test
+    public void nullCommandSkipsLane() {
+        BatchGameQWOP batch = new BatchGameQWOP(2);
+        GameQWOP game = new GameQWOP(true);
+        batch.step(new CommandQWOP[]{null, CommandQWOP.QP}, 10);
+        for (int i = 0; i < 10; i++) {
+            game.step(CommandQWOP.QP);
+        }
+        assertSameGame("Skipped lane", new GameQWOP(true), batch, 0);
+        assertSameGame("Stepped lane", game, batch, 1);
+    }
+
+    @Test
+    public void resetGame() {
+        BatchGameQWOP batch = new BatchGameQWOP(2);
+        batch.step(CommandQWOP.WO, 60);
+        batch.resetGame(0);
+        assertSameGame("Reset lane", new GameQWOP(true), batch, 0);
+        Assert.assertEquals(60, batch.getTimestepsThisGame(1));
+
+        // A reset lane runs like a new game.
+        GameQWOP game = new GameQWOP(true);
+        batch.step(CommandQWOP.QP, 20);
+        for (int i = 0; i < 20; i++) {
+            game.step(CommandQWOP.QP);
+        }
+        assertSameGame("Stepped after reset", game, batch, 0);
+    }
+
+    @Test
+    public void setState() {
+        GameQWOP source = new GameQWOP(true);
+        for (int i = 0; i < 25; i++) {
+            source.step(i % 10 < 5 ? CommandQWOP.WO : CommandQWOP.QP);
+        }
+        StateQWOP state = source.getCurrentState();
+
+        BatchGameQWOP batch = new BatchGameQWOP(2);
+        GameQWOP game = new GameQWOP(true);
+        for (int i = 0; i < 7; i++) {
+            batch.step(CommandQWOP.Q, 1);
+            game.step(CommandQWOP.Q);
+        }
+        batch.setState(1, state);
+        game.setState(state);
+        for (int i = 0; i < 40; i++) {
+            CommandQWOP command = i % 8 < 4 ? CommandQWOP.QP : CommandQWOP.WO;
+            batch.step(new CommandQWOP[]{null, command}, 1);
+            game.step(command);
+            assertSameGame("Timestep " + i, game, batch, 1);
+        }
+    }
+
+    @Test
+    public void fastFall() {
+        // Fast enough that body parts would pass into the track without time of impact handling.
+        float[] state = GameQWOP.getInitialState().flattenState();
+        for (int i = 0; i < 12; i++) {
+            state[i * 6 + 4] = 120f;
+        }
+        BatchGameQWOP batch = new BatchGameQWOP(1);
+        GameQWOP game = new GameQWOP(true);
+        batch.setState(0, new StateQWOP(state, false));
+        game.setState(new StateQWOP(state, false));
+        for (int i = 0; i < 40; i++) {
+            batch.step(CommandQWOP.NONE, 1);
+            game.step(CommandQWOP.NONE);
+            assertSameGame("Timestep " + i, game, batch, 0);
+        }
+    }
+
+    @Test
+    public void leavingWorldFailsLane() {
+        float[] state = GameQWOP.getInitialState().flattenState();
+        for (int i = 0; i < 12; i++) {
+            state[i * 6] += 5000f;
+        }
+        BatchGameQWOP batch = new BatchGameQWOP(2);
+        batch.setState(0, new StateQWOP(state, false));
+        Assert.assertTrue(batch.isFailed(0));
+        batch.step(CommandQWOP.QP, 5);
+        Assert.assertEquals(0, batch.getTimestepsThisGame(0));
+        Assert.assertEquals(5, batch.getTimestepsThisGame(1));
+
+        // Resetting brings the lane back.
+        GameQWOP game = new GameQWOP(true);
+        batch.resetGame(0);
+        batch.step(CommandQWOP.QP, 5);
+        for (int i = 0; i < 5; i++) {
+            game.step(CommandQWOP.QP);
+        }
+        assertSameGame("Reset lane", game, batch, 0);
+    }
+
+    @Test
+    public void laneView() {
+        BatchGameQWOP batch = new BatchGameQWOP(2);
+        BatchGameQWOP.Lane lane = batch.getLane(1);
+        GameQWOP game = new GameQWOP(true);
+        for (int i = 0; i < 30; i++) {
+            lane.step(CommandQWOP.WO);
+            game.step(CommandQWOP.WO);
+        }
+        assertSameGame("Lane view", game, batch, 1);
+        Assert.assertEquals(0, batch.getTimestepsThisGame(0));
+        Assert.assertArrayEquals(game.getCurrentState().flattenState(), lane.getCurrentState().flattenState(), 0f);
+        Assert.assertEquals(GameQWOP.STATE_SIZE, lane.getStateDimension());
+        Assert.assertEquals(game.getNumberOfChoices(), lane.getNumberOfChoices());
+
+        lane.resetGame();
+        assertSameGame("Reset lane view", new GameQWOP(true), batch, 1);
+    }
+
+    @Test
+    public void getCurrentStatesIsStructOfArrays() {
+        int laneCount = 3;
+        BatchGameQWOP batch = new BatchGameQWOP(laneCount);
+        batch.step(laneCommands(laneCount, 4), 12);
+        float[] states = new float[StateQWOP.STATE_SIZE * laneCount];
+        batch.getCurrentStates(states);
+        float[] state = new float[StateQWOP.STATE_SIZE];
+        for (int lane = 0; lane < laneCount; lane++) {
+            batch.getCurrentState(lane, state, 0);
+            for (int v = 0; v < StateQWOP.STATE_SIZE; v++) {
+                Assert.assertEquals(state[v], states[v * laneCount + lane], 0f);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCurrentStatesTooSmall() {
+        BatchGameQWOP batch = new BatchGameQWOP(2);
+        batch.getCurrentStates(new float[StateQWOP.STATE_SIZE * 2 - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongCommandCount() {
+        BatchGameQWOP batch = new BatchGameQWOP(2);
+        batch.step(new CommandQWOP[3], 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noLanes() {
+        new BatchGameQWOP(0);
+    }
+}
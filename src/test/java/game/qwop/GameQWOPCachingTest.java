@@ -4,7 +4,9 @@ import game.state.IState;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 // Combined with testing for StateQWOPDelayEmbedded
 public class GameQWOPCachingTest {
@@ -215,6 +217,79 @@ public class GameQWOPCachingTest {
         return justPositions;
     }
 
+    @Test
+    public void longRunMatchesStateHistory() {
+        CommandQWOP[] commands = {CommandQWOP.QP, CommandQWOP.WO, CommandQWOP.NONE, CommandQWOP.Q, CommandQWOP.P};
+        for (GameQWOPCaching.StateType stateType : GameQWOPCaching.StateType.values()) {
+            for (int delay = 1; delay < 5; delay++) {
+                for (int numDelayedStates = 0; numDelayedStates < 4; numDelayedStates++) {
+                    GameQWOPCaching<StateQWOPDelayEmbedded> gameCache = new GameQWOPCaching<>(delay,
+                            numDelayedStates, stateType);
+                    GameQWOP gameBasic = new GameQWOP();
+                    List<StateQWOP> history = new ArrayList<>();
+                    history.add(GameQWOP.getInitialState());
+                    float[] flatState = new float[gameCache.getStateDimension()];
+
+                    for (int step = 0; step < 70; step++) {
+                        CommandQWOP command = commands[(step / 7) % commands.length];
+                        gameCache.step(command);
+                        gameBasic.step(command);
+                        history.add(0, gameBasic.getCurrentState());
+
+                        StateQWOP[] expectedStates = new StateQWOP[numDelayedStates + 1];
+                        for (int i = 0; i < expectedStates.length; i++) {
+                            expectedStates[i] = history.get(Math.min(delay * i, history.size() - 1));
+                        }
+                        float[] expected = makeDelayEmbedded(expectedStates, stateType).flattenState();
+
+                        StateQWOPDelayEmbedded actualState = gameCache.getCurrentState();
+                        Assert.assertArrayEquals(expectedStates, actualState.getIndividualStates());
+                        Assert.assertArrayEquals(expected, actualState.flattenState(), 0f);
+                        gameCache.getCurrentState(flatState);
+                        Assert.assertArrayEquals(expected, flatState, 0f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void setStateRestoresHistory() {
+        GameQWOPCaching<StateQWOPDelayEmbedded_Differences> gameCache = new GameQWOPCaching<>(2, 3,
+                GameQWOPCaching.StateType.DIFFERENCES);
+        for (int i = 0; i < 30; i++) {
+            gameCache.step(i % 10 < 5 ? CommandQWOP.QP : CommandQWOP.WO);
+        }
+        StateQWOPDelayEmbedded_Differences savedState = gameCache.getCurrentState();
+
+        GameQWOPCaching<StateQWOPDelayEmbedded_Differences> gameRestored = new GameQWOPCaching<>(2, 3,
+                GameQWOPCaching.StateType.DIFFERENCES);
+        gameRestored.setState(savedState);
+        Assert.assertArrayEquals(savedState.getIndividualStates(),
+                gameRestored.getCurrentState().getIndividualStates());
+
+        // Newest state moves into the first delayed slot after one delay.
+        gameRestored.step(CommandQWOP.NONE);
+        gameRestored.step(CommandQWOP.NONE);
+        Assert.assertEquals(savedState.getIndividualStates()[0],
+                gameRestored.getCurrentState().getIndividualStates()[1]);
+        Assert.assertEquals(savedState.getIndividualStates()[2],
+                gameRestored.getCurrentState().getIndividualStates()[3]);
+    }
+
+    private static StateQWOPDelayEmbedded makeDelayEmbedded(StateQWOP[] states, GameQWOPCaching.StateType stateType) {
+        switch (stateType) {
+            case POSES:
+                return new StateQWOPDelayEmbedded_Poses(states);
+            case DIFFERENCES:
+                return new StateQWOPDelayEmbedded_Differences(states);
+            case HIGHER_DIFFERENCES:
+                return new StateQWOPDelayEmbedded_HigherDifferences(states);
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
     @Test
     public void finiteDifferenceStates() {
         float[] f1 = {0.24f, 0.44f, 0.74f, 0.56f, 0.44f, 0.60f, 0.18f, 0.81f, 0.82f, 0.49f, 0.76f, 0.40f, 0.73f, 0.15f, 0.51f, 0.67f, 0.15f, 0.06f, 0.34f, 0.45f, 0.76f, 0.13f, 0.90f, 0.22f, 0.38f, 0.42f, 0.97f, 0.18f, 0.88f, 0.55f, 0.32f, 0.90f, 0.54f, 0.46f, 0.81f, 0.36f, 0.97f, 0.56f, 0.77f, 0.68f, 0.21f, 0.83f, 0.87f, 0.04f, 0.61f, 0.27f, 0.75f, 0.49f, 0.79f, 0.52f, 0.60f, 0.22f, 0.36f, 0.30f, 0.85f, 0.97f, 0.62f, 0.89f, 0.98f, 0.65f, 0.80f, 0.40f, 0.48f, 0.06f, 0.80f, 0.35f, 0.85f, 0.99f, 0.48f, 0.36f, 0.05f, 0.91f};
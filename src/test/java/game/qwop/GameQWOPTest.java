@@ -1,12 +1,18 @@
 package game.qwop;
 
+import com.sun.management.ThreadMXBean;
 import game.action.ActionQueue;
 import game.qwop.IStateQWOP.ObjectName;
 import game.state.IState;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.*;
@@ -393,6 +399,274 @@ public class GameQWOPTest {
             }
         }
     }
+
+    @Test
+    public void copyStateContinuesLikeSerializedState() {
+        // Copy at many points along a run, so that contacts are made and broken in between.
+        ActionQueue<CommandQWOP> actions = ActionQueuesQWOP.makeShortQueue();
+        List<CommandQWOP> commands = new ArrayList<>();
+        while (!actions.isEmpty()) {
+            commands.add(actions.pollCommand());
+        }
+
+        GameQWOP game = new GameQWOP();
+        GameQWOP gameCopy = new GameQWOP();
+        gameCopy.holdKeysForTimesteps(40, true, false, false, true); // Start out with some other state and contacts.
+        for (int copyPoint = 0; copyPoint < commands.size(); copyPoint += 7) {
+            game.resetGame();
+            for (int i = 0; i < copyPoint; i++) {
+                game.step(commands.get(i));
+            }
+            GameQWOP gameRestored = game.restoreSerializedState(game.getSerializedState());
+            Assert.assertSame(gameCopy, gameCopy.copyStateFrom(game));
+            Assert.assertEquals(game.getTimestepsThisGame(), gameCopy.getTimestepsThisGame());
+            Assert.assertEquals(game.getWorld().getContactCount(), gameCopy.getWorld().getContactCount());
+
+            // Keep going past the end of the queue, to failure.
+            for (int i = copyPoint; i < commands.size() + 60; i++) {
+                CommandQWOP command = i < commands.size() ? commands.get(i) : CommandQWOP.QO;
+                game.step(command);
+                gameRestored.step(command);
+                gameCopy.step(command);
+
+                float[] expected = gameRestored.getCurrentState().flattenState(0f);
+                Assert.assertArrayEquals(expected, game.getCurrentState().flattenState(0f), 0f);
+                Assert.assertArrayEquals(expected, gameCopy.getCurrentState().flattenState(0f), 0f);
+                Assert.assertEquals(gameRestored.isFailed(), gameCopy.isFailed());
+                Assert.assertEquals(gameRestored.isRightFootDown(), gameCopy.isRightFootDown());
+                Assert.assertEquals(gameRestored.isLeftFootDown(), gameCopy.isLeftFootDown());
+            }
+            Assert.assertTrue(gameCopy.isFailed());
+        }
+    }
+
+    @Test
+    public void copyStateLeavesSourceAlone() {
+        GameQWOP game = new GameQWOP();
+        game.holdKeysForTimesteps(25, false, true, true, false);
+        float[] stateBefore = game.getCurrentState().flattenState(0f);
+
+        GameQWOP gameCopy = new GameQWOP();
+        gameCopy.copyStateFrom(game);
+        gameCopy.holdKeysForTimesteps(25, true, false, false, true);
+        Assert.assertArrayEquals(stateBefore, game.getCurrentState().flattenState(0f), 0f);
+
+        game.holdKeysForTimesteps(10, false, true, true, false);
+        gameCopy.copyStateFrom(game);
+        Assert.assertEquals(game.getCurrentState(), gameCopy.getCurrentState());
+
+        // Caching games bring their state history along.
+        GameQWOPCaching<StateQWOPDelayEmbedded_Poses> gameCaching = new GameQWOPCaching<>(2, 2,
+                GameQWOPCaching.StateType.POSES);
+        GameQWOPCaching<StateQWOPDelayEmbedded_Poses> gameCachingCopy = new GameQWOPCaching<>(2, 2,
+                GameQWOPCaching.StateType.POSES);
+        for (int i = 0; i < 20; i++) {
+            gameCaching.step(CommandQWOP.WO);
+        }
+        Assert.assertSame(gameCachingCopy, gameCachingCopy.copyStateFrom(gameCaching));
+        for (int i = 0; i < 20; i++) {
+            gameCaching.step(CommandQWOP.QP);
+            gameCachingCopy.step(CommandQWOP.QP);
+            Assert.assertArrayEquals(gameCaching.getCurrentState().flattenState(),
+                    gameCachingCopy.getCurrentState().flattenState(), 0f);
+        }
+    }
+
+    @Test
+    public void getCurrentStateIntoArray() {
+        GameQWOP game = new GameQWOP();
+        game.holdKeysForTimesteps(15, false, true, true, false);
+
+        float[] dest = new float[StateQWOP.STATE_SIZE + 3];
+        game.getCurrentState(dest, 3);
+        StateQWOP expected = game.getCurrentState();
+        StateQWOP fromArray = new StateQWOP(Arrays.copyOfRange(dest, 3, dest.length), game.isFailed());
+        Assert.assertEquals(expected, fromArray);
+        Assert.assertEquals(expected.getCenterX(), dest[3], 0f); // Absolute x, not relative to the body.
+
+        try {
+            game.getCurrentState(dest, 4);
+            Assert.fail("Should not fit.");
+        } catch (IndexOutOfBoundsException ignored) {}
+    }
+
+    @Test
+    public void getCurrentStateIntoBuffer() {
+        GameQWOP game = new GameQWOP();
+        game.holdKeysForTimesteps(15, true, false, false, true);
+
+        FloatBuffer buffer = FloatBuffer.allocate(2 * StateQWOP.STATE_SIZE);
+        game.getCurrentState(buffer);
+        game.step(false, false, false, false);
+        game.getCurrentState(buffer);
+        Assert.assertEquals(0, buffer.remaining());
+
+        float[] second = new float[StateQWOP.STATE_SIZE];
+        game.getCurrentState(second, 0);
+        buffer.flip();
+        buffer.position(StateQWOP.STATE_SIZE);
+        for (float val : second) {
+            Assert.assertEquals(val, buffer.get(), 0f);
+        }
+
+        try {
+            game.getCurrentState(buffer);
+            Assert.fail("Buffer should be full.");
+        } catch (BufferOverflowException ignored) {}
+    }
+
+    @Test
+    public void getCurrentStateDoesNotAllocate() {
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        GameQWOP game = new GameQWOP();
+        float[] dest = new float[StateQWOP.STATE_SIZE];
+        FloatBuffer buffer = FloatBuffer.allocate(StateQWOP.STATE_SIZE);
+        StateQWOPView view = new StateQWOPView();
+        int captures = 10000;
+
+        long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < captures; i++) {
+            game.getCurrentState(dest, 0);
+            buffer.clear();
+            game.getCurrentState(buffer);
+            view.capture(game);
+        }
+        long captureBytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+        startBytes = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < captures; i++) {
+            game.getCurrentState();
+        }
+        long allocatingBytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+        // Leave a little slack for the measurement itself.
+        Assert.assertTrue("Primitive state capture allocated " + captureBytes / (float) captures + " bytes per step.",
+                captureBytes < 1000);
+        Assert.assertTrue(allocatingBytes > captures * StateQWOP.STATEVARIABLE_COUNT * 24L);
+    }
+
+    /**
+     * Checksum of every state along a set of runs with different key patterns. Each run keeps going for a while
+     * after the runner falls, so there are plenty of contacts being made and broken.
+     */
+    private static long trajectoryChecksum(GameQWOP game) {
+        CommandQWOP[] commands = {CommandQWOP.WO, CommandQWOP.QP, CommandQWOP.NONE, CommandQWOP.Q, CommandQWOP.O,
+                CommandQWOP.W, CommandQWOP.P};
+        float[] state = new float[StateQWOP.STATE_SIZE];
+        long checksum = 17;
+        for (int run = 0; run < 24; run++) {
+            game.resetGame();
+            for (int i = 0; i < 400; i++) {
+                game.step(commands[(i / (5 + run % 13) + run) % commands.length]);
+                game.getCurrentState(state, 0);
+                for (float val : state) {
+                    checksum = 31 * checksum + Float.floatToIntBits(val);
+                }
+            }
+        }
+        return checksum;
+    }
+
+    @Test
+    public void recordedTrajectoriesUnchanged() {
+        // Recorded before the physics temporaries were pooled. Changes to the vendored JBox2D should be bit-for-bit
+        // identical unless they are meant to change the physics.
+        GameQWOP game = new GameQWOP();
+        Assert.assertEquals(0x7ee73e4ef68cb6f6L, trajectoryChecksum(game));
+
+        // Same again with the pooled temporaries already used and after a serialization round trip.
+        Assert.assertEquals(0x7ee73e4ef68cb6f6L, trajectoryChecksum(game));
+        game.holdKeysForTimesteps(30, false, true, true, false);
+        Assert.assertEquals(0x7ee73e4ef68cb6f6L,
+                trajectoryChecksum(game.restoreSerializedState(game.getSerializedState())));
+    }
+
+    @Test
+    public void directGroundContactsMatchBroadPhase() {
+        // Bounds are not quantized like the broad-phase's, so contacts could in principle start a step apart. For
+        // QWOP's shapes they do not, and the recorded trajectories come out the same to the bit.
+        Assert.assertEquals(0x7ee73e4ef68cb6f6L, trajectoryChecksum(new GameQWOP(true)));
+
+        // Contacts and foot tracking agree along the way too.
+        GameQWOP gameGeneral = new GameQWOP(false);
+        GameQWOP gameDirect = new GameQWOP(true);
+        CommandQWOP[] commands = {CommandQWOP.WO, CommandQWOP.QP, CommandQWOP.NONE, CommandQWOP.Q, CommandQWOP.O};
+        for (int i = 0; i < 400; i++) {
+            gameGeneral.step(commands[(i / 9) % commands.length]);
+            gameDirect.step(commands[(i / 9) % commands.length]);
+            Assert.assertArrayEquals(gameGeneral.getCurrentState().flattenState(0f),
+                    gameDirect.getCurrentState().flattenState(0f), 0f);
+            Assert.assertEquals(gameGeneral.getWorld().getContactCount(), gameDirect.getWorld().getContactCount());
+            Assert.assertEquals(gameGeneral.isFailed(), gameDirect.isFailed());
+            Assert.assertEquals(gameGeneral.isRightFootDown(), gameDirect.isRightFootDown());
+            Assert.assertEquals(gameGeneral.isLeftFootDown(), gameDirect.isLeftFootDown());
+        }
+        Assert.assertTrue(gameDirect.isFailed());
+    }
+
+    @Test
+    public void directGroundContactsCopyState() {
+        GameQWOP game = new GameQWOP(true);
+        game.holdKeysForTimesteps(35, false, true, true, false);
+        GameQWOP gameCopy = game.getCopy();
+        Assert.assertTrue(gameCopy.directGroundContacts);
+        gameCopy.holdKeysForTimesteps(20, true, false, false, true); // Different contacts than the source.
+        Assert.assertSame(gameCopy, gameCopy.copyStateFrom(game));
+        Assert.assertEquals(game.getWorld().getContactCount(), gameCopy.getWorld().getContactCount());
+        for (int i = 0; i < 100; i++) {
+            game.step(CommandQWOP.QO);
+            gameCopy.step(CommandQWOP.QO);
+            Assert.assertArrayEquals(game.getCurrentState().flattenState(0f),
+                    gameCopy.getCurrentState().flattenState(0f), 0f);
+        }
+
+        // Serialized games keep making contacts directly, and carry on exactly where they left off.
+        GameQWOP gameRestored = game.restoreSerializedState(game.getSerializedState());
+        Assert.assertTrue(gameRestored.getWorld().getContactCount() > 0);
+        for (int i = 0; i < 50; i++) {
+            game.step(CommandQWOP.WP);
+            gameRestored.step(CommandQWOP.WP);
+            Assert.assertArrayEquals(game.getCurrentState().flattenState(0f),
+                    gameRestored.getCurrentState().flattenState(0f), 0f);
+        }
+
+        // The two kinds of world do not copy into each other.
+        try {
+            new GameQWOP(false).copyStateFrom(game);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {}
+    }
+
+    @Test
+    public void steppingDoesNotAllocate() {
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        CommandQWOP[] commands = {CommandQWOP.WO, CommandQWOP.QP, CommandQWOP.NONE, CommandQWOP.Q, CommandQWOP.O};
+        GameQWOP game = new GameQWOP();
+        long stepBytes = 0;
+        int steps = 0;
+        for (int run = 0; run < 60; run++) {
+            game.resetGame(); // Not counted. Resets build a new world.
+            long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 300; i++) {
+                game.step(commands[(i / 12 + run) % commands.length]);
+            }
+            stepBytes += threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+            steps += 300;
+        }
+
+        // New contacts still make new objects when shapes first touch. Solving the contacts and joints, moving the
+        // broad-phase proxies, and clipping polygons should not. That used to be several kilobytes every step.
+        Assert.assertTrue("Stepping allocated " + stepBytes / (float) steps + " bytes per step.",
+                stepBytes / steps < 500);
+    }
 //    private static ActionQueue getSampleActions() {
 //        // Ran MAIN_Search_LongRun to get these. 19 steps.
 //        ActionQueue actionQueue = new ActionQueue();
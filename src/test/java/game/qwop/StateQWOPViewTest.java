@@ -0,0 +1,61 @@
+package game.qwop;
+
+import game.qwop.IStateQWOP.ObjectName;
+import game.state.StateVariable6D;
+import game.state.StateVariable6D.StateName;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StateQWOPViewTest {
+
+    @Test
+    public void captureMatchesState() {
+        GameQWOP game = new GameQWOP();
+        StateQWOPView view = new StateQWOPView();
+        for (int i = 0; i < 60; i++) {
+            game.step(i % 20 < 10, false, i % 20 >= 10, false);
+            view.capture(game);
+            StateQWOP state = game.getCurrentState();
+
+            Assert.assertEquals(state, view.toState());
+            Assert.assertEquals(state.isFailed(), view.isFailed());
+            Assert.assertEquals(state.getCenterX(), view.getCenterX(), 0f);
+            Assert.assertEquals(state.getCenterDx(), view.getCenterDx(), 0f);
+
+            float[] flat = new float[StateQWOP.STATE_SIZE];
+            view.flattenState(flat);
+            Assert.assertArrayEquals(state.flattenState(), flat, 0f);
+        }
+    }
+
+    @Test
+    public void get() {
+        StateQWOP state = GameQWOP.getInitialState();
+        StateQWOPView view = new StateQWOPView().set(state);
+        for (ObjectName obj : ObjectName.values()) {
+            StateVariable6D sv = state.getStateVariableFromName(obj);
+            Assert.assertEquals(sv.getX(), view.get(obj, StateName.X), 0f);
+            Assert.assertEquals(sv.getY(), view.get(obj, StateName.Y), 0f);
+            Assert.assertEquals(sv.getTh(), view.get(obj, StateName.TH), 0f);
+            Assert.assertEquals(sv.getDx(), view.get(obj, StateName.DX), 0f);
+            Assert.assertEquals(sv.getDy(), view.get(obj, StateName.DY), 0f);
+            Assert.assertEquals(sv.getDth(), view.get(obj, StateName.DTH), 0f);
+        }
+        Assert.assertFalse(view.isFailed());
+    }
+
+    @Test
+    public void reuse() {
+        GameQWOP game = new GameQWOP();
+        StateQWOPView view = new StateQWOPView();
+        float[] backing = view.capture(game).getValues();
+        StateQWOP initial = view.toState();
+
+        game.holdKeysForTimesteps(100, false, false, true, false);
+        view.capture(game);
+        Assert.assertSame(backing, view.getValues());
+        Assert.assertTrue(view.isFailed());
+        Assert.assertNotEquals(initial, view.toState());
+        Assert.assertEquals(GameQWOP.getInitialState(), initial); // Copies are not affected by refilling.
+    }
+}
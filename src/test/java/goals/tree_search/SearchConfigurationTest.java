@@ -16,9 +16,11 @@ import org.junit.Before;
 import org.junit.Test;
 import savers.*;
 import tree.node.NodeGameExplorable;
+import tree.node.TreeCompactor;
 import tree.node.evaluator.*;
 import tree.sampler.*;
 import tree.sampler.rollout.*;
+import tree.stage.TreeStage_SearchForever;
 import ui.PanelTree;
 import ui.UI_Full;
 import ui.UI_Headless;
@@ -164,6 +166,31 @@ public class SearchConfigurationTest {
         Assert.assertEquals(agen, agenLoaded);
     }
 
+    @Test
+    public void yamlTree() throws IOException {
+        File file = File.createTempFile("tree", "yaml");
+        file.deleteOnExit();
+        SearchConfiguration.Tree<CommandQWOP> tree =
+                new SearchConfiguration.Tree<>(ActionGenerator_FixedSequence.makeDefaultGenerator(5), 0.01f, 200,
+                        3, null);
+        SearchConfiguration.serializeToYaml(file, tree);
+        Assert.assertTrue(file.exists());
+
+        SearchConfiguration.Tree<CommandQWOP> treeLoaded = SearchConfiguration.deserializeYaml(file,
+                SearchConfiguration.Tree.class);
+        Assert.assertNotNull(treeLoaded);
+        Assert.assertEquals(tree.actionGenerator, treeLoaded.actionGenerator);
+        Assert.assertEquals(0.01f, treeLoaded.makeTranspositionTable().getTolerance(), 0f);
+        Assert.assertEquals(200, treeLoaded.makeSnapshotCache().getMaxSnapshots());
+        Assert.assertEquals(3, treeLoaded.snapshotDepthInterval);
+        Assert.assertEquals(10, treeLoaded.snapshotMinimumDepth);
+
+        // Off unless asked for.
+        SearchConfiguration.Tree<CommandQWOP> plainTree = new SearchConfiguration.Tree<>(tree.actionGenerator);
+        Assert.assertNull(plainTree.makeTranspositionTable());
+        Assert.assertNull(plainTree.makeSnapshotCache());
+    }
+
     @Test
     public void yamlActionGenerator_Null() throws IOException {
         File file = File.createTempFile("actiongennull", "yaml");
@@ -597,6 +624,40 @@ public class SearchConfigurationTest {
         loaded.close();
     }
 
+    @Test
+    public void yamlRolloutPolicy_Parallel() throws IOException {
+        File file = File.createTempFile("rolloutparallel", "yaml");
+        file.deleteOnExit();
+        RolloutPolicy_Parallel<CommandQWOP, StateQWOP> rollout =
+                new RolloutPolicy_Parallel<>(
+                        new RolloutPolicy_EndScore<>(
+                                new EvaluationFunction_Constant<>(
+                                        1f),
+                                RolloutPolicyBase.getQWOPRolloutActionGenerator(),
+                                new Controller_Constant<>(new Action<>(1, CommandQWOP.Q))),
+                        6, RolloutPolicy_Parallel.Reduction.QUANTILE, 0.75f);
+
+        SearchConfiguration.serializeToYaml(file, rollout);
+        Assert.assertTrue(file.exists());
+
+        RolloutPolicy_Parallel<CommandQWOP, StateQWOP> loaded = SearchConfiguration.deserializeYaml(file,
+                RolloutPolicy_Parallel.class);
+
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(rollout.rolloutCount, loaded.rolloutCount);
+        Assert.assertEquals(rollout.reduction, loaded.reduction);
+        Assert.assertEquals(rollout.quantile, loaded.quantile, 0f);
+        Assert.assertEquals(rollout.getIndividualRollout().getClass(), loaded.getIndividualRollout().getClass());
+
+        setup();
+        float originalResult = rollout.rollout(sampleNode2, game);
+        setup();
+        float loadedResult = loaded.rollout(sampleNode2, game);
+        Assert.assertEquals(originalResult, loadedResult, 1e-6);
+        rollout.close();
+        loaded.close();
+    }
+
     @Test
     public void yamlRolloutPolicy_Window() throws IOException {
         File file = File.createTempFile("rolloutdeltascore", "yaml");
@@ -650,6 +711,26 @@ public class SearchConfigurationTest {
         Assert.assertEquals(saver.getSavePath(), loaded.getSavePath());
     }
 
+    @Test
+    public void yamlDataSave_DenseColumnar() throws IOException {
+        File file = File.createTempFile("savedensecolumnar", "yaml");
+        file.deleteOnExit();
+
+        DataSaver_DenseColumnar saver = new DataSaver_DenseColumnar(true);
+        saver.setSaveInterval(101);
+        saver.setSavePath("stuff");
+
+        SearchConfiguration.serializeToYaml(file, saver);
+        Assert.assertTrue(file.exists());
+
+        DataSaver_DenseColumnar loaded = SearchConfiguration.deserializeYaml(file, DataSaver_DenseColumnar.class);
+
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(saver.getSaveInterval(), loaded.getSaveInterval());
+        Assert.assertEquals(saver.getSavePath(), loaded.getSavePath());
+        Assert.assertEquals(saver.isCompressed(), loaded.isCompressed());
+    }
+
     @Test
     public void yamlDataSave_DenseTFRecord() throws IOException {
         File file = File.createTempFile("savedensetf", "yaml");
@@ -708,6 +789,48 @@ public class SearchConfigurationTest {
         Assert.assertEquals(saver.getSavePath(), loaded.getSavePath());
     }
 
+    @Test
+    public void yamlDataSave_TreeFile() throws IOException {
+        File file = File.createTempFile("savetreefile", "yaml");
+        file.deleteOnExit();
+
+        DataSaver_TreeFile saver = new DataSaver_TreeFile();
+        saver.setSaveInterval(37);
+        saver.setSavePath("wefsdf");
+
+        SearchConfiguration.serializeToYaml(file, saver);
+        Assert.assertTrue(file.exists());
+
+        DataSaver_TreeFile loaded = SearchConfiguration.deserializeYaml(file, DataSaver_TreeFile.class);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(saver.fileExtension, loaded.fileExtension);
+        Assert.assertEquals(saver.filePrefix, loaded.filePrefix);
+        Assert.assertEquals(saver.getSaveInterval(), loaded.getSaveInterval());
+        Assert.assertEquals(saver.getSavePath(), loaded.getSavePath());
+    }
+
+    @Test
+    public void yamlDataSave_Async() throws IOException {
+        File file = File.createTempFile("saveasync", "yaml");
+        file.deleteOnExit();
+
+        DataSaver_Sparse<CommandQWOP, StateQWOP> innerSaver = new DataSaver_Sparse<>();
+        innerSaver.setSaveInterval(12);
+        innerSaver.setSavePath("wefsdf");
+        DataSaver_Async<CommandQWOP, StateQWOP> saver = new DataSaver_Async<>(innerSaver, 64);
+
+        SearchConfiguration.serializeToYaml(file, saver);
+        Assert.assertTrue(file.exists());
+
+        DataSaver_Async<CommandQWOP, StateQWOP> loaded = SearchConfiguration.deserializeYaml(file,
+                DataSaver_Async.class);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(saver.queueCapacity, loaded.queueCapacity);
+        Assert.assertTrue(loaded.getSaver() instanceof DataSaver_Sparse);
+        Assert.assertEquals(saver.getSaveInterval(), loaded.getSaveInterval());
+        Assert.assertEquals(saver.getSavePath(), loaded.getSavePath());
+    }
+
     @Test
     public void yamlDataSave_StageSelected() throws IOException {
         File file = File.createTempFile("savestateselect", "yaml");
@@ -1342,6 +1465,29 @@ public class SearchConfigurationTest {
         Assert.assertEquals(4, ((PanelPlot_States) loaded.getTabbedPanes().get(0)).numberOfPlots);
     }
 
+    @Test
+    public void yamlStage_SearchForever() throws IOException {
+        File file = File.createTempFile("stagesearchforever", "yaml");
+        file.deleteOnExit();
+
+        TreeStage_SearchForever<CommandQWOP, StateQWOP> stage =
+                new TreeStage_SearchForever<>(new TreeCompactor<>(0.7f, 0.25f, 4));
+        SearchConfiguration.serializeToYaml(file, stage);
+        Assert.assertTrue(file.exists());
+
+        TreeStage_SearchForever<CommandQWOP, StateQWOP> loaded = SearchConfiguration.deserializeYaml(file,
+                TreeStage_SearchForever.class);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(0.7f, loaded.compactor.highWaterFraction, 1e-12f);
+        Assert.assertEquals(0.25f, loaded.compactor.collapseFraction, 1e-12f);
+        Assert.assertEquals(4, loaded.compactor.minCollapseDepth);
+
+        // No compactor by default.
+        SearchConfiguration.serializeToYaml(file, new TreeStage_SearchForever<CommandQWOP, StateQWOP>());
+        loaded = SearchConfiguration.deserializeYaml(file, TreeStage_SearchForever.class);
+        Assert.assertNull(loaded.compactor);
+    }
+
     @Test
     public void yamlUpdaterAvg() throws IOException {
         File file = File.createTempFile("updateravg", "yaml");
@@ -0,0 +1,149 @@
+package savers;
+
+import game.action.Action;
+import game.action.ActionGenerator_FixedActions;
+import game.action.ActionList;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import tree.node.NodeGameBase;
+import tree.node.NodeGameExplorable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class DataSaver_AsyncTest {
+
+    /**
+     * Keeps track of what it was told and by which thread, instead of writing files.
+     */
+    private static class RecordingSaver extends DataSaver_Dense<CommandQWOP, StateQWOP> {
+
+        final List<Integer> gameLengths = new ArrayList<>();
+        final List<String> threadNames = new ArrayList<>();
+        int stageEndings = 0;
+        int finalizations = 0;
+        CountDownLatch gate;
+
+        @Override
+        public void reportGameEnding(NodeGameBase<?, CommandQWOP, StateQWOP> endNode) {
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            Assert.assertEquals(actionBuffer.size() + 1, stateBuffer.size());
+            gameLengths.add(actionBuffer.size());
+            threadNames.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void reportStageEnding(NodeGameBase<?, CommandQWOP, StateQWOP> rootNode,
+                                      List<NodeGameBase<?, CommandQWOP, StateQWOP>> targetNodes) {
+            stageEndings++;
+        }
+
+        @Override
+        public void finalizeSaverData() {
+            finalizations++;
+        }
+
+        @Override
+        public RecordingSaver getCopy() {
+            return new RecordingSaver();
+        }
+    }
+
+    private NodeGameExplorable<CommandQWOP, StateQWOP> makeRoot() {
+        ActionList<CommandQWOP> actions = ActionList.getEmptyList();
+        actions.add(new Action<>(2, CommandQWOP.WO));
+        return new NodeGameExplorable<>(GameQWOP.getInitialState(), new ActionGenerator_FixedActions<>(actions));
+    }
+
+    private void playGame(DataSaver_Async<CommandQWOP, StateQWOP> saver, NodeGameBase<?, CommandQWOP, StateQWOP> node,
+                          int steps) {
+        GameQWOP game = new GameQWOP();
+        saver.reportGameInitialization(game.getCurrentState());
+        for (int i = 0; i < steps; i++) {
+            game.step(CommandQWOP.QP);
+            saver.reportTimestep(new Action<>(1, CommandQWOP.QP), game);
+        }
+        saver.reportGameEnding(node);
+    }
+
+    @Test
+    public void gamesFromAllCopiesReachOneSaver() {
+        RecordingSaver innerSaver = new RecordingSaver();
+        DataSaver_Async<CommandQWOP, StateQWOP> saver = new DataSaver_Async<>(innerSaver, 4);
+        DataSaver_Async<CommandQWOP, StateQWOP> saverCopy = saver.getCopy();
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeRoot();
+
+        playGame(saver, root, 3);
+        playGame(saverCopy, root, 5);
+        playGame(saver, root, 1);
+
+        // Every worker ends the stage, but the wrapped saver only hears about it once.
+        saver.reportStageEnding(root, null);
+        saver.finalizeSaverData();
+        saverCopy.reportStageEnding(root, null);
+        saverCopy.finalizeSaverData();
+
+        Assert.assertEquals(3, innerSaver.gameLengths.size());
+        Assert.assertTrue(innerSaver.gameLengths.contains(3));
+        Assert.assertTrue(innerSaver.gameLengths.contains(5));
+        Assert.assertTrue(innerSaver.gameLengths.contains(1));
+        for (String threadName : innerSaver.threadNames) {
+            Assert.assertNotEquals(Thread.currentThread().getName(), threadName);
+        }
+        Assert.assertEquals(1, innerSaver.stageEndings);
+        Assert.assertEquals(1, innerSaver.finalizations);
+
+        // Next stage.
+        playGame(saverCopy, root, 2);
+        saverCopy.reportStageEnding(root, null);
+        saverCopy.finalizeSaverData();
+        saver.reportStageEnding(root, null);
+        saver.finalizeSaverData();
+        Assert.assertEquals(4, innerSaver.gameLengths.size());
+        Assert.assertEquals(2, innerSaver.stageEndings);
+        Assert.assertEquals(2, innerSaver.finalizations);
+    }
+
+    @Test
+    public void fullQueueMakesWorkersWait() throws InterruptedException {
+        RecordingSaver innerSaver = new RecordingSaver();
+        innerSaver.gate = new CountDownLatch(1);
+        DataSaver_Async<CommandQWOP, StateQWOP> saver = new DataSaver_Async<>(innerSaver, 1);
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeRoot();
+
+        // Writer holds the first game, the second fills the queue, and the third has to wait for space.
+        Thread worker = new Thread(() -> {
+            for (int i = 0; i < 3; i++) {
+                playGame(saver, root, 1);
+            }
+        });
+        worker.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (saver.getBackpressureWaitCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertTrue(saver.getBackpressureWaitCount() > 0);
+        Assert.assertTrue(innerSaver.gameLengths.isEmpty());
+
+        innerSaver.gate.countDown();
+        worker.join();
+        saver.finalizeSaverData();
+        Assert.assertEquals(3, innerSaver.gameLengths.size());
+        Assert.assertEquals(1, innerSaver.finalizations);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badQueueCapacity() {
+        new DataSaver_Async<>(new RecordingSaver(), 0);
+    }
+}
@@ -0,0 +1,114 @@
+package savers;
+
+import game.action.Action;
+import game.action.ActionGenerator_FixedActions;
+import game.action.ActionList;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import tree.node.NodeGameExplorable;
+import tree.node.NodeGameGraphics;
+import tree.node.TreeFile;
+import tree.node.TreeStore;
+import value.updaters.ValueUpdater_Average;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class DataSaver_TreeFileTest {
+
+    @Test
+    public void saveAndResume() throws IOException {
+        File directory = Files.createTempDirectory("treefile").toFile();
+        directory.deleteOnExit();
+
+        ActionList<CommandQWOP> actions = ActionList.getEmptyList();
+        actions.add(new Action<>(2, CommandQWOP.WO));
+        actions.add(new Action<>(4, CommandQWOP.QP));
+        ActionGenerator_FixedActions<CommandQWOP> actionGenerator = new ActionGenerator_FixedActions<>(actions);
+        ValueUpdater_Average<CommandQWOP, StateQWOP> updater = new ValueUpdater_Average<>();
+        StateQWOP state = GameQWOP.getInitialState();
+
+        DataSaver_TreeFile saver = new DataSaver_TreeFile();
+        saver.setSavePath(directory.getPath() + File.separator);
+        saver.setSaveInterval(2);
+        DataSaver_TreeFile saverCopy = saver.getCopy();
+
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(state, actionGenerator);
+        NodeGameExplorable<CommandQWOP, StateQWOP> child = root.addDoublyLinkedChild(actions.get(0), state);
+        NodeGameExplorable<CommandQWOP, StateQWOP> grandchild = child.addDoublyLinkedChild(actions.get(1), state);
+        grandchild.recurseUpTreeInclusive(n -> n.updateValue(5f, updater));
+        saver.reportGameEnding(grandchild);
+        saver.finalizeSaverData(); // Written on another thread.
+        Assert.assertNotNull(saver.getTreeFile());
+        Assert.assertEquals(3, saver.getTreeFile().size());
+
+        // A copy, e.g. for another worker, adds to the same file, and only the new node is appended.
+        NodeGameExplorable<CommandQWOP, StateQWOP> child2 = root.addDoublyLinkedChild(actions.get(1), state);
+        child2.recurseUpTreeInclusive(n -> n.updateValue(-1f, updater));
+        saverCopy.reportGameEnding(child2);
+        saverCopy.finalizeSaverData();
+        Assert.assertSame(saver.getTreeFile(), saverCopy.getTreeFile());
+        Assert.assertEquals(4, saver.getTreeFile().size());
+
+        // Values which changed away from the last game's path are caught at the end of the stage. Every worker's
+        // copy reports it, and it gets written once.
+        grandchild.updateValue(10f, updater);
+        saver.reportStageEnding(root, null);
+        saverCopy.reportStageEnding(root, null);
+        saver.finalizeSaverData();
+        saverCopy.finalizeSaverData();
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".tree"));
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length);
+        File file = files[0];
+        file.deleteOnExit();
+        TreeFile.getStateFile(file).deleteOnExit();
+        saver.close();
+        Assert.assertNull(saverCopy.getTreeFile());
+
+        TreeStore<CommandQWOP, StateQWOP> store = TreeFile.load(file, TreeStore.QWOP_STATES, false);
+        Assert.assertEquals(4, store.size());
+        Assert.assertEquals(root.getValue(), store.getValue(0), 0f);
+        Assert.assertEquals(2, store.getUpdateCount(0));
+        Assert.assertEquals(7.5f, store.getValue(2), 0f);
+        Assert.assertEquals(2, store.getUpdateCount(2));
+
+        // Pick the search back up, and keep adding to the same file. Only the first level is made into nodes.
+        DataSaver_TreeFile resumedSaver = new DataSaver_TreeFile();
+        NodeGameGraphics<CommandQWOP, StateQWOP> resumedRoot = resumedSaver.resume(file, actionGenerator, 1);
+        Assert.assertEquals(2, resumedRoot.countDescendants());
+        Assert.assertEquals(0, resumedRoot.getUntriedActionCount());
+        Assert.assertEquals(root.getValue(), resumedRoot.getValue(), 0f);
+        Assert.assertEquals(2, resumedRoot.getUpdateCount());
+
+        NodeGameGraphics<CommandQWOP, StateQWOP> resumedChild2 = resumedRoot.getChildByIndex(1);
+        Assert.assertEquals(actions.get(1), resumedChild2.getAction());
+        NodeGameGraphics<CommandQWOP, StateQWOP> newNode = resumedChild2.addDoublyLinkedChild(actions.get(0), state);
+        newNode.updateValue(1f, updater);
+        resumedSaver.reportGameEnding(newNode);
+
+        // Reaching a stored node which was not made into a node finds it in the file rather than adding it again. Its
+        // stored visits are kept, and the new one is added to them.
+        NodeGameGraphics<CommandQWOP, StateQWOP> reachedAgain =
+                resumedRoot.getChildByIndex(0).addDoublyLinkedChild(actions.get(1), state);
+        reachedAgain.updateValue(3f, updater);
+        resumedSaver.reportGameEnding(reachedAgain);
+        resumedSaver.finalizeSaverData();
+        Assert.assertEquals(5, resumedSaver.getTreeFile().size());
+        Assert.assertEquals(6f, reachedAgain.getValue(), 1e-6f);
+        Assert.assertEquals(3, reachedAgain.getUpdateCount());
+        resumedSaver.close();
+
+        store = TreeFile.load(file, TreeStore.QWOP_STATES, false);
+        Assert.assertEquals(5, store.size());
+        Assert.assertEquals(3, store.getParent(4));
+        Assert.assertEquals(1f, store.getValue(4), 0f);
+        Assert.assertEquals(6f, store.getValue(2), 1e-6f);
+        Assert.assertEquals(3, store.getUpdateCount(2));
+    }
+}
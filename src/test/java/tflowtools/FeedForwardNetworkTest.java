@@ -0,0 +1,102 @@
+package tflowtools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+public class FeedForwardNetworkTest {
+
+    @Test
+    public void matchesTensorFlow() throws IOException {
+        TrainableNetwork network = new TrainableNetwork(new File("src/test/resources/test_models/small_net.pb"), false);
+        network.loadCheckpoint("src/test/resources/test_models/good_save");
+        FeedForwardNetwork javaNetwork = FeedForwardNetwork.fromTrainableNetwork(network);
+
+        Assert.assertArrayEquals(network.getLayerSizes(), javaNetwork.getLayerSizes());
+
+        Random random = new Random(1);
+        for (int batchSize : new int[]{1, 3, 4, 9, 2000}) {
+            float[][] inputs = new float[batchSize][javaNetwork.getInputSize()];
+            for (float[] input : inputs) {
+                for (int i = 0; i < input.length; i++) {
+                    input[i] = (float) random.nextGaussian();
+                }
+            }
+            float[][] expected = network.evaluateInput(inputs);
+            float[][] actual = javaNetwork.evaluateInput(inputs);
+            Assert.assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertArrayEquals(expected[i], actual[i], 1e-4f * Math.max(1f, Math.abs(expected[i][0])));
+            }
+        }
+        network.close();
+    }
+
+    @Test
+    public void evaluateFlat() {
+        // 2 -> 3 -> 2 by hand.
+        float[][][] weights = new float[][][]{
+                {{1f, -1f, 0.5f}, {2f, 0f, -3f}},
+                {{1f, 0f}, {0f, 1f}, {1f, 1f}}
+        };
+        float[][] biases = new float[][]{{0f, 1f, -1f}, {0.5f, -0.5f}};
+        FeedForwardNetwork net = new FeedForwardNetwork(weights, biases,
+                new FeedForwardNetwork.Activation[]{FeedForwardNetwork.Activation.RELU,
+                        FeedForwardNetwork.Activation.IDENTITY}, FeedForwardNetwork.Activation.IDENTITY);
+
+        Assert.assertEquals(2, net.getInputSize());
+        Assert.assertEquals(2, net.getOutputSize());
+
+        // x = (1, 1): hidden pre = (3, 0, -3.5) -> relu (3, 0, 0). out = (3.5, -0.5).
+        // x = (-1, 2): hidden pre = (3, 2, -7.5) -> relu (3, 2, 0). out = (3.5, 1.5).
+        float[] inputs = new float[]{1f, 1f, -1f, 2f};
+        float[] outputs = new float[4];
+        net.evaluate(inputs, outputs, 2);
+        Assert.assertArrayEquals(new float[]{3.5f, -0.5f, 3.5f, 1.5f}, outputs, 1e-6f);
+
+        float[] single = new float[2];
+        net.evaluate(new float[]{-1f, 2f}, single);
+        Assert.assertArrayEquals(new float[]{3.5f, 1.5f}, single, 1e-6f);
+    }
+
+    @Test
+    public void activations() {
+        float[][][] weights = new float[][][]{{{1f, 0f}, {0f, 1f}}};
+        float[][] biases = new float[][]{{0f, 0f}};
+        float[] input = new float[]{-2f, 1f};
+
+        Assert.assertArrayEquals(new float[]{-0.4f, 1f}, evaluateWith(weights, biases,
+                FeedForwardNetwork.Activation.LEAKY_RELU, input), 1e-6f);
+        Assert.assertArrayEquals(new float[]{(float) Math.expm1(-2), 1f}, evaluateWith(weights, biases,
+                FeedForwardNetwork.Activation.ELU, input), 1e-6f);
+        Assert.assertArrayEquals(new float[]{(float) (1 / (1 + Math.exp(2))), (float) (1 / (1 + Math.exp(-1)))},
+                evaluateWith(weights, biases, FeedForwardNetwork.Activation.SIGMOID, input), 1e-6f);
+        Assert.assertArrayEquals(new float[]{(float) Math.tanh(-2), (float) Math.tanh(1)}, evaluateWith(weights,
+                biases, FeedForwardNetwork.Activation.TANH, input), 1e-6f);
+
+        float[] softmax = evaluateWith(weights, biases, FeedForwardNetwork.Activation.SOFTMAX, input);
+        Assert.assertEquals(1f, softmax[0] + softmax[1], 1e-6f);
+        Assert.assertEquals((float) Math.exp(-3), softmax[0] / softmax[1], 1e-6f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mismatchedLayers() {
+        float[][][] weights = new float[][][]{new float[2][3], new float[2][1]};
+        float[][] biases = new float[][]{new float[3], new float[1]};
+        new FeedForwardNetwork(weights, biases, new FeedForwardNetwork.Activation[]{
+                FeedForwardNetwork.Activation.RELU, FeedForwardNetwork.Activation.IDENTITY},
+                FeedForwardNetwork.Activation.IDENTITY);
+    }
+
+    private static float[] evaluateWith(float[][][] weights, float[][] biases,
+                                        FeedForwardNetwork.Activation activation, float[] input) {
+        FeedForwardNetwork net = new FeedForwardNetwork(weights, biases,
+                new FeedForwardNetwork.Activation[]{FeedForwardNetwork.Activation.IDENTITY}, activation);
+        float[] output = new float[2];
+        net.evaluate(input, output);
+        return output;
+    }
+}
@@ -0,0 +1,118 @@
+package tflowtools;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Output;
+import org.tensorflow.Session;
+import org.tensorflow.Shape;
+import org.tensorflow.Tensor;
+import org.tensorflow.Tensors;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class PreparedRunnerTest {
+
+    private static Graph graph;
+    private static Session session;
+
+    /**
+     * Graph which sums each example's 3 inputs, and doubles the sum.
+     */
+    @BeforeClass
+    public static void setUp() {
+        graph = new Graph();
+        Output<Float> input = graph.opBuilder("Placeholder", "input")
+                .setAttr("dtype", DataType.FLOAT)
+                .setAttr("shape", Shape.make(-1, 3))
+                .build().output(0);
+        Output<Integer> axis;
+        try (Tensor<Integer> axisValue = Tensors.create(new int[]{1})) {
+            axis = graph.opBuilder("Const", "axis")
+                    .setAttr("dtype", DataType.INT32)
+                    .setAttr("value", axisValue)
+                    .build().output(0);
+        }
+        Output<Float> sum = graph.opBuilder("Sum", "sum")
+                .addInput(input)
+                .addInput(axis)
+                .setAttr("keep_dims", true)
+                .build().output(0);
+        graph.opBuilder("Add", "output")
+                .addInput(sum)
+                .addInput(sum)
+                .build();
+        session = new Session(graph);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        session.close();
+        graph.close();
+    }
+
+    @Test
+    public void runBatches() {
+        PreparedRunner runner = new PreparedRunner(session, graph, "input", "output", 3, 4);
+        for (int batchSize = 4; batchSize > 0; batchSize--) {
+            FloatBuffer inputBuffer = runner.getInputBuffer();
+            for (int i = 0; i < batchSize; i++) {
+                inputBuffer.put(new float[]{i, 1, -0.5f});
+            }
+            FloatBuffer output = runner.run(batchSize);
+            Assert.assertEquals(batchSize, output.remaining());
+            Assert.assertArrayEquals(new long[]{batchSize, 1}, runner.getOutputShape());
+            for (int i = 0; i < batchSize; i++) {
+                Assert.assertEquals(2 * (i + 0.5f), output.get(i), 1e-6f);
+            }
+        }
+
+        Assert.assertEquals(6f, runner.run(new float[]{1, 1, 1}).get(0), 1e-6f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchTooLarge() {
+        new PreparedRunner(session, graph, "input", "output", 3, 2).run(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongExampleSize() {
+        new PreparedRunner(session, graph, "input", "output", 3, 2).run(new float[2]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingOperation() {
+        new PreparedRunner(session, graph, "input", "not_an_output", 3, 2);
+    }
+
+    @Test
+    public void genericEvaluator() throws IOException {
+        File graphFile = File.createTempFile("prepared_runner_test", ".pb");
+        graphFile.deleteOnExit();
+        Files.write(graphFile.toPath(), graph.toGraphDef());
+
+        try (TensorflowGenericEvaluator evaluator = new TensorflowGenericEvaluator(graphFile)) {
+            PreparedRunner runner = evaluator.prepareRunner("input", "output", 3, 1);
+            float prepared = runner.run(new float[]{1, 2, 3}).get(0);
+
+            List<String> outputs = new ArrayList<>();
+            outputs.add("output");
+            try (Tensor<Float> input = Tensors.create(new float[][]{{1, 2, 3}})) {
+                List<Tensor<?>> result = evaluator.evaluate(Collections.singletonMap("input", input), outputs);
+                float[][] evaluated = result.get(0).expect(Float.class).copyTo(new float[1][1]);
+                result.forEach(Tensor::close);
+                Assert.assertEquals(12f, prepared, 1e-6f);
+                Assert.assertEquals(prepared, evaluated[0][0], 0f);
+            }
+        }
+    }
+}
@@ -8,6 +8,9 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -157,6 +160,70 @@ public class TrainableNetworkTest {
         Assert.assertArrayEquals("Same evaluation should be replicable.", singleOutput[0], multiOutput[1], 1e-5f);
     }
 
+    @Test
+    public void bufferTrainingAndEvaluation() {
+        float[][] inputs = new float[][] {
+                {4.3f, 5.5f, -1.2f, 9f},
+                {-3f, 5f, 9f, -3f},
+                {-3.3f, 10f, -20f, 1f}
+        };
+        FloatBuffer inputBuffer = ByteBuffer.allocateDirect(12 * Float.BYTES).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        FloatBuffer targetBuffer = ByteBuffer.allocateDirect(6 * Float.BYTES).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        for (float[] input : inputs) {
+            inputBuffer.put(input);
+            targetBuffer.put(new float[]{-1, 1});
+        }
+        inputBuffer.flip();
+        targetBuffer.flip();
+
+        float loss1 = testNetwork.trainingStep(inputBuffer, targetBuffer, 3, 1f, 1);
+        float loss2 = testNetwork.trainingStep(inputBuffer, targetBuffer, 3, 1f, 5000);
+        Assert.assertTrue("Loss should be better after many more steps.", loss1 > loss2);
+        Assert.assertEquals("Buffers should be left where they were.", 12, inputBuffer.remaining());
+
+        // Same results as evaluating arrays.
+        FloatBuffer outputBuffer = FloatBuffer.allocate(6);
+        testNetwork.evaluateInput(inputBuffer, 3, outputBuffer);
+        float[][] outEval = testNetwork.evaluateInput(inputs);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(outEval[i][0], outputBuffer.get(2 * i), 1e-5f);
+            Assert.assertEquals(outEval[i][1], outputBuffer.get(2 * i + 1), 1e-5f);
+        }
+    }
+
+    @Test
+    public void prepareRunner() {
+        float[][] inputs = new float[][] {
+                {-100f, -100f, -100f, -100f},
+                {10f, 10f, 10f, 10f},
+                {1f, -2f, 3f, -4f}
+        };
+        float[][] expected = testNetwork.evaluateInput(inputs);
+
+        PreparedRunner runner = testNetwork.prepareRunner(3);
+        for (int repeat = 0; repeat < 3; repeat++) { // Buffers are reused.
+            FloatBuffer inputBuffer = runner.getInputBuffer();
+            for (float[] input : inputs) {
+                inputBuffer.put(input);
+            }
+            FloatBuffer output = runner.run(3);
+            Assert.assertEquals(6, output.remaining());
+            Assert.assertArrayEquals(new long[]{3, 2}, runner.getOutputShape());
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(expected[i][0], output.get(2 * i), 1e-5f);
+                Assert.assertEquals(expected[i][1], output.get(2 * i + 1), 1e-5f);
+            }
+        }
+
+        // Smaller batches use the start of the same buffers.
+        FloatBuffer output = runner.run(inputs[1]);
+        Assert.assertEquals(2, output.remaining());
+        Assert.assertEquals(expected[1][0], output.get(0), 1e-5f);
+        Assert.assertEquals(expected[1][1], output.get(1), 1e-5f);
+    }
+
     @Test
     public void getNumberOfOperationOutputs() {
         Assert.assertEquals(1, testNetwork.getNumberOfOperationOutputs("output"));
@@ -480,6 +480,41 @@ public class NodeGameExplorableTest {
         Assert.assertFalse(node2_1.isLocked());
     }
 
+    @Test
+    public void reserveExpansionRightsLockFree() {
+        setupTree();
+
+        // Reserving node3_1 with the normal version would lock node3 too. Here, nothing propagates.
+        Assert.assertTrue(node3_1.reserveExpansionRightsLockFree());
+        Assert.assertTrue(node3_1.isLocked());
+        Assert.assertFalse(node3_1.reserveExpansionRightsLockFree()); // Can't re-reserve.
+        Assert.assertFalse(node3.isLocked());
+
+        node3_1.releaseExpansionRightsLockFree();
+        Assert.assertFalse(node3_1.isLocked());
+        Assert.assertTrue(node3_1.reserveExpansionRightsLockFree());
+        node3_1.releaseExpansionRightsLockFree();
+    }
+
+    @Test
+    public void virtualLoss() {
+        setupTree();
+
+        Assert.assertEquals(0, node3_1.getVirtualLossCount());
+        node3_1.recurseUpTreeInclusive(NodeGameExplorable::addVirtualLoss);
+        node3_1.recurseUpTreeInclusive(NodeGameExplorable::addVirtualLoss);
+        node3.addVirtualLoss();
+        Assert.assertEquals(2, node3_1.getVirtualLossCount());
+        Assert.assertEquals(3, node3.getVirtualLossCount());
+        Assert.assertEquals(2, rootNode.getVirtualLossCount());
+        Assert.assertEquals(0, node2.getVirtualLossCount());
+
+        node3_1.recurseUpTreeInclusive(NodeGameExplorable::removeVirtualLoss);
+        Assert.assertEquals(1, node3_1.getVirtualLossCount());
+        Assert.assertEquals(2, node3.getVirtualLossCount());
+        Assert.assertEquals(1, rootNode.getVirtualLossCount());
+    }
+
     @Test
     public void getThis() {
         NodeGameExplorable<CommandQWOP, StateQWOP> node = new NodeGameExplorable<>(initialState);
@@ -2,6 +2,7 @@ package tree.node;
 
 import game.IGameInternal;
 import game.action.Action;
+import game.action.ActionPath;
 import game.qwop.CommandQWOP;
 import game.qwop.GameQWOP;
 import game.qwop.StateQWOP;
@@ -278,6 +279,26 @@ public class NodeGameTest {
         rootNode.getSequence(actionList);
     }
 
+    @Test
+    public void getActionPath() {
+        setupTree();
+        Assert.assertTrue(rootNode.getActionPath().isEmpty());
+
+        List<Action<CommandQWOP>> actionList = new ArrayList<>();
+        for (NodeGame<CommandQWOP, StateQWOP> node : new NodeGame[]{node1_2_1_2_2_4, node2_2_1, node3}) {
+            ActionPath<CommandQWOP> path = node.getActionPath();
+            node.getSequence(actionList);
+            Assert.assertEquals(node.getTreeDepth(), path.size());
+            int timesteps = 0;
+            for (int i = 0; i < path.size(); i++) {
+                Assert.assertSame(actionList.get(i), path.getAction(i));
+                timesteps += actionList.get(i).getTimestepsTotal();
+            }
+            Assert.assertEquals(timesteps, path.getTotalTimesteps());
+            Assert.assertEquals(timesteps, node.getCumulativeTimesteps());
+        }
+    }
+
     @Test
     public void makeNodesFromActionSequences() {
         NodeGame<CommandQWOP, StateQWOP> root = new NodeGame<>(initialState);
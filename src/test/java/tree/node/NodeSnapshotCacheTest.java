@@ -0,0 +1,185 @@
+package tree.node;
+
+import game.IGameSerializable;
+import game.action.Action;
+import game.action.ActionGenerator_FixedSequence;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import savers.DataSaver_Null;
+import tree.TreeWorker;
+import tree.sampler.Sampler_Random;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class NodeSnapshotCacheTest {
+
+    private NodeGameExplorable<CommandQWOP, StateQWOP> makeChain(int depth) {
+        NodeGameExplorable<CommandQWOP, StateQWOP> node = new NodeGameExplorable<>(GameQWOP.getInitialState());
+        for (int i = 0; i < depth; i++) {
+            node = node.addDoublyLinkedChild(new Action<>(5, CommandQWOP.NONE), GameQWOP.getInitialState());
+        }
+        return node;
+    }
+
+    @Test
+    public void snapshotDepths() {
+        NodeSnapshotCache<CommandQWOP, StateQWOP> cache = new NodeSnapshotCache<>(1000, 3, 2);
+        Assert.assertFalse(cache.isSnapshotDepth(0));
+        Assert.assertFalse(cache.isSnapshotDepth(2));
+        Assert.assertTrue(cache.isSnapshotDepth(3));
+        Assert.assertFalse(cache.isSnapshotDepth(4));
+        Assert.assertTrue(cache.isSnapshotDepth(6));
+
+        NodeSnapshotCache<CommandQWOP, StateQWOP> cache2 = new NodeSnapshotCache<>(1000, 1, 4);
+        Assert.assertFalse(cache2.isSnapshotDepth(3));
+        Assert.assertTrue(cache2.isSnapshotDepth(4));
+        Assert.assertTrue(cache2.isSnapshotDepth(5));
+    }
+
+    @Test
+    public void deepestAncestor() {
+        NodeSnapshotCache<CommandQWOP, StateQWOP> cache = new NodeSnapshotCache<>(1000, 1, 1);
+        NodeGameExplorable<CommandQWOP, StateQWOP> leaf = makeChain(6);
+        NodeGameExplorable<CommandQWOP, StateQWOP> depth4 = leaf.getParent().getParent();
+        NodeGameExplorable<CommandQWOP, StateQWOP> depth2 = depth4.getParent().getParent();
+        GameQWOP game = new GameQWOP();
+
+        Assert.assertNull(cache.getDeepestSnapshotAncestor(leaf));
+        Assert.assertEquals(1, cache.getMissCount());
+
+        Assert.assertTrue(cache.shouldStore(depth2));
+        cache.store(depth2, game);
+        Assert.assertFalse(cache.shouldStore(depth2));
+        Assert.assertEquals(depth2, cache.getDeepestSnapshotAncestor(leaf));
+        Assert.assertNotSame(game, cache.getSnapshot(depth2)); // A copy, not the game itself.
+
+        cache.store(depth4, game);
+        Assert.assertEquals(depth4, cache.getDeepestSnapshotAncestor(leaf));
+        Assert.assertEquals(depth4, cache.getDeepestSnapshotAncestor(depth4));
+        Assert.assertEquals(depth2, cache.getDeepestSnapshotAncestor(depth4.getParent()));
+        Assert.assertEquals(4, cache.getHitCount());
+        Assert.assertEquals(2, cache.getSnapshotCount());
+
+        cache.clear();
+        Assert.assertNull(cache.getDeepestSnapshotAncestor(leaf));
+        Assert.assertEquals(0, cache.getSnapshotCount());
+    }
+
+    @Test
+    public void limitEviction() {
+        NodeSnapshotCache<CommandQWOP, StateQWOP> cache = new NodeSnapshotCache<>(3, 1, 1);
+        List<NodeGameExplorable<CommandQWOP, StateQWOP>> nodes = new ArrayList<>();
+        makeChain(5).recurseUpTreeInclusiveNoRoot(nodes::add);
+        GameQWOP game = new GameQWOP();
+
+        cache.store(nodes.get(0), game);
+        cache.store(nodes.get(1), game);
+        cache.store(nodes.get(2), game);
+        Assert.assertEquals(3, cache.getSnapshotCount());
+        Assert.assertEquals(0, cache.getEvictionCount());
+
+        // Touch the first one so it is no longer the least-recently used.
+        Assert.assertEquals(nodes.get(0), cache.getDeepestSnapshotAncestor(nodes.get(0)));
+
+        cache.store(nodes.get(3), game);
+        Assert.assertEquals(3, cache.getSnapshotCount());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNotNull(cache.getSnapshot(nodes.get(0)));
+        Assert.assertNull(cache.getSnapshot(nodes.get(1)));
+        Assert.assertNotNull(cache.getSnapshot(nodes.get(2)));
+        Assert.assertNotNull(cache.getSnapshot(nodes.get(3)));
+    }
+
+    @Test
+    public void removedNodesAreNotKept() {
+        NodeSnapshotCache<CommandQWOP, StateQWOP> cache = new NodeSnapshotCache<>(10, 1, 1);
+        NodeGameExplorable<CommandQWOP, StateQWOP> leaf = makeChain(4);
+        NodeGameExplorable<CommandQWOP, StateQWOP> depth1 = leaf.getParent().getParent().getParent();
+        cache.store(depth1, new GameQWOP());
+        cache.store(leaf.getParent(), new GameQWOP());
+        cache.store(leaf, new GameQWOP());
+        Assert.assertEquals(3, cache.getSnapshotCount());
+
+        WeakReference<NodeGameExplorable<CommandQWOP, StateQWOP>> removed = new WeakReference<>(leaf);
+        depth1.destroyNodesBelow();
+        leaf = null;
+        for (int i = 0; i < 50 && (removed.get() != null || cache.getSnapshotCount() > 1); i++) {
+            System.gc();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        Assert.assertNull(removed.get());
+        Assert.assertEquals(1, cache.getSnapshotCount());
+        Assert.assertNotNull(cache.getSnapshot(depth1));
+    }
+
+    @Test
+    public void snapshotsMatchTree() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                ActionGenerator_FixedSequence.makeDefaultGenerator(-1));
+        NodeSnapshotCache<CommandQWOP, StateQWOP> cache = new NodeSnapshotCache<>(10_000, 2, 2);
+
+        // Driven directly rather than through a stage, and stops itself after a set number of games. Stages count the
+        // games of every worker, including ones from tests running alongside this one.
+        AtomicInteger gamesLeft = new AtomicInteger(100);
+        AtomicReference<TreeWorker<CommandQWOP, StateQWOP>> self = new AtomicReference<>();
+        TreeWorker<CommandQWOP, StateQWOP> worker = new TreeWorker<>(new GameQWOP(), new Sampler_Random<>(),
+                new DataSaver_Null<CommandQWOP, StateQWOP>() {
+                    @Override
+                    public void reportGameEnding(NodeGameBase<?, CommandQWOP, StateQWOP> endNode) {
+                        if (gamesLeft.decrementAndGet() <= 0) {
+                            self.get().terminateWorker();
+                        }
+                    }
+                });
+        self.set(worker);
+        worker.setSnapshotCache(cache);
+        worker.setRoot(root);
+
+        long deadline = System.currentTimeMillis() + 60000;
+        worker.startWorker();
+        while (worker.isRunning() && System.currentTimeMillis() < deadline) { // Let it finish the game it is on.
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        worker.terminateWorker();
+
+        Assert.assertTrue(cache.getStoreCount() > 0);
+        Assert.assertTrue(cache.getHitCount() > 0);
+        Assert.assertTrue(cache.getTimestepsSaved() > 0);
+
+        // Every stored snapshot should continue exactly like the tree does.
+        GameQWOP game = new GameQWOP();
+        List<NodeGameExplorable<CommandQWOP, StateQWOP>> nodes = new ArrayList<>();
+        root.getNodesBelowInclusive(nodes);
+        int checked = 0;
+        for (NodeGameExplorable<CommandQWOP, StateQWOP> node : nodes) {
+            IGameSerializable<CommandQWOP, StateQWOP> snapshot = cache.getSnapshot(node);
+            if (snapshot == null) continue;
+            Assert.assertSame(game, game.copyStateFrom(snapshot)); // Copied into the game, not a new one.
+            Assert.assertEquals(node.getState(), game.getCurrentState());
+            for (NodeGameExplorable<CommandQWOP, StateQWOP> child : node.getChildren()) {
+                if (child.getState().isFailed()) continue; // Failed actions get cut short.
+                GameQWOP branch = game.copyStateFrom(snapshot);
+                branch.doAction(child.getAction());
+                Assert.assertArrayEquals(child.getState().flattenState(), branch.getCurrentState().flattenState(),
+                        1e-15f);
+            }
+            checked++;
+        }
+        Assert.assertTrue(checked > 0);
+    }
+}
@@ -0,0 +1,213 @@
+package tree.node;
+
+import game.action.Action;
+import game.action.ActionGenerator_FixedSequence;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import savers.DataSaver_Null;
+import tree.TreeWorker;
+import tree.sampler.Sampler_Random;
+import tree.stage.TreeStage_FixedGames;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TranspositionTableTest {
+
+    /**
+     * State with every value a multiple of 0.5, so that small changes do not cross a rounding boundary for the
+     * tolerances used here.
+     */
+    private static StateQWOP makeState(float offset) {
+        float[] values = new float[StateQWOP.STATE_SIZE];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i % 7) * 0.5f + offset;
+        }
+        return new StateQWOP(values, false);
+    }
+
+    private static NodeGameExplorable<CommandQWOP, StateQWOP> makeRoot() {
+        return new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                ActionGenerator_FixedSequence.makeDefaultGenerator(-1));
+    }
+
+    @Test
+    public void duplicatesArePruned() {
+        TranspositionTable<CommandQWOP, StateQWOP> table = new TranspositionTable<>(0.1f);
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeRoot();
+        NodeGameExplorable<CommandQWOP, StateQWOP> first = root.addDoublyLinkedChild(
+                root.getUntriedActionByIndex(0), makeState(0f));
+        NodeGameExplorable<CommandQWOP, StateQWOP> second = root.addDoublyLinkedChild(
+                root.getUntriedActionByIndex(0), makeState(0.01f));
+        NodeGameExplorable<CommandQWOP, StateQWOP> different = root.addDoublyLinkedChild(
+                root.getUntriedActionByIndex(0), makeState(0.2f));
+        int untriedBefore = first.getUntriedActionCount();
+        Assert.assertTrue(untriedBefore > 0);
+
+        Assert.assertSame(first, table.addOrPrune(first));
+        Assert.assertSame(first, table.addOrPrune(second));
+        Assert.assertSame(different, table.addOrPrune(different));
+
+        // Only the duplicate loses its untried actions.
+        Assert.assertEquals(untriedBefore, first.getUntriedActionCount());
+        Assert.assertEquals(0, second.getUntriedActionCount());
+        Assert.assertTrue(second.isFullyExplored());
+        Assert.assertFalse(first.isFullyExplored());
+        Assert.assertEquals(untriedBefore, different.getUntriedActionCount());
+
+        Assert.assertEquals(1, table.getHitCount());
+        Assert.assertEquals(2, table.getMissCount());
+        Assert.assertEquals(2, table.getEntryCount());
+        Assert.assertEquals(1 / 3f, table.getHitRate(), 1e-6f);
+        Assert.assertSame(first, table.getCanonicalNode(makeState(-0.02f)));
+        Assert.assertNull(table.getCanonicalNode(makeState(1.1f)));
+
+        // Adding the canonical node again does not prune it.
+        Assert.assertSame(first, table.addOrPrune(first));
+        Assert.assertEquals(untriedBefore, first.getUntriedActionCount());
+
+        table.clear();
+        Assert.assertEquals(0, table.getEntryCount());
+        Assert.assertNull(table.getCanonicalNode(makeState(0f)));
+    }
+
+    @Test
+    public void newRootClearsTable() {
+        TranspositionTable<CommandQWOP, StateQWOP> table = new TranspositionTable<>(0.1f);
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeRoot();
+        NodeGameExplorable<CommandQWOP, StateQWOP> first = root.addDoublyLinkedChild(
+                root.getUntriedActionByIndex(0), makeState(0f));
+        table.setRoot(root);
+        table.addOrPrune(first);
+
+        // Another part of the same tree keeps the entries.
+        table.setRoot(first);
+        Assert.assertSame(first, table.getCanonicalNode(makeState(0f)));
+
+        // A new run from a new root reaches the same state without being pruned against the old run's node.
+        NodeGameExplorable<CommandQWOP, StateQWOP> newRoot = makeRoot();
+        NodeGameExplorable<CommandQWOP, StateQWOP> again = newRoot.addDoublyLinkedChild(
+                newRoot.getUntriedActionByIndex(0), makeState(0f));
+        table.setRoot(newRoot);
+        Assert.assertEquals(0, table.getEntryCount());
+        Assert.assertSame(again, table.addOrPrune(again));
+        Assert.assertTrue(again.getUntriedActionCount() > 0);
+    }
+
+    @Test
+    public void removedNodesAreForgotten() {
+        TranspositionTable<CommandQWOP, StateQWOP> table = new TranspositionTable<>(0.1f);
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeRoot();
+        NodeGameExplorable<CommandQWOP, StateQWOP> first = root.addDoublyLinkedChild(
+                root.getUntriedActionByIndex(0), makeState(0f));
+        NodeGameExplorable<CommandQWOP, StateQWOP> second = root.addDoublyLinkedChild(
+                root.getUntriedActionByIndex(0), makeState(0f));
+        table.addOrPrune(first);
+
+        // Removing a node which is not canonical for its state changes nothing.
+        table.remove(second);
+        Assert.assertSame(first, table.getCanonicalNode(makeState(0f)));
+
+        table.remove(first);
+        Assert.assertNull(table.getCanonicalNode(makeState(0f)));
+        Assert.assertSame(second, table.addOrPrune(second));
+    }
+
+    @Test
+    public void collectedNodesAreForgotten() {
+        TranspositionTable<CommandQWOP, StateQWOP> table = new TranspositionTable<>(0.1f);
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeRoot();
+        // Only linked backwards, so nothing else holds on to it.
+        table.addOrPrune(root.addBackwardsLinkedChild(root.getUntriedActionByIndex(0), makeState(0f)));
+        Assert.assertEquals(1, table.getEntryCount());
+
+        for (int i = 0; i < 100 && table.getEntryCount() > 0; i++) {
+            System.gc();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        Assert.assertEquals(0, table.getEntryCount());
+        Assert.assertNull(table.getCanonicalNode(makeState(0f)));
+    }
+
+    @Test
+    public void toleranceSetsWhatMatches() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeRoot();
+        TranspositionTable<CommandQWOP, StateQWOP> fineTable = new TranspositionTable<>(0.01f);
+        TranspositionTable<CommandQWOP, StateQWOP> coarseTable = new TranspositionTable<>(1f);
+        fineTable.addOrPrune(root.addBackwardsLinkedChild(root.getUntriedActionByIndex(0), makeState(0f)));
+        coarseTable.addOrPrune(root.addBackwardsLinkedChild(root.getUntriedActionByIndex(0), makeState(0f)));
+
+        StateQWOP nearbyState = makeState(0.1f);
+        Assert.assertNull(fineTable.getCanonicalNode(nearbyState));
+        Assert.assertNotNull(coarseTable.getCanonicalNode(nearbyState));
+    }
+
+    @Test
+    public void failedNodesAreIgnored() {
+        TranspositionTable<CommandQWOP, StateQWOP> table = new TranspositionTable<>(0.1f);
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeRoot();
+        float[] values = makeState(0f).flattenState(0f);
+        StateQWOP failedState = new StateQWOP(values, true);
+        NodeGameExplorable<CommandQWOP, StateQWOP> failed1 = root.addDoublyLinkedChild(
+                root.getUntriedActionByIndex(0), failedState);
+        NodeGameExplorable<CommandQWOP, StateQWOP> failed2 = root.addDoublyLinkedChild(
+                root.getUntriedActionByIndex(0), failedState);
+        Assert.assertSame(failed1, table.addOrPrune(failed1));
+        Assert.assertSame(failed2, table.addOrPrune(failed2));
+        Assert.assertEquals(0, table.getEntryCount());
+        Assert.assertEquals(0, table.getHitCount() + table.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badTolerance() {
+        new TranspositionTable<CommandQWOP, StateQWOP>(0f);
+    }
+
+    @Test
+    public void workerPrunesDuplicates() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeRoot();
+        // Coarse enough that the runner's early states are all lumped together.
+        TranspositionTable<CommandQWOP, StateQWOP> table = new TranspositionTable<>(5f);
+
+        TreeWorker<CommandQWOP, StateQWOP> worker = new TreeWorker<>(new GameQWOP(), new Sampler_Random<>(),
+                new DataSaver_Null<>());
+        worker.setTranspositionTable(table);
+        List<TreeWorker<CommandQWOP, StateQWOP>> workers = new ArrayList<>();
+        workers.add(worker);
+
+        new TreeStage_FixedGames<CommandQWOP, StateQWOP>(30).initialize(workers, root);
+        while (worker.isRunning()) { // Let it finish the game it is on.
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        Assert.assertTrue(table.getHitCount() > 0);
+        Assert.assertTrue(table.getMissCount() > 0);
+
+        // Every pruned node is a leaf which is not failed, and its canonical node is a different one in the tree.
+        List<NodeGameExplorable<CommandQWOP, StateQWOP>> nodes = new ArrayList<>();
+        root.getNodesBelowInclusive(nodes);
+        int pruned = 0;
+        for (NodeGameExplorable<CommandQWOP, StateQWOP> node : nodes) {
+            NodeGameExplorableBase<?, CommandQWOP, StateQWOP> canonical = table.getCanonicalNode(node.getState());
+            if (node.getTreeDepth() == 0 || node.getState().isFailed() || canonical == node) continue;
+            Assert.assertNotNull(canonical);
+            Assert.assertEquals(0, node.getChildCount());
+            Assert.assertEquals(0, node.getUntriedActionCount());
+            Assert.assertTrue(node.isFullyExplored());
+            Assert.assertTrue(nodes.contains(canonical));
+            pruned++;
+        }
+        Assert.assertEquals(table.getHitCount(), pruned);
+    }
+}
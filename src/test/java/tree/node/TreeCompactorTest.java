@@ -0,0 +1,225 @@
+package tree.node;
+
+import game.action.Action;
+import game.action.ActionGenerator_FixedSequence;
+import game.action.ActionGenerator_Null;
+import game.action.IActionGenerator;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import savers.DataSaver_Null;
+import tree.TreeWorker;
+import tree.node.evaluator.EvaluationFunction_Distance;
+import tree.sampler.Sampler_UCB;
+import tree.sampler.rollout.RolloutPolicy_JustEvaluate;
+import value.updaters.ValueUpdater_Average;
+import value.updaters.ValueUpdater_HardSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TreeCompactorTest {
+
+    private final IActionGenerator<CommandQWOP> generator = ActionGenerator_FixedSequence.makeDefaultGenerator(-1);
+
+    private static StateQWOP failedState() {
+        return new StateQWOP(GameQWOP.getInitialState().flattenState(0f), true);
+    }
+
+    /**
+     * Open branch with a child and a grandchild, and the given value.
+     */
+    private NodeGameExplorable<CommandQWOP, StateQWOP> addOpenBranch(NodeGameExplorable<CommandQWOP, StateQWOP> parent,
+                                                                    float value) {
+        NodeGameExplorable<CommandQWOP, StateQWOP> branch = parent.addDoublyLinkedChild(
+                parent.getUntriedActionByIndex(0), GameQWOP.getInitialState(), generator);
+        NodeGameExplorable<CommandQWOP, StateQWOP> child = branch.addDoublyLinkedChild(
+                branch.getUntriedActionByIndex(0), GameQWOP.getInitialState());
+        child.addDoublyLinkedChild(child.getUntriedActionByIndex(0), GameQWOP.getInitialState());
+        branch.updateValue(value, new ValueUpdater_HardSet<>());
+        return branch;
+    }
+
+    /**
+     * Branch where every path has failed. Its two levels of children are all fully-explored.
+     */
+    private NodeGameExplorable<CommandQWOP, StateQWOP> addExploredBranch(
+            NodeGameExplorable<CommandQWOP, StateQWOP> parent) {
+        NodeGameExplorable<CommandQWOP, StateQWOP> branch = parent.addDoublyLinkedChild(
+                parent.getUntriedActionByIndex(0), GameQWOP.getInitialState(), new ActionGenerator_Null<>());
+        NodeGameExplorable<CommandQWOP, StateQWOP> child = branch.addBackwardsLinkedChild(
+                new Action<>(3, CommandQWOP.QP), GameQWOP.getInitialState(), new ActionGenerator_Null<>());
+        child.addDoublyLinkedChild(new Action<>(5, CommandQWOP.WO), failedState());
+        branch.addToChildList(child); // Link after the subtree exists, so the explored status is checked on the way up.
+        child.propagateFullyExploredStatusLite();
+        branch.addDoublyLinkedChild(new Action<>(4, CommandQWOP.QP), failedState());
+        return branch;
+    }
+
+    @Test
+    public void compactTree() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                generator);
+        NodeGameExplorable<CommandQWOP, StateQWOP> explored = addExploredBranch(root);
+        Assert.assertTrue(explored.isFullyExplored());
+        Assert.assertEquals(3, explored.countDescendants());
+
+        List<NodeGameExplorable<CommandQWOP, StateQWOP>> openBranches = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            openBranches.add(addOpenBranch(root, i));
+        }
+        NodeGameExplorable<CommandQWOP, StateQWOP> lockedBranch = addOpenBranch(root, -1);
+        lockedBranch.getChildByIndex(0).getChildByIndex(0).reserveExpansionRightsLockFree();
+        NodeGameExplorable<CommandQWOP, StateQWOP> virtualLossBranch = addOpenBranch(root, -2);
+        virtualLossBranch.getChildByIndex(0).addVirtualLoss();
+
+        int nodesBefore = root.countDescendants();
+        TreeCompactor<CommandQWOP, StateQWOP> compactor = new TreeCompactor<>(0.8f, 0.5f, 1);
+        int removed = compactor.compact(root);
+        Assert.assertEquals(nodesBefore - removed, root.countDescendants());
+
+        // The explored branch keeps its top node.
+        Assert.assertTrue(root.getChildren().contains(explored));
+        Assert.assertEquals(0, explored.getChildCount());
+
+        // Half of the six visited open branches are collapsed. The two lowest-valued ones are busy, so the next three
+        // go instead.
+        for (NodeGameExplorable<CommandQWOP, StateQWOP> branch : openBranches) {
+            boolean collapsed = branch.getValue() < 3;
+            Assert.assertEquals(collapsed, branch.isFullyExplored());
+            Assert.assertEquals(collapsed ? 0 : 2, branch.countDescendants());
+            Assert.assertEquals(1, branch.getUpdateCount()); // Summary statistics stay.
+            Assert.assertFalse(branch.isLocked());
+        }
+        Assert.assertEquals(2, lockedBranch.countDescendants());
+        Assert.assertEquals(2, virtualLossBranch.countDescendants());
+        Assert.assertEquals(3 + 3 * 2, removed);
+        Assert.assertEquals(3, compactor.getBranchesCollapsedCount());
+        Assert.assertEquals(removed, compactor.getNodesRemovedCount());
+        Assert.assertFalse(root.isFullyExplored());
+    }
+
+    @Test
+    public void thrownOutNodesLeaveTranspositionTable() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                generator);
+        NodeGameExplorable<CommandQWOP, StateQWOP> branch = addOpenBranch(root, 0);
+        NodeGameExplorable<CommandQWOP, StateQWOP> kept = root.addDoublyLinkedChild(root.getUntriedActionByIndex(0),
+                GameQWOP.getInitialState());
+        NodeGameExplorable<CommandQWOP, StateQWOP> thrownOut = branch.getChildByIndex(0).getChildByIndex(0);
+        TranspositionTable<CommandQWOP, StateQWOP> table = new TranspositionTable<>(0.1f);
+        table.addOrPrune(thrownOut);
+        Assert.assertSame(thrownOut, table.getCanonicalNode(kept.getState()));
+
+        TreeCompactor<CommandQWOP, StateQWOP> compactor = new TreeCompactor<>(0.8f, 1f, 1);
+        compactor.setTranspositionTable(table);
+        Assert.assertEquals(2, compactor.compact(root));
+
+        // A new node reaching the same state is not pruned against the thrown-out one.
+        Assert.assertNull(table.getCanonicalNode(kept.getState()));
+        Assert.assertSame(kept, table.addOrPrune(kept));
+    }
+
+    @Test
+    public void shallowBranchesKept() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                generator);
+        NodeGameExplorable<CommandQWOP, StateQWOP> branch = addOpenBranch(root, 0);
+        branch.getChildByIndex(0).updateValue(5, new ValueUpdater_HardSet<>());
+
+        // Only depth 2 and beyond may be collapsed, and the only node there with children has been visited.
+        int removed = new TreeCompactor<CommandQWOP, StateQWOP>(0.8f, 1f, 2).compact(root);
+        Assert.assertEquals(1, removed);
+        Assert.assertFalse(branch.isFullyExplored());
+        Assert.assertTrue(branch.getChildByIndex(0).isFullyExplored());
+    }
+
+    @Test
+    public void notNeededBelowHighWater() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                generator);
+        addExploredBranch(root);
+        TreeCompactor<CommandQWOP, StateQWOP> compactor = new TreeCompactor<>(1f, 0.5f, 1);
+        Assert.assertTrue(TreeCompactor.getHeapFractionAfterCollection() < 1f);
+        Assert.assertEquals(0, compactor.compactIfNeeded(root));
+        Assert.assertEquals(0, compactor.getCompactionCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badHighWater() {
+        new TreeCompactor<CommandQWOP, StateQWOP>(1.5f, 0.5f, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badCollapseDepth() {
+        new TreeCompactor<CommandQWOP, StateQWOP>(0.5f, 0.5f, 0);
+    }
+
+    @Test
+    public void compactWhileWorkersRun() throws InterruptedException {
+        AtomicReference<Throwable> workerError = new AtomicReference<>();
+        Thread.UncaughtExceptionHandler previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, error) -> workerError.set(error));
+
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                generator);
+        // Workers are driven directly rather than through a stage, and stop themselves after a few games. Stages
+        // count the games of every worker, including ones from tests running alongside this one.
+        AtomicInteger gamesLeft = new AtomicInteger(60);
+        List<TreeWorker<CommandQWOP, StateQWOP>> workers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Sampler_UCB<CommandQWOP, StateQWOP> sampler = new Sampler_UCB<>(new EvaluationFunction_Distance<>(),
+                    new RolloutPolicy_JustEvaluate<>(new EvaluationFunction_Distance<>()),
+                    new ValueUpdater_Average<>(), 5, 1, true, 1f);
+            AtomicReference<TreeWorker<CommandQWOP, StateQWOP>> self = new AtomicReference<>();
+            TreeWorker<CommandQWOP, StateQWOP> worker = new TreeWorker<>(new GameQWOP(), sampler,
+                    new DataSaver_Null<CommandQWOP, StateQWOP>() {
+                        @Override
+                        public void reportGameEnding(NodeGameBase<?, CommandQWOP, StateQWOP> endNode) {
+                            if (gamesLeft.decrementAndGet() <= 0) {
+                                self.get().terminateWorker();
+                            }
+                        }
+                    });
+            self.set(worker);
+            worker.setRoot(root);
+            workers.add(worker);
+        }
+
+        TreeCompactor<CommandQWOP, StateQWOP> compactor = new TreeCompactor<>(0.8f, 0.2f, 1);
+        long deadline = System.currentTimeMillis() + 10000;
+        try {
+            workers.forEach(TreeWorker::startWorker);
+            while (workers.stream().anyMatch(TreeWorker::isRunning) && System.currentTimeMillis() < deadline) {
+                compactor.compact(root);
+                Thread.sleep(1);
+            }
+        } finally {
+            workers.forEach(TreeWorker::terminateWorker);
+            Thread.setDefaultUncaughtExceptionHandler(previousHandler);
+        }
+
+        for (TreeWorker<CommandQWOP, StateQWOP> worker : workers) {
+            Assert.assertFalse(worker.isRunning());
+        }
+        Assert.assertNull(String.valueOf(workerError.get()), workerError.get());
+        Assert.assertTrue(compactor.getCompactionCount() > 0);
+        Assert.assertTrue(compactor.getNodesRemovedCount() > 0);
+
+        // What is left of the tree is still consistent.
+        root.recurseDownTreeInclusive(node -> {
+            Assert.assertFalse(node.isLocked());
+            Assert.assertEquals(0, node.getVirtualLossCount());
+            if (node.isFullyExplored()) {
+                Assert.assertEquals(0, node.getUntriedActionCount());
+                for (NodeGameExplorable<CommandQWOP, StateQWOP> child : node.getChildren()) {
+                    Assert.assertTrue(child.isFullyExplored());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,136 @@
+package tree.node;
+
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class TreeFileTest {
+
+    private File makeTempFile() throws IOException {
+        File file = File.createTempFile("treefile", "tree");
+        file.deleteOnExit();
+        TreeFile.getStateFile(file).deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Root with two children, the second of which has one child of its own.
+     */
+    private TreeStore<CommandQWOP, StateQWOP> makeStore() {
+        GameQWOP game = new GameQWOP();
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        int root = store.addRoot(game.getCurrentState());
+        game.step(CommandQWOP.QP);
+        store.addChild(root, new Action<>(1, CommandQWOP.QP), game.getCurrentState());
+        game.step(CommandQWOP.WO);
+        int child = store.addChild(root, new Action<>(2, CommandQWOP.WO), game.getCurrentState());
+        game.step(CommandQWOP.NONE);
+        int grandchild = store.addChild(child, new Action<>(3, CommandQWOP.NONE), game.getCurrentState());
+        store.addValueSample(root, 4f);
+        store.addValueSample(grandchild, -2f);
+        store.addValueSample(grandchild, -3f);
+        store.setFullyExplored(grandchild);
+        return store;
+    }
+
+    private void assertSameStore(TreeStore<CommandQWOP, StateQWOP> expected, TreeStore<CommandQWOP, StateQWOP> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        float[] expectedState = new float[StateQWOP.STATE_SIZE];
+        float[] actualState = new float[StateQWOP.STATE_SIZE];
+        for (int id = 0; id < expected.size(); id++) {
+            Assert.assertEquals(expected.getParent(id), actual.getParent(id));
+            Assert.assertEquals(expected.getChildCount(id), actual.getChildCount(id));
+            if (expected.getParent(id) != TreeStore.NO_NODE)
+                Assert.assertEquals(expected.getAction(id), actual.getAction(id));
+            Assert.assertEquals(expected.getValue(id), actual.getValue(id), 0f);
+            Assert.assertEquals(expected.getUpdateCount(id), actual.getUpdateCount(id));
+            Assert.assertEquals(expected.isFullyExplored(id), actual.isFullyExplored(id));
+            Assert.assertEquals(expected.isFailed(id), actual.isFailed(id));
+            expected.getState(id, expectedState);
+            actual.getState(id, actualState);
+            Assert.assertArrayEquals(expectedState, actualState, 0f);
+        }
+    }
+
+    @Test
+    public void writeAndLoad() throws IOException {
+        File file = makeTempFile();
+        TreeStore<CommandQWOP, StateQWOP> store = makeStore();
+        TreeFile.write(store, file);
+        Assert.assertEquals(TreeFile.HEADER_BYTES + 4 * TreeFile.RECORD_BYTES, file.length());
+        Assert.assertEquals(4 * StateQWOP.STATE_SIZE * Float.BYTES, TreeFile.getStateFile(file).length());
+
+        assertSameStore(store, TreeFile.load(file, TreeStore.QWOP_STATES, false));
+        assertSameStore(store, TreeFile.load(file, TreeStore.QWOP_STATES, true));
+    }
+
+    @Test
+    public void appendAndResume() throws IOException {
+        File file = makeTempFile();
+        StateQWOP state = GameQWOP.getInitialState();
+        try (TreeFile<CommandQWOP, StateQWOP> treeFile = TreeFile.create(file, TreeStore.QWOP_STATES)) {
+            Assert.assertEquals(0, treeFile.appendRoot(state));
+            Assert.assertEquals(1, treeFile.appendNode(0, new Action<>(5, CommandQWOP.Q), state));
+            treeFile.writeValue(1, 3f, 2, false);
+            Assert.assertEquals(2, treeFile.size());
+        }
+        // Keep adding in a later session, with a new command.
+        try (TreeFile<CommandQWOP, StateQWOP> treeFile = TreeFile.openForAppend(file, TreeStore.QWOP_STATES)) {
+            Assert.assertEquals(2, treeFile.size());
+            Assert.assertEquals(2, treeFile.appendNode(1, new Action<>(6, CommandQWOP.P), state));
+            treeFile.writeValue(1, 4f, 3, true);
+        }
+
+        TreeStore<CommandQWOP, StateQWOP> store = TreeFile.load(file, TreeStore.QWOP_STATES, false);
+        Assert.assertEquals(3, store.size());
+        Assert.assertEquals(new Action<>(5, CommandQWOP.Q), store.getAction(1));
+        Assert.assertEquals(new Action<>(6, CommandQWOP.P), store.getAction(2));
+        Assert.assertEquals(1, store.getParent(2));
+        Assert.assertEquals(4f, store.getValue(1), 0f);
+        Assert.assertEquals(3, store.getUpdateCount(1));
+        Assert.assertTrue(store.isFullyExplored(1));
+        Assert.assertEquals(0, store.getUpdateCount(2));
+    }
+
+    @Test
+    public void partialRecordsDropped() throws IOException {
+        File file = makeTempFile();
+        TreeFile.write(makeStore(), file);
+
+        // As if the process died partway through adding another node.
+        try (RandomAccessFile states = new RandomAccessFile(TreeFile.getStateFile(file), "rw")) {
+            states.setLength(states.length() + 10);
+        }
+        try (RandomAccessFile tree = new RandomAccessFile(file, "rw")) {
+            tree.setLength(tree.length() + 3);
+        }
+        Assert.assertEquals(4, TreeFile.load(file, TreeStore.QWOP_STATES, false).size());
+        try (TreeFile<CommandQWOP, StateQWOP> treeFile = TreeFile.openForAppend(file, TreeStore.QWOP_STATES)) {
+            Assert.assertEquals(4, treeFile.size());
+            Assert.assertEquals(4, treeFile.appendNode(3, new Action<>(1, CommandQWOP.W),
+                    GameQWOP.getInitialState()));
+        }
+        TreeStore<CommandQWOP, StateQWOP> store = TreeFile.load(file, TreeStore.QWOP_STATES, false);
+        Assert.assertEquals(5, store.size());
+        Assert.assertEquals(3, store.getParent(4));
+    }
+
+    @Test(expected = IOException.class)
+    public void notATreeFile() throws IOException {
+        File file = makeTempFile();
+        try (RandomAccessFile tree = new RandomAccessFile(file, "rw")) {
+            tree.setLength(TreeFile.HEADER_BYTES);
+        }
+        try (RandomAccessFile states = new RandomAccessFile(TreeFile.getStateFile(file), "rw")) {
+            states.setLength(0);
+        }
+        TreeFile.load(file, TreeStore.QWOP_STATES, false);
+    }
+}
@@ -0,0 +1,372 @@
+package tree.node;
+
+import game.action.Action;
+import game.action.ActionGenerator_FixedActions;
+import game.action.ActionList;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import savers.DataSaver_Null;
+import tree.TreeWorker;
+import tree.node.evaluator.EvaluationFunction_Constant;
+import tree.sampler.ISampler;
+import tree.sampler.Sampler_Random;
+import tree.sampler.Sampler_UCB;
+import tree.sampler.rollout.RolloutPolicy_JustEvaluate;
+import value.updaters.ValueUpdater_Average;
+import value.updaters.ValueUpdater_HardSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+public class TreeStoreTest {
+
+    private final ActionList<CommandQWOP> actions = ActionList.getEmptyList();
+
+    private final ActionGenerator_FixedActions<CommandQWOP> actionGenerator;
+
+    public TreeStoreTest() {
+        actions.add(new Action<>(3, CommandQWOP.WO));
+        actions.add(new Action<>(7, CommandQWOP.QP));
+        actionGenerator = new ActionGenerator_FixedActions<>(actions);
+    }
+
+    /**
+     * Make a small tree of nodes with real, distinct game states and some values.
+     */
+    private NodeGameExplorable<CommandQWOP, StateQWOP> makeTree() {
+        GameQWOP game = new GameQWOP();
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(game.getCurrentState(),
+                actionGenerator);
+        ValueUpdater_HardSet<CommandQWOP, StateQWOP> updater = new ValueUpdater_HardSet<>();
+        float value = 0f;
+        for (Action<CommandQWOP> action : actions) {
+            game.step(action.peek());
+            NodeGameExplorable<CommandQWOP, StateQWOP> child = root.addDoublyLinkedChild(action,
+                    game.getCurrentState());
+            child.updateValue(value++, updater);
+            for (Action<CommandQWOP> grandchildAction : actions) {
+                game.step(grandchildAction.peek());
+                NodeGameExplorable<CommandQWOP, StateQWOP> grandchild = child.addDoublyLinkedChild(grandchildAction,
+                        game.getCurrentState());
+                grandchild.updateValue(value++, updater);
+                grandchild.updateValue(value++, updater);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Search below a node with some workers until they have played a number of games between them.
+     */
+    private void search(NodeGameExplorable<CommandQWOP, StateQWOP> root, int games,
+                        Supplier<ISampler<CommandQWOP, StateQWOP>> samplerSupplier, int workerCount) {
+        AtomicInteger gamesLeft = new AtomicInteger(games);
+        List<TreeWorker<CommandQWOP, StateQWOP>> workers = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(new TreeWorker<>(new GameQWOP(), samplerSupplier.get(),
+                    new DataSaver_Null<CommandQWOP, StateQWOP>() {
+                        @Override
+                        public void reportGameEnding(NodeGameBase<?, CommandQWOP, StateQWOP> endNode) {
+                            if (gamesLeft.decrementAndGet() <= 0) {
+                                workers.forEach(TreeWorker::terminateWorker);
+                            }
+                        }
+                    }));
+        }
+        for (TreeWorker<CommandQWOP, StateQWOP> worker : workers) {
+            worker.setRoot(root);
+            worker.startWorker();
+        }
+
+        long deadline = System.currentTimeMillis() + 60000;
+        while (workers.stream().anyMatch(TreeWorker::isRunning) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        workers.forEach(TreeWorker::terminateWorker);
+    }
+
+    private void assertSameTree(NodeGameBase<?, CommandQWOP, StateQWOP> node, TreeStore<CommandQWOP, StateQWOP> store,
+                                int id) {
+        Assert.assertEquals(node.getChildCount(), store.getChildCount(id));
+        Assert.assertEquals(node.getValue(), store.getValue(id), 0f);
+        Assert.assertEquals(node.getUpdateCount(), store.getUpdateCount(id));
+        Assert.assertEquals(node.getState().isFailed(), store.isFailed(id));
+        Assert.assertArrayEquals(node.getState().flattenState(), store.getState(id).flattenState(), 0f);
+
+        int childId = store.getFirstChild(id);
+        for (NodeGameBase<?, CommandQWOP, StateQWOP> child : node.getChildren()) {
+            Assert.assertNotEquals(TreeStore.NO_NODE, childId);
+            Assert.assertEquals(id, store.getParent(childId));
+            Assert.assertEquals(store.getDepth(id) + 1, store.getDepth(childId));
+            Assert.assertEquals(child.getAction(), store.getAction(childId));
+            assertSameTree(child, store, childId);
+            childId = store.getNextSibling(childId);
+        }
+        Assert.assertEquals(TreeStore.NO_NODE, childId);
+    }
+
+    @Test
+    public void importTree() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeTree();
+        for (boolean offHeap : new boolean[]{false, true}) {
+            TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, offHeap);
+            int rootId = store.importTree(root);
+            Assert.assertEquals(offHeap, store.hasOffHeapStates());
+            Assert.assertEquals(7, store.size());
+            Assert.assertEquals(TreeStore.NO_NODE, store.getParent(rootId));
+            Assert.assertEquals(0, store.getDepth(rootId));
+            assertSameTree(root, store, rootId);
+
+            float[] state = new float[StateQWOP.STATE_SIZE];
+            store.getState(rootId, state);
+            Assert.assertArrayEquals(root.getState().flattenState(0f), state, 0f);
+        }
+    }
+
+    @Test
+    public void materialize() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeTree();
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        int rootId = store.importTree(root);
+
+        NodeGameExplorable<CommandQWOP, StateQWOP> copy = store.materialize(rootId, actionGenerator, 5);
+        assertSameTree(copy, store, rootId);
+        Assert.assertEquals(0, copy.getUntriedActionCount());
+        Assert.assertEquals(0, copy.getChildByIndex(0).getUntriedActionCount());
+        Assert.assertTrue(copy.getChildByIndex(0).getChildByIndex(0).getUntriedActionCount() > 0);
+
+        // Limited depth, starting partway down.
+        int childId = store.getFirstChild(rootId);
+        NodeGameExplorable<CommandQWOP, StateQWOP> partial = store.materialize(childId, actionGenerator, 0);
+        Assert.assertEquals(0, partial.getChildCount());
+        Assert.assertEquals(store.getValue(childId), partial.getValue(), 0f);
+        Assert.assertEquals(store.getUpdateCount(childId), partial.getUpdateCount());
+        partial = store.materialize(childId, actionGenerator, 1);
+        Assert.assertEquals(2, partial.getChildCount());
+
+        // The window keeps its real place in the tree, above which are its ancestors, linked only backwards.
+        Assert.assertEquals(1, partial.getTreeDepth());
+        Assert.assertEquals(store.getAction(childId), partial.getAction());
+        Assert.assertEquals(1, partial.getActionPath().size());
+        Assert.assertEquals(2, partial.getChildByIndex(0).getActionPath().size());
+        NodeGameExplorable<CommandQWOP, StateQWOP> ancestor = partial.getParent();
+        Assert.assertEquals(0, ancestor.getTreeDepth());
+        Assert.assertEquals(0, ancestor.getChildCount());
+        Assert.assertEquals(store.getValue(rootId), ancestor.getValue(), 0f);
+        Assert.assertArrayEquals(root.getState().flattenState(), ancestor.getState().flattenState(), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void materializeWrongDepth() {
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        store.importTree(makeTree());
+        store.materialize(new NodeGameExplorable<>(GameQWOP.getInitialState(), actionGenerator),
+                store.getFirstChild(0), 1);
+    }
+
+    @Test
+    public void searchWindow() {
+        // A real chain of two actions, so replays can be checked against it.
+        GameQWOP game = new GameQWOP();
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(game.getCurrentState());
+        NodeGameExplorable<CommandQWOP, StateQWOP> node = root;
+        for (Action<CommandQWOP> action : actions) {
+            game.doAction(action);
+            node = node.addDoublyLinkedChild(action, game.getCurrentState());
+        }
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        store.importTree(root);
+        int windowId = store.getFirstChild(store.getFirstChild(0));
+
+        NodeGameExplorable<CommandQWOP, StateQWOP> window = store.materialize(windowId, actionGenerator, 0);
+        search(window, 10, Sampler_Random::new, 1);
+
+        // New nodes continue from the window's state, not from the initial one.
+        Assert.assertTrue(window.getChildCount() > 0);
+        for (NodeGameExplorable<CommandQWOP, StateQWOP> child : window.getChildren()) {
+            Assert.assertEquals(3, child.getTreeDepth());
+            GameQWOP replay = new GameQWOP();
+            for (Action<CommandQWOP> action : child.getSequence(new ArrayList<>())) {
+                Action<CommandQWOP> polled = action.getCopy();
+                while (polled.hasNext() && !replay.isFailed()) { // Workers stop an action early on falling.
+                    replay.step(polled.poll());
+                }
+            }
+            Assert.assertArrayEquals(child.getState().flattenState(), replay.getCurrentState().flattenState(),
+                    1e-10f);
+        }
+
+        store.mergeTree(window, windowId);
+        Assert.assertEquals(window.getChildCount(), store.getChildCount(windowId));
+    }
+
+    @Test
+    public void searchWindowMultipleWorkers() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeTree();
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        int rootId = store.importTree(root);
+        int childId = store.getFirstChild(rootId);
+        int windowId = store.getFirstChild(childId);
+        int storedNodes = store.size();
+
+        NodeGameExplorable<CommandQWOP, StateQWOP> window = store.materialize(windowId, actionGenerator, 0);
+        NodeGameExplorable<CommandQWOP, StateQWOP> parent = window.getParent();
+        NodeGameExplorable<CommandQWOP, StateQWOP> grandparent = parent.getParent();
+        Assert.assertEquals(0, parent.getUntriedActionCount());
+        Assert.assertEquals(0, grandparent.getUntriedActionCount());
+
+        // Few actions to choose between, so the workers keep colliding with each other.
+        search(window, 200, () -> new Sampler_UCB<>(new EvaluationFunction_Constant<>(1f),
+                new RolloutPolicy_JustEvaluate<>(new EvaluationFunction_Constant<>(1f)),
+                new ValueUpdater_Average<>(), 1f, 1f), 4);
+
+        // Everything new is below the window. Nothing was expanded from its ancestors.
+        Assert.assertTrue(window.getChildCount() > 0);
+        Assert.assertEquals(0, parent.getChildCount());
+        Assert.assertEquals(0, grandparent.getChildCount());
+        Assert.assertFalse(parent.isLocked());
+        Assert.assertFalse(grandparent.isLocked());
+
+        store.mergeTree(window, windowId);
+        Assert.assertEquals(2, store.getChildCount(rootId));
+        Assert.assertEquals(2, store.getChildCount(childId));
+        Assert.assertEquals(storedNodes + window.countDescendants(), store.size());
+    }
+
+    @Test
+    public void mergeTree() {
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = makeTree();
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        int rootId = store.importTree(root);
+
+        // Search a bit more in a materialized window, and write the results back.
+        int childId = store.getFirstChild(rootId);
+        NodeGameExplorable<CommandQWOP, StateQWOP> window = store.materialize(childId, actionGenerator, 1);
+        NodeGameExplorable<CommandQWOP, StateQWOP> grandchild = window.getChildByIndex(1);
+        grandchild.addDoublyLinkedChild(actions.get(0), GameQWOP.getInitialState());
+        grandchild.updateValue(100f, new ValueUpdater_HardSet<>());
+
+        store.mergeTree(window, childId);
+        Assert.assertEquals(8, store.size());
+        int grandchildId = store.findChild(childId, grandchild.getAction());
+        Assert.assertEquals(store.getNextSibling(store.getFirstChild(childId)), grandchildId);
+        Assert.assertEquals(100f, store.getValue(grandchildId), 0f);
+        Assert.assertEquals(3, store.getUpdateCount(grandchildId));
+        Assert.assertEquals(1, store.getChildCount(grandchildId));
+        Assert.assertEquals(TreeStore.NO_NODE, store.findChild(childId,
+                new Action<>(3, CommandQWOP.NONE)));
+
+        // Merging the same thing again adds nothing.
+        store.mergeTree(window, childId);
+        Assert.assertEquals(8, store.size());
+    }
+
+    @Test
+    public void values() {
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        int root = store.addRoot(GameQWOP.getInitialState());
+        Assert.assertEquals(0, store.getUpdateCount(root));
+
+        store.addValueSample(root, 2f);
+        store.addValueSample(root, 4f);
+        store.addValueSample(root, -3f);
+        Assert.assertEquals(1f, store.getValue(root), 1e-6f);
+        Assert.assertEquals(3, store.getUpdateCount(root));
+
+        store.setValue(root, -10f);
+        Assert.assertEquals(-10f, store.getValue(root), 0f);
+        Assert.assertEquals(4, store.getUpdateCount(root));
+    }
+
+    @Test
+    public void expansionRights() {
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        int root = store.addRoot(GameQWOP.getInitialState());
+        Assert.assertFalse(store.isLocked(root));
+        Assert.assertTrue(store.reserveExpansionRights(root));
+        Assert.assertTrue(store.isLocked(root));
+        Assert.assertFalse(store.reserveExpansionRights(root));
+        store.releaseExpansionRights(root);
+        Assert.assertFalse(store.isLocked(root));
+        Assert.assertFalse(store.isFullyExplored(root));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseUnlocked() {
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        store.releaseExpansionRights(store.addRoot(GameQWOP.getInitialState()));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void badId() {
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        store.addRoot(GameQWOP.getInitialState());
+        store.getValue(1);
+    }
+
+    @Test
+    public void multithreadedAdding() throws InterruptedException {
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, true);
+        StateQWOP state = GameQWOP.getInitialState();
+        int root = store.addRoot(state);
+        int threadCount = 4;
+        int nodesPerThread = 10000; // Enough to need several chunks.
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Action<CommandQWOP> action = new Action<>(i + 1, CommandQWOP.Q);
+            Thread thread = new Thread(() -> {
+                int parent = store.addChild(root, action, state);
+                for (int j = 1; j < nodesPerThread; j++) {
+                    parent = store.addChild(parent, action, state);
+                    store.addValueSample(root, 1f);
+                    // Read structure while others are adding.
+                    int count = 0;
+                    for (int child = store.getFirstChild(root); child != TreeStore.NO_NODE;
+                         child = store.getNextSibling(child)) {
+                        count++;
+                    }
+                    Assert.assertTrue(count >= 1 && count <= threadCount);
+                }
+            });
+            thread.setUncaughtExceptionHandler((t, e) -> error.set(e));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(error.get());
+
+        Assert.assertEquals(threadCount * nodesPerThread + 1, store.size());
+        Assert.assertEquals(threadCount, store.getChildCount(root));
+        Assert.assertEquals(threadCount * (nodesPerThread - 1), store.getUpdateCount(root));
+        Assert.assertTrue(store.getAllocatedBytes() >= (long) store.size() * store.getBytesPerNode());
+
+        // Each thread built one long chain.
+        store.forEachChild(root, child -> {
+            int depth = 1;
+            int current = child;
+            int duration = store.getActionDuration(child);
+            while (store.getFirstChild(current) != TreeStore.NO_NODE) {
+                Assert.assertEquals(1, store.getChildCount(current));
+                current = store.getFirstChild(current);
+                Assert.assertEquals(duration, store.getActionDuration(current));
+                Assert.assertEquals(++depth, store.getDepth(current));
+            }
+            Assert.assertEquals(nodesPerThread, depth);
+        });
+        Assert.assertArrayEquals(state.flattenState(), store.getState(store.size() - 1).flattenState(), 0f);
+    }
+}
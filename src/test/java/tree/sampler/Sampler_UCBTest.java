@@ -20,6 +20,10 @@ import value.updaters.IValueUpdater;
 import value.updaters.ValueUpdater_Average;
 import value.updaters.ValueUpdater_HardSet;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -183,6 +187,147 @@ public class Sampler_UCBTest {
         Assert.assertFalse(sampler.treePolicyGuard(n2_2));
     }
 
+    @Test
+    public void treePolicyStaysBelowStartNode() throws InterruptedException {
+        IEvaluationFunction<CommandQWOP, StateQWOP> evalFun1 = new EvaluationFunction_Constant<>(5f);
+        Sampler_UCB<CommandQWOP, StateQWOP> sampler = new Sampler_UCB<>(
+                evalFun1,
+                new RolloutPolicy_JustEvaluate<>(evalFun1),
+                new ValueUpdater_Average<>(), 5, 1);
+        IValueUpdater<CommandQWOP, StateQWOP> valueUpdater = new ValueUpdater_HardSet<>();
+        root.updateValue(0, valueUpdater);
+        n1.updateValue(1f, valueUpdater);
+        n2.updateValue(1e6f, valueUpdater);
+
+        // Another worker is expanding n1. A search started from n1 must wait for it, not back up to the root and go
+        // down n2 instead.
+        Assert.assertTrue(n1.reserveExpansionRights());
+        AtomicReference<NodeGameExplorableBase<?, CommandQWOP, StateQWOP>> treePolicyNode = new AtomicReference<>();
+        Thread worker = new Thread(() -> treePolicyNode.set(sampler.treePolicy(n1)));
+        worker.start();
+        worker.join(200);
+        Assert.assertTrue(worker.isAlive());
+        Assert.assertFalse(n2.isLocked());
+
+        n1.releaseExpansionRights();
+        worker.join(10000);
+        Assert.assertEquals(n1, treePolicyNode.get());
+        Assert.assertTrue(n1.isLocked());
+        Assert.assertFalse(n2.isLocked());
+        Assert.assertFalse(root.isLocked());
+    }
+
+    @Test
+    public void treePolicyLockFree() {
+        IEvaluationFunction<CommandQWOP, StateQWOP> evalFun1 = new EvaluationFunction_Constant<>(5f);
+        Sampler_UCB<CommandQWOP, StateQWOP> sampler = new Sampler_UCB<>(
+                evalFun1,
+                new RolloutPolicy_JustEvaluate<>(evalFun1),
+                new ValueUpdater_Average<>(), 5, 1, true, 100f);
+        IValueUpdater<CommandQWOP, StateQWOP> valueUpdater = new ValueUpdater_HardSet<>();
+
+        // Give n2 some children, so it no longer has untried actions.
+        NodeGameExplorableBase<?, CommandQWOP, StateQWOP> n2_1 = n2.addDoublyLinkedChild(n2.getUntriedActionRandom(),
+                GameQWOP.getInitialState());
+        NodeGameExplorableBase<?, CommandQWOP, StateQWOP> n2_3 = n2.addDoublyLinkedChild(n2.getUntriedActionRandom(),
+                GameQWOP.getInitialState());
+        Assert.assertEquals(0, n2.getUntriedActionCount());
+
+        root.updateValue(0, valueUpdater);
+        root.updateValue(0, valueUpdater);
+        n1.updateValue(10f, valueUpdater);
+        n2.updateValue(9f, valueUpdater);
+        n2_1.updateValue(9f, valueUpdater);
+        n2_2.updateValue(9f, valueUpdater);
+        n2_3.updateValue(9f, valueUpdater);
+
+        // n1 is best, and only n1 is reserved. Virtual loss goes on it and everything above it.
+        NodeGameExplorableBase<?, CommandQWOP, StateQWOP> treePolicyNode = sampler.treePolicy(root);
+        Assert.assertEquals(n1, treePolicyNode);
+        Assert.assertTrue(n1.isLocked());
+        Assert.assertFalse(root.isLocked());
+        Assert.assertEquals(1, n1.getVirtualLossCount());
+        Assert.assertEquals(1, root.getVirtualLossCount());
+        Assert.assertEquals(0, n2.getVirtualLossCount());
+
+        // n1 is reserved, so the next worker goes down the other branch.
+        NodeGameExplorableBase<?, CommandQWOP, StateQWOP> otherNode = sampler.treePolicy(root);
+        Assert.assertEquals(n2, otherNode.getParent());
+        Assert.assertEquals(1, n2.getVirtualLossCount());
+        Assert.assertEquals(2, root.getVirtualLossCount());
+
+        // Releasing through the sampler removes the virtual loss again.
+        sampler.releaseExpansionRights(treePolicyNode);
+        sampler.releaseExpansionRights(otherNode);
+        Assert.assertFalse(n1.isLocked());
+        Assert.assertFalse(otherNode.isLocked());
+        Assert.assertEquals(0, n1.getVirtualLossCount());
+        Assert.assertEquals(0, n2.getVirtualLossCount());
+        Assert.assertEquals(0, otherNode.getVirtualLossCount());
+        Assert.assertEquals(0, root.getVirtualLossCount());
+
+        // Workers partway through iterations below n1 make it look worse than n2, even though n1 is not reserved.
+        for (int i = 0; i < 3; i++) {
+            n1.recurseUpTreeInclusive(NodeGameExplorableBase::addVirtualLoss);
+        }
+        treePolicyNode = sampler.treePolicy(root);
+        Assert.assertEquals(n2, treePolicyNode.getParent());
+        sampler.releaseExpansionRights(treePolicyNode);
+    }
+
+    @Test
+    public void treePolicyLockFreeMultithreaded() throws InterruptedException {
+        IEvaluationFunction<CommandQWOP, StateQWOP> evalFun1 = new EvaluationFunction_Constant<>(5f);
+        Sampler_UCB<CommandQWOP, StateQWOP> sampler = new Sampler_UCB<>(
+                evalFun1,
+                new RolloutPolicy_JustEvaluate<>(evalFun1),
+                new ValueUpdater_Average<>(), 5, 1, true, 1f);
+
+        ActionList<CommandQWOP> actions = ActionList.getEmptyList();
+        actions.add(new Action<>(1, CommandQWOP.Q));
+        actions.add(new Action<>(2, CommandQWOP.W));
+        actions.add(new Action<>(3, CommandQWOP.O));
+        NodeGameExplorable<CommandQWOP, StateQWOP> treeRoot = new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                new ActionGenerator_FixedActions<>(actions));
+
+        // Each worker does the same steps as a TreeWorker, but adds nodes without simulating anything.
+        int workers = 4;
+        int iterationsPerWorker = 500;
+        Thread[] threads = new Thread[workers];
+        AtomicReference<Throwable> workerError = new AtomicReference<>();
+        for (int i = 0; i < workers; i++) {
+            Sampler_UCB<CommandQWOP, StateQWOP> workerSampler = sampler.getCopy();
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < iterationsPerWorker; j++) {
+                    NodeGameExplorableBase<?, CommandQWOP, StateQWOP> expansionNode = workerSampler.treePolicy(treeRoot);
+                    Assert.assertTrue(expansionNode.isLocked());
+                    Assert.assertTrue(expansionNode.getUntriedActionCount() > 0);
+                    NodeGameExplorableBase<?, CommandQWOP, StateQWOP> newNode =
+                            expansionNode.addDoublyLinkedChild(workerSampler.expansionPolicy(expansionNode),
+                                    GameQWOP.getInitialState());
+                    workerSampler.rolloutPolicy(newNode, null);
+                    workerSampler.releaseExpansionRights(expansionNode);
+                }
+            });
+            threads[i].setUncaughtExceptionHandler((t, e) -> workerError.set(e));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(workerError.get());
+
+        // Every iteration was backed up, and nothing is left reserved or carrying virtual loss.
+        Assert.assertEquals(workers * iterationsPerWorker, treeRoot.getUpdateCount());
+        List<NodeGameExplorable<CommandQWOP, StateQWOP>> nodes = new ArrayList<>();
+        treeRoot.recurseDownTreeInclusive(nodes::add);
+        Assert.assertEquals(workers * iterationsPerWorker + 1, nodes.size());
+        for (NodeGameExplorable<CommandQWOP, StateQWOP> node : nodes) {
+            Assert.assertFalse(node.isLocked());
+            Assert.assertEquals(0, node.getVirtualLossCount());
+        }
+    }
+
     @Test
     public void treePolicyActionDoneAndGuard() {
         IEvaluationFunction<CommandQWOP, StateQWOP> evalFun1 = new EvaluationFunction_Constant<>(5f);
@@ -286,6 +431,12 @@ public class Sampler_UCBTest {
         // Should copy this parameter.
         Sampler_UCB<CommandQWOP, StateQWOP> samplerCopy = sampler.getCopy();
         Assert.assertEquals(sampler.explorationConstant, samplerCopy.explorationConstant, 1e-8f);
+        Assert.assertFalse(samplerCopy.lockFree);
+
+        Sampler_UCB<CommandQWOP, StateQWOP> lockFreeCopy = new Sampler_UCB<>(evalFun1,
+                new RolloutPolicy_JustEvaluate<>(evalFun1), new ValueUpdater_Average<>(), 101, 6, true, 3f).getCopy();
+        Assert.assertTrue(lockFreeCopy.lockFree);
+        Assert.assertEquals(3f, lockFreeCopy.virtualLoss, 1e-8f);
 
         // Should NOT copy the current status of the sampler.
         Assert.assertFalse(samplerCopy.expansionPolicyGuard(root));
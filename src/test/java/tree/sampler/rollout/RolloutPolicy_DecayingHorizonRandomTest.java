@@ -1,6 +1,8 @@
 package tree.sampler.rollout;
 
+import controllers.Controller_Constant;
 import controllers.Controller_Random;
+import game.action.Action;
 import game.qwop.GameQWOP;
 import game.IGameInternal;
 import game.qwop.CommandQWOP;
@@ -12,8 +14,13 @@ import tree.node.NodeGameBase;
 import tree.node.NodeGameExplorable;
 import tree.node.evaluator.EvaluationFunction_Constant;
 import tree.node.evaluator.EvaluationFunction_Distance;
+import tree.node.evaluator.EvaluationFunction_HandTunedOnState;
 import tree.node.evaluator.IEvaluationFunction;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class RolloutPolicy_DecayingHorizonRandomTest {
 
     @Test
@@ -117,6 +124,45 @@ public class RolloutPolicy_DecayingHorizonRandomTest {
         Assert.assertEquals(cachingGame.halfwayCachedState.getCenterX() - startDistance, finalValue, 1e-4f);
     }
 
+    @Test
+    public void viewScoresMatchNodeScores() {
+        RolloutPolicy_DecayingHorizon.kernelCenter = 0.5f;
+        RolloutPolicy_DecayingHorizon.kernelSteepness = 5;
+        List<IEvaluationFunction<CommandQWOP, StateQWOP>> evaluators = new ArrayList<>();
+        evaluators.add(new EvaluationFunction_Distance<>());
+        evaluators.add(new EvaluationFunction_HandTunedOnState<>());
+
+        for (IEvaluationFunction<CommandQWOP, StateQWOP> evaluator : evaluators) {
+            Assert.assertTrue(evaluator.supportsStateView());
+            // Same evaluator, but only through nodes, so the rollout has to make a node every timestep.
+            IEvaluationFunction<CommandQWOP, StateQWOP> nodeOnly = new IEvaluationFunction<CommandQWOP, StateQWOP>() {
+                @Override
+                public float getValue(NodeGameBase<?, CommandQWOP, StateQWOP> nodeToEvaluate) {
+                    return evaluator.getValue(nodeToEvaluate);
+                }
+                @Override
+                public String getValueString(NodeGameBase<?, CommandQWOP, StateQWOP> nodeToEvaluate) { return null; }
+                @Override
+                public IEvaluationFunction<CommandQWOP, StateQWOP> getCopy() { return null; }
+                @Override
+                public void close() {}
+            };
+
+            float[] scores = new float[2];
+            int idx = 0;
+            for (IEvaluationFunction<CommandQWOP, StateQWOP> evalFun : Arrays.asList(evaluator, nodeOnly)) {
+                RolloutPolicy_DecayingHorizon<CommandQWOP, StateQWOP> rollout =
+                        new RolloutPolicy_DecayingHorizon<>(evalFun, RolloutPolicyBase.getQWOPRolloutActionGenerator(),
+                                new Controller_Constant<>(new Action<>(7, CommandQWOP.WO)), 150);
+                NodeGameExplorable<CommandQWOP, StateQWOP> startNode =
+                        new NodeGameExplorable<>(GameQWOP.getInitialState());
+                scores[idx++] = rollout.rollout(startNode, new GameQWOP());
+            }
+            Assert.assertNotEquals(0f, scores[0], 1e-6f);
+            Assert.assertEquals(scores[1], scores[0], 1e-5f);
+        }
+    }
+
     @Test
     public void getKernelMultiplier() {
         RolloutPolicy_DecayingHorizon.kernelCenter = 0.83f;
@@ -160,6 +206,14 @@ public class RolloutPolicy_DecayingHorizonRandomTest {
             return super.getCurrentState();
         }
 
+        @Override
+        public void getCurrentState(float[] dest, int offset) { // Rollouts may score from views instead.
+            if (getTimestepsThisGame() == (totalTs / 2)) {
+                halfwayCachedState = super.getCurrentState();
+            }
+            super.getCurrentState(dest, offset);
+        }
+
         @Override
         public boolean isFailed() {
             if (canFail) {
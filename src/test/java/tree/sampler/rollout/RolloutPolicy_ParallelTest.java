@@ -0,0 +1,238 @@
+package tree.sampler.rollout;
+
+import controllers.Controller_Constant;
+import game.IGameInternal;
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import tree.node.NodeGameExplorable;
+import tree.node.NodeGameExplorableBase;
+import tree.node.evaluator.EvaluationFunction_Distance;
+
+import java.awt.Graphics;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RolloutPolicy_ParallelTest {
+
+    /**
+     * Makes a node a few actions in, and gets the game to it.
+     */
+    private NodeGameExplorable<CommandQWOP, StateQWOP> makeNode(IGameInternal<CommandQWOP, StateQWOP> game) {
+        game.resetGame();
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(game.getCurrentState());
+        Action<CommandQWOP> action1 = new Action<>(8, CommandQWOP.QP);
+        Action<CommandQWOP> action2 = new Action<>(6, CommandQWOP.WO);
+        for (int i = 0; i < 8; i++) {
+            game.step(CommandQWOP.QP);
+        }
+        NodeGameExplorable<CommandQWOP, StateQWOP> child = root.addDoublyLinkedChild(action1, game.getCurrentState());
+        for (int i = 0; i < 6; i++) {
+            game.step(CommandQWOP.WO);
+        }
+        return child.addDoublyLinkedChild(action2, game.getCurrentState());
+    }
+
+    /**
+     * Checks that every game it is given is at the start node, and counts rollouts and threads across copies.
+     */
+    private static class CheckingRollout implements IRolloutPolicy<CommandQWOP, StateQWOP> {
+
+        final AtomicInteger rolloutCount;
+        final Set<String> threadNames;
+        final AtomicInteger nextScore;
+
+        CheckingRollout(AtomicInteger rolloutCount, Set<String> threadNames, AtomicInteger nextScore) {
+            this.rolloutCount = rolloutCount;
+            this.threadNames = threadNames;
+            this.nextScore = nextScore;
+        }
+
+        @Override
+        public float rollout(NodeGameExplorableBase<?, CommandQWOP, StateQWOP> startNode,
+                             IGameInternal<CommandQWOP, StateQWOP> game) {
+            Assert.assertEquals(startNode.getState(), game.getCurrentState());
+            game.step(CommandQWOP.Q); // Rollouts move the game along.
+            rolloutCount.incrementAndGet();
+            threadNames.add(Thread.currentThread().getName());
+            return nextScore.getAndIncrement();
+        }
+
+        @Override
+        public CheckingRollout getCopy() {
+            return new CheckingRollout(rolloutCount, threadNames, nextScore);
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    @Test
+    public void rolloutsStartFromNode() {
+        AtomicInteger rolloutCount = new AtomicInteger();
+        Set<String> threadNames = Collections.synchronizedSet(new HashSet<>());
+        AtomicInteger nextScore = new AtomicInteger();
+        RolloutPolicy_Parallel<CommandQWOP, StateQWOP> rollout = new RolloutPolicy_Parallel<>(
+                new CheckingRollout(rolloutCount, threadNames, nextScore), 4, RolloutPolicy_Parallel.Reduction.MEAN, 0f);
+
+        // Serialized game state.
+        GameQWOP game = new GameQWOP();
+        NodeGameExplorable<CommandQWOP, StateQWOP> node = makeNode(game);
+        Assert.assertEquals((0 + 1 + 2 + 3) / 4f, rollout.rollout(node, game), 1e-6f);
+        Assert.assertEquals(4, rolloutCount.get());
+        Assert.assertTrue(threadNames.contains(Thread.currentThread().getName()));
+        Assert.assertTrue(threadNames.size() > 1);
+
+        // Replaying actions, for games without serialized states.
+        IGameInternal<CommandQWOP, StateQWOP> replayGame = new ReplayOnlyGame(new GameQWOP());
+        node = makeNode(replayGame);
+        rollout.rollout(node, replayGame);
+        Assert.assertEquals(8, rolloutCount.get());
+        rollout.close();
+    }
+
+    @Test
+    public void helperGamesAreReused() {
+        Set<IGameInternal<CommandQWOP, StateQWOP>> games =
+                Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        AtomicInteger rolloutCount = new AtomicInteger();
+        RolloutPolicy_Parallel<CommandQWOP, StateQWOP> rollout = new RolloutPolicy_Parallel<>(
+                new CheckingRollout(rolloutCount, new HashSet<>(), new AtomicInteger()) {
+                    @Override
+                    public float rollout(NodeGameExplorableBase<?, CommandQWOP, StateQWOP> startNode,
+                                         IGameInternal<CommandQWOP, StateQWOP> game) {
+                        games.add(game);
+                        return super.rollout(startNode, game);
+                    }
+
+                    @Override
+                    public CheckingRollout getCopy() {
+                        return this;
+                    }
+                }, 3, RolloutPolicy_Parallel.Reduction.MEAN, 0f);
+
+        GameQWOP game = new GameQWOP();
+        for (int i = 0; i < 4; i++) {
+            rollout.rollout(makeNode(game), game); // Each time the helpers' games are copied into from a new one.
+        }
+        Assert.assertEquals(12, rolloutCount.get());
+        Assert.assertEquals(3, games.size()); // The worker's and one for each helper, kept throughout.
+        rollout.close();
+    }
+
+    @Test
+    public void deterministicRolloutsAgree() {
+        RolloutPolicy_EndScore<CommandQWOP, StateQWOP> individualRollout = new RolloutPolicy_EndScore<>(
+                new EvaluationFunction_Distance<>(), RolloutPolicyBase.getQWOPRolloutActionGenerator(),
+                new Controller_Constant<>(new Action<>(1, CommandQWOP.QP)), 50);
+        GameQWOP game = new GameQWOP();
+        NodeGameExplorable<CommandQWOP, StateQWOP> node = makeNode(game);
+        float singleScore = individualRollout.getCopy().rollout(node, game);
+
+        for (RolloutPolicy_Parallel.Reduction reduction : RolloutPolicy_Parallel.Reduction.values()) {
+            RolloutPolicy_Parallel<CommandQWOP, StateQWOP> rollout = new RolloutPolicy_Parallel<>(
+                    individualRollout.getCopy(), 3, reduction, 0.5f);
+            node = makeNode(game);
+            Assert.assertEquals(singleScore, rollout.rollout(node, game), 1e-4f);
+            rollout.close();
+        }
+    }
+
+    @Test
+    public void reductions() {
+        float[] scores = new float[]{4f, -2f, 10f, 0f, 1f};
+        RolloutPolicy_Parallel<CommandQWOP, StateQWOP> rollout = new RolloutPolicy_Parallel<>(
+                new CheckingRollout(new AtomicInteger(), new HashSet<>(), new AtomicInteger()), 5,
+                RolloutPolicy_Parallel.Reduction.MEAN, 0f);
+        Assert.assertEquals(2.6f, rollout.reduce(scores), 1e-6f);
+        Assert.assertEquals(10f, new RolloutPolicy_Parallel<>(rollout.getIndividualRollout(), 5,
+                RolloutPolicy_Parallel.Reduction.MAX, 0f).reduce(scores), 0f);
+        Assert.assertEquals(-2f, new RolloutPolicy_Parallel<>(rollout.getIndividualRollout(), 5,
+                RolloutPolicy_Parallel.Reduction.MIN, 0f).reduce(scores), 0f);
+        Assert.assertEquals(1f, new RolloutPolicy_Parallel<>(rollout.getIndividualRollout(), 5,
+                RolloutPolicy_Parallel.Reduction.QUANTILE, 0.5f).reduce(scores), 0f);
+        Assert.assertEquals(7f, new RolloutPolicy_Parallel<>(rollout.getIndividualRollout(), 5,
+                RolloutPolicy_Parallel.Reduction.QUANTILE, 0.875f).reduce(scores), 1e-6f);
+        Assert.assertEquals(10f, new RolloutPolicy_Parallel<>(rollout.getIndividualRollout(), 5,
+                RolloutPolicy_Parallel.Reduction.QUANTILE, 1f).reduce(scores), 0f);
+        // Scores are not reordered.
+        Assert.assertEquals(4f, scores[0], 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badRolloutCount() {
+        new RolloutPolicy_Parallel<>(new CheckingRollout(new AtomicInteger(), new HashSet<>(), new AtomicInteger()),
+                0, RolloutPolicy_Parallel.Reduction.MEAN, 0f);
+    }
+
+    /**
+     * Plain game which cannot be serialized, so rollouts must replay to the node.
+     */
+    private static class ReplayOnlyGame implements IGameInternal<CommandQWOP, StateQWOP> {
+
+        private final GameQWOP game;
+
+        ReplayOnlyGame(GameQWOP game) {
+            this.game = game;
+        }
+
+        @Override
+        public void resetGame() {
+            game.resetGame();
+        }
+
+        @Override
+        public void step(CommandQWOP command) {
+            game.step(command);
+        }
+
+        @Override
+        public void draw(Graphics g, float runnerScaling, int xOffsetPixels, int yOffsetPixels) {}
+
+        @Override
+        public void setState(StateQWOP st) {
+            game.setState(st);
+        }
+
+        @Override
+        public ReplayOnlyGame getCopy() {
+            return new ReplayOnlyGame(new GameQWOP());
+        }
+
+        @Override
+        public void command(CommandQWOP command) {
+            game.command(command);
+        }
+
+        @Override
+        public int getNumberOfChoices() {
+            return game.getNumberOfChoices();
+        }
+
+        @Override
+        public StateQWOP getCurrentState() {
+            return game.getCurrentState();
+        }
+
+        @Override
+        public boolean isFailed() {
+            return game.isFailed();
+        }
+
+        @Override
+        public long getTimestepsThisGame() {
+            return game.getTimestepsThisGame();
+        }
+
+        @Override
+        public int getStateDimension() {
+            return game.getStateDimension();
+        }
+    }
+}
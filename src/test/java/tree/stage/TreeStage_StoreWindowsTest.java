@@ -0,0 +1,70 @@
+package tree.stage;
+
+import game.action.Action;
+import game.action.ActionGenerator_FixedActions;
+import game.action.ActionList;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import savers.DataSaver_Null;
+import tree.TreeWorker;
+import tree.node.NodeGameExplorable;
+import tree.node.TreeStore;
+import tree.node.evaluator.EvaluationFunction_Constant;
+import tree.sampler.Sampler_UCB;
+import tree.sampler.rollout.RolloutPolicy_JustEvaluate;
+import value.updaters.ValueUpdater_Average;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TreeStage_StoreWindowsTest {
+
+    @Test
+    public void searchWindows() {
+        ActionList<CommandQWOP> actions = ActionList.getEmptyList();
+        actions.add(new Action<>(3, CommandQWOP.WO));
+        actions.add(new Action<>(7, CommandQWOP.QP));
+        ActionGenerator_FixedActions<CommandQWOP> actionGenerator = new ActionGenerator_FixedActions<>(actions);
+
+        List<TreeWorker<CommandQWOP, StateQWOP>> workers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            workers.add(new TreeWorker<>(new GameQWOP(), new Sampler_UCB<>(new EvaluationFunction_Constant<>(1f),
+                    new RolloutPolicy_JustEvaluate<>(new EvaluationFunction_Constant<>(1f)),
+                    new ValueUpdater_Average<>(), 1f, 1f), new DataSaver_Null<>()));
+        }
+
+        TreeStore<CommandQWOP, StateQWOP> store = new TreeStore<>(TreeStore.QWOP_STATES, false);
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                actionGenerator);
+        TreeStage_StoreWindows<CommandQWOP, StateQWOP> stage = new TreeStage_StoreWindows<>(store, actionGenerator,
+                new TreeStage_MaxDepth<>(2, 1000), 3, 1);
+        stage.initialize(workers, root);
+
+        Assert.assertTrue(stage.checkTerminationConditions());
+        Assert.assertFalse(stage.getResults().isEmpty());
+
+        // The search happened in the store, not in the given root.
+        Assert.assertEquals(0, root.getChildCount());
+        int rootId = stage.getStoredRootId();
+        Assert.assertEquals(0, store.getDepth(rootId));
+        Assert.assertTrue(store.getChildCount(rootId) > 0);
+
+        // Each window starts one level above the end of the last one's deepest line and goes two deeper.
+        int maxDepth = 0;
+        for (int id = 0; id < store.size(); id++) {
+            maxDepth = Math.max(maxDepth, store.getDepth(id));
+        }
+        Assert.assertTrue(maxDepth >= 4);
+
+        // Values and visit counts carry over between windows rather than starting again.
+        int visits = 0;
+        for (int child = store.getFirstChild(rootId); child != TreeStore.NO_NODE; child = store.getNextSibling(child)) {
+            visits += store.getUpdateCount(child);
+        }
+        Assert.assertTrue(visits > 0);
+        Assert.assertTrue(store.getUpdateCount(rootId) >= visits);
+    }
+}
@@ -0,0 +1,195 @@
+package value;
+
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ReplayBufferTest {
+
+    /**
+     * Example whose input and target can be checked against each other after sampling.
+     */
+    private static int addExample(ReplayBuffer buffer, int id, int visits) {
+        return buffer.add(new float[]{id, id + 0.5f, -id}, new float[]{2 * id}, id % 7, visits);
+    }
+
+    /**
+     * Check that each example in a batch is whole and return how many times each id was drawn.
+     */
+    private static int[] countIds(ReplayBuffer.Batch batch, int maxId) {
+        Assert.assertEquals(3 * batch.size(), batch.inputs.remaining());
+        Assert.assertEquals(batch.size(), batch.targets.remaining());
+        int[] counts = new int[maxId + 1];
+        for (int i = 0; i < batch.size(); i++) {
+            int id = (int) batch.inputs.get(3 * i);
+            Assert.assertEquals(id + 0.5f, batch.inputs.get(3 * i + 1), 0f);
+            Assert.assertEquals(-id, batch.inputs.get(3 * i + 2), 0f);
+            Assert.assertEquals(2 * id, batch.targets.get(i), 0f);
+            counts[id]++;
+        }
+        return counts;
+    }
+
+    @Test
+    public void replaceOldest() {
+        ReplayBuffer buffer = new ReplayBuffer(5, 3, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f);
+        Assert.assertTrue(buffer.isEmpty());
+        for (int id = 0; id < 8; id++) {
+            Assert.assertEquals(id % 5, addExample(buffer, id, 1));
+        }
+        Assert.assertEquals(5, buffer.size());
+        Assert.assertEquals(7 % 7, buffer.getTreeDepth(2));
+
+        ReplayBuffer.Batch batch = buffer.makeBatch(4);
+        Assert.assertEquals(4, buffer.copyInOrder(batch, 0));
+        int[] counts = countIds(batch, 7);
+        for (int id : new int[]{5, 6, 7, 3}) { // First three slots were replaced.
+            Assert.assertEquals(1, counts[id]);
+        }
+        Assert.assertEquals(1, buffer.copyInOrder(batch, 4));
+        Assert.assertEquals(1, countIds(batch, 7)[4]);
+
+        buffer.clear();
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertEquals(0, addExample(buffer, 1, 1));
+    }
+
+    @Test
+    public void fillBatchDirectly() {
+        ReplayBuffer buffer = new ReplayBuffer(1, 3, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f);
+        ReplayBuffer.Batch batch = buffer.makeBatch(2);
+        batch.clear();
+        batch.add(new float[]{4, 4.5f, -4}, new float[]{8});
+        batch.add(new float[]{1, 1.5f, -1, 99}, new float[]{2}); // Only the example's size is copied.
+        batch.flip();
+        Assert.assertEquals(2, batch.size());
+        int[] counts = countIds(batch, 4);
+        Assert.assertEquals(1, counts[4]);
+        Assert.assertEquals(1, counts[1]);
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fillBatchPastFull() {
+        ReplayBuffer.Batch batch = new ReplayBuffer(1, 3, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f).makeBatch(1);
+        batch.clear();
+        batch.add(new float[3], new float[1]);
+        batch.add(new float[3], new float[1]);
+    }
+
+    @Test
+    public void sampleUniform() {
+        ReplayBuffer buffer = new ReplayBuffer(10, 3, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f);
+        for (int id = 0; id < 10; id++) {
+            addExample(buffer, id, 1);
+        }
+        ReplayBuffer.Batch batch = buffer.makeBatch(1000);
+        int[] counts = new int[10];
+        Random random = new Random(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.sampleUniform(batch, 1000, random);
+            Assert.assertEquals(1000, batch.size());
+            int[] batchCounts = countIds(batch, 9);
+            for (int id = 0; id < 10; id++) {
+                counts[id] += batchCounts[id];
+            }
+        }
+        for (int count : counts) {
+            Assert.assertEquals(1000, count, 150);
+        }
+
+        // Smaller batches reuse the same buffers.
+        buffer.sampleUniform(batch, 3, random);
+        Assert.assertEquals(3, batch.size());
+        countIds(batch, 9);
+    }
+
+    @Test
+    public void samplePrioritizedByVisits() {
+        ReplayBuffer buffer = new ReplayBuffer(3, 3, 1, ReplayBuffer.Prioritization.VISIT_COUNT, 1f);
+        addExample(buffer, 0, 1);
+        addExample(buffer, 1, 9);
+        addExample(buffer, 2, 0); // Treated as visited once.
+        Assert.assertEquals(9f, buffer.getPriority(1), 0f);
+        Assert.assertEquals(9, buffer.getVisitCount(1));
+
+        ReplayBuffer.Batch batch = buffer.makeBatch(11000);
+        buffer.samplePrioritized(batch, 11000, new Random(2));
+        int[] counts = countIds(batch, 2);
+        Assert.assertEquals(1000, counts[0], 150);
+        Assert.assertEquals(9000, counts[1], 300);
+        Assert.assertEquals(1000, counts[2], 150);
+
+        // Errors do not change visit priorities.
+        buffer.updatePriorities(batch, new float[11000]);
+        Assert.assertEquals(9f, buffer.getPriority(1), 0f);
+    }
+
+    @Test
+    public void samplePrioritizedByError() {
+        ReplayBuffer buffer = new ReplayBuffer(6, 3, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f);
+        for (int id = 0; id < 6; id++) {
+            addExample(buffer, id, 1);
+        }
+        ReplayBuffer.Batch batch = buffer.makeBatch(6);
+        buffer.copyInOrder(batch, 0);
+        float[] errors = new float[6];
+        errors[4] = 10f; // Only one is badly predicted.
+        buffer.updatePriorities(batch, errors);
+        Assert.assertEquals(10f, buffer.getPriority(4), 0.01f);
+        Assert.assertTrue(buffer.getPriority(0) > 0);
+
+        batch = buffer.makeBatch(1000);
+        buffer.samplePrioritized(batch, 1000, new Random(6));
+        Assert.assertTrue(countIds(batch, 5)[4] > 990);
+
+        // New examples are sampled as often as the worst one so far.
+        addExample(buffer, 0, 1);
+        Assert.assertEquals(buffer.getPriority(4), buffer.getPriority(0), 0f);
+        buffer.samplePrioritized(batch, 1000, new Random(6));
+        Assert.assertEquals(500, countIds(batch, 5)[0], 60);
+    }
+
+    @Test
+    public void prioritizedExponentZeroIsUniform() {
+        ReplayBuffer buffer = new ReplayBuffer(2, 3, 1, ReplayBuffer.Prioritization.VISIT_COUNT, 0f);
+        addExample(buffer, 0, 1);
+        addExample(buffer, 1, 100);
+        ReplayBuffer.Batch batch = buffer.makeBatch(2000);
+        buffer.samplePrioritized(batch, 2000, new Random(1));
+        Assert.assertEquals(1000, countIds(batch, 1)[1], 100);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sampleEmpty() {
+        ReplayBuffer buffer = new ReplayBuffer(2, 3, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f);
+        buffer.sampleUniform(buffer.makeBatch(1), 1, new Random());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchTooSmall() {
+        ReplayBuffer buffer = new ReplayBuffer(2, 3, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f);
+        addExample(buffer, 0, 1);
+        buffer.sampleUniform(buffer.makeBatch(1), 2, new Random());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongInputSize() {
+        new ReplayBuffer(2, 3, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f).add(new float[2], new float[1], 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchFromOtherBuffer() {
+        ReplayBuffer buffer = new ReplayBuffer(2, 3, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f);
+        addExample(buffer, 0, 1);
+        buffer.sampleUniform(new ReplayBuffer(2, 4, 1, ReplayBuffer.Prioritization.TD_ERROR, 1f).makeBatch(1), 1,
+                new Random());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooLargeForArrays() {
+        new ReplayBuffer(30000000, StateQWOP.STATE_SIZE, 1, ReplayBuffer.Prioritization.TD_ERROR, 0f);
+    }
+}
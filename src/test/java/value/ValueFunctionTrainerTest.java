@@ -0,0 +1,258 @@
+package value;
+
+import game.action.Action;
+import game.action.ActionGenerator_FixedSequence;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import savers.DataSaver_Null;
+import tree.TreeWorker;
+import tree.node.NodeGame;
+import tree.node.NodeGameBase;
+import tree.node.NodeGameExplorable;
+import tree.node.evaluator.EvaluationFunction_Distance;
+import tree.sampler.Sampler_UCB;
+import tree.sampler.rollout.RolloutPolicy_JustEvaluate;
+import value.ValueFunction_HotSwapTest.ValueFunction_Mean;
+import value.updaters.ValueUpdater_Average;
+import value.updaters.ValueUpdater_HardSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ValueFunctionTrainerTest {
+
+    /**
+     * Passes the trained value directly, rather than through a checkpoint.
+     */
+    private static ValueFunctionTrainer.WeightPublisher<CommandQWOP, StateQWOP> directPublisher() {
+        return (trainee, publishIndex) -> {
+            float value = ((ValueFunction_Mean) trainee).value;
+            return vf -> ((ValueFunction_Mean) vf).load(value);
+        };
+    }
+
+    private static NodeGame<CommandQWOP, StateQWOP> nodeWithValue(float value) {
+        NodeGame<CommandQWOP, StateQWOP> node = new NodeGame<>(GameQWOP.getInitialState());
+        node.updateValue(value, new ValueUpdater_HardSet<>());
+        return node;
+    }
+
+    private static void waitForUpdates(ValueFunctionTrainer<?, ?> trainer, int updates) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (trainer.getUpdateCount() < updates && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void publishToTargets() throws InterruptedException {
+        ValueFunction_Mean trainee = new ValueFunction_Mean(0);
+        ValueFunction_HotSwap<CommandQWOP, StateQWOP> target = new ValueFunction_HotSwap<>(new ValueFunction_Mean(0),
+                new ValueFunction_Mean(0));
+        NodeGame<CommandQWOP, StateQWOP> node = new NodeGame<>(GameQWOP.getInitialState());
+
+        ValueFunctionTrainer<CommandQWOP, StateQWOP> trainer = new ValueFunctionTrainer<>(trainee, directPublisher(),
+                100, 10);
+        try {
+            trainer.addTarget(target);
+            trainer.start();
+            // Not enough to train on yet.
+            for (int i = 0; i < 9; i++) {
+                trainer.offer(nodeWithValue(4));
+            }
+            Thread.sleep(50);
+            Assert.assertEquals(0, trainer.getUpdateCount());
+            Assert.assertEquals(0, target.evaluate(node), 0f);
+
+            trainer.offer(nodeWithValue(4));
+            waitForUpdates(trainer, 1);
+            Assert.assertTrue(trainer.getUpdateCount() > 0);
+            Assert.assertEquals(4, target.evaluate(node), 0f);
+            Assert.assertEquals(4, trainee.value, 0f);
+
+            // Nothing new, so no more training.
+            Thread.sleep(50);
+            Assert.assertEquals(1, trainer.getUpdateCount());
+
+            // Targets no longer get updates once removed.
+            trainer.removeTarget(target);
+            int swaps = target.getSwapCount();
+            for (int i = 0; i < 10; i++) {
+                trainer.offer(nodeWithValue(4));
+            }
+            waitForUpdates(trainer, 2);
+            Assert.assertEquals(2, trainer.getUpdateCount());
+            Assert.assertEquals(swaps, target.getSwapCount());
+        } finally {
+            trainer.close();
+        }
+        Assert.assertEquals(20, trainer.getNodesOfferedCount());
+        Assert.assertEquals(0, trainer.getNodesDroppedCount());
+    }
+
+    @Test
+    public void targetCopies() throws InterruptedException {
+        ValueFunction_Mean trainee = new ValueFunction_Mean(2);
+        NodeGame<CommandQWOP, StateQWOP> node = new NodeGame<>(GameQWOP.getInitialState());
+        ValueFunctionTrainer<CommandQWOP, StateQWOP> trainer = new ValueFunctionTrainer<>(trainee, directPublisher(),
+                100, 10);
+        try {
+            // Starts from the trainee's current weights.
+            ValueFunction_HotSwap<CommandQWOP, StateQWOP> target = trainer.addTargetCopy();
+            Assert.assertEquals(2, target.evaluate(node), 0f);
+            Assert.assertNotSame(trainee, target.getActive());
+
+            trainer.start();
+            for (int i = 0; i < 10; i++) {
+                trainer.offer(nodeWithValue(5));
+            }
+            waitForUpdates(trainer, 1);
+            Assert.assertEquals(5, target.evaluate(node), 0f);
+
+            // Copies made after an update start from it.
+            ValueFunction_HotSwap<CommandQWOP, StateQWOP> later = trainer.addTargetCopy();
+            Assert.assertEquals(5, later.evaluate(node), 0f);
+        } finally {
+            trainer.close();
+        }
+    }
+
+    @Test
+    public void replayKeepsMostRecent() throws InterruptedException {
+        ValueFunction_Mean trainee = new ValueFunction_Mean(0);
+        ValueFunctionTrainer<CommandQWOP, StateQWOP> trainer = new ValueFunctionTrainer<>(trainee, directPublisher(),
+                5, 20);
+        // Too many to hand over before training starts.
+        for (int i = 0; i < 5; i++) {
+            trainer.offer(nodeWithValue(1));
+        }
+        trainer.offer(nodeWithValue(1));
+        Assert.assertEquals(6, trainer.getNodesOfferedCount());
+        Assert.assertEquals(1, trainer.getNodesDroppedCount());
+
+        // Trains once the replay buffer is full, even though that is fewer than the samples per update.
+        trainer.start();
+        waitForUpdates(trainer, 1);
+        for (int i = 0; i < 5; i++) {
+            trainer.offer(nodeWithValue(3));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (trainee.value != 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        trainer.close();
+        Assert.assertEquals(5, trainer.getReplaySize());
+        Assert.assertEquals(3, trainee.value, 0f); // Older nodes were pushed out.
+    }
+
+    @Test
+    public void nodesFromWorker() throws InterruptedException {
+        ValueFunctionTrainer<CommandQWOP, StateQWOP> trainer = new ValueFunctionTrainer<>(new ValueFunction_Mean(0),
+                directPublisher(), 1000, 1000);
+        NodeGameExplorable<CommandQWOP, StateQWOP> root = new NodeGameExplorable<>(GameQWOP.getInitialState(),
+                ActionGenerator_FixedSequence.makeDefaultGenerator(-1));
+
+        // Driven directly rather than through a stage, and stops itself after a few games. Stages count the games of
+        // every worker, including ones from tests running alongside this one.
+        AtomicInteger gamesLeft = new AtomicInteger(10);
+        AtomicReference<TreeWorker<CommandQWOP, StateQWOP>> self = new AtomicReference<>();
+        TreeWorker<CommandQWOP, StateQWOP> worker = new TreeWorker<>(new GameQWOP(),
+                new Sampler_UCB<>(new EvaluationFunction_Distance<>(),
+                        new RolloutPolicy_JustEvaluate<>(new EvaluationFunction_Distance<>()),
+                        new ValueUpdater_Average<>(), 5, 1, true, 1f),
+                new DataSaver_Null<CommandQWOP, StateQWOP>() {
+                    @Override
+                    public void reportGameEnding(NodeGameBase<?, CommandQWOP, StateQWOP> endNode) {
+                        if (gamesLeft.decrementAndGet() <= 0) {
+                            self.get().terminateWorker();
+                        }
+                    }
+                });
+        self.set(worker);
+        worker.setValueTrainer(trainer);
+        Assert.assertSame(trainer, worker.getValueTrainer());
+        worker.setRoot(root);
+
+        long deadline = System.currentTimeMillis() + 10000;
+        worker.startWorker();
+        while (worker.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        worker.terminateWorker();
+        Assert.assertFalse(worker.isRunning());
+
+        // Every node added is handed over once. The root was already there.
+        Assert.assertTrue(root.countDescendants() > 0);
+        Assert.assertEquals(root.countDescendants(), trainer.getNodesOfferedCount());
+        Assert.assertEquals(0, trainer.getNodesDroppedCount());
+    }
+
+    @Test
+    public void waitsForNewNodes() throws InterruptedException {
+        ValueFunction_Mean trainee = new ValueFunction_Mean(0);
+        ValueFunctionTrainer<CommandQWOP, StateQWOP> trainer = new ValueFunctionTrainer<>(trainee, directPublisher(),
+                100, 10, 30);
+        try {
+            trainer.start();
+            for (int i = 0; i < 29; i++) {
+                trainer.offer(nodeWithValue(2));
+            }
+            Thread.sleep(50);
+            Assert.assertEquals(0, trainer.getUpdateCount()); // Enough to sample, but not enough new ones.
+
+            trainer.offer(nodeWithValue(2));
+            waitForUpdates(trainer, 1);
+            for (int i = 0; i < 29; i++) {
+                trainer.offer(nodeWithValue(2));
+            }
+            Thread.sleep(50);
+            Assert.assertEquals(1, trainer.getUpdateCount());
+        } finally {
+            trainer.close();
+        }
+    }
+
+    @Test
+    public void tensorFlowTraineeKeepsExamples() throws IOException, InterruptedException {
+        ValueFunction_TensorFlow_StateOnly<StateQWOP> trainee = new ValueFunction_TensorFlow_StateOnly<>(
+                new File("src/test/resources/test_models/small_net.pb"), new GameQWOP(),
+                new StateQWOP.Normalizer(StateQWOP.Normalizer.NormalizationMethod.STDEV),
+                "src/test/resources/test_models/good_save", 1f, false);
+        // Too few nodes to train on, since the test network cannot be trained.
+        ValueFunctionTrainer<CommandQWOP, StateQWOP> trainer = new ValueFunctionTrainer<>(trainee,
+                (vf, publishIndex) -> target -> {}, 20, 100);
+
+        NodeGame<CommandQWOP, StateQWOP> root = nodeWithValue(0);
+        GameQWOP game = new GameQWOP();
+        try {
+            trainer.start();
+            trainer.offer(root); // Not trained on, since it has no parent.
+            for (int i = 0; i < 16; i++) {
+                game.step(i % 2 == 0, false, false, i % 2 == 0);
+                NodeGame<CommandQWOP, StateQWOP> child = root.addDoublyLinkedChild(new Action<>(1, CommandQWOP.QP),
+                        game.getCurrentState());
+                child.updateValue(i, new ValueUpdater_HardSet<>());
+                trainer.offer(child);
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (trainer.getReplaySize() < 16 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            trainer.close();
+            trainee.close();
+        }
+        Assert.assertEquals(0, trainer.getUpdateCount());
+        Assert.assertEquals(16, trainer.getReplaySize()); // Transformed as they came in.
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badReplayCapacity() {
+        new ValueFunctionTrainer<>(new ValueFunction_Mean(0), directPublisher(), 0, 10);
+    }
+}
@@ -0,0 +1,158 @@
+package value;
+
+import game.IGameSerializable;
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import tree.node.NodeGame;
+import tree.node.NodeGameBase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ValueFunction_HotSwapTest {
+
+    /**
+     * Gives every node the same value. Training sets it to the mean value of the nodes. Notes whether new weights were
+     * ever loaded while it was evaluating.
+     */
+    static class ValueFunction_Mean implements IValueFunction<CommandQWOP, StateQWOP> {
+        volatile float value;
+        final AtomicInteger evaluating = new AtomicInteger();
+        final AtomicBoolean loadedWhileEvaluating = new AtomicBoolean();
+        boolean closed;
+
+        ValueFunction_Mean(float value) {
+            this.value = value;
+        }
+
+        void load(float newValue) {
+            if (evaluating.get() > 0) {
+                loadedWhileEvaluating.set(true);
+            }
+            value = newValue;
+        }
+
+        @Override
+        public Action<CommandQWOP> getMaximizingAction(NodeGameBase<?, CommandQWOP, StateQWOP> currentNode) {
+            return new Action<>((int) evaluate(currentNode), CommandQWOP.NONE);
+        }
+
+        @Override
+        public Action<CommandQWOP> getMaximizingAction(NodeGameBase<?, CommandQWOP, StateQWOP> currentNode,
+                                                       IGameSerializable<CommandQWOP, StateQWOP> game) {
+            return getMaximizingAction(currentNode);
+        }
+
+        @Override
+        public float evaluate(NodeGameBase<?, CommandQWOP, StateQWOP> currentNode) {
+            evaluating.incrementAndGet();
+            try {
+                Thread.yield();
+                return value;
+            } finally {
+                evaluating.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void update(List<? extends NodeGameBase<?, CommandQWOP, StateQWOP>> nodes) {
+            float sum = 0;
+            for (NodeGameBase<?, CommandQWOP, StateQWOP> node : nodes) {
+                sum += node.getValue();
+            }
+            value = sum / nodes.size();
+        }
+
+        @Override
+        public IValueFunction<CommandQWOP, StateQWOP> getCopy() {
+            return new ValueFunction_Mean(value);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void swap() {
+        ValueFunction_Mean first = new ValueFunction_Mean(1);
+        ValueFunction_Mean second = new ValueFunction_Mean(1);
+        ValueFunction_HotSwap<CommandQWOP, StateQWOP> hotSwap = new ValueFunction_HotSwap<>(first, second);
+        NodeGame<CommandQWOP, StateQWOP> node = new NodeGame<>(GameQWOP.getInitialState());
+
+        Assert.assertSame(first, hotSwap.getActive());
+        Assert.assertEquals(1, hotSwap.evaluate(node), 0f);
+
+        hotSwap.swap(vf -> ((ValueFunction_Mean) vf).load(2));
+        Assert.assertSame(second, hotSwap.getActive());
+        Assert.assertEquals(2, hotSwap.evaluate(node), 0f);
+        Assert.assertEquals(2, hotSwap.getMaximizingAction(node).getTimestepsTotal());
+        Assert.assertEquals(1, first.value, 0f); // Standby is untouched until the next swap.
+
+        hotSwap.swap(vf -> ((ValueFunction_Mean) vf).load(3));
+        Assert.assertSame(first, hotSwap.getActive());
+        Assert.assertEquals(3, hotSwap.evaluate(node), 0f);
+        Assert.assertEquals(2, hotSwap.getSwapCount());
+
+        Assert.assertEquals(3, hotSwap.getCopy().evaluate(node), 0f);
+        hotSwap.close();
+        Assert.assertTrue(first.closed);
+        Assert.assertTrue(second.closed);
+    }
+
+    @Test
+    public void swapWhileEvaluating() throws InterruptedException {
+        ValueFunction_Mean first = new ValueFunction_Mean(0);
+        ValueFunction_Mean second = new ValueFunction_Mean(0);
+        ValueFunction_HotSwap<CommandQWOP, StateQWOP> hotSwap = new ValueFunction_HotSwap<>(first, second);
+        NodeGame<CommandQWOP, StateQWOP> node = new NodeGame<>(GameQWOP.getInitialState());
+
+        int swaps = 500;
+        AtomicBoolean wentBackwards = new AtomicBoolean();
+        List<Thread> evaluators = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            evaluators.add(new Thread(() -> {
+                float previous = 0;
+                while (previous < swaps) {
+                    float value = hotSwap.evaluate(node);
+                    if (value < previous) {
+                        wentBackwards.set(true);
+                    }
+                    previous = value;
+                }
+            }));
+        }
+        evaluators.forEach(Thread::start);
+        for (int i = 1; i <= swaps; i++) {
+            float newValue = i;
+            hotSwap.swap(vf -> ((ValueFunction_Mean) vf).load(newValue));
+        }
+        for (Thread evaluator : evaluators) {
+            evaluator.join(10000);
+            Assert.assertFalse(evaluator.isAlive());
+        }
+
+        Assert.assertFalse(first.loadedWhileEvaluating.get());
+        Assert.assertFalse(second.loadedWhileEvaluating.get());
+        Assert.assertFalse(wentBackwards.get());
+        Assert.assertEquals(swaps, hotSwap.getSwapCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void update() {
+        new ValueFunction_HotSwap<>(new ValueFunction_Mean(0), new ValueFunction_Mean(0)).update(new ArrayList<>());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sameValueFunctionTwice() {
+        ValueFunction_Mean valueFunction = new ValueFunction_Mean(0);
+        new ValueFunction_HotSwap<>(valueFunction, valueFunction);
+    }
+}
@@ -0,0 +1,44 @@
+package value;
+
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import tree.node.NodeGame;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ValueFunction_TensorFlow_StateOnlyJavaTest {
+
+    @Test
+    public void matchesTensorFlowEvaluation() throws IOException {
+        GameQWOP game = new GameQWOP();
+        File modelFile = new File("src/test/resources/test_models/small_net.pb");
+        StateQWOP.Normalizer normalizer = new StateQWOP.Normalizer(StateQWOP.Normalizer.NormalizationMethod.STDEV);
+        String checkpoint = "src/test/resources/test_models/good_save";
+        ValueFunction_TensorFlow_StateOnly<StateQWOP> valFun = new ValueFunction_TensorFlow_StateOnly<>(modelFile,
+                game, normalizer, checkpoint, 1f, false);
+        ValueFunction_TensorFlow_StateOnlyJava<StateQWOP> valFunJava = new ValueFunction_TensorFlow_StateOnlyJava<>(
+                modelFile, game, normalizer, checkpoint, 1f, false);
+        ValueFunction_TensorFlow_StateOnlyJava<StateQWOP> valFunJavaBatched = valFunJava.getCopy();
+        valFunJavaBatched.batchEvaluation = true;
+
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 8; j++) {
+                game.step(i % 2 == 0, i % 2 == 1, i % 2 == 1, i % 2 == 0);
+            }
+            NodeGame<CommandQWOP, StateQWOP> node = new NodeGame<>(game.getCurrentState());
+            Assert.assertEquals(valFun.evaluate(node), valFunJava.evaluate(node), 1e-4f);
+
+            Action<CommandQWOP> action = valFun.getMaximizingAction(node);
+            Assert.assertEquals(action, valFunJava.getMaximizingAction(node));
+            Assert.assertEquals(action, valFunJavaBatched.getMaximizingAction(node));
+        }
+        valFun.close();
+        valFunJava.close();
+        valFunJavaBatched.close();
+    }
+}
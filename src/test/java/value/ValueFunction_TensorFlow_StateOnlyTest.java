@@ -0,0 +1,55 @@
+package value;
+
+import game.action.Action;
+import game.qwop.CommandQWOP;
+import game.qwop.GameQWOP;
+import game.qwop.StateQWOP;
+import org.junit.Assert;
+import org.junit.Test;
+import tree.node.NodeGame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ValueFunction_TensorFlow_StateOnlyTest {
+
+    @Test
+    public void batchEvaluationMatchesIndividual() throws IOException {
+        GameQWOP game = new GameQWOP();
+        File modelFile = new File("src/test/resources/test_models/small_net.pb");
+        Assert.assertTrue(modelFile.exists());
+        ValueFunction_TensorFlow_StateOnly<StateQWOP> valFun = new ValueFunction_TensorFlow_StateOnly<>(modelFile,
+                game, new StateQWOP.Normalizer(StateQWOP.Normalizer.NormalizationMethod.STDEV),
+                "src/test/resources/test_models/good_save", 1f, false);
+        ValueFunction_TensorFlow_StateOnly<StateQWOP> valFunBatched = valFun.getCopy();
+        valFunBatched.batchEvaluation = true;
+
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 8; j++) {
+                game.step(i % 2 == 0, i % 2 == 1, i % 2 == 1, i % 2 == 0);
+            }
+            NodeGame<CommandQWOP, StateQWOP> node = new NodeGame<>(game.getCurrentState());
+
+            Action<CommandQWOP> action = valFun.getMaximizingAction(node);
+            List<Float> values = new ArrayList<>();
+            valFun.evalResults.forEach(r -> values.add(r.value));
+
+            Action<CommandQWOP> actionBatched = valFunBatched.getMaximizingAction(node);
+            Assert.assertEquals(action, actionBatched);
+            Assert.assertEquals(values.size(), valFunBatched.evalResults.size());
+            for (int j = 0; j < values.size(); j++) {
+                Assert.assertEquals(values.get(j), valFunBatched.evalResults.get(j).value, 1e-4f);
+            }
+
+            // Individual evaluation of a predicted state should match its batched value too.
+            ValueFunction_TensorFlow_StateOnly<StateQWOP>.FuturePredictor predictor =
+                    valFunBatched.evaluations.get(1);
+            Assert.assertEquals(valFun.evaluate(new NodeGame<>(predictor.predictedStates.get(5))),
+                    predictor.predictedValues[5], 1e-4f);
+        }
+        valFun.close();
+        valFunBatched.close();
+    }
+}